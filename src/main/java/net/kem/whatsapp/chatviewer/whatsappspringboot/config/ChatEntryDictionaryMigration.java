@@ -0,0 +1,126 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.config;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves chat_entries created before the author and chat dictionaries from the old author/chat_id
+ * string columns to author_id/chat_ref_id. Hibernate's schema update adds the new columns but
+ * never drops the old ones. On startup the old columns are made nullable, so that new entries
+ * which no longer set them can be inserted, and the entries not migrated yet are filled in. The
+ * old columns are only dropped when app.migration.drop-legacy-columns is set, after checking that
+ * every old entry has been migrated.
+ */
+@Component
+@Slf4j
+public class ChatEntryDictionaryMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean dropLegacyColumns;
+
+    public ChatEntryDictionaryMigration(JdbcTemplate jdbcTemplate,
+            @Value("${app.migration.drop-legacy-columns:false}") boolean dropLegacyColumns) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dropLegacyColumns = dropLegacyColumns;
+    }
+
+    /**
+     * Make the old columns nullable. Committed on its own before the migration, so that inserts
+     * keep working whatever happens to the rest of it.
+     */
+    @Transactional
+    public void relaxLegacyColumns() {
+        for (String column : new String[] {"author", "chat_id"}) {
+            if (hasColumn(column)) {
+                jdbcTemplate.execute(
+                        "ALTER TABLE chat_entries ALTER COLUMN " + column + " DROP NOT NULL");
+            }
+        }
+    }
+
+    /**
+     * Fill in the dictionary ids of entries that only have the old columns
+     *
+     * @return whether any entry was migrated
+     */
+    @Transactional
+    public boolean migrateLegacyColumns() {
+        if (!hasColumn("chat_id")) {
+            return false;
+        }
+        int authors = jdbcTemplate.update("""
+                INSERT INTO authors (name) SELECT DISTINCT ce.author FROM chat_entries ce \
+                WHERE ce.chat_ref_id IS NULL AND ce.author IS NOT NULL \
+                AND NOT EXISTS (SELECT 1 FROM authors a WHERE a.name = ce.author)""");
+        int chats = jdbcTemplate.update("""
+                INSERT INTO chats (user_id, chat_id, message_count, attachment_count, \
+                first_message_at, last_message_at, participant_count, created_at) \
+                SELECT ce.user_id, ce.chat_id, COUNT(*), COUNT(NULLIF(ce.file_name, '')), \
+                MIN(ce.local_date_time), MAX(ce.local_date_time), COUNT(DISTINCT ce.author), \
+                CURRENT_TIMESTAMP FROM chat_entries ce \
+                WHERE ce.chat_ref_id IS NULL AND ce.chat_id IS NOT NULL AND NOT EXISTS \
+                (SELECT 1 FROM chats c WHERE c.user_id = ce.user_id AND c.chat_id = ce.chat_id) \
+                GROUP BY ce.user_id, ce.chat_id""");
+        int entries = jdbcTemplate.update("""
+                UPDATE chat_entries SET \
+                author_id = (SELECT a.id FROM authors a WHERE a.name = chat_entries.author), \
+                chat_ref_id = (SELECT c.id FROM chats c \
+                WHERE c.user_id = chat_entries.user_id AND c.chat_id = chat_entries.chat_id) \
+                WHERE chat_ref_id IS NULL AND chat_id IS NOT NULL""");
+        if (entries == 0) {
+            return false;
+        }
+        log.info("Migrated {} chat entries to dictionary ids ({} new authors, {} new chats)",
+                entries, authors, chats);
+        return true;
+    }
+
+    /**
+     * Drop the old author/chat_id columns if enabled and every old entry has been migrated
+     *
+     * @return whether the columns were dropped
+     * @throws IllegalStateException if some old entries still lack their dictionary ids
+     */
+    @Transactional
+    public boolean dropLegacyColumns() {
+        if (!dropLegacyColumns || !hasColumn("chat_id")) {
+            return false;
+        }
+        Long unmigrated = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM chat_entries WHERE chat_id IS NOT NULL \
+                AND (chat_ref_id IS NULL OR (author IS NOT NULL AND author_id IS NULL))""",
+                Long.class);
+        if (unmigrated == null || unmigrated > 0) {
+            throw new IllegalStateException(
+                    unmigrated + " chat entries are not migrated, keeping the legacy columns");
+        }
+        // Indexes on the old columns are dropped together with them
+        jdbcTemplate.execute("ALTER TABLE chat_entries DROP COLUMN author");
+        jdbcTemplate.execute("ALTER TABLE chat_entries DROP COLUMN chat_id");
+        log.info("Dropped the legacy author and chat_id columns of chat entries");
+        return true;
+    }
+
+    private boolean hasColumn(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((Connection connection) -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // Unquoted identifiers are stored in lower case by PostgreSQL and upper case by H2
+            for (boolean upperCase : new boolean[] {false, true}) {
+                String table = upperCase ? "CHAT_ENTRIES" : "chat_entries";
+                String column = upperCase ? name.toUpperCase() : name;
+                try (ResultSet columns = metaData.getColumns(null, null, table, column)) {
+                    if (columns.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+}
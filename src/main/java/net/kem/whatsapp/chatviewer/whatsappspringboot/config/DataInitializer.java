@@ -4,6 +4,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.User;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.UserRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ActivityRollupService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.AttachmentReferenceService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.AttachmentService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.DetectedEntityService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.FullTextSearchService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.UserService;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
@@ -15,6 +20,12 @@ public class DataInitializer implements CommandLineRunner {
 
     private final UserRepository userRepository;
     private final UserService userService;
+    private final ChatEntryDictionaryMigration chatEntryDictionaryMigration;
+    private final FullTextSearchService fullTextSearchService;
+    private final DetectedEntityService detectedEntityService;
+    private final ActivityRollupService activityRollupService;
+    private final AttachmentReferenceService attachmentReferenceService;
+    private final AttachmentService attachmentService;
 
     @Override
     public void run(String... args) throws Exception {
@@ -38,5 +49,53 @@ public class DataInitializer implements CommandLineRunner {
                 log.error("Failed to create default admin user: {}", e.getMessage());
             }
         }
+
+        // Move entries uploaded before the author/chat dictionaries to dictionary ids. Nothing
+        // else works on a half migrated chat_entries table, so a failure stops the startup.
+        try {
+            chatEntryDictionaryMigration.relaxLegacyColumns();
+            chatEntryDictionaryMigration.migrateLegacyColumns();
+            chatEntryDictionaryMigration.dropLegacyColumns();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to migrate chat entries to dictionary ids", e);
+        }
+
+        // Full-text search columns are created after the migration so that they cover the final
+        // chat_entries layout
+        try {
+            fullTextSearchService.prepareSchema();
+        } catch (Exception e) {
+            log.error("Failed to prepare full-text search, keyword search uses LIKE: {}",
+                    e.getMessage());
+        }
+
+        // Entries uploaded before payloads were sanitized at ingest
+        try {
+            detectedEntityService.backfillLegacyEntries();
+        } catch (Exception e) {
+            log.error("Failed to sanitize existing chat entries: {}", e.getMessage());
+        }
+
+        // Chats uploaded before statistics were kept in rollup tables
+        try {
+            activityRollupService.rebuildMissingRollups();
+        } catch (Exception e) {
+            log.error("Failed to build activity rollups of existing chats: {}", e.getMessage());
+        }
+
+        // Users whose attachments were uploaded before storage was accounted per user
+        try {
+            attachmentReferenceService.rebuildMissingStorage();
+        } catch (Exception e) {
+            log.error("Failed to build attachment storage accounting: {}", e.getMessage());
+        }
+
+        // Attachments uploaded before their media type was detected at ingest
+        try {
+            attachmentService.detectMissingMediaTypes();
+        } catch (Exception e) {
+            log.error("Failed to detect media types of existing attachments: {}",
+                    e.getMessage());
+        }
     }
 } 
\ No newline at end of file
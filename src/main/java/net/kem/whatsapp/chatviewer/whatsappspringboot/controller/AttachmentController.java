@@ -1,9 +1,13 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.controller;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,11 +16,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryItem;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.User;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.AttachmentService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.FileNamingService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.StoredContent;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ThumbnailService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -26,11 +38,13 @@ public class AttachmentController {
 
     private final AttachmentService attachmentService;
     private final UserService userService;
+    private final ThumbnailService thumbnailService;
 
     public AttachmentController(@Autowired AttachmentService attachmentService,
-            @Autowired UserService userService) {
+            @Autowired UserService userService, @Autowired ThumbnailService thumbnailService) {
         this.attachmentService = attachmentService;
         this.userService = userService;
+        this.thumbnailService = thumbnailService;
     }
 
     /**
@@ -50,6 +64,74 @@ public class AttachmentController {
         return attachment.map(ResponseEntity::ok).orElse(ResponseEntity.notFound().build());
     }
 
+    /**
+     * Get attachment content by hash (only if user owns it). Every entry sharing the file has the
+     * same URL, so browsers fetch and cache it once. Supports Range requests.
+     */
+    @GetMapping("/hash/{hash}/content")
+    public ResponseEntity<Resource> getAttachmentContent(@PathVariable String hash,
+            HttpServletRequest request) {
+        if (!FileNamingService.isContentHash(hash)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Long userId = getCurrentUserId();
+        Optional<String> mimeType = attachmentService.findMimeTypeForUser(hash, userId);
+        if (mimeType.isEmpty()) {
+            return ResponseEntity.status(403).build(); // Forbidden - user doesn't own this
+                                                       // attachment
+        }
+        if (AttachmentResponses.isCached(request, hash)) {
+            return AttachmentResponses.notModified(hash);
+        }
+
+        try {
+            StoredContent file = attachmentService.resolveContent(hash);
+            return AttachmentResponses.serve(request, file,
+                    AttachmentResponses.contentType(mimeType.get()), null, hash);
+        } catch (IOException e) {
+            log.error("Error reading content of attachment {}: {}", hash, e.getMessage());
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Get the thumbnail of an image attachment by hash (only if user owns it), made on first
+     * request if the upload did not make it
+     */
+    @GetMapping("/hash/{hash}/thumbnail")
+    public ResponseEntity<Resource> getAttachmentThumbnail(@PathVariable String hash,
+            HttpServletRequest request) {
+        if (!FileNamingService.isContentHash(hash)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Long userId = getCurrentUserId();
+        Optional<String> mimeType = attachmentService.findMimeTypeForUser(hash, userId);
+        if (mimeType.isEmpty()) {
+            return ResponseEntity.status(403).build(); // Forbidden - user doesn't own this
+                                                       // attachment
+        }
+        if (!ThumbnailService.isSupportedType(mimeType.get())) {
+            return ResponseEntity.notFound().build();
+        }
+        String tag = thumbnailService.getTag(hash);
+        if (AttachmentResponses.isCached(request, tag)) {
+            return AttachmentResponses.notModified(tag);
+        }
+
+        try {
+            Optional<StoredContent> thumbnail = thumbnailService.getThumbnail(hash);
+            if (thumbnail.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            StoredContent file = thumbnail.get();
+            return AttachmentResponses.serve(request, file,
+                    AttachmentResponses.contentType(ThumbnailService.mimeTypeOf(file)), null, tag);
+        } catch (IOException e) {
+            log.error("Error making thumbnail of attachment {}: {}", hash, e.getMessage());
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Check if attachment exists by hash
      */
@@ -69,6 +151,32 @@ public class AttachmentController {
         return ResponseEntity.ok(attachments);
     }
 
+    /**
+     * Page through the attachments of the current user's entries, newest first, with keyset
+     * pagination
+     */
+    @GetMapping("/gallery")
+    public ResponseEntity<CursorPage<AttachmentGalleryItem>> getGallery(
+            @RequestParam(required = false) String chatId,
+            @RequestParam(required = false) ChatEntry.Type type,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long minSize,
+            @RequestParam(required = false) Long maxSize,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "60") int size) {
+        Long userId = getCurrentUserId();
+        try {
+            return ResponseEntity.ok(attachmentService.findGallery(userId, chatId, type, from, to,
+                    minSize, maxSize, cursor, size));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected gallery request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Get all attachments with specific status for the current authenticated user
      */
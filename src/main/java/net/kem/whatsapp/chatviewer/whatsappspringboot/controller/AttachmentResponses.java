@@ -0,0 +1,261 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.controller;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.ServletServerHttpRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.StoredContent;
+
+/**
+ * Responses for attachment files with byte range support and HTTP caching. A GET with a Range
+ * header gets 206 Partial Content, as multipart/byteranges when several ranges are asked for,
+ * unless its If-Range validator no longer matches the file. On Tomcat a whole file or a single
+ * range is handed to the connector's sendfile, which moves the bytes from the page cache to the
+ * socket without copying them through the JVM; elsewhere Spring writes the file or its regions.
+ * Files in a remote content store are streamed, a single range by reading only that range.
+ * <p>
+ * Files stored under their SHA-256 hash never change, so their responses carry the hash, or a tag
+ * derived from it, as a strong ETag and may be cached for a year without revalidation.
+ */
+final class AttachmentResponses {
+
+    // Request attributes of Tomcat's sendfile support, as set by its DefaultServlet
+    static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    // Below this size a plain write is cheaper than setting up sendfile, as in DefaultServlet
+    static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
+    // Content-addressed files are immutable; private because attachments belong to one user
+    static final CacheControl IMMUTABLE =
+            CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+
+    private AttachmentResponses() {
+    }
+
+    /**
+     * Whether the client already holds the file with this tag, checked before the file is looked
+     * up
+     *
+     * @param tag the SHA-256 hash of the file or another tag that changes with its content, or
+     *        null if the file is not content-addressed
+     */
+    static boolean isCached(HttpServletRequest request, String tag) {
+        if (tag == null) {
+            return false;
+        }
+        String etag = etag(tag);
+        List<String> ifNoneMatch = new ServletServerHttpRequest(request).getHeaders()
+                .getIfNoneMatch();
+        // If-None-Match uses the weak comparison
+        return ifNoneMatch.stream().anyMatch(
+                held -> "*".equals(held) || held.equals(etag) || held.equals("W/" + etag));
+    }
+
+    /**
+     * 304 Not Modified for a content-addressed file the client already holds
+     */
+    static ResponseEntity<Resource> notModified(String tag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag(tag))
+                .cacheControl(IMMUTABLE).build();
+    }
+
+    /**
+     * Serve a file, or the ranges of it the request asks for
+     *
+     * @param disposition the Content-Disposition of the response, or null for none
+     * @param tag the SHA-256 hash of the file or another tag that changes with its content, or
+     *        null if the file is not content-addressed
+     */
+    static ResponseEntity<Resource> serve(HttpServletRequest request, StoredContent content,
+            MediaType contentType, ContentDisposition disposition, String tag)
+            throws IOException {
+        if (isCached(request, tag)) {
+            return notModified(tag);
+        }
+        HttpHeaders requestHeaders = new ServletServerHttpRequest(request).getHeaders();
+        long length = content.size();
+        long lastModified = content.lastModified();
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        if (disposition != null) {
+            headers.setContentDisposition(disposition);
+        }
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setLastModified(lastModified);
+        if (tag != null) {
+            headers.setETag(etag(tag));
+            headers.setCacheControl(IMMUTABLE);
+        }
+
+        if (isNotModified(requestHeaders, lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        boolean get = HttpMethod.GET.matches(request.getMethod());
+        boolean rangeRequested = requestHeaders.containsKey(HttpHeaders.RANGE);
+        Optional<Path> local = content.localPath();
+        if (local.isEmpty()) {
+            return serveStream(content, headers, requestHeaders, get,
+                    get && rangeRequested && ifRangeMatches(requestHeaders, lastModified, tag));
+        }
+        Path file = local.get();
+        FileSystemResource resource = new FileSystemResource(file);
+        List<ResourceRegion> regions = List.of();
+        if (get && rangeRequested && ifRangeMatches(requestHeaders, lastModified, tag)) {
+            try {
+                regions = HttpRange.toResourceRegions(requestHeaders.getRange(), resource);
+            } catch (IllegalArgumentException e) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .headers(headers).build();
+            }
+        }
+
+        if (regions.size() > 1) {
+            // Spring turns the Range header into a multipart/byteranges body
+            return ResponseEntity.ok().headers(headers).body(resource);
+        }
+        ResourceRegion region =
+                regions.isEmpty() ? new ResourceRegion(resource, 0, length) : regions.getFirst();
+        if (get && region.getCount() >= SENDFILE_MIN_BYTES
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, region.getPosition());
+            request.setAttribute(SENDFILE_END_ATTR, region.getPosition() + region.getCount());
+            headers.setContentLength(region.getCount());
+            if (regions.isEmpty()) {
+                return ResponseEntity.ok().headers(headers).build();
+            }
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + region.getPosition() + "-"
+                    + (region.getPosition() + region.getCount() - 1) + "/" + length);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).build();
+        }
+        if (rangeRequested && regions.isEmpty()) {
+            // The Range header is ignored; a stream keeps Spring from applying it anyway
+            headers.setContentLength(length);
+            return ResponseEntity.ok().headers(headers)
+                    .body(new InputStreamResource(resource.getInputStream()));
+        }
+        return ResponseEntity.ok().headers(headers).body(resource);
+    }
+
+    /**
+     * Stream a file that is not on the local file system. A single range is read from the store
+     * alone; several ranges are answered with the whole file, as RFC 9110 allows.
+     */
+    private static ResponseEntity<Resource> serveStream(StoredContent content, HttpHeaders headers,
+            HttpHeaders requestHeaders, boolean get, boolean rangeApplies) throws IOException {
+        long length = content.size();
+        if (!get) {
+            // A HEAD request needs no read from the store
+            headers.setContentLength(length);
+            return ResponseEntity.ok().headers(headers).build();
+        }
+        List<HttpRange> ranges = List.of();
+        if (rangeApplies) {
+            try {
+                ranges = requestHeaders.getRange();
+            } catch (IllegalArgumentException e) {
+                // An unparseable Range header is ignored
+            }
+        }
+        if (ranges.size() == 1) {
+            HttpRange range = ranges.getFirst();
+            long start;
+            long end;
+            try {
+                start = range.getRangeStart(length);
+                end = range.getRangeEnd(length);
+            } catch (IllegalArgumentException e) {
+                start = length;
+                end = length - 1;
+            }
+            if (start >= length || start > end) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .headers(headers).build();
+            }
+            long count = end - start + 1;
+            headers.setContentLength(count);
+            headers.set(HttpHeaders.CONTENT_RANGE,
+                    "bytes " + start + "-" + end + "/" + length);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                    .body(new InputStreamResource(content.open(start, count)));
+        }
+        // A stream keeps Spring from applying the Range header itself
+        headers.setContentLength(length);
+        return ResponseEntity.ok().headers(headers)
+                .body(new InputStreamResource(content.open()));
+    }
+
+    /**
+     * Content type of a response carrying a file of this media type
+     */
+    static MediaType contentType(String mimeType) {
+        if (mimeType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try {
+            return MediaType.parseMediaType(mimeType);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private static String etag(String tag) {
+        return "\"" + tag + "\"";
+    }
+
+    private static boolean isNotModified(HttpHeaders requestHeaders, long lastModified) {
+        if (requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)) {
+            return false;
+        }
+        try {
+            long since = requestHeaders.getIfModifiedSince();
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the Range header applies: there is no If-Range, or it carries the file's strong
+     * ETag or its Last-Modified date
+     */
+    private static boolean ifRangeMatches(HttpHeaders requestHeaders, long lastModified,
+            String tag) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range uses the strong comparison, so a weak tag never matches
+            return tag != null && ifRange.equals(etag(tag));
+        }
+        try {
+            return requestHeaders.getFirstDate(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -2,13 +2,19 @@ package net.kem.whatsapp.chatviewer.whatsappspringboot.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatExportService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.UserService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,6 +25,7 @@ import java.util.Map;
 public class ChatController {
     
     private final ChatService chatService;
+    private final ChatExportService chatExportService;
     private final UserService userService;
     
     /**
@@ -80,6 +87,32 @@ public class ChatController {
         return ResponseEntity.ok(stats);
     }
     
+    /**
+     * Export a chat as a ZIP archive in the WhatsApp export layout, streamed while it is built
+     */
+    @GetMapping("/{chatId}/export")
+    public ResponseEntity<StreamingResponseBody> exportChat(@PathVariable String chatId) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication.getName();
+
+        var userOpt = userService.findByUsername(username);
+        if (userOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Long userId = userOpt.get().getId();
+        var fileName = chatExportService.getExportFileName(userId, chatId);
+        if (fileName.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = out -> chatExportService.exportChat(userId, chatId, out);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(fileName.get(), StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+    
     /**
      * Delete a specific chat
      */
@@ -1,11 +1,15 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.controller;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,12 +23,27 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ActivityStats;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityValueCount;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ExportFormat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.FacetedPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.StatsInterval;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.User;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.AttachmentService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatEntryExportService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatEntryService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatStatisticsService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.DetectedEntityService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.StoredContent;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ThumbnailService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,8 +55,12 @@ import lombok.extern.slf4j.Slf4j;
 public class ChatEntryController {
 
     private final ChatEntryService chatEntryService;
+    private final ChatEntryExportService chatEntryExportService;
     private final UserService userService;
     private final AttachmentService attachmentService;
+    private final DetectedEntityService detectedEntityService;
+    private final ChatStatisticsService chatStatisticsService;
+    private final ThumbnailService thumbnailService;
 
     /**
      * Get current user ID from authentication
@@ -113,21 +136,23 @@ public class ChatEntryController {
     }
 
     /**
-     * Search by keyword in payload and author (user-specific)
+     * Search by keyword in payload and author (user-specific). The mode selects word (FULL_TEXT),
+     * substring (SUBSTRING) or typo tolerant (FUZZY) matching.
      */
     @GetMapping("/search/keyword")
     public ResponseEntity<Page<ChatEntryEntity>> searchByKeyword(@RequestParam String keyword,
+            @RequestParam(defaultValue = "FULL_TEXT") KeywordSearchMode mode,
             @RequestParam(required = false) List<String> chatIds,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size) {
 
         Long userId = getCurrentUserId();
         log.info(
-                "Keyword search request - keyword: '{}', chatIds: {}, page: {}, size: {} for user: {}",
-                keyword, chatIds, page, size, userId);
+                "Keyword search request - keyword: '{}', mode: {}, chatIds: {}, page: {}, size: {} for user: {}",
+                keyword, mode, chatIds, page, size, userId);
 
         Page<ChatEntryEntity> results =
-                chatEntryService.searchByKeyword(userId, keyword, chatIds, page, size);
+                chatEntryService.searchByKeyword(userId, keyword, mode, chatIds, page, size);
 
         log.info("Keyword search response - total elements: {}, total pages: {}",
                 results.getTotalElements(), results.getTotalPages());
@@ -165,6 +190,152 @@ public class ChatEntryController {
         return ResponseEntity.ok(results);
     }
 
+    /**
+     * Search with the advanced search filters and return the result page together with the
+     * number of matches per author, chat, type and month (user-specific)
+     */
+    @GetMapping("/search/facets")
+    public ResponseEntity<FacetedPage<ChatEntryEntity>> facetedSearch(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) ChatEntry.Type type,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) Boolean hasAttachment,
+            @RequestParam(required = false) List<String> chatIds,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "10") int facetLimit) {
+
+        Long userId = getCurrentUserId();
+        log.debug("Faceted search request - user: {}, keyword: {}, author: {}, type: {}, page: {}",
+                userId, keyword, author, type, page);
+
+        return ResponseEntity.ok(chatEntryService.facetedSearch(userId, keyword, author, type,
+                startDate, endDate, hasAttachment, chatIds, page, size, facetLimit));
+    }
+
+    /**
+     * Distinct URLs, email addresses, phone numbers and mentions found in the messages, most
+     * frequent first, optionally of one kind and one chat (user-specific)
+     */
+    @GetMapping("/entities")
+    public ResponseEntity<List<EntityValueCount>> getDetectedValues(
+            @RequestParam(required = false) EntityKind kind,
+            @RequestParam(required = false) String chatId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        Long userId = getCurrentUserId();
+        return ResponseEntity
+                .ok(detectedEntityService.findValues(userId, kind, chatId, page, size));
+    }
+
+    /**
+     * Number of URLs, email addresses, phone numbers and mentions found in the messages, optionally
+     * of one chat (user-specific)
+     */
+    @GetMapping("/entities/counts")
+    public ResponseEntity<Map<EntityKind, Long>> countDetectedValues(
+            @RequestParam(required = false) String chatId) {
+        Long userId = getCurrentUserId();
+        return ResponseEntity.ok(detectedEntityService.countByKind(userId, chatId));
+    }
+
+    /**
+     * Messages containing a URL, email address, phone number or mention, optionally in one chat
+     * (user-specific)
+     */
+    @GetMapping("/entities/entries")
+    public ResponseEntity<Page<ChatEntryEntity>> findByDetectedValue(
+            @RequestParam EntityKind kind, @RequestParam String value,
+            @RequestParam(required = false) String chatId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserId();
+        return ResponseEntity.ok(
+                chatEntryService.findByDetectedValue(userId, kind, value, chatId, page, size));
+    }
+
+    /**
+     * Get all chat entries with keyset pagination (user-specific)
+     */
+    @GetMapping("/scroll")
+    public ResponseEntity<CursorPage<ChatEntryEntity>> scrollChatEntries(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserId();
+        return scroll(() -> chatEntryService.scrollChatEntries(userId, null, null, null, null,
+                null, null, null, cursor, size));
+    }
+
+    /**
+     * Search chat entries with multiple criteria and keyset pagination (user-specific)
+     */
+    @GetMapping("/search/scroll")
+    public ResponseEntity<CursorPage<ChatEntryEntity>> scrollSearchChatEntries(
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) ChatEntry.Type type,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) Boolean hasAttachment,
+            @RequestParam(required = false) List<String> chatIds,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserId();
+        return scroll(() -> chatEntryService.scrollChatEntries(userId, null, author, type,
+                startDate, endDate, hasAttachment, chatIds, cursor, size));
+    }
+
+    /**
+     * Search by keyword in payload and author with keyset pagination (user-specific)
+     */
+    @GetMapping("/search/keyword/scroll")
+    public ResponseEntity<CursorPage<ChatEntryEntity>> scrollSearchByKeyword(
+            @RequestParam String keyword, @RequestParam(required = false) List<String> chatIds,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserId();
+        return scroll(() -> chatEntryService.scrollChatEntries(userId, keyword, null, null, null,
+                null, null, chatIds, cursor, size));
+    }
+
+    /**
+     * Advanced search with keyword, other criteria and keyset pagination (user-specific)
+     */
+    @GetMapping("/search/advanced/scroll")
+    public ResponseEntity<CursorPage<ChatEntryEntity>> scrollAdvancedSearch(
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) ChatEntry.Type type,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) List<String> chatIds,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size) {
+        Long userId = getCurrentUserId();
+        return scroll(() -> chatEntryService.scrollChatEntries(userId, keyword, author, type,
+                startDate, endDate, null, chatIds, cursor, size));
+    }
+
+    /**
+     * Run a keyset-paginated query, answering 400 for a malformed cursor or page size
+     */
+    private ResponseEntity<CursorPage<ChatEntryEntity>> scroll(
+            Supplier<CursorPage<ChatEntryEntity>> query) {
+        try {
+            return ResponseEntity.ok(query.get());
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected scroll request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Find entries by author
      */
@@ -240,6 +411,29 @@ public class ChatEntryController {
         return ResponseEntity.ok(results);
     }
 
+    /**
+     * Export the entries with an author, a type and a date range, each optional, as NDJSON or
+     * CSV. Unlike the lists above, the entries are written as they are read from the database.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportEntries(
+            @RequestParam(required = false) String author,
+            @RequestParam(required = false) ChatEntry.Type type,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format) {
+
+        Long userId = getCurrentUserId();
+        StreamingResponseBody body = out -> chatEntryExportService.exportEntries(userId, author,
+                type, start, end, format, out);
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("chat-entries." + format.getExtension()).build().toString())
+                .body(body);
+    }
+
     /**
      * Get statistics (user-specific)
      */
@@ -267,6 +461,70 @@ public class ChatEntryController {
         return ResponseEntity.ok(count);
     }
 
+    /**
+     * Messages per day, week or month, an hour-of-day by weekday heatmap and the most active
+     * authors and the message types, over all messages of the user or of one chat. Answers 400 for
+     * a negative author limit.
+     */
+    @GetMapping("/stats/activity")
+    public ResponseEntity<ActivityStats> getActivityStats(
+            @RequestParam(required = false) String chatId,
+            @RequestParam(defaultValue = "DAY") StatsInterval interval,
+            @RequestParam(defaultValue = "20") int authorLimit) {
+        Long userId = getCurrentUserId();
+        try {
+            return ResponseEntity.ok(
+                    chatStatisticsService.getActivityStats(userId, chatId, interval, authorLimit));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected activity stats request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Number of messages of every type, from one grouped query, optionally of one chat and of the
+     * days between {@code from} and {@code to} inclusive. Answers 400 when {@code from} is after
+     * {@code to}.
+     */
+    @GetMapping("/stats/types")
+    public ResponseEntity<Map<ChatEntry.Type, Long>> countByTypes(
+            @RequestParam(required = false) String chatId,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        Long userId = getCurrentUserId();
+        try {
+            return ResponseEntity.ok(chatStatisticsService.countByType(userId, chatId, from, to));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected type stats request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Number of messages of the most active authors, most active first, with the same scoping as
+     * {@code /stats/types}. Answers 400 for a negative limit or when {@code from} is after
+     * {@code to}.
+     */
+    @GetMapping("/stats/authors")
+    public ResponseEntity<Map<String, Long>> countByAuthors(
+            @RequestParam(required = false) String chatId,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(
+                    iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "20") int limit) {
+        Long userId = getCurrentUserId();
+        try {
+            return ResponseEntity
+                    .ok(chatStatisticsService.countByAuthor(userId, chatId, from, to, limit));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected author stats request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Delete chat entry by ID
      */
@@ -287,10 +545,11 @@ public class ChatEntryController {
     }
 
     /**
-     * Download attachment for a chat entry (user-specific)
+     * Download attachment for a chat entry (user-specific). Supports Range requests.
      */
     @GetMapping("/{id}/download")
-    public ResponseEntity<Resource> downloadAttachment(@PathVariable Long id) {
+    public ResponseEntity<Resource> downloadAttachment(@PathVariable Long id,
+            HttpServletRequest request) {
         Long userId = getCurrentUserId();
         Optional<ChatEntryEntity> chatEntry = chatEntryService.findById(id, userId);
 
@@ -304,12 +563,15 @@ public class ChatEntryController {
         }
 
         try {
-            Resource resource = chatEntryService.downloadAttachment(entry.getId(), userId);
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "attachment; filename=\"" + entry.getFileName() + "\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM).body(resource);
+            // A client holding the file revalidates without the file being looked up
+            String hash = chatEntryService.getAttachmentHash(entry);
+            if (AttachmentResponses.isCached(request, hash)) {
+                return AttachmentResponses.notModified(hash);
+            }
+            StoredContent file = chatEntryService.resolveAttachment(entry);
+
+            return AttachmentResponses.serve(request, file, MediaType.APPLICATION_OCTET_STREAM,
+                    ContentDisposition.attachment().filename(entry.getFileName()).build(), hash);
         } catch (Exception e) {
             log.error("Error downloading attachment for chat entry {}: {}", id, e.getMessage());
             return ResponseEntity.internalServerError().build();
@@ -317,10 +579,12 @@ public class ChatEntryController {
     }
 
     /**
-     * View attachment for a chat entry (user-specific)
+     * Thumbnail of an image attachment of a chat entry (user-specific), made on first request if
+     * the upload did not make it
      */
-    @GetMapping("/{id}/view")
-    public ResponseEntity<Resource> viewAttachment(@PathVariable Long id) {
+    @GetMapping("/{id}/thumbnail")
+    public ResponseEntity<Resource> getAttachmentThumbnail(@PathVariable Long id,
+            HttpServletRequest request) {
         Long userId = getCurrentUserId();
         Optional<ChatEntryEntity> chatEntry = chatEntryService.findById(id, userId);
 
@@ -329,59 +593,65 @@ public class ChatEntryController {
         }
 
         ChatEntryEntity entry = chatEntry.get();
-        if (entry.getFileName() == null || entry.getFileName().isEmpty()) {
-            return ResponseEntity.badRequest().build();
+        String hash = chatEntryService.getAttachmentHash(entry);
+        String mimeType = chatEntryService.getAttachmentMimeType(entry);
+        if (hash == null || !ThumbnailService.isSupportedType(mimeType)) {
+            return ResponseEntity.notFound().build();
+        }
+        String tag = thumbnailService.getTag(hash);
+        if (AttachmentResponses.isCached(request, tag)) {
+            return AttachmentResponses.notModified(tag);
         }
 
         try {
-            Resource resource = chatEntryService.downloadAttachment(entry.getId(), userId);
-
-            // Determine content type based on file extension
-            String contentType = determineContentType(entry.getFileName());
-
-            return ResponseEntity.ok().contentType(MediaType.parseMediaType(contentType))
-                    .body(resource);
+            Optional<StoredContent> thumbnail = thumbnailService.getThumbnail(hash);
+            if (thumbnail.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            StoredContent file = thumbnail.get();
+            return AttachmentResponses.serve(request, file,
+                    AttachmentResponses.contentType(ThumbnailService.mimeTypeOf(file)), null, tag);
         } catch (Exception e) {
-            log.error("Error viewing attachment for chat entry {}: {}", id, e.getMessage());
+            log.error("Error making thumbnail for chat entry {}: {}", id, e.getMessage());
             return ResponseEntity.internalServerError().build();
         }
     }
 
     /**
-     * Determine content type based on file extension
+     * View attachment for a chat entry (user-specific). Supports Range requests, so videos can
+     * seek.
      */
-    private String determineContentType(String fileName) {
-        if (fileName == null) {
-            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    @GetMapping("/{id}/view")
+    public ResponseEntity<Resource> viewAttachment(@PathVariable Long id,
+            HttpServletRequest request) {
+        Long userId = getCurrentUserId();
+        Optional<ChatEntryEntity> chatEntry = chatEntryService.findById(id, userId);
+
+        if (chatEntry.isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
 
-        String lowerFileName = fileName.toLowerCase();
-        if (lowerFileName.endsWith(".jpg") || lowerFileName.endsWith(".jpeg")) {
-            return "image/jpeg";
-        } else if (lowerFileName.endsWith(".png")) {
-            return "image/png";
-        } else if (lowerFileName.endsWith(".gif")) {
-            return "image/gif";
-        } else if (lowerFileName.endsWith(".webp")) {
-            return "image/webp";
-        } else if (lowerFileName.endsWith(".mp4")) {
-            return "video/mp4";
-        } else if (lowerFileName.endsWith(".avi")) {
-            return "video/x-msvideo";
-        } else if (lowerFileName.endsWith(".mov")) {
-            return "video/quicktime";
-        } else if (lowerFileName.endsWith(".mp3")) {
-            return "audio/mpeg";
-        } else if (lowerFileName.endsWith(".wav")) {
-            return "audio/wav";
-        } else if (lowerFileName.endsWith(".pdf")) {
-            return "application/pdf";
-        } else if (lowerFileName.endsWith(".txt")) {
-            return "text/plain";
-        } else if (lowerFileName.endsWith(".doc") || lowerFileName.endsWith(".docx")) {
-            return "application/msword";
-        } else {
-            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        ChatEntryEntity entry = chatEntry.get();
+        if (entry.getFileName() == null || entry.getFileName().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            // A client holding the file revalidates without the file being looked up
+            String hash = chatEntryService.getAttachmentHash(entry);
+            if (AttachmentResponses.isCached(request, hash)) {
+                return AttachmentResponses.notModified(hash);
+            }
+            StoredContent file = chatEntryService.resolveAttachment(entry);
+
+            // Detected from the file content at ingest
+            MediaType contentType =
+                    AttachmentResponses.contentType(chatEntryService.getAttachmentMimeType(entry));
+
+            return AttachmentResponses.serve(request, file, contentType, null, hash);
+        } catch (Exception e) {
+            log.error("Error viewing attachment for chat entry {}: {}", id, e.getMessage());
+            return ResponseEntity.internalServerError().build();
         }
     }
 }
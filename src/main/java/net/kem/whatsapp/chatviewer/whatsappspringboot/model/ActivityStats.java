@@ -0,0 +1,31 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Message activity of a user or a chat over all of its entries: a histogram over time, an
+ * hour-of-day by weekday heatmap and the breakdown per author and per type.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActivityStats {
+
+    private StatsInterval interval;
+    private long totalMessages;
+    // Number of distinct authors, including those beyond the author limit
+    private long participants;
+    // Start of each period (yyyy-MM-dd) to number of entries, oldest first; empty periods are left
+    // out
+    private Map<String, Long> activity;
+    // Number of entries per [weekday][hour], Monday first
+    private long[][] heatmap;
+    // Most active authors first
+    private Map<String, Long> authors;
+    private Map<String, Long> types;
+}
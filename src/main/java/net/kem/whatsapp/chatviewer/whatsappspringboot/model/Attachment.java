@@ -37,6 +37,25 @@ public class Attachment {
     @Column(name = "file_size")
     private Long fileSize;
 
+    // Media type detected from the file content at ingest, null for files stored before
+    @Column(name = "mime_type", length = 100)
+    private String mimeType;
+
+    // Pixel dimensions of images and videos, null if unknown
+    @Column(name = "width")
+    private Integer width;
+
+    @Column(name = "height")
+    private Integer height;
+
+    // Playing time of audio and video, null if unknown
+    @Column(name = "duration_millis")
+    private Long durationMillis;
+
+    // CRC-32 of the file content, as a ZIP entry header needs it; null for files stored before
+    @Column(name = "crc32")
+    private Long crc32;
+
     @Column(name = "col1")
     private String col1;
 
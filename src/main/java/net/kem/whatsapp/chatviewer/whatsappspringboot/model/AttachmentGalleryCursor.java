@@ -0,0 +1,54 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Position of a gallery item in newest-first (localDateTime, entryId) order, passed to clients as
+ * an opaque string. The next page continues with the items older than it. Items without a time
+ * come after all others, and their cursor carries {@value #NO_TIME} in place of the time.
+ */
+@Data
+@AllArgsConstructor
+public class AttachmentGalleryCursor {
+
+    private static final String NO_TIME = "-";
+
+    // Null for an item whose date could not be parsed
+    private final LocalDateTime localDateTime;
+    private final long entryId;
+
+    public static AttachmentGalleryCursor after(AttachmentGalleryItem item) {
+        return new AttachmentGalleryCursor(item.getLocalDateTime(), item.getEntryId());
+    }
+
+    public String encode() {
+        String value = "g|" + (localDateTime == null ? NO_TIME : localDateTime) + "|" + entryId;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor produced by {@link #encode()}
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static AttachmentGalleryCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor),
+                    StandardCharsets.UTF_8).split("\\|");
+            if (parts.length != 3 || !"g".equals(parts[0])) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new AttachmentGalleryCursor(
+                    NO_TIME.equals(parts[1]) ? null : LocalDateTime.parse(parts[1]),
+                    Long.parseLong(parts[2]));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
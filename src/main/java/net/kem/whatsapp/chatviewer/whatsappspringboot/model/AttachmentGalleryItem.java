@@ -0,0 +1,25 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An attachment as shown in the gallery: the fields of the attachment and of the chat entry that
+ * references it which the gallery page displays, and nothing else
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AttachmentGalleryItem {
+
+    private String hash;
+    private Long fileSize;
+    private ChatEntry.Type type;
+    private String fileName;
+    private Long entryId;
+    private LocalDateTime localDateTime;
+}
@@ -0,0 +1,85 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.time.LocalDateTime;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One row per uploaded chat. Counters are maintained incrementally by ingest and deletion so that
+ * chat listing, existence checks and dashboard statistics never have to scan chat_entries.
+ */
+@Entity
+@Table(name = "chats",
+        uniqueConstraints = @UniqueConstraint(name = "uk_chats_user_chat",
+                columnNames = {"user_id", "chat_id"}),
+        indexes = {@Index(name = "idx_chats_user_id", columnList = "user_id")})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class Chat {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // User who owns this chat
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // Chat ID as generated from the uploaded filename (see ChatUploadService.generateChatId)
+    @Column(name = "chat_id", nullable = false)
+    private String chatId;
+
+    // Human-readable chat name (original upload filename without extension)
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "message_count", nullable = false)
+    private long messageCount;
+
+    @Column(name = "attachment_count", nullable = false)
+    private long attachmentCount;
+
+    @Column(name = "first_message_at")
+    private LocalDateTime firstMessageAt;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    @Column(name = "participant_count", nullable = false)
+    private int participantCount;
+
+    @Column(name = "last_upload_at")
+    private LocalDateTime lastUploadAt;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // Whether the activity rollups hold all entries of the chat. Null for chats created before
+    // rollups were kept, whose rollups are rebuilt from chat_entries on startup.
+    @Column(name = "rollups_built")
+    private Boolean rollupsBuilt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        // A new chat has no entries yet, so its rollups are complete from the start
+        if (rollupsBuilt == null) {
+            rollupsBuilt = true;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
 
 import java.time.LocalDateTime;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
@@ -29,6 +30,10 @@ public class ChatEntry implements Comparable<ChatEntry> {
     @Setter
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private LocalDateTime localDateTime;
+    // Position of the entry in the exported chat file
+    @Setter
+    @JsonIgnore
+    private int ordinal;
 
     @Override
     public String toString() {
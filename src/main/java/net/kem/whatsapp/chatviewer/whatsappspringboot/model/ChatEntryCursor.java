@@ -0,0 +1,58 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Position of a chat entry in (localDateTime, ordinal, id) order, passed to clients as an opaque
+ * string. A forward cursor continues after the entry, a backward one before it. Only entries with
+ * a timestamp have a position; keyset listings leave out the others.
+ */
+@Data
+@AllArgsConstructor
+public class ChatEntryCursor {
+
+    private final boolean forward;
+    private final LocalDateTime localDateTime;
+    private final int ordinal;
+    private final long id;
+
+    public static ChatEntryCursor after(ChatEntryEntity entry) {
+        return new ChatEntryCursor(true, entry.getLocalDateTime(), entry.getOrdinal(),
+                entry.getId());
+    }
+
+    public static ChatEntryCursor before(ChatEntryEntity entry) {
+        return new ChatEntryCursor(false, entry.getLocalDateTime(), entry.getOrdinal(),
+                entry.getId());
+    }
+
+    public String encode() {
+        String value = (forward ? "n" : "p") + "|" + localDateTime + "|" + ordinal + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor produced by {@link #encode()}
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static ChatEntryCursor decode(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor),
+                    StandardCharsets.UTF_8).split("\\|");
+            if (parts.length != 4 || !("n".equals(parts[0]) || "p".equals(parts[0]))) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new ChatEntryCursor("n".equals(parts[0]), LocalDateTime.parse(parts[1]),
+                    Integer.parseInt(parts[2]), Long.parseLong(parts[3]));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
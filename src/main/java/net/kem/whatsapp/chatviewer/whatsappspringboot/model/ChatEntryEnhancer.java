@@ -42,16 +42,9 @@ public class ChatEntryEnhancer {
         ChatEntry.Type res = ChatEntry.Type.UNKNOWN;
         String fileName = chatEntry.getFileName();
         if (StringUtils.hasText(fileName)) {
-            String extension = fileName.substring(fileName.lastIndexOf('.')).toLowerCase();
-            res = switch (extension) {
-                case ".jpg", ".jpeg", ".png" -> ChatEntry.Type.IMAGE;
-                case ".mp4", ".mov" -> ChatEntry.Type.VIDEO;
-                case ".aac", ".mp3", ".wav" -> ChatEntry.Type.AUDIO;
-                case ".was" -> ChatEntry.Type.STICKER;
-                case ".vcf" -> ChatEntry.Type.CONTACT;
-                case ".doc", ".docx", ".pdf", ".ppt", ".pptx", ".xls", ".xlsx" -> ChatEntry.Type.DOCUMENT;
-                default -> ChatEntry.Type.FILE;
-            };
+            // Animated stickers have no registered media type
+            res = fileName.toLowerCase().endsWith(".was") ? ChatEntry.Type.STICKER
+                    : MediaInfo.entryTypeOfFileName(fileName);
         } else {
             String payload = chatEntry.getPayload();
             if (payload != null) {
@@ -1,9 +1,12 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.FetchType;
@@ -13,27 +16,30 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
-import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatEntryDictionaryListener;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.PayloadSanitizer;
 
 @Entity
 @Table(name = "chat_entries",
-        indexes = {@Index(name = "idx_chat_entries_author", columnList = "author"),
+        indexes = {@Index(name = "idx_chat_entries_author_id", columnList = "author_id"),
                 @Index(name = "idx_chat_entries_type", columnList = "type"),
                 @Index(name = "idx_chat_entries_local_date_time", columnList = "local_date_time"),
                 @Index(name = "idx_chat_entries_user_id", columnList = "user_id"),
-                @Index(name = "idx_chat_entries_chat_id", columnList = "chat_id"),
-                @Index(name = "idx_chat_entries_user_chat", columnList = "user_id, chat_id"),
+                @Index(name = "idx_chat_entries_chat_ref_date",
+                        columnList = "chat_ref_id, local_date_time, ordinal"),
                 @Index(name = "idx_chat_entries_at_id", columnList = "at_id"),
                 @Index(name = "idx_chat_entries_path", columnList = "path"),
                 @Index(name = "idx_chat_entries_user_type", columnList = "user_id, type"),
-                @Index(name = "idx_chat_entries_user_author", columnList = "user_id, author"),
-                @Index(name = "idx_chat_entries_user_date", columnList = "user_id, local_date_time"),
-                @Index(name = "idx_chat_entries_user_chat_date", columnList = "user_id, chat_id, local_date_time")})
+                @Index(name = "idx_chat_entries_user_author_id",
+                        columnList = "user_id, author_id"),
+                @Index(name = "idx_chat_entries_user_date", columnList = "user_id, local_date_time")})
+@EntityListeners(ChatEntryDictionaryListener.class)
 @Data
 @Builder
 @NoArgsConstructor
@@ -47,9 +53,25 @@ public class ChatEntryEntity {
     @Column(name = "payload", columnDefinition = "TEXT")
     private String payload;
 
-    @Column(name = "author", nullable = false, columnDefinition = "VARCHAR(255) DEFAULT 'Unknown'")
+    // Payload with URLs, email addresses and phone numbers replaced, computed when written
+    @Column(name = "sanitized_payload", columnDefinition = "TEXT")
+    @JsonIgnore
+    private String sanitizedPayload;
+
+    // Values the sanitizer replaced when the entry was last written, kept as DetectedEntity rows
+    @Transient
+    @JsonIgnore
+    private List<PayloadSanitizer.Match> detectedMatches;
+
+    // Author name, resolved from authorId through the author dictionary
+    @Transient
     private String author;
 
+    // Id of the author in the authors dictionary table
+    @Column(name = "author_id")
+    @JsonIgnore
+    private Long authorId;
+
     @Column(name = "file_name")
     private String fileName;
 
@@ -60,14 +82,23 @@ public class ChatEntryEntity {
     @Column(name = "local_date_time")
     private LocalDateTime localDateTime;
 
+    // Position of the entry in the uploaded chat file; orders messages sharing a timestamp
+    @Column(name = "ordinal", nullable = false, columnDefinition = "INTEGER DEFAULT 0")
+    private int ordinal;
+
     // User who owns this chat entry
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
-    // Chat ID this entry belongs to (based on uploaded filename)
-    @Column(name = "chat_id", nullable = false)
+    // Chat ID this entry belongs to (based on uploaded filename), resolved from chatRefId
+    @Transient
     private String chatId;
 
+    // Id of the chats row this entry belongs to
+    @Column(name = "chat_ref_id")
+    @JsonIgnore
+    private Long chatRefId;
+
     // Path to attachment file (hierarchical directory structure)
     @Column(name = "path")
     private String path;
@@ -78,12 +109,10 @@ public class ChatEntryEntity {
     @JsonIgnore
     private Attachment attachment;
 
-    @PrePersist
-    protected void onCreate() {
-        if (author == null || author.trim().isEmpty()) {
-            author = "Unknown";
-        }
-    }
+    // Payload excerpt with the matched terms marked, set by search engines that support it
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String highlight;
 
     // Convert from ChatEntry model to entity
     public static ChatEntryEntity fromChatEntry(ChatEntry chatEntry, Long userId, String chatId) {
@@ -93,6 +122,7 @@ public class ChatEntryEntity {
                 .fileName(chatEntry.getFileName())
                 .type(chatEntry.getType())
                 .localDateTime(chatEntry.getLocalDateTime())
+                .ordinal(chatEntry.getOrdinal())
                 .userId(userId)
                 .chatId(chatId)
                 .build();
@@ -0,0 +1,26 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The counters of one chat, read straight from the chats table without loading the entity
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSummary {
+
+    private String chatId;
+    private String name;
+    private long messageCount;
+    private long attachmentCount;
+    private int participantCount;
+    private LocalDateTime firstMessageAt;
+    private LocalDateTime lastMessageAt;
+    private LocalDateTime lastUploadAt;
+}
@@ -0,0 +1,26 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One page of a keyset-paginated listing. Unlike a Spring Data Page it carries no total count, so
+ * fetching it never runs a COUNT query.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private boolean hasPrevious;
+    // Opaque cursors for the neighbouring pages; null when there is no such page
+    private String nextCursor;
+    private String prevCursor;
+}
@@ -0,0 +1,60 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.time.LocalDate;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of messages and attachments of one author in one chat on one day, per message type. Kept
+ * up to date by ingest and deletion, so statistics read these rows instead of chat_entries.
+ */
+@Entity
+@Table(name = "chat_activity_daily",
+        uniqueConstraints = @UniqueConstraint(name = "uk_chat_activity_daily_key",
+                columnNames = {"chat_ref_id", "author_id", "activity_day", "type"}),
+        indexes = {@Index(name = "idx_chat_activity_daily_user_day",
+                columnList = "user_id, activity_day")})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyActivity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "chat_ref_id", nullable = false)
+    private Long chatRefId;
+
+    @Column(name = "author_id", nullable = false)
+    private Long authorId;
+
+    @Column(name = "activity_day", nullable = false)
+    private LocalDate day;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false)
+    private ChatEntry.Type type;
+
+    @Column(name = "message_count", nullable = false)
+    private long messageCount;
+
+    @Column(name = "attachment_count", nullable = false)
+    private long attachmentCount;
+}
@@ -0,0 +1,69 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.PayloadSanitizer;
+
+/**
+ * A URL, email address, phone number or @mention found in the payload of a chat entry at ingest.
+ * The rows of an entry are written and removed together with it.
+ */
+@Entity
+@Table(name = "detected_entities",
+        indexes = {@Index(name = "idx_detected_entities_entry_id", columnList = "entry_id"),
+                @Index(name = "idx_detected_entities_user_value",
+                        columnList = "user_id, kind, normalized_value"),
+                @Index(name = "idx_detected_entities_chat_value",
+                        columnList = "chat_ref_id, kind, normalized_value")})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetectedEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Chat entry the value was found in
+    @Column(name = "entry_id", nullable = false)
+    private Long entryId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // Id of the chats row of the entry
+    @Column(name = "chat_ref_id")
+    private Long chatRefId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 16)
+    private EntityKind kind;
+
+    // The value as it appears in the payload
+    @Column(name = "entity_value", nullable = false, columnDefinition = "TEXT")
+    private String value;
+
+    // Form the value is grouped and looked up by, see PayloadSanitizer.normalize. Nullable so the
+    // column can be added to existing tables; rows without it are recomputed at startup.
+    @Column(name = "normalized_value", length = PayloadSanitizer.MAX_NORMALIZED_LENGTH)
+    private String normalizedValue;
+
+    // Position of the value in the payload: [startOffset, endOffset)
+    @Column(name = "start_offset", nullable = false)
+    private int startOffset;
+
+    @Column(name = "end_offset", nullable = false)
+    private int endOffset;
+}
@@ -0,0 +1,20 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+/**
+ * Kinds of values detected in message payloads, with the placeholder that replaces them in
+ * sanitized text. Mentions have no placeholder and are left in place, but the phone number of a
+ * mention written as @ and the number is replaced like any other.
+ */
+public enum EntityKind {
+    URL("[URL]"), EMAIL("[EMAIL]"), PHONE("[PHONE_NUMBER]"), MENTION(null);
+
+    private final String placeholder;
+
+    EntityKind(String placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+}
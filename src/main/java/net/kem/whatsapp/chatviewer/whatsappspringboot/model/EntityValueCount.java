@@ -0,0 +1,20 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A normalized URL, email address, phone number or mention and the number of times it was found
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EntityValueCount {
+
+    private EntityKind kind;
+    private String value;
+    private Long count;
+}
@@ -0,0 +1,27 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+/**
+ * Line-oriented formats chat entries are exported in, one entry per line
+ */
+public enum ExportFormat {
+    // Newline-delimited JSON, each line serialized like the entries of the search responses
+    NDJSON("application/x-ndjson", "ndjson"),
+    // RFC 4180 comma-separated values with a header row
+    CSV("text/csv;charset=UTF-8", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
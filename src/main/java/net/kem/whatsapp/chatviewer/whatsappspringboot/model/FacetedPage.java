@@ -0,0 +1,23 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.util.Map;
+import org.springframework.data.domain.Page;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One page of search results together with the facet counts of everything the search matched, so
+ * drill-down counts need no extra requests.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetedPage<T> {
+
+    private Page<T> results;
+    // Dimension (author, chat, type, month) to value to number of matching entries
+    private Map<String, Map<String, Long>> facets;
+}
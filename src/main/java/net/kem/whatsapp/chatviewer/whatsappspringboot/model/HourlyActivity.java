@@ -0,0 +1,50 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of messages of one chat in one hour of one weekday, for the activity heatmap. At most 168
+ * rows per chat; maintained together with {@link DailyActivity}.
+ */
+@Entity
+@Table(name = "chat_activity_hourly",
+        uniqueConstraints = @UniqueConstraint(name = "uk_chat_activity_hourly_key",
+                columnNames = {"chat_ref_id", "weekday", "hour_of_day"}),
+        indexes = {@Index(name = "idx_chat_activity_hourly_user_id", columnList = "user_id")})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HourlyActivity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "chat_ref_id", nullable = false)
+    private Long chatRefId;
+
+    // ISO day of week: 1 is Monday, 7 is Sunday
+    @Column(name = "weekday", nullable = false)
+    private int weekday;
+
+    @Column(name = "hour_of_day", nullable = false)
+    private int hour;
+
+    @Column(name = "message_count", nullable = false)
+    private long messageCount;
+}
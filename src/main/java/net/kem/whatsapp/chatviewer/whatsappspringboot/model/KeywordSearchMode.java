@@ -0,0 +1,16 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+/**
+ * How a keyword is matched against message text and author names. Modes that need a PostgreSQL
+ * index fall back to {@link #LIKE} when the index is not available.
+ */
+public enum KeywordSearchMode {
+    // Stemmed word and phrase search ranked by relevance (default)
+    FULL_TEXT,
+    // Case-insensitive substring match served by the trigram indexes
+    SUBSTRING,
+    // Typo tolerant match ranked by trigram word similarity
+    FUZZY,
+    // Case-insensitive substring match without any index
+    LIKE
+}
@@ -0,0 +1,103 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Media type of an attachment file and, where its header holds them, its pixel dimensions and
+ * playing time. This class also holds the one table from file extensions to media types and from
+ * media types to message types, used when the file content cannot be inspected.
+ */
+@Data
+@AllArgsConstructor
+public class MediaInfo {
+
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    private static final Map<String, String> MIME_TYPES_BY_EXTENSION = Map.ofEntries(
+            Map.entry("jpg", "image/jpeg"), Map.entry("jpeg", "image/jpeg"),
+            Map.entry("png", "image/png"), Map.entry("gif", "image/gif"),
+            Map.entry("bmp", "image/bmp"), Map.entry("webp", "image/webp"),
+            Map.entry("heic", "image/heic"), Map.entry("mp4", "video/mp4"),
+            Map.entry("avi", "video/x-msvideo"), Map.entry("mov", "video/quicktime"),
+            Map.entry("wmv", "video/x-ms-wmv"), Map.entry("flv", "video/x-flv"),
+            Map.entry("webm", "video/webm"), Map.entry("mkv", "video/x-matroska"),
+            Map.entry("3gp", "video/3gpp"), Map.entry("mp3", "audio/mpeg"),
+            Map.entry("wav", "audio/wav"), Map.entry("ogg", "audio/ogg"),
+            Map.entry("opus", "audio/ogg"), Map.entry("m4a", "audio/mp4"),
+            Map.entry("aac", "audio/aac"), Map.entry("amr", "audio/amr"),
+            Map.entry("pdf", "application/pdf"), Map.entry("doc", "application/msword"),
+            Map.entry("docx",
+                    "application/vnd.openxmlformats-officedocument.wordprocessingml.document"),
+            Map.entry("xls", "application/vnd.ms-excel"),
+            Map.entry("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+            Map.entry("ppt", "application/vnd.ms-powerpoint"),
+            Map.entry("pptx",
+                    "application/vnd.openxmlformats-officedocument.presentationml.presentation"),
+            Map.entry("txt", "text/plain"), Map.entry("rtf", "application/rtf"),
+            Map.entry("vcf", "text/vcard"), Map.entry("zip", "application/zip"));
+
+    private final String mimeType;
+    // Pixel dimensions of images and videos, null if unknown
+    private final Integer width;
+    private final Integer height;
+    // Playing time of audio and video, null if unknown
+    private final Long durationMillis;
+
+    public static MediaInfo of(String mimeType) {
+        return new MediaInfo(mimeType, null, null, null);
+    }
+
+    /**
+     * Media type guessed from the extension of a file name, or application/octet-stream
+     */
+    public static String mimeTypeOf(String fileName) {
+        if (fileName == null) {
+            return OCTET_STREAM;
+        }
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? OCTET_STREAM
+                : MIME_TYPES_BY_EXTENSION.getOrDefault(fileName.substring(dot + 1).toLowerCase(),
+                        OCTET_STREAM);
+    }
+
+    /**
+     * Message type of an entry whose attachment has this media type
+     */
+    public static ChatEntry.Type entryTypeOf(String mimeType) {
+        if (mimeType == null) {
+            return ChatEntry.Type.FILE;
+        }
+        if (mimeType.startsWith("image/")) {
+            return ChatEntry.Type.IMAGE;
+        } else if (mimeType.startsWith("video/")) {
+            return ChatEntry.Type.VIDEO;
+        } else if (mimeType.startsWith("audio/")) {
+            return ChatEntry.Type.AUDIO;
+        } else if (mimeType.equals("text/vcard")) {
+            return ChatEntry.Type.CONTACT;
+        } else if (mimeType.equals("application/pdf") || mimeType.equals("application/msword")
+                || mimeType.equals("application/rtf") || mimeType.equals("text/plain")
+                || mimeType.startsWith("application/vnd.ms-")
+                || mimeType.startsWith("application/vnd.openxmlformats-officedocument.")) {
+            return ChatEntry.Type.DOCUMENT;
+        } else {
+            return ChatEntry.Type.FILE;
+        }
+    }
+
+    /**
+     * Message type of an entry with an attachment of this file name, guessed from its extension
+     */
+    public static ChatEntry.Type entryTypeOfFileName(String fileName) {
+        return entryTypeOf(mimeTypeOf(fileName));
+    }
+
+    /**
+     * Whether the media type says more than the generic application/octet-stream
+     */
+    public static boolean isKnown(String mimeType) {
+        return mimeType != null && !OCTET_STREAM.equals(mimeType);
+    }
+}
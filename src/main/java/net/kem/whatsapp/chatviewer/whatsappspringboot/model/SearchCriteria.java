@@ -0,0 +1,27 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Filters of a chat entry search. Every field is optional; unset fields do not restrict the
+ * result.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchCriteria {
+
+    private String keyword;
+    private String author;
+    private ChatEntry.Type type;
+    private LocalDateTime startDate;
+    private LocalDateTime endDate;
+    private Boolean hasAttachment;
+    private List<String> chatIds;
+}
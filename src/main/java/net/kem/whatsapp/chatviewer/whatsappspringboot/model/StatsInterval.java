@@ -0,0 +1,8 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+/**
+ * Bucket size of activity histograms. Weeks start on Monday.
+ */
+public enum StatsInterval {
+    DAY, WEEK, MONTH
+}
@@ -0,0 +1,50 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An attachment referenced by the chat entries of one user, with the number of entries referencing
+ * it. The row exists while the count is positive; its size is counted once in the user's
+ * {@link UserStorage} however many entries reference it.
+ */
+@Entity
+@Table(name = "user_attachments",
+        uniqueConstraints = @UniqueConstraint(name = "uk_user_attachments_user_attachment",
+                columnNames = {"user_id", "attachment_id"}),
+        indexes = {@Index(name = "idx_user_attachments_attachment_id",
+                columnList = "attachment_id")})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserAttachment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "attachment_id", nullable = false)
+    private Long attachmentId;
+
+    // Number of chat entries of the user that reference the attachment
+    @Column(name = "reference_count", nullable = false)
+    private long referenceCount;
+
+    // Size of the attachment when it was first referenced, subtracted again when the row goes
+    @Column(name = "file_size", nullable = false)
+    private long fileSize;
+}
@@ -0,0 +1,33 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Storage used by one user: the number of distinct attachments their chat entries reference and
+ * the sum of their sizes. Maintained together with {@link UserAttachment} by ingest and deletion.
+ */
+@Entity
+@Table(name = "user_storage")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserStorage {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "attachment_count", nullable = false)
+    private long attachmentCount;
+
+    @Column(name = "total_bytes", nullable = false)
+    private long totalBytes;
+}
@@ -2,6 +2,7 @@ package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
 
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -66,22 +67,40 @@ public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
         Long getTotalFileSizeByStatus(@Param("status") Byte status);
 
         /**
-         * Get total file size for attachments belonging to a specific user Note: This is a
-         * simplified approach - in a production system you might want to track user-specific
-         * attachment ownership more precisely
+         * Check whether a user's chat entries reference the attachment with the given hash. Reads
+         * one row through the unique hash index and one through the unique (user_id,
+         * attachment_id) index of user_attachments.
          */
-        @Query("SELECT COALESCE(SUM(a.fileSize), 0) FROM Attachment a WHERE a.status = 1")
-        Long getTotalFileSizeForUser(@Param("userId") Long userId);
+        @Query("""
+                SELECT COUNT(ua) > 0 FROM UserAttachment ua, Attachment a \
+                WHERE a.hash = :hash AND ua.attachmentId = a.id AND ua.userId = :userId""")
+        boolean existsByHashAndUserId(@Param("hash") String hash, @Param("userId") Long userId);
 
         /**
-         * Find attachment hashes that belong to a specific user's chat entries This ensures user
-         * isolation by only returning attachments referenced in user's chats
+         * Find the attachments referenced by a user's chat entries
          */
-        @Query("SELECT DISTINCT ce.attachment.hash FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.attachment IS NOT NULL")
-        List<String> findAttachmentHashesByUserId(@Param("userId") Long userId);
+        @Query("""
+                SELECT a FROM Attachment a WHERE a.id IN \
+                (SELECT ua.attachmentId FROM UserAttachment ua WHERE ua.userId = :userId)""")
+        List<Attachment> findByUserId(@Param("userId") Long userId);
+
+        /**
+         * Find the attachments with a status referenced by a user's chat entries
+         */
+        @Query("""
+                SELECT a FROM Attachment a WHERE a.status = :status AND a.id IN \
+                (SELECT ua.attachmentId FROM UserAttachment ua WHERE ua.userId = :userId)""")
+        List<Attachment> findByStatusAndUserId(@Param("status") Byte status,
+                        @Param("userId") Long userId);
 
         /**
          * Find attachments by a list of hashes
          */
         List<Attachment> findByHashIn(List<String> hashes);
+
+        /**
+         * Find attachments stored before media types were detected, in id order after an id
+         */
+        List<Attachment> findByMimeTypeIsNullAndIdGreaterThanOrderByIdAsc(Long afterId,
+                        Limit limit);
 }
@@ -0,0 +1,12 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Author;
+
+@Repository
+public interface AuthorRepository extends JpaRepository<Author, Long> {
+
+    Optional<Author> findByName(String name);
+}
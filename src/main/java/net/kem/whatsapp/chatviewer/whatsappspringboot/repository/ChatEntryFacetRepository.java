@@ -0,0 +1,138 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+
+/**
+ * Facet counts of chat entries matching a search, computed with a single grouped query. PostgreSQL
+ * evaluates all dimensions in one pass with GROUPING SETS; other databases get a UNION ALL of one
+ * GROUP BY per dimension over the same filtered rows.
+ */
+@Repository
+public class ChatEntryFacetRepository {
+
+    public static final String AUTHOR = "author";
+    public static final String CHAT = "chat";
+    public static final String TYPE = "type";
+    public static final String MONTH = "month";
+    public static final List<String> DIMENSIONS = List.of(AUTHOR, CHAT, TYPE, MONTH);
+
+    private static final String MONTH_EXPRESSION = "TO_CHAR(ce.local_date_time, 'YYYY-MM')";
+    private static final String FROM = """
+            FROM chat_entries ce LEFT JOIN authors a ON a.id = ce.author_id \
+            JOIN chats c ON c.id = ce.chat_ref_id WHERE\s""";
+
+    private static final String GROUPING_SETS_QUERY = """
+            SELECT CASE WHEN GROUPING(a.name) = 0 THEN 'author' \
+            WHEN GROUPING(c.chat_id) = 0 THEN 'chat' \
+            WHEN GROUPING(ce.type) = 0 THEN 'type' ELSE 'month' END AS dimension, \
+            COALESCE(a.name, c.chat_id, ce.type, %1$s) AS bucket, COUNT(*) AS entries \
+            %2$s%3$s GROUP BY GROUPING SETS ((a.name), (c.chat_id), (ce.type), (%1$s))""";
+
+    private static final String UNION_QUERY = """
+            WITH matched AS (SELECT a.name AS author_name, c.chat_id AS chat_key, \
+            ce.type AS entry_type, %1$s AS entry_month %2$s%3$s) \
+            SELECT 'author' AS dimension, author_name AS bucket, COUNT(*) AS entries \
+            FROM matched GROUP BY author_name \
+            UNION ALL SELECT 'chat', chat_key, COUNT(*) FROM matched GROUP BY chat_key \
+            UNION ALL SELECT 'type', entry_type, COUNT(*) FROM matched GROUP BY entry_type \
+            UNION ALL SELECT 'month', entry_month, COUNT(*) FROM matched GROUP BY entry_month""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private volatile Boolean postgreSql;
+
+    public ChatEntryFacetRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Count the entries of a user matching the criteria per author, chat, type and month
+     * ("yyyy-MM"). Each dimension holds at most {@code limit} values, the most frequent first;
+     * entries without a value for a dimension are not counted in it.
+     */
+    public Map<String, Map<String, Long>> countFacets(Long userId, SearchCriteria criteria,
+            int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        String where = where(criteria, params);
+        String sql = String.format(isPostgreSql() ? GROUPING_SETS_QUERY : UNION_QUERY,
+                MONTH_EXPRESSION, FROM, where);
+
+        Map<String, List<Map.Entry<String, Long>>> buckets = new HashMap<>();
+        namedJdbcTemplate.query(sql, params, rs -> {
+            String bucket = rs.getString("bucket");
+            if (bucket != null) {
+                buckets.computeIfAbsent(rs.getString("dimension"), d -> new ArrayList<>())
+                        .add(Map.entry(bucket, rs.getLong("entries")));
+            }
+        });
+
+        Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+        for (String dimension : DIMENSIONS) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            buckets.getOrDefault(dimension, List.of()).stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit).forEach(e -> counts.put(e.getKey(), e.getValue()));
+            facets.put(dimension, counts);
+        }
+        return facets;
+    }
+
+    /**
+     * The same filters as {@link ChatEntrySpecifications#matching}, as SQL
+     */
+    private static String where(SearchCriteria criteria, MapSqlParameterSource params) {
+        List<String> conditions = new ArrayList<>();
+        conditions.add("ce.user_id = :userId");
+        if (criteria.getChatIds() != null && !criteria.getChatIds().isEmpty()) {
+            conditions.add("c.chat_id IN (:chatIds)");
+            params.addValue("chatIds", criteria.getChatIds());
+        }
+        if (criteria.getKeyword() != null && !criteria.getKeyword().trim().isEmpty()) {
+            conditions.add("(LOWER(ce.payload) LIKE :pattern OR LOWER(a.name) LIKE :pattern)");
+            params.addValue("pattern", "%" + criteria.getKeyword().trim().toLowerCase() + "%");
+        }
+        if (criteria.getAuthor() != null && !criteria.getAuthor().trim().isEmpty()) {
+            conditions.add("LOWER(a.name) = :author");
+            params.addValue("author", criteria.getAuthor().trim().toLowerCase());
+        }
+        if (criteria.getType() != null) {
+            conditions.add("ce.type = :type");
+            params.addValue("type", criteria.getType().name());
+        }
+        if (criteria.getStartDate() != null) {
+            conditions.add("ce.local_date_time >= :startDate");
+            params.addValue("startDate", criteria.getStartDate());
+        }
+        if (criteria.getEndDate() != null) {
+            conditions.add("ce.local_date_time <= :endDate");
+            params.addValue("endDate", criteria.getEndDate());
+        }
+        if (criteria.getHasAttachment() != null) {
+            conditions.add(criteria.getHasAttachment() ? "(ce.path IS NOT NULL AND ce.path <> '')"
+                    : "(ce.path IS NULL OR ce.path = '')");
+        }
+        return String.join(" AND ", conditions);
+    }
+
+    private boolean isPostgreSql() {
+        if (postgreSql == null) {
+            String product = jdbcTemplate.execute(
+                    (Connection connection) -> connection.getMetaData().getDatabaseProductName());
+            postgreSql = "PostgreSQL".equalsIgnoreCase(product);
+        }
+        return postgreSql;
+    }
+}
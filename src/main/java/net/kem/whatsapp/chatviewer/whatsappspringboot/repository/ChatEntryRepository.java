@@ -1,42 +1,42 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import jakarta.persistence.QueryHint;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryItem;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
 
 @Repository
-public interface ChatEntryRepository extends JpaRepository<ChatEntryEntity, Long> {
+public interface ChatEntryRepository
+        extends JpaRepository<ChatEntryEntity, Long>, JpaSpecificationExecutor<ChatEntryEntity> {
 
-    // Basic search methods
-    List<ChatEntryEntity> findByAuthor(String author);
+    // Author names and chat IDs are stored as dictionary ids (authors.id and chats.id). Queries
+    // that filter on them translate the name with a subquery on the small dictionary table so that
+    // the lookup uses its unique index and chat_entries is filtered on the narrow id columns.
 
+    // Basic search methods
     List<ChatEntryEntity> findByType(ChatEntry.Type type);
 
     List<ChatEntryEntity> findByLocalDateTimeBetween(LocalDateTime start, LocalDateTime end);
 
     // Combined search methods
-    List<ChatEntryEntity> findByAuthorAndType(String author, ChatEntry.Type type);
-
-    List<ChatEntryEntity> findByAuthorAndLocalDateTimeBetween(String author, LocalDateTime start,
-            LocalDateTime end);
-
     List<ChatEntryEntity> findByTypeAndLocalDateTimeBetween(ChatEntry.Type type,
             LocalDateTime start, LocalDateTime end);
 
-    // Full-text search in payload
-    @Query("""
-            SELECT ce FROM ChatEntryEntity ce WHERE \
-            LOWER(ce.payload) LIKE LOWER(CONCAT('%', :keyword, '%')) OR \
-            LOWER(ce.author) LIKE LOWER(CONCAT('%', :keyword, '%'))""")
-    Page<ChatEntryEntity> searchByKeyword(@Param("keyword") String keyword, Pageable pageable);
-
     // Search by attachment hash
     // REMOVED: List<ChatEntryEntity> findByAttachmentHash(String attachmentHash);
 
@@ -45,39 +45,139 @@ public interface ChatEntryRepository extends JpaRepository<ChatEntryEntity, Long
 
     Page<ChatEntryEntity> findByUserId(Long userId, Pageable pageable);
 
-    // Chat-specific methods
-    List<ChatEntryEntity> findByUserIdAndChatId(Long userId, String chatId);
+    // Batches of a user's entries in id order, for walking all of them without OFFSET
+    List<ChatEntryEntity> findByUserIdAndIdGreaterThanOrderByIdAsc(Long userId, Long id,
+            Limit limit);
 
-    Page<ChatEntryEntity> findByUserIdAndChatId(Long userId, String chatId, Pageable pageable);
+    // Batches of entries written before the sanitized payload was stored, in id order
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.sanitizedPayload IS NULL \
+            AND ce.payload IS NOT NULL AND ce.id > :id ORDER BY ce.id""")
+    List<ChatEntryEntity> findUnsanitizedAfter(@Param("id") Long id, Limit limit);
 
-    // Multiple chat methods
-    Page<ChatEntryEntity> findByUserIdAndChatIdIn(Long userId, List<String> chatIds,
-            Pageable pageable);
+    // Rows: authorId, day, hour, type, messages, attachments. Used to rebuild activity rollups.
+    @Query("""
+            SELECT ce.authorId, CAST(ce.localDateTime AS LocalDate), HOUR(ce.localDateTime), \
+            ce.type, COUNT(ce), \
+            SUM(CASE WHEN ce.fileName IS NOT NULL AND ce.fileName <> '' THEN 1 ELSE 0 END) \
+            FROM ChatEntryEntity ce WHERE ce.chatRefId = :chatRefId \
+            AND ce.localDateTime IS NOT NULL AND ce.authorId IS NOT NULL \
+            GROUP BY ce.authorId, CAST(ce.localDateTime AS LocalDate), HOUR(ce.localDateTime), \
+            ce.type""")
+    List<Object[]> countActivityByChatRefId(@Param("chatRefId") Long chatRefId);
+
+    // Rows: attachmentId, file size, referencing entries. Used to rebuild storage accounting.
+    @Query("""
+            SELECT a.id, a.fileSize, COUNT(ce) FROM ChatEntryEntity ce JOIN ce.attachment a \
+            WHERE ce.userId = :userId GROUP BY a.id, a.fileSize""")
+    List<Object[]> countAttachmentReferencesByUserId(@Param("userId") Long userId);
 
-    // Check if chat exists for user
-    boolean existsByUserIdAndChatId(Long userId, String chatId);
+    // Rows: attachmentId, referencing entries of one chat
+    @Query("""
+            SELECT ce.attachment.id, COUNT(ce) FROM ChatEntryEntity ce \
+            WHERE ce.userId = :userId AND ce.attachment IS NOT NULL AND ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId) \
+            GROUP BY ce.attachment.id""")
+    List<Object[]> countAttachmentReferencesByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId);
+
+    // Attachments referenced by a user's entries with the gallery filters, every one optional.
+    // The pages are ordered newest first and read on idx_chat_entries_user_date.
+    String GALLERY_QUERY = """
+            SELECT new net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryItem(\
+            a.hash, a.fileSize, ce.type, ce.fileName, ce.id, ce.localDateTime) \
+            FROM ChatEntryEntity ce JOIN ce.attachment a \
+            WHERE ce.userId = :userId AND (:chatId IS NULL OR ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)) \
+            AND (:type IS NULL OR ce.type = :type) \
+            AND (:from IS NULL OR ce.localDateTime >= :from) \
+            AND (:to IS NULL OR ce.localDateTime < :to) \
+            AND (:minSize IS NULL OR a.fileSize >= :minSize) \
+            AND (:maxSize IS NULL OR a.fileSize <= :maxSize) \
+            """;
+
+    // Items without a time, whose date could not be parsed, come last on every database
+    @Query(GALLERY_QUERY + "ORDER BY ce.localDateTime DESC NULLS LAST, ce.id DESC")
+    List<AttachmentGalleryItem> findGalleryItems(@Param("userId") Long userId,
+            @Param("chatId") String chatId, @Param("type") ChatEntry.Type type,
+            @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+            @Param("minSize") Long minSize, @Param("maxSize") Long maxSize, Limit limit);
+
+    @Query(GALLERY_QUERY + """
+            AND (ce.localDateTime < :cursorTime \
+            OR (ce.localDateTime = :cursorTime AND ce.id < :cursorId) \
+            OR ce.localDateTime IS NULL) \
+            ORDER BY ce.localDateTime DESC NULLS LAST, ce.id DESC""")
+    List<AttachmentGalleryItem> findGalleryItemsBefore(@Param("userId") Long userId,
+            @Param("chatId") String chatId, @Param("type") ChatEntry.Type type,
+            @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+            @Param("minSize") Long minSize, @Param("maxSize") Long maxSize,
+            @Param("cursorTime") LocalDateTime cursorTime, @Param("cursorId") Long cursorId,
+            Limit limit);
+
+    // Continues after an item without a time, among the other items without one
+    @Query(GALLERY_QUERY + """
+            AND ce.localDateTime IS NULL AND ce.id < :cursorId ORDER BY ce.id DESC""")
+    List<AttachmentGalleryItem> findUntimedGalleryItemsBefore(@Param("userId") Long userId,
+            @Param("chatId") String chatId, @Param("type") ChatEntry.Type type,
+            @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+            @Param("minSize") Long minSize, @Param("maxSize") Long maxSize,
+            @Param("cursorId") Long cursorId, Limit limit);
+
+    // File name and detected media type of a user's entries carrying the attachment with a hash
+    @Query("""
+            SELECT ce.fileName, a.mimeType FROM ChatEntryEntity ce JOIN ce.attachment a \
+            WHERE ce.userId = :userId AND a.hash = :hash ORDER BY ce.id""")
+    List<Object[]> findFileNamesAndMimeTypesByUserIdAndHash(@Param("userId") Long userId,
+            @Param("hash") String hash, Limit limit);
 
-    // User and chat filtered search methods
-    List<ChatEntryEntity> findByUserIdAndAuthor(Long userId, String author);
+    // Rows: attachmentId, the name of one entry file with it. The name lets media detection fall
+    // back on the extension where the content alone is ambiguous.
+    @Query("""
+            SELECT a.id, MIN(ce.fileName) FROM ChatEntryEntity ce JOIN ce.attachment a \
+            WHERE a.id IN :attachmentIds AND ce.fileName <> '' GROUP BY a.id""")
+    List<Object[]> findFileNamesByAttachmentIdIn(
+            @Param("attachmentIds") Collection<Long> attachmentIds);
 
-    Page<ChatEntryEntity> findByUserIdAndAuthor(Long userId, String author, Pageable pageable);
+    // Chat-specific methods
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    List<ChatEntryEntity> findByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId);
 
-    List<ChatEntryEntity> findByUserIdAndType(Long userId, ChatEntry.Type type);
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    Page<ChatEntryEntity> findByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId, Pageable pageable);
+
+    // User and chat filtered search methods
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.authorId = \
+            (SELECT a.id FROM Author a WHERE a.name = :author)""")
+    List<ChatEntryEntity> findByUserIdAndAuthor(@Param("userId") Long userId,
+            @Param("author") String author);
 
-    Page<ChatEntryEntity> findByUserIdAndType(Long userId, ChatEntry.Type type, Pageable pageable);
+    List<ChatEntryEntity> findByUserIdAndType(Long userId, ChatEntry.Type type);
 
     List<ChatEntryEntity> findByUserIdAndLocalDateTimeBetween(Long userId, LocalDateTime start,
             LocalDateTime end);
 
-    Page<ChatEntryEntity> findByUserIdAndLocalDateTimeBetween(Long userId, LocalDateTime start,
-            LocalDateTime end, Pageable pageable);
-
     // Combined search methods with user filter
-    List<ChatEntryEntity> findByUserIdAndAuthorAndType(Long userId, String author,
-            ChatEntry.Type type);
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.type = :type AND \
+            ce.authorId = (SELECT a.id FROM Author a WHERE a.name = :author)""")
+    List<ChatEntryEntity> findByUserIdAndAuthorAndType(@Param("userId") Long userId,
+            @Param("author") String author, @Param("type") ChatEntry.Type type);
 
-    List<ChatEntryEntity> findByUserIdAndAuthorAndLocalDateTimeBetween(Long userId, String author,
-            LocalDateTime start, LocalDateTime end);
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND \
+            ce.authorId = (SELECT a.id FROM Author a WHERE a.name = :author) AND \
+            ce.localDateTime BETWEEN :start AND :end""")
+    List<ChatEntryEntity> findByUserIdAndAuthorAndLocalDateTimeBetween(
+            @Param("userId") Long userId, @Param("author") String author,
+            @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
 
     List<ChatEntryEntity> findByUserIdAndTypeAndLocalDateTimeBetween(Long userId,
             ChatEntry.Type type, LocalDateTime start, LocalDateTime end);
@@ -86,36 +186,109 @@ public interface ChatEntryRepository extends JpaRepository<ChatEntryEntity, Long
     @Query("""
             SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND \
             (LOWER(ce.payload) LIKE LOWER(CONCAT('%', :keyword, '%')) OR \
-            LOWER(ce.author) LIKE LOWER(CONCAT('%', :keyword, '%')))""")
+            ce.authorId IN (SELECT a.id FROM Author a \
+            WHERE LOWER(a.name) LIKE LOWER(CONCAT('%', :keyword, '%'))))""")
     Page<ChatEntryEntity> searchByUserIdAndKeyword(@Param("userId") Long userId,
             @Param("keyword") String keyword, Pageable pageable);
 
-    // User and chat filtered full-text search
-    @Query("""
-            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.chatId = :chatId AND \
-            (LOWER(ce.payload) LIKE LOWER(CONCAT('%', :keyword, '%')) OR \
-            LOWER(ce.author) LIKE LOWER(CONCAT('%', :keyword, '%')))""")
-    Page<ChatEntryEntity> searchByUserIdAndChatIdAndKeyword(@Param("userId") Long userId,
-            @Param("chatId") String chatId, @Param("keyword") String keyword, Pageable pageable);
-
     // Multiple chats keyword search
     @Query("""
-            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.chatId IN :chatIds AND \
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.chatRefId IN \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId IN :chatIds) AND \
             (LOWER(ce.payload) LIKE LOWER(CONCAT('%', :keyword, '%')) OR \
-            LOWER(ce.author) LIKE LOWER(CONCAT('%', :keyword, '%')))""")
+            ce.authorId IN (SELECT a.id FROM Author a \
+            WHERE LOWER(a.name) LIKE LOWER(CONCAT('%', :keyword, '%'))))""")
     Page<ChatEntryEntity> searchByUserIdAndChatIdInAndKeyword(@Param("userId") Long userId,
             @Param("chatIds") List<String> chatIds, @Param("keyword") String keyword,
             Pageable pageable);
 
-    // Combined search methods with chatIds
-    Page<ChatEntryEntity> findByUserIdAndChatIdInAndType(Long userId, List<String> chatIds,
-            ChatEntry.Type type, Pageable pageable);
+    // PostgreSQL full-text search on the generated search_vector columns (see
+    // FullTextSearchService). Entries that only match by author name rank last.
+    String FULL_TEXT_MATCH = """
+            (ce.search_vector @@ to_tsquery(CAST(:language AS regconfig), :query) OR \
+            ce.author_id IN (SELECT a.id FROM authors a \
+            WHERE a.search_vector @@ to_tsquery(CAST(:language AS regconfig), :query)))""";
+
+    String FULL_TEXT_RANK = """
+             ORDER BY ts_rank(ce.search_vector, \
+            to_tsquery(CAST(:language AS regconfig), :query)) DESC, \
+            ce.local_date_time, ce.ordinal, ce.id""";
+
+    @Query(value = "SELECT ce.* FROM chat_entries ce WHERE ce.user_id = :userId AND "
+            + FULL_TEXT_MATCH + FULL_TEXT_RANK,
+            countQuery = "SELECT COUNT(*) FROM chat_entries ce WHERE ce.user_id = :userId AND "
+                    + FULL_TEXT_MATCH,
+            nativeQuery = true)
+    Page<ChatEntryEntity> fullTextSearchByUserId(@Param("userId") Long userId,
+            @Param("language") String language, @Param("query") String query,
+            Pageable pageable);
 
-    Page<ChatEntryEntity> findByUserIdAndChatIdInAndAuthor(Long userId, List<String> chatIds,
-            String author, Pageable pageable);
+    @Query(value = """
+            SELECT ce.* FROM chat_entries ce WHERE ce.user_id = :userId AND ce.chat_ref_id IN \
+            (SELECT c.id FROM chats c WHERE c.user_id = :userId AND c.chat_id IN :chatIds) AND\s"""
+            + FULL_TEXT_MATCH + FULL_TEXT_RANK, countQuery = """
+                    SELECT COUNT(*) FROM chat_entries ce WHERE ce.user_id = :userId AND \
+                    ce.chat_ref_id IN (SELECT c.id FROM chats c \
+                    WHERE c.user_id = :userId AND c.chat_id IN :chatIds) AND\s"""
+                    + FULL_TEXT_MATCH,
+            nativeQuery = true)
+    Page<ChatEntryEntity> fullTextSearchByUserIdAndChatIdIn(@Param("userId") Long userId,
+            @Param("chatIds") List<String> chatIds, @Param("language") String language,
+            @Param("query") String query, Pageable pageable);
+
+    // Trigram search on the pg_trgm GIN indexes (see FullTextSearchService). ILIKE and the <%
+    // word similarity operator are both served by gin_trgm_ops.
+    String SUBSTRING_MATCH = """
+            (ce.payload ILIKE :pattern OR ce.author_id IN \
+            (SELECT a.id FROM authors a WHERE a.name ILIKE :pattern))""";
+
+    String FUZZY_MATCH = """
+            (:keyword <% ce.payload OR ce.author_id IN \
+            (SELECT a.id FROM authors a WHERE :keyword <% a.name))""";
+
+    String CHRONOLOGICAL_ORDER = " ORDER BY ce.local_date_time, ce.ordinal, ce.id";
+
+    String SIMILARITY_ORDER = """
+             ORDER BY word_similarity(:keyword, ce.payload) DESC, \
+            ce.local_date_time, ce.ordinal, ce.id""";
+
+    String IN_CHATS = """
+             AND ce.chat_ref_id IN \
+            (SELECT c.id FROM chats c WHERE c.user_id = :userId AND c.chat_id IN :chatIds)""";
+
+    @Query(value = "SELECT ce.* FROM chat_entries ce WHERE ce.user_id = :userId AND "
+            + SUBSTRING_MATCH + CHRONOLOGICAL_ORDER,
+            countQuery = "SELECT COUNT(*) FROM chat_entries ce WHERE ce.user_id = :userId AND "
+                    + SUBSTRING_MATCH,
+            nativeQuery = true)
+    Page<ChatEntryEntity> substringSearchByUserId(@Param("userId") Long userId,
+            @Param("pattern") String pattern, Pageable pageable);
+
+    @Query(value = "SELECT ce.* FROM chat_entries ce WHERE ce.user_id = :userId AND "
+            + SUBSTRING_MATCH + IN_CHATS + CHRONOLOGICAL_ORDER,
+            countQuery = "SELECT COUNT(*) FROM chat_entries ce WHERE ce.user_id = :userId AND "
+                    + SUBSTRING_MATCH + IN_CHATS,
+            nativeQuery = true)
+    Page<ChatEntryEntity> substringSearchByUserIdAndChatIdIn(@Param("userId") Long userId,
+            @Param("chatIds") List<String> chatIds, @Param("pattern") String pattern,
+            Pageable pageable);
 
-    Page<ChatEntryEntity> findByUserIdAndChatIdInAndLocalDateTimeBetween(Long userId,
-            List<String> chatIds, LocalDateTime start, LocalDateTime end, Pageable pageable);
+    @Query(value = "SELECT ce.* FROM chat_entries ce WHERE ce.user_id = :userId AND "
+            + FUZZY_MATCH + SIMILARITY_ORDER,
+            countQuery = "SELECT COUNT(*) FROM chat_entries ce WHERE ce.user_id = :userId AND "
+                    + FUZZY_MATCH,
+            nativeQuery = true)
+    Page<ChatEntryEntity> fuzzySearchByUserId(@Param("userId") Long userId,
+            @Param("keyword") String keyword, Pageable pageable);
+
+    @Query(value = "SELECT ce.* FROM chat_entries ce WHERE ce.user_id = :userId AND "
+            + FUZZY_MATCH + IN_CHATS + SIMILARITY_ORDER,
+            countQuery = "SELECT COUNT(*) FROM chat_entries ce WHERE ce.user_id = :userId AND "
+                    + FUZZY_MATCH + IN_CHATS,
+            nativeQuery = true)
+    Page<ChatEntryEntity> fuzzySearchByUserIdAndChatIdIn(@Param("userId") Long userId,
+            @Param("chatIds") List<String> chatIds, @Param("keyword") String keyword,
+            Pageable pageable);
 
     // Search by attachment hash with user filter
     // REMOVED: List<ChatEntryEntity> findByUserIdAndAttachmentHash(Long userId, String
@@ -124,41 +297,87 @@ public interface ChatEntryRepository extends JpaRepository<ChatEntryEntity, Long
     // Count methods for statistics (user-specific)
     long countByUserId(Long userId);
 
-    long countByUserIdAndAuthor(Long userId, String author);
+    @Query("""
+            SELECT COUNT(ce) FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.authorId = \
+            (SELECT a.id FROM Author a WHERE a.name = :author)""")
+    long countByUserIdAndAuthor(@Param("userId") Long userId, @Param("author") String author);
 
     long countByUserIdAndType(Long userId, ChatEntry.Type type);
 
     long countByUserIdAndLocalDateTimeBetween(Long userId, LocalDateTime start, LocalDateTime end);
 
-    long countByUserIdAndChatId(Long userId, String chatId);
-
     // Delete methods
-    void deleteByUserIdAndChatId(Long userId, String chatId);
+    @Modifying
+    @Query("""
+            DELETE FROM ChatEntryEntity ce WHERE ce.userId = :userId AND ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    void deleteByUserIdAndChatId(@Param("userId") Long userId, @Param("chatId") String chatId);
 
     void deleteByUserId(Long userId);
 
-    // Get unique chat IDs for a user
-    @Query("SELECT DISTINCT ce.chatId FROM ChatEntryEntity ce WHERE ce.userId = :userId")
-    List<String> findDistinctChatIdsByUserId(@Param("userId") Long userId);
-
-    // Get chat statistics for a user (updated to not use attachmentHash)
+    // Date bounds of a single chat, used when removed entries sat on the chat's first/last message
     @Query("""
-            SELECT ce.chatId, COUNT(ce) as messageCount, \
-            COUNT(CASE WHEN ce.fileName IS NOT NULL THEN 1 END) as attachmentCount \
-            FROM ChatEntryEntity ce WHERE ce.userId = :userId GROUP BY ce.chatId""")
-    List<Object[]> getChatStatisticsByUserId(@Param("userId") Long userId);
+            SELECT MIN(ce.localDateTime), MAX(ce.localDateTime) FROM ChatEntryEntity ce \
+            WHERE ce.userId = :userId AND ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    List<Object[]> findDateBoundsByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId);
 
-    // Check if entry exists by unique constraint fields (without payload to match new constraint)
-    boolean existsByUserIdAndChatIdAndLocalDateTimeAndAuthorAndFileName(Long userId, String chatId,
-            LocalDateTime localDateTime, String author, String fileName);
+    // Number of distinct authors in a chat
+    @Query("""
+            SELECT COUNT(DISTINCT ce.authorId) FROM ChatEntryEntity ce \
+            WHERE ce.userId = :userId AND ce.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    long countDistinctAuthorsByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId);
+
+    // Entries of a user with the export filters, every one optional, oldest first. Read on
+    // idx_chat_entries_user_date so that the first rows arrive before the last are found; the
+    // caller detaches each entity once written to keep the persistence context empty.
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("""
+            SELECT ce FROM ChatEntryEntity ce WHERE ce.userId = :userId \
+            AND (:author IS NULL OR ce.authorId = \
+            (SELECT a.id FROM Author a WHERE a.name = :author)) \
+            AND (:type IS NULL OR ce.type = :type) \
+            AND (:start IS NULL OR ce.localDateTime >= :start) \
+            AND (:end IS NULL OR ce.localDateTime <= :end) \
+            ORDER BY ce.localDateTime, ce.id""")
+    Stream<ChatEntryEntity> streamForExport(@Param("userId") Long userId,
+            @Param("author") String author, @Param("type") ChatEntry.Type type,
+            @Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    // Lines of a chat export in chat order: time, author name, payload and attachment file name.
+    // Scalar rows stay out of the persistence context, and the fetch size makes the driver read
+    // them from a cursor in batches instead of all at once.
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")})
+    @Query("""
+            SELECT ce.localDateTime, au.name, ce.payload, ce.fileName FROM ChatEntryEntity ce \
+            LEFT JOIN Author au ON au.id = ce.authorId WHERE ce.chatRefId = :chatRefId \
+            ORDER BY ce.localDateTime, ce.ordinal, ce.id""")
+    Stream<Object[]> streamExportLinesByChatRefId(@Param("chatRefId") Long chatRefId);
+
+    // Attachment files of a chat export after an entry id: entry id, file name, content hash,
+    // CRC-32 and message time, in entry order so that they can be read a page at a time
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("""
+            SELECT ce.id, ce.fileName, a.hash, a.crc32, ce.localDateTime \
+            FROM ChatEntryEntity ce JOIN ce.attachment a \
+            WHERE ce.chatRefId = :chatRefId AND ce.fileName IS NOT NULL AND ce.id > :afterId \
+            ORDER BY ce.id""")
+    List<Object[]> findExportFilesByChatRefIdAfter(@Param("chatRefId") Long chatRefId,
+            @Param("afterId") Long afterId, Limit limit);
 
     // Method to check existence by the actual unique constraint fields
     @Query("""
             SELECT COUNT(ce) > 0 FROM ChatEntryEntity ce
             WHERE ce.userId = :userId
-            AND ce.chatId = :chatId
+            AND ce.chatRefId = (SELECT c.id FROM Chat c
+                WHERE c.userId = :userId AND c.chatId = :chatId)
             AND ce.localDateTime = :localDateTime
-            AND ce.author = :author
+            AND ce.authorId = (SELECT a.id FROM Author a WHERE a.name = :author)
             AND COALESCE(ce.fileName, '') = COALESCE(:fileName, '')
             """)
     boolean existsByUniqueFields(@Param("userId") Long userId, @Param("chatId") String chatId,
@@ -0,0 +1,178 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Author;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryCursor;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.DetectedEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+
+/**
+ * Filters for chat entry queries. Each returns null when its criterion is not set, so they can be
+ * combined freely with {@link Specification#allOf}.
+ */
+public final class ChatEntrySpecifications {
+
+    // Stable order of search results: messages sharing a timestamp keep their file order
+    public static final Sort CHRONOLOGICAL = Sort.by("localDateTime", "ordinal", "id");
+
+    private ChatEntrySpecifications() {
+    }
+
+    /**
+     * All criteria of a search combined into one query; criteria that are not set are left out
+     */
+    public static Specification<ChatEntryEntity> matching(Long userId, SearchCriteria criteria) {
+        return Specification.allOf(ofUser(userId), inChats(userId, criteria.getChatIds()),
+                keyword(criteria.getKeyword()), author(criteria.getAuthor()),
+                type(criteria.getType()),
+                between(criteria.getStartDate(), criteria.getEndDate()),
+                hasAttachment(criteria.getHasAttachment()));
+    }
+
+    public static Specification<ChatEntryEntity> ofUser(Long userId) {
+        return (root, query, cb) -> cb.equal(root.get("userId"), userId);
+    }
+
+    public static Specification<ChatEntryEntity> inChats(Long userId, List<String> chatIds) {
+        if (chatIds == null || chatIds.isEmpty()) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Subquery<Long> chats = query.subquery(Long.class);
+            Root<Chat> chat = chats.from(Chat.class);
+            chats.select(chat.get("id")).where(cb.equal(chat.get("userId"), userId),
+                    chat.get("chatId").in(chatIds));
+            return root.get("chatRefId").in(chats);
+        };
+    }
+
+    /**
+     * Case-insensitive match of the keyword in the payload or the author name
+     */
+    public static Specification<ChatEntryEntity> keyword(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return null;
+        }
+        String pattern = "%" + keyword.trim().toLowerCase() + "%";
+        return (root, query, cb) -> cb.or(cb.like(cb.lower(root.get("payload")), pattern),
+                root.get("authorId").in(authorIds(query, cb, a -> cb.like(cb.lower(a), pattern))));
+    }
+
+    /**
+     * Case-insensitive exact match of the author name
+     */
+    public static Specification<ChatEntryEntity> author(String author) {
+        if (author == null || author.trim().isEmpty()) {
+            return null;
+        }
+        String name = author.trim().toLowerCase();
+        return (root, query, cb) -> root.get("authorId")
+                .in(authorIds(query, cb, a -> cb.equal(cb.lower(a), name)));
+    }
+
+    public static Specification<ChatEntryEntity> type(ChatEntry.Type type) {
+        if (type == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.equal(root.get("type"), type);
+    }
+
+    public static Specification<ChatEntryEntity> between(LocalDateTime start, LocalDateTime end) {
+        if (start == null && end == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Path<LocalDateTime> time = root.get("localDateTime");
+            if (start == null) {
+                return cb.lessThanOrEqualTo(time, end);
+            }
+            if (end == null) {
+                return cb.greaterThanOrEqualTo(time, start);
+            }
+            return cb.between(time, start, end);
+        };
+    }
+
+    public static Specification<ChatEntryEntity> hasAttachment(Boolean hasAttachment) {
+        if (hasAttachment == null) {
+            return null;
+        }
+        return (root, query, cb) -> {
+            Path<String> path = root.get("path");
+            return hasAttachment ? cb.and(cb.isNotNull(path), cb.notEqual(path, ""))
+                    : cb.or(cb.isNull(path), cb.equal(path, ""));
+        };
+    }
+
+    /**
+     * Entries in which a value of the kind with the given normalized form was detected
+     */
+    public static Specification<ChatEntryEntity> containsValue(Long userId, EntityKind kind,
+            String normalizedValue) {
+        return (root, query, cb) -> {
+            Subquery<Long> entries = query.subquery(Long.class);
+            Root<DetectedEntity> entity = entries.from(DetectedEntity.class);
+            entries.select(entity.get("entryId")).where(cb.equal(entity.get("userId"), userId),
+                    cb.equal(entity.get("kind"), kind),
+                    cb.equal(entity.get("normalizedValue"), normalizedValue));
+            return root.get("id").in(entries);
+        };
+    }
+
+    /**
+     * Entries with a timestamp. Keyset listings leave out the others, whose date could not be
+     * parsed, as a null time has no place in the cursor order.
+     */
+    public static Specification<ChatEntryEntity> hasTime() {
+        return (root, query, cb) -> cb.isNotNull(root.get("localDateTime"));
+    }
+
+    /**
+     * Entries strictly after (or before, for a backward cursor) the cursor position in
+     * (localDateTime, ordinal, id) order. The redundant range condition on localDateTime lets the
+     * database seek into its index instead of evaluating the OR chain on every row.
+     */
+    public static Specification<ChatEntryEntity> pastCursor(ChatEntryCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        boolean forward = cursor.isForward();
+        return (root, query, cb) -> {
+            Path<LocalDateTime> time = root.get("localDateTime");
+            Path<Integer> ordinal = root.get("ordinal");
+            Path<Long> id = root.get("id");
+            Predicate sameOrdinal = cb.and(cb.equal(ordinal, cursor.getOrdinal()),
+                    forward ? cb.greaterThan(id, cursor.getId()) : cb.lessThan(id, cursor.getId()));
+            Predicate sameTime = cb.and(cb.equal(time, cursor.getLocalDateTime()),
+                    cb.or(forward ? cb.greaterThan(ordinal, cursor.getOrdinal())
+                            : cb.lessThan(ordinal, cursor.getOrdinal()), sameOrdinal));
+            Predicate seek = forward ? cb.greaterThan(time, cursor.getLocalDateTime())
+                    : cb.lessThan(time, cursor.getLocalDateTime());
+            Predicate range = forward ? cb.greaterThanOrEqualTo(time, cursor.getLocalDateTime())
+                    : cb.lessThanOrEqualTo(time, cursor.getLocalDateTime());
+            return cb.and(range, cb.or(seek, sameTime));
+        };
+    }
+
+    private static Subquery<Long> authorIds(CriteriaQuery<?> query, CriteriaBuilder cb,
+            Function<Path<String>, Predicate> nameCondition) {
+        Subquery<Long> authors = query.subquery(Long.class);
+        Root<Author> author = authors.from(Author.class);
+        authors.select(author.get("id")).where(nameCondition.apply(author.get("name")));
+        return authors;
+    }
+}
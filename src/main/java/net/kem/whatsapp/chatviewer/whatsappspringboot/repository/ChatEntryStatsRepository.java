@@ -0,0 +1,195 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ActivityStats;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.StatsInterval;
+
+/**
+ * Activity statistics of chat entries, read from the chat_activity_daily and chat_activity_hourly
+ * rollups so that the cost depends on the number of active days rather than on the number of
+ * messages. All breakdowns of {@link #countActivity} come from one UNION ALL query.
+ */
+@Repository
+public class ChatEntryStatsRepository {
+
+    private static final String QUERY = """
+            SELECT 'activity' AS dimension, %1$s AS bucket, CAST(NULL AS INT) AS weekday, \
+            CAST(NULL AS INT) AS hour_of_day, SUM(d.message_count) AS entries \
+            FROM chat_activity_daily d WHERE %2$s GROUP BY %1$s \
+            UNION ALL SELECT 'author', a.name, NULL, NULL, SUM(d.message_count) \
+            FROM chat_activity_daily d JOIN authors a ON a.id = d.author_id WHERE %2$s \
+            GROUP BY a.name \
+            UNION ALL SELECT 'type', d.type, NULL, NULL, SUM(d.message_count) \
+            FROM chat_activity_daily d WHERE %2$s GROUP BY d.type \
+            UNION ALL SELECT 'heatmap', NULL, h.weekday, h.hour_of_day, SUM(h.message_count) \
+            FROM chat_activity_hourly h WHERE %3$s GROUP BY h.weekday, h.hour_of_day""";
+
+    private static final String TYPES_QUERY = """
+            SELECT d.type AS bucket, SUM(d.message_count) AS entries \
+            FROM chat_activity_daily d WHERE %s GROUP BY d.type""";
+
+    private static final String AUTHORS_QUERY = """
+            SELECT a.name AS bucket, SUM(d.message_count) AS entries \
+            FROM chat_activity_daily d JOIN authors a ON a.id = d.author_id WHERE %s \
+            GROUP BY a.name ORDER BY entries DESC, a.name LIMIT :limit""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private volatile Boolean postgreSql;
+
+    public ChatEntryStatsRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Compute the activity of a user's entries, or of one of their chats when {@code chatId} is
+     * set. At most {@code authorLimit} authors are returned.
+     */
+    public ActivityStats countActivity(Long userId, String chatId, StatsInterval interval,
+            int authorLimit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        if (chatId != null) {
+            params.addValue("chatId", chatId);
+        }
+        // PostgreSQL weeks start on Monday; H2 needs ISO_WEEK for the same
+        String unit = interval == StatsInterval.WEEK && !isPostgreSql() ? "iso_week"
+                : interval.name().toLowerCase(Locale.ROOT);
+        String period = "TO_CHAR(DATE_TRUNC('" + unit + "', d.activity_day), 'YYYY-MM-DD')";
+        String sql = String.format(QUERY, period, where("d", chatId), where("h", chatId));
+
+        Map<String, Long> activity = new TreeMap<>();
+        long[][] heatmap = new long[7][24];
+        List<Map.Entry<String, Long>> authors = new ArrayList<>();
+        Map<String, Long> types = new LinkedHashMap<>();
+        long[] total = new long[1];
+        namedJdbcTemplate.query(sql, params, rs -> {
+            String bucket = rs.getString("bucket");
+            long entries = rs.getLong("entries");
+            switch (rs.getString("dimension")) {
+                case "activity" -> {
+                    if (bucket != null) {
+                        activity.put(bucket, entries);
+                    }
+                }
+                case "author" -> {
+                    if (bucket != null) {
+                        authors.add(Map.entry(bucket, entries));
+                    }
+                }
+                case "type" -> {
+                    total[0] += entries;
+                    if (bucket != null) {
+                        types.put(bucket, entries);
+                    }
+                }
+                default -> {
+                    int day = rs.getInt("weekday");
+                    if (!rs.wasNull()) {
+                        heatmap[day - 1][rs.getInt("hour_of_day")] = entries;
+                    }
+                }
+            }
+        });
+
+        Map<String, Long> topAuthors = new LinkedHashMap<>();
+        authors.stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(authorLimit).forEach(e -> topAuthors.put(e.getKey(), e.getValue()));
+        return ActivityStats.builder().interval(interval)
+                .totalMessages(total[0])
+                .participants(authors.size()).activity(new LinkedHashMap<>(activity))
+                .heatmap(heatmap).authors(topAuthors).types(types).build();
+    }
+
+    /**
+     * Number of messages per type of a user, optionally of one chat and of the days between
+     * {@code from} and {@code to} inclusive. Every type is present, with 0 when it has no messages.
+     */
+    public Map<ChatEntry.Type, Long> countByType(Long userId, String chatId, LocalDate from,
+            LocalDate to) {
+        Map<ChatEntry.Type, Long> types = new EnumMap<>(ChatEntry.Type.class);
+        for (ChatEntry.Type type : ChatEntry.Type.values()) {
+            types.put(type, 0L);
+        }
+        namedJdbcTemplate.query(String.format(TYPES_QUERY, where(chatId, from, to)),
+                params(userId, chatId, from, to), rs -> {
+                    types.put(ChatEntry.Type.valueOf(rs.getString("bucket")),
+                            rs.getLong("entries"));
+                });
+        return types;
+    }
+
+    /**
+     * Number of messages of the {@code limit} most active authors of a user, optionally of one
+     * chat and of the days between {@code from} and {@code to} inclusive, most active first
+     */
+    public Map<String, Long> countByAuthor(Long userId, String chatId, LocalDate from,
+            LocalDate to, int limit) {
+        Map<String, Long> authors = new LinkedHashMap<>();
+        namedJdbcTemplate.query(String.format(AUTHORS_QUERY, where(chatId, from, to)),
+                params(userId, chatId, from, to).addValue("limit", limit), rs -> {
+                    authors.put(rs.getString("bucket"), rs.getLong("entries"));
+                });
+        return authors;
+    }
+
+    private static MapSqlParameterSource params(Long userId, String chatId, LocalDate from,
+            LocalDate to) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        if (chatId != null) {
+            params.addValue("chatId", chatId);
+        }
+        if (from != null) {
+            params.addValue("from", from);
+        }
+        if (to != null) {
+            params.addValue("to", to);
+        }
+        return params;
+    }
+
+    private static String where(String chatId, LocalDate from, LocalDate to) {
+        String where = where("d", chatId);
+        if (from != null) {
+            where += " AND d.activity_day >= :from";
+        }
+        if (to != null) {
+            where += " AND d.activity_day <= :to";
+        }
+        return where;
+    }
+
+    private static String where(String alias, String chatId) {
+        String where = alias + ".user_id = :userId";
+        if (chatId != null) {
+            where += " AND " + alias + ".chat_ref_id = (SELECT c.id FROM chats c "
+                    + "WHERE c.user_id = :userId AND c.chat_id = :chatId)";
+        }
+        return where;
+    }
+
+    private boolean isPostgreSql() {
+        if (postgreSql == null) {
+            String product = jdbcTemplate.execute(
+                    (Connection connection) -> connection.getMetaData().getDatabaseProductName());
+            postgreSql = "PostgreSQL".equalsIgnoreCase(product);
+        }
+        return postgreSql;
+    }
+}
@@ -0,0 +1,106 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatSummary;
+
+@Repository
+public interface ChatRepository extends JpaRepository<Chat, Long> {
+
+    Optional<Chat> findByUserIdAndChatId(Long userId, String chatId);
+
+    boolean existsByUserIdAndChatId(Long userId, String chatId);
+
+    List<Chat> findByUserIdOrderByChatId(Long userId);
+
+    @Query("SELECT c.chatId FROM Chat c WHERE c.userId = :userId ORDER BY c.chatId")
+    List<String> findChatIdsByUserId(@Param("userId") Long userId);
+
+    // Counters of all chats of a user in one query, as unmanaged projections
+    @Query("""
+            SELECT new net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatSummary(\
+            c.chatId, c.name, c.messageCount, c.attachmentCount, c.participantCount, \
+            c.firstMessageAt, c.lastMessageAt, c.lastUploadAt) FROM Chat c \
+            WHERE c.userId = :userId ORDER BY c.chatId""")
+    List<ChatSummary> findSummariesByUserId(@Param("userId") Long userId);
+
+    // Scalar projection so that values set by the bulk updates below are read from the database
+    @Query("""
+            SELECT c.firstMessageAt, c.lastMessageAt FROM Chat c \
+            WHERE c.userId = :userId AND c.chatId = :chatId""")
+    List<Object[]> findBoundsByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId);
+
+    // Chats whose activity rollups do not hold all their entries, such as those uploaded before
+    // rollups existed
+    @Query("SELECT c FROM Chat c WHERE c.rollupsBuilt IS NULL OR c.rollupsBuilt = false")
+    List<Chat> findWithoutActivityRollups();
+
+    @Modifying
+    @Query("UPDATE Chat c SET c.rollupsBuilt = true WHERE c.id = :id")
+    void markRollupsBuilt(@Param("id") Long id);
+
+    void deleteByUserIdAndChatId(Long userId, String chatId);
+
+    void deleteByUserId(Long userId);
+
+    // Takes the row lock of a chat, as addEntries and removeEntries do. A no-op update rather than
+    // SELECT ... FOR UPDATE, which databases spell differently.
+    @Modifying
+    @Query("UPDATE Chat c SET c.messageCount = c.messageCount WHERE c.id = :id")
+    int lock(@Param("id") Long id);
+
+    /**
+     * Apply the counters of freshly inserted entries. Bounds only ever widen here.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE Chat c SET \
+            c.messageCount = c.messageCount + :messages, \
+            c.attachmentCount = c.attachmentCount + :attachments, \
+            c.firstMessageAt = CASE WHEN c.firstMessageAt IS NULL OR c.firstMessageAt > :first \
+            THEN :first ELSE c.firstMessageAt END, \
+            c.lastMessageAt = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt < :last \
+            THEN :last ELSE c.lastMessageAt END \
+            WHERE c.userId = :userId AND c.chatId = :chatId""")
+    int addEntries(@Param("userId") Long userId, @Param("chatId") String chatId,
+            @Param("messages") long messages, @Param("attachments") long attachments,
+            @Param("first") LocalDateTime first, @Param("last") LocalDateTime last);
+
+    /**
+     * Subtract the counters of removed entries. Bounds are fixed separately by the caller when a
+     * removed entry sat on one of them.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE Chat c SET \
+            c.messageCount = CASE WHEN c.messageCount > :messages \
+            THEN c.messageCount - :messages ELSE 0 END, \
+            c.attachmentCount = CASE WHEN c.attachmentCount > :attachments \
+            THEN c.attachmentCount - :attachments ELSE 0 END \
+            WHERE c.userId = :userId AND c.chatId = :chatId""")
+    int removeEntries(@Param("userId") Long userId, @Param("chatId") String chatId,
+            @Param("messages") long messages, @Param("attachments") long attachments);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE Chat c SET c.firstMessageAt = :first, c.lastMessageAt = :last \
+            WHERE c.userId = :userId AND c.chatId = :chatId""")
+    int updateBounds(@Param("userId") Long userId, @Param("chatId") String chatId,
+            @Param("first") LocalDateTime first, @Param("last") LocalDateTime last);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            UPDATE Chat c SET c.participantCount = :participants, c.lastUploadAt = :uploadedAt \
+            WHERE c.userId = :userId AND c.chatId = :chatId""")
+    int updateUploadInfo(@Param("userId") Long userId, @Param("chatId") String chatId,
+            @Param("participants") int participants,
+            @Param("uploadedAt") LocalDateTime uploadedAt);
+}
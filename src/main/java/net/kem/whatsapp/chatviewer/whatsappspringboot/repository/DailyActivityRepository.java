@@ -0,0 +1,46 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.DailyActivity;
+
+@Repository
+public interface DailyActivityRepository extends JpaRepository<DailyActivity, Long> {
+
+    List<DailyActivity> findByChatRefIdAndDayBetween(Long chatRefId, LocalDate from,
+            LocalDate to);
+
+    // Adds to the stored counts rather than overwriting them, so concurrent changes add up
+    @Modifying
+    @Query("""
+            UPDATE DailyActivity d SET d.messageCount = d.messageCount + :messages, \
+            d.attachmentCount = CASE WHEN d.attachmentCount + :attachments > 0 \
+            THEN d.attachmentCount + :attachments ELSE 0 END WHERE d.id = :id""")
+    int addCounts(@Param("id") Long id, @Param("messages") long messages,
+            @Param("attachments") long attachments);
+
+    @Modifying(flushAutomatically = true)
+    @Query("""
+            DELETE FROM DailyActivity d WHERE d.chatRefId = :chatRefId \
+            AND d.day BETWEEN :from AND :to AND d.messageCount <= 0""")
+    int deleteEmpty(@Param("chatRefId") Long chatRefId, @Param("from") LocalDate from,
+            @Param("to") LocalDate to);
+
+    @Query("""
+            SELECT COUNT(DISTINCT d.authorId) FROM DailyActivity d WHERE d.userId = :userId \
+            AND d.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    long countAuthorsByUserIdAndChatId(@Param("userId") Long userId,
+            @Param("chatId") String chatId);
+
+    @Modifying
+    @Query("""
+            DELETE FROM DailyActivity d WHERE d.userId = :userId AND d.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    void deleteByUserIdAndChatId(@Param("userId") Long userId, @Param("chatId") String chatId);
+}
@@ -0,0 +1,54 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.DetectedEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityValueCount;
+
+@Repository
+public interface DetectedEntityRepository extends JpaRepository<DetectedEntity, Long> {
+
+    List<DetectedEntity> findByEntryIdOrderByStartOffset(Long entryId);
+
+    @Modifying
+    @Query("DELETE FROM DetectedEntity de WHERE de.entryId IN :entryIds")
+    void deleteByEntryIdIn(@Param("entryIds") Collection<Long> entryIds);
+
+    @Modifying
+    @Query("""
+            DELETE FROM DetectedEntity de WHERE de.userId = :userId AND de.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    void deleteByUserIdAndChatId(@Param("userId") Long userId, @Param("chatId") String chatId);
+
+    // Distinct values of a user, optionally of one kind and one chat, most frequent first
+    @Query("""
+            SELECT new net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityValueCount(\
+            de.kind, de.normalizedValue, COUNT(de)) FROM DetectedEntity de \
+            WHERE de.userId = :userId AND (:kind IS NULL OR de.kind = :kind) \
+            AND (:chatId IS NULL OR de.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)) \
+            GROUP BY de.kind, de.normalizedValue \
+            ORDER BY COUNT(de) DESC, de.kind, de.normalizedValue""")
+    List<EntityValueCount> countValues(@Param("userId") Long userId,
+            @Param("kind") EntityKind kind, @Param("chatId") String chatId, Pageable pageable);
+
+    // Rows: kind, number of occurrences
+    @Query("""
+            SELECT de.kind, COUNT(de) FROM DetectedEntity de \
+            WHERE de.userId = :userId AND (:chatId IS NULL OR de.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)) \
+            GROUP BY de.kind""")
+    List<Object[]> countKinds(@Param("userId") Long userId, @Param("chatId") String chatId);
+
+    // Rows written before values were normalized, recomputed at startup
+    @Query("SELECT DISTINCT de.entryId FROM DetectedEntity de WHERE de.normalizedValue IS NULL")
+    List<Long> findEntryIdsWithoutNormalizedValue(Limit limit);
+}
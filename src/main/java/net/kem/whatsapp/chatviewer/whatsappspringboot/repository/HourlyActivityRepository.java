@@ -0,0 +1,31 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.HourlyActivity;
+
+@Repository
+public interface HourlyActivityRepository extends JpaRepository<HourlyActivity, Long> {
+
+    List<HourlyActivity> findByChatRefId(Long chatRefId);
+
+    // Adds to the stored count rather than overwriting it, so concurrent changes add up
+    @Modifying
+    @Query("UPDATE HourlyActivity h SET h.messageCount = h.messageCount + :messages "
+            + "WHERE h.id = :id")
+    int addMessages(@Param("id") Long id, @Param("messages") long messages);
+
+    @Modifying(flushAutomatically = true)
+    @Query("DELETE FROM HourlyActivity h WHERE h.chatRefId = :chatRefId AND h.messageCount <= 0")
+    int deleteEmpty(@Param("chatRefId") Long chatRefId);
+
+    @Modifying
+    @Query("""
+            DELETE FROM HourlyActivity h WHERE h.userId = :userId AND h.chatRefId = \
+            (SELECT c.id FROM Chat c WHERE c.userId = :userId AND c.chatId = :chatId)""")
+    void deleteByUserIdAndChatId(@Param("userId") Long userId, @Param("chatId") String chatId);
+}
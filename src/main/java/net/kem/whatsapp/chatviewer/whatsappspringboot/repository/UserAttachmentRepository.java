@@ -0,0 +1,14 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.UserAttachment;
+
+@Repository
+public interface UserAttachmentRepository extends JpaRepository<UserAttachment, Long> {
+
+    List<UserAttachment> findByUserIdAndAttachmentIdIn(Long userId,
+            Collection<Long> attachmentIds);
+}
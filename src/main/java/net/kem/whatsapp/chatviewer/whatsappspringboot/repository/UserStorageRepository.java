@@ -0,0 +1,39 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.repository;
+
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.UserStorage;
+
+@Repository
+public interface UserStorageRepository extends JpaRepository<UserStorage, Long> {
+
+    // Takes the row lock, so that concurrent uploads of one user apply their references one at a
+    // time. A no-op update rather than SELECT ... FOR UPDATE, which databases spell differently.
+    // Locks nothing if the user has no row yet; see insertEmpty.
+    @Modifying
+    @Query("UPDATE UserStorage s SET s.totalBytes = s.totalBytes WHERE s.userId = :userId")
+    int lock(@Param("userId") Long userId);
+
+    // A plain insert, failing on a duplicate key, where save() would merge over a row written
+    // concurrently. Native, as Hibernate aliases the table of an HQL insert, which H2 rejects.
+    @Modifying
+    @Query(value = """
+            INSERT INTO user_storage (user_id, attachment_count, total_bytes) \
+            VALUES (:userId, 0, 0)""", nativeQuery = true)
+    int insertEmpty(@Param("userId") Long userId);
+
+    @Query("SELECT s.totalBytes FROM UserStorage s WHERE s.userId = :userId")
+    Optional<Long> findTotalBytesByUserId(@Param("userId") Long userId);
+
+    // Users who have no storage row yet. Read from users rather than chat_entries, so that once
+    // every user has a row this costs the same however many entries there are.
+    @Query("""
+            SELECT u.id FROM User u \
+            WHERE NOT EXISTS (SELECT s.userId FROM UserStorage s WHERE s.userId = u.id)""")
+    List<Long> findUserIdsWithoutStorage();
+}
@@ -0,0 +1,226 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.DailyActivity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.HourlyActivity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.DailyActivityRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.HourlyActivityRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the activity rollup tables in step with chat_entries. Ingest and deletion pass the entries
+ * they wrote or removed; these are aggregated in memory and the resulting deltas are added to the
+ * rollup rows of the affected chat and days, so the cost depends on the size of the change and
+ * not on the size of the chat. Callers hold the row lock of the chat in the chats table, which
+ * keeps two changes of one chat from inserting the same rollup row.
+ */
+@Slf4j
+@Service
+@Transactional
+public class ActivityRollupService {
+
+    private final DailyActivityRepository dailyActivityRepository;
+    private final HourlyActivityRepository hourlyActivityRepository;
+    private final ChatEntryRepository chatEntryRepository;
+    private final ChatRepository chatRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public ActivityRollupService(DailyActivityRepository dailyActivityRepository,
+            HourlyActivityRepository hourlyActivityRepository,
+            ChatEntryRepository chatEntryRepository, ChatRepository chatRepository,
+            PlatformTransactionManager transactionManager) {
+        this.dailyActivityRepository = dailyActivityRepository;
+        this.hourlyActivityRepository = hourlyActivityRepository;
+        this.chatEntryRepository = chatEntryRepository;
+        this.chatRepository = chatRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    private record DayKey(Long authorId, LocalDate day, ChatEntry.Type type) {
+    }
+
+    /**
+     * Changes to the rollups of one chat: messages and attachments per day key, messages per
+     * weekday and hour (index (weekday - 1) * 24 + hour)
+     */
+    private static final class Delta {
+        private final Map<DayKey, long[]> days = new HashMap<>();
+        private final long[] hours = new long[7 * 24];
+
+        void add(Long authorId, LocalDate day, int hour, ChatEntry.Type type, long messages,
+                long attachments) {
+            long[] counts = days.computeIfAbsent(
+                    new DayKey(authorId, day, type == null ? ChatEntry.Type.UNKNOWN : type),
+                    key -> new long[2]);
+            counts[0] += messages;
+            counts[1] += attachments;
+            hours[(day.getDayOfWeek().getValue() - 1) * 24 + hour] += messages;
+        }
+    }
+
+    /**
+     * Add freshly inserted entries to the rollups
+     */
+    public void recordEntries(Collection<ChatEntryEntity> entries) {
+        apply(entries, 1);
+    }
+
+    /**
+     * Remove deleted entries from the rollups
+     */
+    public void removeEntries(Collection<ChatEntryEntity> entries) {
+        apply(entries, -1);
+    }
+
+    /**
+     * Remove the rollups of a chat. Must run before the chats row is deleted.
+     */
+    public void removeChat(Long userId, String chatId) {
+        dailyActivityRepository.deleteByUserIdAndChatId(userId, chatId);
+        hourlyActivityRepository.deleteByUserIdAndChatId(userId, chatId);
+    }
+
+    /**
+     * Number of distinct authors of a chat, read from the rollups
+     */
+    @Transactional(readOnly = true)
+    public long countAuthors(Long userId, String chatId) {
+        return dailyActivityRepository.countAuthorsByUserIdAndChatId(userId, chatId);
+    }
+
+    /**
+     * Build the rollups of chats uploaded before they existed, one chat per transaction. Any rows
+     * such a chat already has, added by uploads since, are replaced by counts over all its
+     * entries.
+     *
+     * @return the number of chats rebuilt
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int rebuildMissingRollups() {
+        int rebuilt = 0;
+        for (Chat chat : chatRepository.findWithoutActivityRollups()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Deleted or rebuilt by another node since it was listed
+                if (chatRepository.lock(chat.getId()) == 0 || chatRepository
+                        .findById(chat.getId()).map(Chat::getRollupsBuilt).orElse(false)) {
+                    return;
+                }
+                removeChat(chat.getUserId(), chat.getChatId());
+                Delta delta = new Delta();
+                for (Object[] row : chatEntryRepository.countActivityByChatRefId(chat.getId())) {
+                    delta.add((Long) row[0], (LocalDate) row[1], ((Number) row[2]).intValue(),
+                            (ChatEntry.Type) row[3], ((Number) row[4]).longValue(),
+                            ((Number) row[5]).longValue());
+                }
+                merge(chat.getUserId(), chat.getId(), delta);
+                chatRepository.markRollupsBuilt(chat.getId());
+            });
+            rebuilt++;
+        }
+        if (rebuilt > 0) {
+            log.info("Built activity rollups of {} existing chats", rebuilt);
+        }
+        return rebuilt;
+    }
+
+    private void apply(Collection<ChatEntryEntity> entries, int sign) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        Map<Long, List<ChatEntryEntity>> byChat = entries.stream()
+                .filter(e -> e.getChatRefId() != null && e.getAuthorId() != null
+                        && e.getLocalDateTime() != null)
+                .collect(Collectors.groupingBy(ChatEntryEntity::getChatRefId));
+        for (List<ChatEntryEntity> chatEntries : byChat.values()) {
+            Delta delta = new Delta();
+            for (ChatEntryEntity entry : chatEntries) {
+                LocalDateTime time = entry.getLocalDateTime();
+                boolean attachment =
+                        entry.getFileName() != null && !entry.getFileName().isEmpty();
+                delta.add(entry.getAuthorId(), time.toLocalDate(), time.getHour(),
+                        entry.getType(), sign, attachment ? sign : 0);
+            }
+            ChatEntryEntity first = chatEntries.getFirst();
+            merge(first.getUserId(), first.getChatRefId(), delta);
+        }
+    }
+
+    /**
+     * Add a delta to the stored rollups of a chat. Only the rows of the days in the delta are
+     * read, to tell which exist; their counts are changed in place and rows whose message count
+     * drops to zero are deleted.
+     */
+    private void merge(Long userId, Long chatRefId, Delta delta) {
+        if (delta.days.isEmpty()) {
+            return;
+        }
+        LocalDate from = delta.days.keySet().stream().map(DayKey::day).min(LocalDate::compareTo)
+                .orElseThrow();
+        LocalDate to = delta.days.keySet().stream().map(DayKey::day).max(LocalDate::compareTo)
+                .orElseThrow();
+        Map<DayKey, DailyActivity> stored = new HashMap<>();
+        for (DailyActivity row : dailyActivityRepository.findByChatRefIdAndDayBetween(chatRefId,
+                from, to)) {
+            stored.put(new DayKey(row.getAuthorId(), row.getDay(), row.getType()), row);
+        }
+        List<DailyActivity> newDays = new ArrayList<>();
+        boolean removed = false;
+        for (Map.Entry<DayKey, long[]> change : delta.days.entrySet()) {
+            DayKey key = change.getKey();
+            long[] counts = change.getValue();
+            DailyActivity row = stored.get(key);
+            if (row != null) {
+                dailyActivityRepository.addCounts(row.getId(), counts[0], counts[1]);
+            } else if (counts[0] > 0) {
+                newDays.add(DailyActivity.builder().userId(userId).chatRefId(chatRefId)
+                        .authorId(key.authorId()).day(key.day()).type(key.type())
+                        .messageCount(counts[0]).attachmentCount(Math.max(0, counts[1]))
+                        .build());
+            }
+            removed |= counts[0] < 0;
+        }
+        dailyActivityRepository.saveAll(newDays);
+        if (removed) {
+            dailyActivityRepository.deleteEmpty(chatRefId, from, to);
+        }
+
+        Map<Integer, HourlyActivity> storedHours = new HashMap<>();
+        for (HourlyActivity row : hourlyActivityRepository.findByChatRefId(chatRefId)) {
+            storedHours.put((row.getWeekday() - 1) * 24 + row.getHour(), row);
+        }
+        List<HourlyActivity> newHours = new ArrayList<>();
+        removed = false;
+        for (int slot = 0; slot < delta.hours.length; slot++) {
+            long messages = delta.hours[slot];
+            HourlyActivity row = storedHours.get(slot);
+            if (row != null && messages != 0) {
+                hourlyActivityRepository.addMessages(row.getId(), messages);
+            } else if (row == null && messages > 0) {
+                newHours.add(HourlyActivity.builder().userId(userId).chatRefId(chatRefId)
+                        .weekday(slot / 24 + 1).hour(slot % 24).messageCount(messages).build());
+            }
+            removed |= messages < 0;
+        }
+        hourlyActivityRepository.saveAll(newHours);
+        if (removed) {
+            hourlyActivityRepository.deleteEmpty(chatRefId);
+        }
+    }
+}
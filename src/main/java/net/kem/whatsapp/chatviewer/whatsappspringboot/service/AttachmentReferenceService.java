@@ -0,0 +1,212 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.UserAttachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.UserStorage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.UserAttachmentRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.UserStorageRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the user_attachments reference counts and the user_storage counters in step with the
+ * attachments referenced by chat_entries. Ingest and deletion pass the entries they wrote or
+ * removed, so reading the storage used by a user is a primary key lookup.
+ */
+@Slf4j
+@Service
+@Transactional
+public class AttachmentReferenceService {
+
+    private final UserAttachmentRepository userAttachmentRepository;
+    private final UserStorageRepository userStorageRepository;
+    private final ChatEntryRepository chatEntryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate requiresNewTemplate;
+
+    public AttachmentReferenceService(UserAttachmentRepository userAttachmentRepository,
+            UserStorageRepository userStorageRepository, ChatEntryRepository chatEntryRepository,
+            PlatformTransactionManager transactionManager) {
+        this.userAttachmentRepository = userAttachmentRepository;
+        this.userStorageRepository = userStorageRepository;
+        this.chatEntryRepository = chatEntryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate
+                .setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Add the attachments of freshly inserted entries to the references of their users
+     */
+    public void recordEntries(Collection<ChatEntryEntity> entries) {
+        apply(entries, 1);
+    }
+
+    /**
+     * Remove the attachments of deleted entries from the references of their users
+     */
+    public void removeEntries(Collection<ChatEntryEntity> entries) {
+        apply(entries, -1);
+    }
+
+    /**
+     * Remove the attachment references of all entries of a chat. Must run before the entries are
+     * deleted.
+     */
+    public void removeChat(Long userId, String chatId) {
+        Map<Long, Long> references = new HashMap<>();
+        for (Object[] row : chatEntryRepository.countAttachmentReferencesByUserIdAndChatId(userId,
+                chatId)) {
+            references.put((Long) row[0], -((Number) row[1]).longValue());
+        }
+        adjust(userId, references, Map.of());
+    }
+
+    /**
+     * Total size in bytes of the distinct attachments referenced by a user's entries
+     */
+    @Transactional(readOnly = true)
+    public long getTotalBytes(Long userId) {
+        return userStorageRepository.findTotalBytesByUserId(userId).orElse(0L);
+    }
+
+    /**
+     * Build the references and storage counters of users who have no storage row, such as those
+     * whose entries were stored before they existed, one user per transaction. Every user listed
+     * gets a row, even without attachments, so the next startup does not list them again.
+     * <p>
+     * The row is inserted and locked in the same transaction that counts the user's entries, so a
+     * concurrent upload waits for the counts and then adds only its own entries. A user whose row
+     * appeared since the listing is left to whoever created it.
+     *
+     * @return the number of users rebuilt
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int rebuildMissingStorage() {
+        int rebuilt = 0;
+        for (Long userId : userStorageRepository.findUserIdsWithoutStorage()) {
+            try {
+                Boolean built = transactionTemplate.execute(status -> rebuildStorage(userId));
+                if (Boolean.TRUE.equals(built)) {
+                    rebuilt++;
+                }
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Storage of user {} was created concurrently", userId);
+            }
+        }
+        if (rebuilt > 0) {
+            log.info("Built attachment storage accounting of {} existing users", rebuilt);
+        }
+        return rebuilt;
+    }
+
+    private boolean rebuildStorage(Long userId) {
+        if (userStorageRepository.lock(userId) > 0) {
+            return false;
+        }
+        userStorageRepository.insertEmpty(userId);
+        userStorageRepository.lock(userId);
+        Map<Long, Long> references = new HashMap<>();
+        Map<Long, Long> sizes = new HashMap<>();
+        for (Object[] row : chatEntryRepository.countAttachmentReferencesByUserId(userId)) {
+            references.put((Long) row[0], ((Number) row[2]).longValue());
+            sizes.put((Long) row[0], row[1] == null ? 0L : ((Number) row[1]).longValue());
+        }
+        adjust(userId, references, sizes);
+        return true;
+    }
+
+    private void apply(Collection<ChatEntryEntity> entries, int sign) {
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+        Map<Long, Map<Long, Long>> referencesByUser = new HashMap<>();
+        Map<Long, Long> sizes = new HashMap<>();
+        for (ChatEntryEntity entry : entries) {
+            Attachment attachment = entry.getAttachment();
+            if (entry.getUserId() == null || attachment == null || attachment.getId() == null) {
+                continue;
+            }
+            referencesByUser.computeIfAbsent(entry.getUserId(), id -> new HashMap<>())
+                    .merge(attachment.getId(), (long) sign, Long::sum);
+            if (sign > 0) {
+                sizes.putIfAbsent(attachment.getId(),
+                        attachment.getFileSize() == null ? 0L : attachment.getFileSize());
+            }
+        }
+        referencesByUser.forEach((userId, references) -> adjust(userId, references, sizes));
+    }
+
+    /**
+     * Add reference count deltas per attachment id to the rows of a user and update the user's
+     * storage counters. An attachment's size is added when its first reference appears and
+     * subtracted when its last one goes.
+     */
+    private void adjust(Long userId, Map<Long, Long> references, Map<Long, Long> sizes) {
+        if (references.values().stream().allMatch(delta -> delta == 0)) {
+            return;
+        }
+        if (userStorageRepository.lock(userId) == 0) {
+            createStorage(userId);
+            userStorageRepository.lock(userId);
+        }
+        UserStorage storage = userStorageRepository.findById(userId).orElseThrow();
+        Map<Long, UserAttachment> stored = userAttachmentRepository
+                .findByUserIdAndAttachmentIdIn(userId, references.keySet()).stream()
+                .collect(Collectors.toMap(UserAttachment::getAttachmentId, Function.identity()));
+        List<UserAttachment> changed = new ArrayList<>();
+        List<UserAttachment> released = new ArrayList<>();
+        for (Map.Entry<Long, Long> reference : references.entrySet()) {
+            UserAttachment row = stored.get(reference.getKey());
+            if (row == null) {
+                if (reference.getValue() <= 0) {
+                    continue;
+                }
+                row = UserAttachment.builder().userId(userId).attachmentId(reference.getKey())
+                        .fileSize(sizes.getOrDefault(reference.getKey(), 0L)).build();
+                storage.setAttachmentCount(storage.getAttachmentCount() + 1);
+                storage.setTotalBytes(storage.getTotalBytes() + row.getFileSize());
+            }
+            row.setReferenceCount(row.getReferenceCount() + reference.getValue());
+            if (row.getReferenceCount() > 0) {
+                changed.add(row);
+            } else {
+                released.add(row);
+                storage.setAttachmentCount(Math.max(0, storage.getAttachmentCount() - 1));
+                storage.setTotalBytes(Math.max(0, storage.getTotalBytes() - row.getFileSize()));
+            }
+        }
+        userAttachmentRepository.saveAll(changed);
+        userAttachmentRepository.deleteAll(released);
+        userStorageRepository.save(storage);
+    }
+
+    /**
+     * Insert the empty storage row of a user and commit it on its own, so that concurrent first
+     * uploads of the user find a row to lock instead of each inserting one
+     */
+    private void createStorage(Long userId) {
+        try {
+            requiresNewTemplate
+                    .executeWithoutResult(status -> userStorageRepository.insertEmpty(userId));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Storage of user {} was created concurrently", userId);
+        }
+    }
+}
@@ -1,13 +1,27 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryCursor;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryItem;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.AttachmentRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -15,9 +29,23 @@ import lombok.extern.slf4j.Slf4j;
 @Transactional
 public class AttachmentService {
 
+    // Largest gallery page a client may request
+    public static final int MAX_GALLERY_PAGE_SIZE = 500;
+    // Attachments read and updated per transaction when detecting missing media types
+    private static final int MEDIA_DETECTION_BATCH_SIZE = 500;
+
     @Autowired
     private AttachmentRepository attachmentRepository;
 
+    @Autowired
+    private ChatEntryRepository chatEntryRepository;
+
+    @Autowired
+    private ContentStore contentStore;
+
+    @Autowired
+    private AttachmentReferenceService attachmentReferenceService;
+
     /**
      * Save or update attachment
      *
@@ -26,6 +54,31 @@ public class AttachmentService {
      * @return The created or updated attachment
      */
     public Attachment saveAttachment(String hash, Long fileSize) {
+        return saveAttachment(hash, fileSize, null);
+    }
+
+    /**
+     * Save or update attachment
+     *
+     * @param hash The SHA-256 hash of the file content
+     * @param fileSize The size of the file in bytes
+     * @param media The media type detected from the file content, or null if not detected
+     * @return The created or updated attachment
+     */
+    public Attachment saveAttachment(String hash, Long fileSize, MediaInfo media) {
+        return saveAttachment(hash, fileSize, media, null);
+    }
+
+    /**
+     * Save or update attachment
+     *
+     * @param hash The SHA-256 hash of the file content
+     * @param fileSize The size of the file in bytes
+     * @param media The media type detected from the file content, or null if not detected
+     * @param crc32 The CRC-32 of the file content, or null if not computed
+     * @return The created or updated attachment
+     */
+    public Attachment saveAttachment(String hash, Long fileSize, MediaInfo media, Long crc32) {
         // Check if attachment already exists
         Optional<Attachment> existingAttachment = attachmentRepository.findByHash(hash);
         Attachment attachment;
@@ -34,6 +87,12 @@ public class AttachmentService {
             // Update existing attachment timestamp and file size if provided
             attachment = existingAttachment.get();
             attachment.setLastAddedTimestamp(LocalDateTime.now());
+            if (media != null && !MediaInfo.isKnown(attachment.getMimeType())) {
+                setMedia(attachment, media);
+            }
+            if (crc32 != null && attachment.getCrc32() == null) {
+                attachment.setCrc32(crc32);
+            }
             if (fileSize != null) {
                 // Only update file size if it is provided and different from existing
                 if (!attachment.getFileSize().equals(fileSize)) {
@@ -47,7 +106,10 @@ public class AttachmentService {
         } else {
             // Create new attachment
             attachment = Attachment.builder().hash(hash).lastAddedTimestamp(LocalDateTime.now())
-                    .status((byte) 1).fileSize(fileSize).build();
+                    .status((byte) 1).fileSize(fileSize).crc32(crc32).build();
+            if (media != null) {
+                setMedia(attachment, media);
+            }
             attachment = attachmentRepository.save(attachment);
             log.info("Created new attachment with hash: {} and size: {} bytes", hash, fileSize);
         }
@@ -61,6 +123,13 @@ public class AttachmentService {
         return attachmentRepository.findByHash(hash);
     }
 
+    /**
+     * Find the attachments with any of the given hashes
+     */
+    public List<Attachment> findByHashes(List<String> hashes) {
+        return hashes.isEmpty() ? List.of() : attachmentRepository.findByHashIn(hashes);
+    }
+
     /**
      * Find attachment by ID
      */
@@ -80,16 +149,155 @@ public class AttachmentService {
      * isolation by only returning attachments that are referenced in the user's own chat entries.
      */
     public List<Attachment> findAllAttachmentsByUserId(Long userId) {
-        // Get all attachment hashes that belong to this user's chat entries
-        List<String> userAttachmentHashes =
-                attachmentRepository.findAttachmentHashesByUserId(userId);
+        return attachmentRepository.findByUserId(userId);
+    }
 
-        if (userAttachmentHashes.isEmpty()) {
-            return List.of(); // User has no attachments
+    /**
+     * Keyset-paginated gallery of the attachments referenced by a user's entries, newest first,
+     * with one item per referencing entry. Every filter is optional; {@code from} and {@code to}
+     * are inclusive days. Pass the nextCursor of a previous page to continue from it; without a
+     * cursor the first page is returned. The gallery only scrolls forward, so prevCursor is never
+     * set. No COUNT query is run.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed, the size is not between 1 and
+     *         {@link #MAX_GALLERY_PAGE_SIZE} or a range is inverted
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<AttachmentGalleryItem> findGallery(Long userId, String chatId,
+            ChatEntry.Type type, LocalDate from, LocalDate to, Long minSize, Long maxSize,
+            String cursor, int size) {
+        if (size < 1 || size > MAX_GALLERY_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and "
+                    + MAX_GALLERY_PAGE_SIZE + ": " + size);
         }
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Start day " + from + " is after end day " + to);
+        }
+        if (minSize != null && maxSize != null && minSize > maxSize) {
+            throw new IllegalArgumentException(
+                    "Minimum size " + minSize + " is above maximum size " + maxSize);
+        }
+        AttachmentGalleryCursor position = cursor == null || cursor.isBlank() ? null
+                : AttachmentGalleryCursor.decode(cursor);
+        LocalDateTime start = from == null ? null : from.atStartOfDay();
+        LocalDateTime end = to == null ? null : to.plusDays(1).atStartOfDay();
+
+        // One extra row tells whether there is another page
+        Limit limit = Limit.of(size + 1);
+        List<AttachmentGalleryItem> rows;
+        if (position == null) {
+            rows = chatEntryRepository.findGalleryItems(userId, chatId, type, start, end, minSize,
+                    maxSize, limit);
+        } else if (position.getLocalDateTime() == null) {
+            rows = chatEntryRepository.findUntimedGalleryItemsBefore(userId, chatId, type, start,
+                    end, minSize, maxSize, position.getEntryId(), limit);
+        } else {
+            rows = chatEntryRepository.findGalleryItemsBefore(userId, chatId, type, start, end,
+                    minSize, maxSize, position.getLocalDateTime(), position.getEntryId(), limit);
+        }
+        rows = new ArrayList<>(rows);
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows.removeLast();
+        }
+        return CursorPage.<AttachmentGalleryItem>builder().content(rows).size(size)
+                .hasNext(hasNext).hasPrevious(position != null)
+                .nextCursor(hasNext ? AttachmentGalleryCursor.after(rows.getLast()).encode() : null)
+                .build();
+    }
+
+    /**
+     * Media type of the attachment with this hash if one of the user's entries carries it, or
+     * empty if the user has none. Checks ownership and types the content in one indexed query.
+     * Files stored before media types were detected are typed by the entry's file name.
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> findMimeTypeForUser(String hash, Long userId) {
+        return chatEntryRepository
+                .findFileNamesAndMimeTypesByUserIdAndHash(userId, hash, Limit.of(1)).stream()
+                .findFirst().map(row -> MediaInfo.isKnown((String) row[1]) ? (String) row[1]
+                        : MediaInfo.mimeTypeOf((String) row[0]));
+    }
 
-        // Return only the attachments that belong to this user
-        return attachmentRepository.findByHashIn(userAttachmentHashes);
+    /**
+     * Detect the media type of attachments stored before it was detected at ingest, from the
+     * head of their files. Attachments whose file is missing are typed application/octet-stream,
+     * so later runs skip them and a new upload of the file types it; files that could not be read
+     * are retried on the next run.
+     *
+     * @return the number of attachments updated
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int detectMissingMediaTypes() {
+        int updated = 0;
+        long afterId = 0;
+        List<Attachment> batch;
+        do {
+            batch = attachmentRepository.findByMimeTypeIsNullAndIdGreaterThanOrderByIdAsc(afterId,
+                    Limit.of(MEDIA_DETECTION_BATCH_SIZE));
+            Map<Long, String> fileNames = fileNamesOf(batch);
+            List<Attachment> detected = new ArrayList<>();
+            for (Attachment attachment : batch) {
+                afterId = attachment.getId();
+                try {
+                    byte[] head = MediaTypeDetector.readHead(resolveContent(attachment.getHash()));
+                    setMedia(attachment, MediaTypeDetector.detect(head, head.length,
+                            fileNames.get(attachment.getId())));
+                    detected.add(attachment);
+                } catch (NoSuchFileException e) {
+                    log.debug("Cannot detect media type of missing attachment {}",
+                            attachment.getHash());
+                    attachment.setMimeType(MediaInfo.OCTET_STREAM);
+                    detected.add(attachment);
+                } catch (IOException e) {
+                    log.debug("Cannot detect media type of attachment {}: {}",
+                            attachment.getHash(), e.getMessage());
+                }
+            }
+            attachmentRepository.saveAll(detected);
+            updated += detected.size();
+        } while (batch.size() == MEDIA_DETECTION_BATCH_SIZE);
+        if (updated > 0) {
+            log.info("Detected the media type of {} existing attachments", updated);
+        }
+        return updated;
+    }
+
+    /**
+     * The file name of an entry referencing each attachment, for the extension fallback of
+     * detection, as legacy Office files and ASF audio cannot be told apart by content alone
+     */
+    private Map<Long, String> fileNamesOf(List<Attachment> attachments) {
+        Map<Long, String> fileNames = new HashMap<>();
+        if (attachments.isEmpty()) {
+            return fileNames;
+        }
+        for (Object[] row : chatEntryRepository.findFileNamesByAttachmentIdIn(
+                attachments.stream().map(Attachment::getId).toList())) {
+            fileNames.put((Long) row[0], (String) row[1]);
+        }
+        return fileNames;
+    }
+
+    private static void setMedia(Attachment attachment, MediaInfo media) {
+        attachment.setMimeType(media.getMimeType());
+        attachment.setWidth(media.getWidth());
+        attachment.setHeight(media.getHeight());
+        attachment.setDurationMillis(media.getDurationMillis());
+    }
+
+    /**
+     * The stored file with this content hash
+     *
+     * @throws IOException if the file does not exist
+     */
+    public StoredContent resolveContent(String hash) throws IOException {
+        String key = generateFilePath(hash);
+        if (key == null) {
+            throw new NoSuchFileException("File not found for attachment: " + hash);
+        }
+        return contentStore.stat(key).orElseThrow(
+                () -> new NoSuchFileException("File not found for attachment: " + hash));
     }
 
     /**
@@ -115,29 +323,14 @@ public class AttachmentService {
      * Find attachments by status for a specific user
      */
     public List<Attachment> findAttachmentsByStatusAndUserId(Byte status, Long userId) {
-        // Get user's attachment hashes first
-        List<String> userAttachmentHashes =
-                attachmentRepository.findAttachmentHashesByUserId(userId);
-
-        if (userAttachmentHashes.isEmpty()) {
-            return List.of(); // User has no attachments
-        }
-
-        // Get all attachments with the specified status
-        List<Attachment> allAttachmentsWithStatus = attachmentRepository.findByStatus(status);
-
-        // Filter to only include user's attachments
-        return allAttachmentsWithStatus.stream()
-                .filter(att -> userAttachmentHashes.contains(att.getHash())).toList();
+        return attachmentRepository.findByStatusAndUserId(status, userId);
     }
 
     /**
-     * Check if a user owns a specific attachment
+     * Check if a user owns a specific attachment, i.e. one of their chat entries references it
      */
     public boolean userOwnsAttachment(String hash, Long userId) {
-        List<String> userAttachmentHashes =
-                attachmentRepository.findAttachmentHashesByUserId(userId);
-        return userAttachmentHashes.contains(hash);
+        return attachmentRepository.existsByHashAndUserId(hash, userId);
     }
 
     /**
@@ -183,13 +376,11 @@ public class AttachmentService {
     }
 
     /**
-     * Get total file size for attachments belonging to a specific user This calculates the total
-     * size by looking at attachments referenced in user's chat entries
+     * Get total file size of the distinct attachments referenced by a user's chat entries, read
+     * from the per-user storage counters
      */
     public Long getTotalFileSizeForUser(Long userId) {
-        // For now, return the total size of all active attachments
-        // In a production system, you would implement proper user-specific attachment tracking
-        return attachmentRepository.getTotalFileSizeForUser(userId);
+        return attachmentReferenceService.getTotalBytes(userId);
     }
 
     /**
@@ -214,6 +405,6 @@ public class AttachmentService {
         if (hash == null || hash.length() < 6) {
             return null;
         }
-        return hash.substring(0, 3) + "/" + hash.substring(3, 6) + "/" + hash;
+        return FileNamingService.storageKey(hash);
     }
 }
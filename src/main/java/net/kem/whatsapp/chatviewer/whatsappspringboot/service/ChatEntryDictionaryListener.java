@@ -0,0 +1,47 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+
+/**
+ * Translates the author name and chat ID of a chat entry to their dictionary ids before it is
+ * written, and back after it is loaded. The sanitized payload is computed on write as well.
+ */
+@Component
+public class ChatEntryDictionaryListener {
+
+    private static final String UNKNOWN_AUTHOR = "Unknown";
+
+    private final DictionaryService dictionaryService;
+
+    // Lazy: Hibernate asks for the listener while the EntityManagerFactory is still being built
+    public ChatEntryDictionaryListener(@Lazy DictionaryService dictionaryService) {
+        this.dictionaryService = dictionaryService;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void encode(ChatEntryEntity entry) {
+        if (entry.getAuthor() == null || entry.getAuthor().trim().isEmpty()) {
+            entry.setAuthor(UNKNOWN_AUTHOR);
+        }
+        entry.setAuthorId(dictionaryService.getOrCreateAuthorId(entry.getAuthor()));
+        if (entry.getChatId() != null) {
+            entry.setChatRefId(
+                    dictionaryService.getOrCreateChatRefId(entry.getUserId(), entry.getChatId()));
+        }
+        PayloadSanitizer.Result scan = PayloadSanitizer.scan(entry.getPayload());
+        entry.setSanitizedPayload(scan.sanitized());
+        entry.setDetectedMatches(scan.matches());
+    }
+
+    @PostLoad
+    public void decode(ChatEntryEntity entry) {
+        entry.setAuthor(dictionaryService.getAuthorName(entry.getAuthorId()));
+        entry.setChatId(dictionaryService.getChatId(entry.getChatRefId()));
+    }
+}
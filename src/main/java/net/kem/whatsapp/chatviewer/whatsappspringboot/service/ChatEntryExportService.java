@@ -0,0 +1,131 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ExportFormat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes a user's chat entries to a stream as NDJSON or CSV while they are read from a database
+ * cursor. Every entity is detached as soon as it is written, so memory use stays the same however
+ * many entries match, and the first lines leave before the query has found the last ones.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatEntryExportService {
+
+    static final String[] CSV_HEADER =
+            {"id", "chatId", "localDateTime", "author", "type", "fileName", "payload"};
+
+    private final ChatEntryRepository chatEntryRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Write the entries of a user that match the filters, oldest first, to a stream which is left
+     * open. Every filter is optional.
+     *
+     * @return the number of entries written
+     */
+    @Transactional(readOnly = true)
+    public long exportEntries(Long userId, String author, ChatEntry.Type type,
+            LocalDateTime start, LocalDateTime end, ExportFormat format, OutputStream out)
+            throws IOException {
+        long count;
+        try (Stream<ChatEntryEntity> entries =
+                chatEntryRepository.streamForExport(userId, author, type, start, end)) {
+            count = switch (format) {
+                case NDJSON -> writeNdjson(entries.iterator(), out);
+                case CSV -> writeCsv(entries.iterator(), out);
+            };
+        }
+        log.debug("Exported {} chat entries of user {} as {}", count, userId, format);
+        return count;
+    }
+
+    private long writeNdjson(Iterator<ChatEntryEntity> entries, OutputStream out)
+            throws IOException {
+        // The writer flushes when its buffer fills rather than after every entry
+        ObjectWriter writer = objectMapper.writerFor(ChatEntryEntity.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long count = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            while (entries.hasNext()) {
+                ChatEntryEntity entry = entries.next();
+                writer.writeValue(generator, entry);
+                generator.writeRaw('\n');
+                entityManager.detach(entry);
+                if (++count == 1) {
+                    // Send the first line at once instead of when the buffer fills
+                    generator.flush();
+                }
+            }
+        }
+        return count;
+    }
+
+    private long writeCsv(Iterator<ChatEntryEntity> entries, OutputStream out)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writeCsvRecord(writer, (Object[]) CSV_HEADER);
+        writer.flush();
+        long count = 0;
+        while (entries.hasNext()) {
+            ChatEntryEntity entry = entries.next();
+            writeCsvRecord(writer, entry.getId(), entry.getChatId(),
+                    entry.getLocalDateTime() == null ? null
+                            : DateTimeFormatter.ISO_LOCAL_DATE_TIME
+                                    .format(entry.getLocalDateTime()),
+                    entry.getAuthor(), entry.getType(), entry.getFileName(), entry.getPayload());
+            entityManager.detach(entry);
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static void writeCsvRecord(Writer writer, Object... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (fields[i] != null) {
+                writer.write(csvField(fields[i].toString()));
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * A CSV field, quoted when it holds a separator, a quote or a line break
+     */
+    static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
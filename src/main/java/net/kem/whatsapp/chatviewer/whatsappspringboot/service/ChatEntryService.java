@@ -1,24 +1,37 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryCursor;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.FacetedPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntrySpecifications;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -26,14 +39,24 @@ import lombok.extern.slf4j.Slf4j;
 @Transactional
 public class ChatEntryService {
 
+    // Entries deleted per statement when removing many entries of a chat at once
+    private static final int DELETE_BATCH_SIZE = 1000;
+
     private final ChatEntryRepository chatEntryRepository;
     private final FileNamingService fileNamingService;
+    private final ChatService chatService;
+    private final SearchEngine searchEngine;
+    private final ContentStore contentStore;
 
     @Autowired
     public ChatEntryService(ChatEntryRepository chatEntryRepository,
-            FileNamingService fileNamingService) {
+            FileNamingService fileNamingService, ChatService chatService,
+            SearchEngine searchEngine, ContentStore contentStore) {
         this.chatEntryRepository = chatEntryRepository;
         this.fileNamingService = fileNamingService;
+        this.chatService = chatService;
+        this.searchEngine = searchEngine;
+        this.contentStore = contentStore;
     }
 
     /**
@@ -166,14 +189,14 @@ public class ChatEntryService {
      * Get all chat IDs for a user
      */
     public List<String> getChatIdsForUser(Long userId) {
-        return chatEntryRepository.findDistinctChatIdsByUserId(userId);
+        return chatService.getUserChatIds(userId);
     }
 
     /**
      * Delete all entries for a specific chat of a user
      */
     public void deleteByUserIdAndChatId(Long userId, String chatId) {
-        chatEntryRepository.deleteByUserIdAndChatId(userId, chatId);
+        chatService.deleteChat(userId, chatId);
         log.info("Deleted all chat entries for user: {} and chat: {}", userId, chatId);
     }
 
@@ -184,12 +207,32 @@ public class ChatEntryService {
         Optional<ChatEntryEntity> entry = findById(id, userId);
         if (entry.isPresent()) {
             chatEntryRepository.deleteById(id);
+            chatService.recordEntriesRemoved(userId, entry.get().getChatId(),
+                    List.of(entry.get()));
             log.info("Deleted chat entry: {} for user: {}", id, userId);
         } else {
             log.warn("Attempted to delete non-existent chat entry: {} for user: {}", id, userId);
         }
     }
 
+    /**
+     * Delete entries of one chat of a user, as read from it, with a statement per batch of entries
+     * and a single update of the chat's counters, rollups and search index
+     */
+    public void deleteChatEntries(Long userId, String chatId, List<ChatEntryEntity> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Long> ids = entries.stream().map(ChatEntryEntity::getId).toList();
+        for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+            chatEntryRepository.deleteAllByIdInBatch(
+                    ids.subList(from, Math.min(from + DELETE_BATCH_SIZE, ids.size())));
+        }
+        chatService.recordEntriesRemoved(userId, chatId, entries);
+        log.info("Deleted {} chat entries of chat: {} for user: {}", entries.size(), chatId,
+                userId);
+    }
+
     /**
      * Search chat entries with multiple criteria (user-specific)
      */
@@ -198,71 +241,11 @@ public class ChatEntryService {
             LocalDateTime startDate, LocalDateTime endDate, Boolean hasAttachment,
             List<String> chatIds, int page, int size) {
         try {
-            Pageable pageable = PageRequest.of(page, size);
-
-            // Use database-level filtering for better performance and to search all pages
-            Page<ChatEntryEntity> results;
-
-            if (type != null) {
-                // If type is specified, use the specific repository method
-                if (chatIds != null && !chatIds.isEmpty()) {
-                    results = chatEntryRepository.findByUserIdAndChatIdInAndType(userId, chatIds,
-                            type, pageable);
-                } else {
-                    results = chatEntryRepository.findByUserIdAndType(userId, type, pageable);
-                }
-            } else if (author != null && !author.trim().isEmpty()) {
-                // If author is specified, use the specific repository method
-                if (chatIds != null && !chatIds.isEmpty()) {
-                    results = chatEntryRepository.findByUserIdAndChatIdInAndAuthor(userId, chatIds,
-                            author.trim(), pageable);
-                } else {
-                    results = chatEntryRepository.findByUserIdAndAuthor(userId, author.trim(),
-                            pageable);
-                }
-            } else if (startDate != null || endDate != null) {
-                // If date range is specified, use the specific repository method
-                LocalDateTime start = startDate != null ? startDate : LocalDateTime.MIN;
-                LocalDateTime end = endDate != null ? endDate : LocalDateTime.MAX;
-                if (chatIds != null && !chatIds.isEmpty()) {
-                    results = chatEntryRepository.findByUserIdAndChatIdInAndLocalDateTimeBetween(
-                            userId, chatIds, start, end, pageable);
-                } else {
-                    results = chatEntryRepository.findByUserIdAndLocalDateTimeBetween(userId, start,
-                            end, pageable);
-                }
-            } else if (chatIds != null && !chatIds.isEmpty()) {
-                // If only chatIds are specified
-                results = chatEntryRepository.findByUserIdAndChatIdIn(userId, chatIds, pageable);
-            } else {
-                // Default case - get all entries for user
-                results = chatEntryRepository.findByUserId(userId, pageable);
-            }
-
-            // Apply additional filters in memory only for complex combinations
-            // that can't be handled by database queries
-            List<ChatEntryEntity> filteredContent = results.getContent().stream().filter(entry -> {
-                // Filter by hasAttachment (this can't be easily done at database level)
-                if (hasAttachment != null) {
-                    if (hasAttachment) {
-                        if (entry.getPath() == null || entry.getPath().isEmpty()) {
-                            return false;
-                        }
-                    } else {
-                        if (entry.getPath() != null && !entry.getPath().isEmpty()) {
-                            return false;
-                        }
-                    }
-                }
-
-                return true;
-            }).collect(Collectors.toList());
-
-            // Create a new page with filtered content
-            Page<ChatEntryEntity> filteredPage = new org.springframework.data.domain.PageImpl<>(
-                    filteredContent, pageable, results.getTotalElements());
-
-            return sanitizeResults(filteredPage);
+            SearchCriteria criteria = SearchCriteria.builder().author(author).type(type)
+                    .startDate(startDate).endDate(endDate).hasAttachment(hasAttachment)
+                    .chatIds(chatIds).build();
+            return sanitizeResults(
+                    searchEngine.search(userId, criteria, PageRequest.of(page, size)));
         } catch (Exception e) {
             log.error("Error during chat entry search for user: {} - {}", userId, e.getMessage(),
                     e);
@@ -281,19 +264,18 @@ public class ChatEntryService {
     @Transactional(readOnly = true)
     public Page<ChatEntryEntity> searchByKeyword(Long userId, String keyword, List<String> chatIds,
             int page, int size) {
-        try {
-            Pageable pageable = PageRequest.of(page, size);
-
-            Page<ChatEntryEntity> results;
-
-            if (chatIds != null && !chatIds.isEmpty()) {
-                results = chatEntryRepository.searchByUserIdAndChatIdInAndKeyword(userId, chatIds,
-                        keyword, pageable);
-            } else {
-                results = chatEntryRepository.searchByUserIdAndKeyword(userId, keyword, pageable);
-            }
+        return searchByKeyword(userId, keyword, KeywordSearchMode.FULL_TEXT, chatIds, page, size);
+    }
 
-            return sanitizeResults(results);
+    /**
+     * Search chat entries by keyword with the given match mode (user-specific)
+     */
+    @Transactional(readOnly = true)
+    public Page<ChatEntryEntity> searchByKeyword(Long userId, String keyword,
+            KeywordSearchMode mode, List<String> chatIds, int page, int size) {
+        try {
+            return sanitizeResults(searchEngine.searchByKeyword(userId, keyword, mode, chatIds,
+                    PageRequest.of(page, size)));
         } catch (Exception e) {
             log.error("Error during keyword search for user: {} - {}", userId, e.getMessage(), e);
             // Return empty results instead of throwing exception
@@ -309,12 +291,8 @@ public class ChatEntryService {
     public Page<ChatEntryEntity> searchByKeywordInChat(Long userId, String chatId, String keyword,
             int page, int size) {
         try {
-            Pageable pageable = PageRequest.of(page, size);
-
-            Page<ChatEntryEntity> results = chatEntryRepository
-                    .searchByUserIdAndChatIdAndKeyword(userId, chatId, keyword, pageable);
-
-            return sanitizeResults(results);
+            return sanitizeResults(searchEngine.searchByKeyword(userId, keyword,
+                    KeywordSearchMode.FULL_TEXT, List.of(chatId), PageRequest.of(page, size)));
         } catch (Exception e) {
             log.error(
                     "Error during keyword search in chat for user: {}, chat: {}, keyword: {} - {}",
@@ -333,68 +311,10 @@ public class ChatEntryService {
             ChatEntry.Type type, LocalDateTime startDate, LocalDateTime endDate,
             List<String> chatIds, int page, int size) {
         try {
-            Pageable pageable = PageRequest.of(page, size);
-
-            // Start with keyword search if provided
-            Page<ChatEntryEntity> results;
-            if (keyword != null && !keyword.trim().isEmpty()) {
-                if (chatIds != null && !chatIds.isEmpty()) {
-                    results = chatEntryRepository.searchByUserIdAndChatIdInAndKeyword(userId,
-                            chatIds, keyword, pageable);
-                } else {
-                    results =
-                            chatEntryRepository.searchByUserIdAndKeyword(userId, keyword, pageable);
-                }
-            } else {
-                // No keyword, use basic user query
-                if (chatIds != null && !chatIds.isEmpty()) {
-                    results =
-                            chatEntryRepository.findByUserIdAndChatIdIn(userId, chatIds, pageable);
-                } else {
-                    results = chatEntryRepository.findByUserId(userId, pageable);
-                }
-            }
-
-            // Apply additional filters in memory
-            List<ChatEntryEntity> filteredContent = results.getContent().stream().filter(entry -> {
-                // Filter by author
-                if (author != null && !author.trim().isEmpty()) {
-                    if (!entry.getAuthor().equalsIgnoreCase(author.trim())) {
-                        return false;
-                    }
-                }
-
-                // Filter by type
-                if (type != null) {
-                    if (!entry.getType().equals(type)) {
-                        return false;
-                    }
-                }
-
-                // Filter by start date
-                if (startDate != null) {
-                    if (entry.getLocalDateTime() == null
-                            || entry.getLocalDateTime().isBefore(startDate)) {
-                        return false;
-                    }
-                }
-
-                // Filter by end date
-                if (endDate != null) {
-                    if (entry.getLocalDateTime() == null
-                            || entry.getLocalDateTime().isAfter(endDate)) {
-                        return false;
-                    }
-                }
-
-                return true;
-            }).collect(Collectors.toList());
-
-            // Create a new page with filtered content
-            Page<ChatEntryEntity> filteredPage = new org.springframework.data.domain.PageImpl<>(
-                    filteredContent, pageable, results.getTotalElements());
-
-            return sanitizeResults(filteredPage);
+            SearchCriteria criteria = SearchCriteria.builder().keyword(keyword).author(author)
+                    .type(type).startDate(startDate).endDate(endDate).chatIds(chatIds).build();
+            return sanitizeResults(
+                    searchEngine.search(userId, criteria, PageRequest.of(page, size)));
         } catch (Exception e) {
             log.error("Error during advanced search for user: {} - {}", userId, e.getMessage(), e);
             // Return empty results instead of throwing exception
@@ -403,6 +323,100 @@ public class ChatEntryService {
         }
     }
 
+    /**
+     * Search with multiple criteria and count the matches per author, chat, type and month in the
+     * same call (user-specific). Each facet holds at most {@code facetLimit} values.
+     */
+    @Transactional(readOnly = true)
+    public FacetedPage<ChatEntryEntity> facetedSearch(Long userId, String keyword, String author,
+            ChatEntry.Type type, LocalDateTime startDate, LocalDateTime endDate,
+            Boolean hasAttachment, List<String> chatIds, int page, int size, int facetLimit) {
+        SearchCriteria criteria = SearchCriteria.builder().keyword(keyword).author(author)
+                .type(type).startDate(startDate).endDate(endDate).hasAttachment(hasAttachment)
+                .chatIds(chatIds).build();
+        try {
+            Page<ChatEntryEntity> results =
+                    searchEngine.search(userId, criteria, PageRequest.of(page, size));
+            return FacetedPage.<ChatEntryEntity>builder().results(sanitizeResults(results))
+                    .facets(searchEngine.facetCounts(userId, criteria, facetLimit)).build();
+        } catch (Exception e) {
+            log.error("Error during faceted search for user: {} - {}", userId, e.getMessage(), e);
+            // Return empty results instead of throwing exception
+            Pageable pageable = PageRequest.of(page, size);
+            return FacetedPage.<ChatEntryEntity>builder()
+                    .results(new org.springframework.data.domain.PageImpl<>(List.of(), pageable,
+                            0))
+                    .facets(Map.of()).build();
+        }
+    }
+
+    /**
+     * Entries in which a URL, email address, phone number or mention was detected, oldest first
+     * (user-specific). The value is normalized the way detected values are, so a phone number
+     * matches with or without separators. The chat is optional.
+     */
+    @Transactional(readOnly = true)
+    public Page<ChatEntryEntity> findByDetectedValue(Long userId, EntityKind kind, String value,
+            String chatId, int page, int size) {
+        Specification<ChatEntryEntity> spec = Specification.allOf(
+                ChatEntrySpecifications.ofUser(userId),
+                ChatEntrySpecifications.inChats(userId, chatId == null ? null : List.of(chatId)),
+                ChatEntrySpecifications.containsValue(userId, kind,
+                        PayloadSanitizer.normalize(kind, value)));
+        return sanitizeResults(chatEntryRepository.findAll(spec,
+                PageRequest.of(page, size, ChatEntrySpecifications.CHRONOLOGICAL)));
+    }
+
+    /**
+     * Keyset-paginated listing of chat entries in (localDateTime, ordinal, id) order. Every filter
+     * is optional. Pass the nextCursor or prevCursor of a previous page to move from it; without a
+     * cursor the first page is returned. No COUNT query is run. Entries without a timestamp are
+     * not listed.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or the size is not positive
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<ChatEntryEntity> scrollChatEntries(Long userId, String keyword,
+            String author, ChatEntry.Type type, LocalDateTime startDate, LocalDateTime endDate,
+            Boolean hasAttachment, List<String> chatIds, String cursor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + size);
+        }
+        ChatEntryCursor position = cursor == null || cursor.isBlank() ? null
+                : ChatEntryCursor.decode(cursor);
+        boolean forward = position == null || position.isForward();
+
+        SearchCriteria criteria = SearchCriteria.builder().keyword(keyword).author(author)
+                .type(type).startDate(startDate).endDate(endDate).hasAttachment(hasAttachment)
+                .chatIds(chatIds).build();
+        Specification<ChatEntryEntity> spec = ChatEntrySpecifications.matching(userId, criteria)
+                .and(ChatEntrySpecifications.hasTime())
+                .and(ChatEntrySpecifications.pastCursor(position));
+        Sort sort = forward ? ChatEntrySpecifications.CHRONOLOGICAL
+                : ChatEntrySpecifications.CHRONOLOGICAL.reverse();
+
+        // One extra row tells whether there is another page in the scroll direction
+        List<ChatEntryEntity> rows = new ArrayList<>(chatEntryRepository.findBy(spec,
+                query -> query.sortBy(sort).limit(size + 1).all()));
+        boolean hasMore = rows.size() > size;
+        if (hasMore) {
+            rows.removeLast();
+        }
+        if (!forward) {
+            Collections.reverse(rows);
+        }
+
+        boolean hasNext = !rows.isEmpty() && (!forward || hasMore);
+        boolean hasPrevious = !rows.isEmpty() && (forward ? position != null : hasMore);
+        List<ChatEntryEntity> content = rows.stream().map(this::createSanitizedCopy).toList();
+        return CursorPage.<ChatEntryEntity>builder().content(content).size(size).hasNext(hasNext)
+                .hasPrevious(hasPrevious)
+                .nextCursor(hasNext ? ChatEntryCursor.after(content.getLast()).encode() : null)
+                .prevCursor(
+                        hasPrevious ? ChatEntryCursor.before(content.getFirst()).encode() : null)
+                .build();
+    }
+
     /**
      * Find chat entries by author (user-specific)
      */
@@ -476,7 +490,10 @@ public class ChatEntryService {
      * Delete a chat entry by ID
      */
     public void deleteById(Long id) {
+        Optional<ChatEntryEntity> entry = chatEntryRepository.findById(id);
         chatEntryRepository.deleteById(id);
+        entry.ifPresent(e -> chatService.recordEntriesRemoved(e.getUserId(), e.getChatId(),
+                List.of(e)));
     }
 
     /**
@@ -522,17 +539,17 @@ public class ChatEntryService {
         copy.setChatId(entry.getChatId());
         copy.setAuthor(entry.getAuthor());
         copy.setLocalDateTime(entry.getLocalDateTime());
+        copy.setOrdinal(entry.getOrdinal());
         copy.setType(entry.getType());
         copy.setPath(entry.getPath());
         copy.setFileName(entry.getFileName());
         copy.setAttachment(entry.getAttachment());
+        copy.setHighlight(PayloadSanitizer.sanitize(entry.getHighlight()));
 
-        // Sanitize the payload if it exists
-        if (entry.getPayload() != null) {
-            copy.setPayload(sanitizePayload(entry.getPayload()));
-        } else {
-            copy.setPayload(null);
-        }
+        // The sanitized payload is computed at ingest; only entries written before that and not
+        // yet backfilled are sanitized here
+        copy.setPayload(entry.getSanitizedPayload() != null ? entry.getSanitizedPayload()
+                : PayloadSanitizer.sanitize(entry.getPayload()));
 
         return copy;
     }
@@ -549,31 +566,11 @@ public class ChatEntryService {
             return null;
         }
         if (entry.getPayload() != null) {
-            entry.setPayload(sanitizePayload(entry.getPayload()));
+            entry.setPayload(PayloadSanitizer.sanitize(entry.getPayload()));
         }
         return entry;
     }
 
-    /**
-     * Sanitize payload content to remove sensitive information
-     */
-    private String sanitizePayload(String payload) {
-        if (payload == null) {
-            return null;
-        }
-
-        String sanitized = payload;
-        // Remove phone numbers (basic pattern)
-        sanitized = sanitized.replaceAll("\\b\\d{10,15}\\b", "[PHONE_NUMBER]");
-        // Remove email addresses
-        sanitized = sanitized.replaceAll("\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}\\b",
-                "[EMAIL]");
-        // Remove URLs
-        sanitized = sanitized.replaceAll("https?://[^\\s]+", "[URL]");
-
-        return sanitized;
-    }
-
     /**
      * Download attachment for a chat entry (user-specific)
      */
@@ -585,25 +582,41 @@ public class ChatEntryService {
             throw new IOException("Chat entry not found or access denied: " + chatEntryId);
         }
 
-        ChatEntryEntity chatEntry = chatEntryOpt.get();
-
-        // Check if the chat entry has an attachment
-        if (chatEntry.getPath() == null || chatEntry.getPath().isEmpty()) {
-            throw new IOException("No attachment found for chat entry: " + chatEntryId);
-        }
+        return new InputStreamResource(resolveAttachment(chatEntryOpt.get()).open());
+    }
 
-        // Generate the file path using the configured multimedia storage path
-        Path foundFile = fileNamingService.generateFilePathFromPath(chatEntry.getPath());
+    /**
+     * SHA-256 hash of the attachment file of a chat entry, read from its stored path, or null if
+     * the entry has no content-addressed file. Touches neither the database nor the file system.
+     */
+    public String getAttachmentHash(ChatEntryEntity chatEntry) {
+        return fileNamingService.extractHashFromPath(chatEntry.getPath());
+    }
 
-        if (foundFile == null) {
-            throw new IOException("Could not generate file path for: " + chatEntry.getPath());
-        }
+    /**
+     * Media type of the attachment of a chat entry as detected from its content at ingest, or for
+     * files stored before, as guessed from the entry's file name
+     */
+    public String getAttachmentMimeType(ChatEntryEntity chatEntry) {
+        Attachment attachment = chatEntry.getAttachment();
+        String detected = attachment == null ? null : attachment.getMimeType();
+        return MediaInfo.isKnown(detected) ? detected
+                : MediaInfo.mimeTypeOf(chatEntry.getFileName());
+    }
 
-        // Check if the file actually exists
-        if (!Files.exists(foundFile)) {
-            throw new IOException("File not found at path: " + foundFile);
+    /**
+     * The stored attachment file of a chat entry already checked to belong to the user
+     *
+     * @throws IOException if the entry has no attachment or its file does not exist
+     */
+    public StoredContent resolveAttachment(ChatEntryEntity chatEntry) throws IOException {
+        // Check if the chat entry has an attachment
+        if (chatEntry.getPath() == null || chatEntry.getPath().isEmpty()) {
+            throw new IOException("No attachment found for chat entry: " + chatEntry.getId());
         }
 
-        return new FileSystemResource(foundFile.toFile());
+        // The stored path is the key of the file in the content store
+        return contentStore.stat(chatEntry.getPath()).orElseThrow(
+                () -> new NoSuchFileException("File not found at path: " + chatEntry.getPath()));
     }
 }
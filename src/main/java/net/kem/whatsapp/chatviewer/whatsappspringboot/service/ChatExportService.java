@@ -0,0 +1,203 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exports a chat as a ZIP archive laid out like a WhatsApp export, so that it can be uploaded
+ * again: the chat text as {@code WhatsApp Chat with <name>.txt} followed by every attachment file
+ * under its file name. The archive is written straight to the response while the entries are
+ * read from a database cursor and the files are copied from the content store, so heap use does
+ * not grow with the size of the chat and nothing is staged on disk. Only the chat text is written
+ * within a transaction; the files are listed a page at a time, each in a short transaction, and
+ * copied outside of any, so a slow client does not hold a database connection for long.
+ */
+@Slf4j
+@Service
+public class ChatExportService {
+
+    // The timestamp format ChatUploadService parses
+    private static final DateTimeFormatter DATE_TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("M/d/yy, HH:mm");
+    private static final String CHAT_FILE_PREFIX = "WhatsApp Chat with ";
+    // Attachment files listed per transaction
+    private static final int FILE_PAGE_SIZE = 500;
+
+    private final ChatRepository chatRepository;
+    private final ChatEntryRepository chatEntryRepository;
+    private final AttachmentService attachmentService;
+    private final TransactionTemplate readOnlyTemplate;
+
+    public ChatExportService(ChatRepository chatRepository,
+            ChatEntryRepository chatEntryRepository, AttachmentService attachmentService,
+            PlatformTransactionManager transactionManager) {
+        this.chatRepository = chatRepository;
+        this.chatEntryRepository = chatEntryRepository;
+        this.attachmentService = attachmentService;
+        this.readOnlyTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTemplate.setReadOnly(true);
+    }
+
+    /**
+     * File name of the export of a chat, or empty if the user has no such chat
+     */
+    public Optional<String> getExportFileName(Long userId, String chatId) {
+        return chatRepository.findByUserIdAndChatId(userId, chatId)
+                .map(chat -> chatFileBaseName(chat) + ".zip");
+    }
+
+    /**
+     * Write the export of a chat to a stream, which is left open
+     *
+     * @return false if the user has no such chat, in which case nothing is written
+     */
+    public boolean exportChat(Long userId, String chatId, OutputStream out) throws IOException {
+        Optional<Chat> chat = chatRepository.findByUserIdAndChatId(userId, chatId);
+        if (chat.isEmpty()) {
+            return false;
+        }
+        Long chatRefId = chat.get().getId();
+        StreamingZipWriter zip = new StreamingZipWriter(out);
+
+        Writer text = new BufferedWriter(new OutputStreamWriter(
+                zip.addDeflated(chatFileBaseName(chat.get()) + ".txt", LocalDateTime.now()),
+                StandardCharsets.UTF_8), 64 * 1024);
+        long lines;
+        try (text) {
+            // The cursor needs a transaction, which ends as soon as the text is written
+            lines = readOnlyTemplate.execute(status -> {
+                try (Stream<Object[]> rows =
+                        chatEntryRepository.streamExportLinesByChatRefId(chatRefId)) {
+                    long count = 0;
+                    for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                        writeLine(text, (LocalDateTime) row[0], (String) row[1],
+                                (String) row[2], (String) row[3]);
+                        count++;
+                    }
+                    return count;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        long files = 0;
+        long afterId = 0;
+        List<Object[]> page;
+        do {
+            long after = afterId;
+            page = readOnlyTemplate.execute(status -> chatEntryRepository
+                    .findExportFilesByChatRefIdAfter(chatRefId, after, Limit.of(FILE_PAGE_SIZE)));
+            for (Object[] row : page) {
+                afterId = (Long) row[0];
+                if (addFile(zip, (String) row[1], (String) row[2], (Long) row[3],
+                        (LocalDateTime) row[4])) {
+                    files++;
+                }
+            }
+        } while (page.size() == FILE_PAGE_SIZE);
+        zip.finish();
+        log.info("Exported chat {} of user {}: {} messages, {} files", chatId, userId, lines,
+                files);
+        return true;
+    }
+
+    /**
+     * One message in the format of a WhatsApp chat export
+     */
+    static void writeLine(Writer text, LocalDateTime time, String author, String payload,
+            String fileName) throws IOException {
+        if (time != null) {
+            text.write(DATE_TIME_FORMATTER.format(time));
+            text.write(" - ");
+        }
+        if (author != null) {
+            text.write(author);
+            text.write(": ");
+        }
+        if (StringUtils.hasText(fileName)) {
+            text.write(fileName);
+            text.write(" (file attached)");
+            if (StringUtils.hasText(payload)) {
+                text.write('\n');
+            }
+        }
+        if (payload != null) {
+            text.write(payload);
+        }
+        text.write('\n');
+    }
+
+    private boolean addFile(StreamingZipWriter zip, String fileName, String hash, Long crc32,
+            LocalDateTime time) throws IOException {
+        // Entry names must not reach outside the folder the archive is extracted to
+        if (fileName.contains("/") || fileName.contains("\\") || fileName.startsWith("..")) {
+            log.warn("Attachment {} ({}) has no safe entry name, left out of the export",
+                    fileName, hash);
+            return false;
+        }
+        // A file name may appear with different content in one chat; the first one wins
+        if (zip.contains(fileName)) {
+            log.debug("Skipping duplicate file name in export: {}", fileName);
+            return false;
+        }
+        StoredContent content;
+        try {
+            content = attachmentService.resolveContent(hash);
+        } catch (IOException e) {
+            log.warn("Attachment {} ({}) is missing from storage, left out of the export",
+                    fileName, hash);
+            return false;
+        }
+        Optional<Path> file = content.localPath();
+        if (file.isPresent()) {
+            zip.addFile(fileName, time, file.get(), crc32);
+            return true;
+        }
+        // A file in a remote store is read twice if its CRC-32 was not recorded at upload
+        long crc = crc32 != null ? crc32 : crc32(content);
+        try (InputStream in = content.open()) {
+            zip.addStored(fileName, time, content.size(), crc, in);
+        }
+        return true;
+    }
+
+    private static long crc32(StoredContent content) throws IOException {
+        try (CheckedInputStream in = new CheckedInputStream(content.open(), new CRC32())) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return in.getChecksum().getValue();
+        }
+    }
+
+    private static String chatFileBaseName(Chat chat) {
+        String name = StringUtils.hasText(chat.getName()) ? chat.getName() : chat.getChatId();
+        // Keep the name a single path segment
+        name = name.replaceAll("[/\\\\:*?\"<>|]", "_");
+        return name.toLowerCase().startsWith("whatsapp chat") ? name : CHAT_FILE_PREFIX + name;
+    }
+}
@@ -1,11 +1,25 @@
 package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatSummary;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -15,33 +29,88 @@ import lombok.extern.slf4j.Slf4j;
 @Transactional
 public class ChatService {
 
+    // How long the chat summaries of a user are served from memory. Every change made through this
+    // service evicts them at once, so this only bounds how stale they can get otherwise.
+    private static final long SUMMARY_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Users whose chat summaries are kept in memory at most
+    static final int SUMMARY_CACHE_SIZE = 10_000;
+
     private final ChatEntryRepository chatEntryRepository;
+    private final ChatRepository chatRepository;
+    private final DictionaryService dictionaryService;
+    private final SearchEngine searchEngine;
+    private final DetectedEntityService detectedEntityService;
+    private final ActivityRollupService activityRollupService;
+    private final ChatStatisticsService chatStatisticsService;
+    private final AttachmentReferenceService attachmentReferenceService;
+
+    // Least recently read first; an expired eldest entry is dropped on every put, so users who
+    // stopped reading leave the cache even while it is below its size
+    private final Map<Long, CachedSummaries> summaryCache =
+            Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, CachedSummaries> eldest) {
+                    return size() > SUMMARY_CACHE_SIZE || isExpired(eldest.getValue());
+                }
+            });
+
+    private record CachedSummaries(List<ChatSummary> chats, long loadedAt) {
+    }
+
+    private static boolean isExpired(CachedSummaries cached) {
+        return System.nanoTime() - cached.loadedAt() >= SUMMARY_TTL_NANOS;
+    }
 
     /**
      * Get all chat IDs for a user
      */
     public List<String> getUserChatIds(Long userId) {
-        return chatEntryRepository.findDistinctChatIdsByUserId(userId);
+        return chatRepository.findChatIdsByUserId(userId);
+    }
+
+    /**
+     * Get all chats of a user with their counters
+     */
+    public List<Chat> getUserChats(Long userId) {
+        return chatRepository.findByUserIdOrderByChatId(userId);
+    }
+
+    /**
+     * Get the counters of all chats of a user. Read with a single query and cached for a short
+     * while; uploads and deletes evict the cached copy.
+     */
+    @Transactional(readOnly = true)
+    public List<ChatSummary> getChatSummaries(Long userId) {
+        long now = System.nanoTime();
+        CachedSummaries cached = summaryCache.get(userId);
+        if (cached != null) {
+            if (now - cached.loadedAt() < SUMMARY_TTL_NANOS) {
+                return cached.chats();
+            }
+            summaryCache.remove(userId, cached);
+        }
+        List<ChatSummary> chats = List.copyOf(chatRepository.findSummariesByUserId(userId));
+        summaryCache.put(userId, new CachedSummaries(chats, now));
+        return chats;
     }
 
     /**
      * Get chat statistics for a user
      */
     public Map<String, Object> getChatStatistics(Long userId) {
-        List<Object[]> stats = chatEntryRepository.getChatStatisticsByUserId(userId);
+        List<ChatSummary> chats = getChatSummaries(userId);
         Map<String, Object> result = new HashMap<>();
 
-        long totalChats = stats.size();
+        long totalChats = chats.size();
         long totalMessages = 0;
         long totalAttachments = 0;
+        List<Object[]> stats = new ArrayList<>(chats.size());
 
-        for (Object[] stat : stats) {
-            String chatId = (String) stat[0];
-            Long messageCount = (Long) stat[1];
-            Long attachmentCount = (Long) stat[2];
-
-            totalMessages += messageCount;
-            totalAttachments += attachmentCount;
+        for (ChatSummary chat : chats) {
+            totalMessages += chat.getMessageCount();
+            totalAttachments += chat.getAttachmentCount();
+            stats.add(new Object[] {chat.getChatId(), chat.getMessageCount(),
+                    chat.getAttachmentCount()});
         }
 
         result.put("totalChats", totalChats);
@@ -56,15 +125,19 @@ public class ChatService {
      * Get statistics for a specific chat
      */
     public Map<String, Object> getChatStatistics(Long userId, String chatId) {
-        long messageCount = chatEntryRepository.countByUserIdAndChatId(userId, chatId);
-        long attachmentCount = chatEntryRepository.findByUserIdAndChatId(userId, chatId).stream()
-                .filter(entry -> entry.getFileName() != null && !entry.getFileName().isEmpty())
-                .count();
+        Optional<Chat> chat = chatRepository.findByUserIdAndChatId(userId, chatId);
 
         Map<String, Object> result = new HashMap<>();
         result.put("chatId", chatId);
-        result.put("messageCount", messageCount);
-        result.put("attachmentCount", attachmentCount);
+        result.put("messageCount", chat.map(Chat::getMessageCount).orElse(0L));
+        result.put("attachmentCount", chat.map(Chat::getAttachmentCount).orElse(0L));
+        chat.ifPresent(c -> {
+            result.put("name", c.getName());
+            result.put("participantCount", c.getParticipantCount());
+            result.put("firstMessageAt", c.getFirstMessageAt());
+            result.put("lastMessageAt", c.getLastMessageAt());
+            result.put("lastUploadAt", c.getLastUploadAt());
+        });
 
         return result;
     }
@@ -73,7 +146,14 @@ public class ChatService {
      * Delete a chat and all its entries
      */
     public void deleteChat(Long userId, String chatId) {
+        attachmentReferenceService.removeChat(userId, chatId);
         chatEntryRepository.deleteByUserIdAndChatId(userId, chatId);
+        detectedEntityService.removeChat(userId, chatId);
+        activityRollupService.removeChat(userId, chatId);
+        chatRepository.deleteByUserIdAndChatId(userId, chatId);
+        evictCachedStats(userId);
+        dictionaryService.evictChat(userId, chatId);
+        searchEngine.removeChat(userId, chatId);
         log.info("Deleted chat: {} for user: {}", chatId, userId);
     }
 
@@ -81,17 +161,15 @@ public class ChatService {
      * Get chat summary for a user
      */
     public Map<String, Object> getChatSummary(Long userId) {
-        List<String> chatIds = getUserChatIds(userId);
+        List<ChatSummary> chats = getChatSummaries(userId);
         Map<String, Object> summary = new HashMap<>();
 
-        summary.put("totalChats", chatIds.size());
-        summary.put("chatIds", chatIds);
+        summary.put("totalChats", chats.size());
+        summary.put("chatIds", chats.stream().map(ChatSummary::getChatId).toList());
 
-        // Get basic stats for each chat
-        Map<String, Object> chatStats = new HashMap<>();
-        for (String chatId : chatIds) {
-            Map<String, Object> stats = getChatStatistics(userId, chatId);
-            chatStats.put(chatId, stats);
+        Map<String, ChatSummary> chatStats = new LinkedHashMap<>();
+        for (ChatSummary chat : chats) {
+            chatStats.put(chat.getChatId(), chat);
         }
         summary.put("chatStats", chatStats);
 
@@ -102,17 +180,122 @@ public class ChatService {
      * Check if a chat exists for a user
      */
     public boolean chatExists(Long userId, String chatId) {
-        return chatEntryRepository.countByUserIdAndChatId(userId, chatId) > 0;
+        return chatRepository.existsByUserIdAndChatId(userId, chatId);
     }
 
     /**
-     * Get total storage used by a user (approximate)
+     * Make sure a chats row exists for the given chat. Creates an empty one on first upload.
      */
+    public Chat registerChat(Long userId, String chatId, String name) {
+        return chatRepository.findByUserIdAndChatId(userId, chatId).orElseGet(() -> {
+            Chat chat = chatRepository
+                    .save(Chat.builder().userId(userId).chatId(chatId).name(name).build());
+            evictCachedStats(userId);
+            log.debug("Registered chat: {} for user: {}", chatId, userId);
+            return chat;
+        });
+    }
+
+    /**
+     * Add freshly inserted entries to the chat counters
+     */
+    public void recordEntriesAdded(Long userId, String chatId,
+            Collection<ChatEntryEntity> added) {
+        if (added == null || added.isEmpty()) {
+            return;
+        }
+        long attachments = added.stream().filter(ChatService::hasFileName).count();
+        LocalDateTime first = added.stream().map(ChatEntryEntity::getLocalDateTime)
+                .filter(Objects::nonNull).min(LocalDateTime::compareTo).orElse(null);
+        LocalDateTime last = added.stream().map(ChatEntryEntity::getLocalDateTime)
+                .filter(Objects::nonNull).max(LocalDateTime::compareTo).orElse(null);
+
+        chatRepository.addEntries(userId, chatId, added.size(), attachments, first, last);
+        evictCachedStats(userId);
+        detectedEntityService.recordEntries(added);
+        activityRollupService.recordEntries(added);
+        attachmentReferenceService.recordEntries(added);
+        searchEngine.indexEntries(userId, added);
+    }
+
+    /**
+     * Remove deleted entries from the chat counters. The first/last message timestamps are only
+     * recomputed when a removed entry sat on one of them.
+     */
+    public void recordEntriesRemoved(Long userId, String chatId,
+            Collection<ChatEntryEntity> removed) {
+        if (removed == null || removed.isEmpty()) {
+            return;
+        }
+        // Updating the counters first takes the chats row lock, as an upload does, so changes to
+        // one chat reach the rollups and references one at a time
+        long attachments = removed.stream().filter(ChatService::hasFileName).count();
+        chatRepository.removeEntries(userId, chatId, removed.size(), attachments);
+        detectedEntityService.removeEntries(removed);
+        activityRollupService.removeEntries(removed);
+        attachmentReferenceService.removeEntries(removed);
+        searchEngine.removeEntries(userId, removed);
+        List<Object[]> currentBounds = chatRepository.findBoundsByUserIdAndChatId(userId, chatId);
+        if (currentBounds.isEmpty()) {
+            return;
+        }
+        evictCachedStats(userId);
+
+        LocalDateTime first = (LocalDateTime) currentBounds.getFirst()[0];
+        LocalDateTime last = (LocalDateTime) currentBounds.getFirst()[1];
+        boolean boundRemoved =
+                removed.stream().map(ChatEntryEntity::getLocalDateTime).filter(Objects::nonNull)
+                        .anyMatch(time -> time.equals(first) || time.equals(last));
+        if (boundRemoved) {
+            List<Object[]> bounds =
+                    chatEntryRepository.findDateBoundsByUserIdAndChatId(userId, chatId);
+            Object[] row = bounds.isEmpty() ? new Object[2] : bounds.getFirst();
+            chatRepository.updateBounds(userId, chatId, (LocalDateTime) row[0],
+                    (LocalDateTime) row[1]);
+        }
+    }
+
+    /**
+     * Finish an upload: refresh the participant count and the last upload time. Participants are
+     * recounted here, from the activity rollups, rather than on each single-entry delete because a
+     * re-upload already touches the whole chat.
+     */
+    public void recordUpload(Long userId, String chatId) {
+        long participants = activityRollupService.countAuthors(userId, chatId);
+        chatRepository.updateUploadInfo(userId, chatId, (int) participants, LocalDateTime.now());
+        evictCachedStats(userId);
+    }
+
+    /**
+     * Get total storage used by a user: the size of the distinct attachments their entries
+     * reference, read from the storage counters
+     */
+    @Transactional(readOnly = true)
     public long getTotalStorageUsed(Long userId) {
-        // This is a rough estimate - in a real implementation you might want to track actual file
-        // sizes
-        long totalEntries = chatEntryRepository.countByUserId(userId);
-        // Assume average entry size of 500 bytes
-        return totalEntries * 500;
+        return attachmentReferenceService.getTotalBytes(userId);
+    }
+
+    /**
+     * Drop the cached chat summaries and statistics of a user, and again once the current
+     * transaction commits so that a read running concurrently cannot put back the state from
+     * before the change
+     */
+    private void evictCachedStats(Long userId) {
+        summaryCache.remove(userId);
+        chatStatisticsService.evictUser(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            summaryCache.remove(userId);
+                            chatStatisticsService.evictUser(userId);
+                        }
+                    });
+        }
+    }
+
+    private static boolean hasFileName(ChatEntryEntity entry) {
+        return entry.getFileName() != null && !entry.getFileName().isEmpty();
     }
 }
@@ -0,0 +1,148 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ActivityStats;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.StatsInterval;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryStatsRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Aggregate statistics of chat entries, computed by the database over the full data set. The
+ * per-type and per-author counts are cached per user until {@link #evictUser} is called on ingest
+ * or deletion.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class ChatStatisticsService {
+
+    // Upper bound on the age of a cached count, for changes not made through ChatService
+    private static final long CACHE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Distinct chat and date range combinations remembered per user
+    private static final int CACHE_SIZE_PER_USER = 32;
+    // Users whose counts are kept in memory at most
+    static final int CACHED_USERS = 10_000;
+
+    private final ChatEntryStatsRepository chatEntryStatsRepository;
+
+    // Least recently read first; an expired eldest user is dropped on every put, so users who
+    // stopped reading leave the cache even while it is below its size
+    private final Map<Long, UserCounts> countCache =
+            Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UserCounts> eldest) {
+                    return size() > CACHED_USERS
+                            || System.nanoTime() - eldest.getValue().loadedAt >= CACHE_TTL_NANOS;
+                }
+            });
+
+    private enum Dimension {
+        TYPE, AUTHOR
+    }
+
+    private record CountKey(Dimension dimension, String chatId, LocalDate from, LocalDate to,
+            int limit) {
+    }
+
+    private record CachedCounts(Map<?, Long> counts, long loadedAt) {
+    }
+
+    /**
+     * Cached counts of one user, and when the latest of them was loaded
+     */
+    private static final class UserCounts {
+        private final Map<CountKey, CachedCounts> counts = lruCache();
+        private volatile long loadedAt = System.nanoTime();
+    }
+
+    /**
+     * Activity histogram, heatmap and author and type breakdowns of a user, or of one of their
+     * chats when {@code chatId} is set
+     *
+     * @throws IllegalArgumentException if the author limit is negative
+     */
+    public ActivityStats getActivityStats(Long userId, String chatId, StatsInterval interval,
+            int authorLimit) {
+        if (authorLimit < 0) {
+            throw new IllegalArgumentException("Author limit must not be negative: " + authorLimit);
+        }
+        return chatEntryStatsRepository.countActivity(userId, chatId,
+                interval == null ? StatsInterval.DAY : interval, authorLimit);
+    }
+
+    /**
+     * Number of messages of every type, optionally of one chat and of the days between
+     * {@code from} and {@code to} inclusive
+     *
+     * @throws IllegalArgumentException if {@code from} is after {@code to}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<ChatEntry.Type, Long> countByType(Long userId, String chatId, LocalDate from,
+            LocalDate to) {
+        checkRange(from, to);
+        return (Map<ChatEntry.Type, Long>) cached(userId,
+                new CountKey(Dimension.TYPE, chatId, from, to, 0),
+                () -> chatEntryStatsRepository.countByType(userId, chatId, from, to));
+    }
+
+    /**
+     * Number of messages of the {@code limit} most active authors, optionally of one chat and of
+     * the days between {@code from} and {@code to} inclusive
+     *
+     * @throws IllegalArgumentException if the limit is negative or {@code from} is after {@code to}
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Long> countByAuthor(Long userId, String chatId, LocalDate from,
+            LocalDate to, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Author limit must not be negative: " + limit);
+        }
+        checkRange(from, to);
+        return (Map<String, Long>) cached(userId,
+                new CountKey(Dimension.AUTHOR, chatId, from, to, limit),
+                () -> chatEntryStatsRepository.countByAuthor(userId, chatId, from, to, limit));
+    }
+
+    /**
+     * Forget the cached counts of a user after their entries changed
+     */
+    public void evictUser(Long userId) {
+        countCache.remove(userId);
+    }
+
+    private Map<?, Long> cached(Long userId, CountKey key, Supplier<Map<?, Long>> loader) {
+        long now = System.nanoTime();
+        UserCounts userCounts = countCache.computeIfAbsent(userId, id -> new UserCounts());
+        CachedCounts cached = userCounts.counts.get(key);
+        if (cached != null && now - cached.loadedAt() < CACHE_TTL_NANOS) {
+            return cached.counts();
+        }
+        Map<?, Long> counts = Collections.unmodifiableMap(loader.get());
+        userCounts.counts.put(key, new CachedCounts(counts, now));
+        userCounts.loadedAt = now;
+        return counts;
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Start day " + from + " is after end day " + to);
+        }
+    }
+
+    private static Map<CountKey, CachedCounts> lruCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CountKey, CachedCounts> eldest) {
+                return size() > CACHE_SIZE_PER_USER;
+            }
+        });
+    }
+}
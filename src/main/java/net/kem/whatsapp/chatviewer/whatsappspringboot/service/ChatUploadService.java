@@ -27,15 +27,19 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -57,8 +61,10 @@ public class ChatUploadService {
 
     private final ChatEntryService chatEntryService;
     private final ChatService chatService;
-    private final FileNamingService fileNamingService;
+    private final ContentStore contentStore;
     private final AttachmentService attachmentService;
+    private final ThumbnailService thumbnailService;
+    private final TransactionTemplate transactionTemplate;
 
     // Progress tracking for async uploads
     private final ConcurrentHashMap<String, SseEmitter> progressEmitters =
@@ -167,7 +173,8 @@ public class ChatUploadService {
 
             // Save to database
             List<ChatEntryEntity> savedEntries = performIncrementalUpdate(
-                    new LinkedHashSet<>(deduplicatedEntries), userId, chatId, filenameToHashMap);
+                    new LinkedHashSet<>(deduplicatedEntries), userId, chatId,
+                    file.getOriginalFilename(), filenameToHashMap);
 
             resultBuilder.totalEntries(savedEntries.size())
                     .totalAttachments(filenameToHashMap.size()).success(true);
@@ -221,6 +228,7 @@ public class ChatUploadService {
 
             Set<ChatEntry> chatEntries = new LinkedHashSet<>(512);
             Map<String, String> filenameToChecksum = new HashMap<>();
+            Map<String, ChatEntry.Type> filenameToType = new HashMap<>();
             List<String> extractedFiles = new ArrayList<>();
 
             try (ZipInputStream zis = new ZipInputStream(
@@ -239,9 +247,10 @@ public class ChatUploadService {
                             entryCount++;
                         } else {
                             // Process multimedia file
-                            String contentHash = processMultimediaFile(zis, entryFileName, userId);
-                            if (contentHash != null) {
-                                filenameToChecksum.put(entryFileName, contentHash);
+                            StoredMedia stored = processMultimediaFile(zis, entryFileName, userId);
+                            if (stored != null) {
+                                filenameToChecksum.put(entryFileName, stored.hash());
+                                filenameToType.put(entryFileName, stored.type());
                             }
                         }
                     } catch (Exception e) {
@@ -264,14 +273,19 @@ public class ChatUploadService {
                     userId, chatEntries.size());
             List<ChatEntry> deduplicatedEntries = deduplicateEntries(new ArrayList<>(chatEntries));
             log.info("After deduplication: {} unique entries", deduplicatedEntries.size());
+            applyDetectedTypes(deduplicatedEntries, filenameToType);
 
             log.info("Processed ZIP file for user: {} - {} chat entries, {} attachments", userId,
                     deduplicatedEntries.size(), filenameToChecksum.size());
 
             // Save to database
+            // This path runs on a background thread without a surrounding transaction, so the
+            // entries and the chat counters are committed together here
             log.info("Starting database save for user: {} and chat: {}", userId, chatId);
-            List<ChatEntryEntity> savedEntries = performIncrementalUpdate(
-                    new LinkedHashSet<>(deduplicatedEntries), userId, chatId, filenameToChecksum);
+            List<ChatEntryEntity> savedEntries =
+                    transactionTemplate.execute(status -> performIncrementalUpdate(
+                            new LinkedHashSet<>(deduplicatedEntries), userId, chatId, fileName,
+                            filenameToChecksum));
 
             resultBuilder.totalEntries(savedEntries.size())
                     .totalAttachments(filenameToChecksum.size()).extractedFiles(extractedFiles)
@@ -334,6 +348,7 @@ public class ChatUploadService {
 
             Set<ChatEntry> chatEntries = new LinkedHashSet<>(512);
             Map<String, String> filenameToChecksum = new HashMap<>();
+            Map<String, ChatEntry.Type> filenameToType = new HashMap<>();
             List<String> extractedFiles = new ArrayList<>();
 
             try (ZipInputStream zis =
@@ -352,9 +367,10 @@ public class ChatUploadService {
                             entryCount++;
                         } else {
                             // Process multimedia file
-                            String contentHash = processMultimediaFile(zis, fileName, userId);
-                            if (contentHash != null) {
-                                filenameToChecksum.put(fileName, contentHash);
+                            StoredMedia stored = processMultimediaFile(zis, fileName, userId);
+                            if (stored != null) {
+                                filenameToChecksum.put(fileName, stored.hash());
+                                filenameToType.put(fileName, stored.type());
                             }
                         }
                     } catch (Exception e) {
@@ -375,6 +391,7 @@ public class ChatUploadService {
                     userId, chatEntries.size());
             List<ChatEntry> deduplicatedEntries = deduplicateEntries(new ArrayList<>(chatEntries));
             log.info("After deduplication: {} unique entries", deduplicatedEntries.size());
+            applyDetectedTypes(deduplicatedEntries, filenameToType);
 
             log.info("Processed ZIP file for user: {} - {} chat entries, {} attachments", userId,
                     deduplicatedEntries.size(), filenameToChecksum.size());
@@ -382,7 +399,8 @@ public class ChatUploadService {
             // Save to database
             log.info("Starting database save for user: {} and chat: {}", userId, chatId);
             List<ChatEntryEntity> savedEntries = performIncrementalUpdate(
-                    new LinkedHashSet<>(deduplicatedEntries), userId, chatId, filenameToChecksum);
+                    new LinkedHashSet<>(deduplicatedEntries), userId, chatId,
+                    file.getOriginalFilename(), filenameToChecksum);
 
             resultBuilder.totalEntries(savedEntries.size())
                     .totalAttachments(filenameToChecksum.size()).extractedFiles(extractedFiles)
@@ -446,10 +464,19 @@ public class ChatUploadService {
         }
     }
 
+    /**
+     * Content hash and detected media type of a stored multimedia file
+     */
+    private record StoredMedia(String hash, MediaInfo media) {
+        ChatEntry.Type type() {
+            return MediaInfo.entryTypeOf(media.getMimeType());
+        }
+    }
+
     /**
      * Process multimedia file from ZIP stream
      */
-    private String processMultimediaFile(ZipInputStream zis, String fileName, Long userId) {
+    private StoredMedia processMultimediaFile(ZipInputStream zis, String fileName, Long userId) {
         log.debug("Processing multimedia file: {} for user: {}", fileName, userId);
 
         Path tempFile = null;
@@ -461,6 +488,11 @@ public class ChatUploadService {
 
             // Stream-based hash calculation to avoid loading entire file into memory
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // Kept with the attachment so that exports can write its ZIP entry header up front
+            CRC32 crc = new CRC32();
+            // The start of the file, kept for media type detection
+            byte[] head = new byte[MediaTypeDetector.HEAD_BYTES];
+            int headLength = 0;
 
             // Start with ByteArrayOutputStream, switch to temp file if needed
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -479,6 +511,12 @@ public class ChatUploadService {
 
                 // Update hash calculation
                 digest.update(buffer, 0, bytesRead);
+                crc.update(buffer, 0, bytesRead);
+                if (headLength < head.length) {
+                    int copied = Math.min(bytesRead, head.length - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copied);
+                    headLength += copied;
+                }
 
                 // Handle memory vs file storage
                 if (!usingTempFile && baos.size() + bytesRead > MEMORY_THRESHOLD) {
@@ -520,43 +558,25 @@ public class ChatUploadService {
             // Convert hash to hex string efficiently
             String contentHash = bytesToHex(digest.digest());
 
-            // Determine final file path
-            Path finalFilePath = fileNamingService.generateFilePathFromHash(contentHash, fileName);
-            boolean finalFileExists = Files.exists(finalFilePath);
-
-            if (finalFileExists) {
+            // Store the file unless the same content is stored already; a temp file may be moved
+            // into the store, and is otherwise cleaned up in the finally block
+            String storageKey = FileNamingService.storageKey(contentHash);
+            boolean stored = usingTempFile ? contentStore.putIfAbsent(storageKey, tempFile)
+                    : contentStore.putIfAbsent(storageKey, baos.toByteArray());
+            if (stored) {
+                log.info("Stored multimedia file: {} as {} (size: {} bytes)", fileName,
+                        storageKey, totalBytes);
+            } else {
                 log.debug("File already exists, skipping save: {} (hash: {})", fileName,
                         contentHash);
-                // Temp file will be cleaned up in finally block
-            } else {
-                // Final file doesn't exist, we need to save it
-                if (usingTempFile) {
-                    // Rename temp file to final location
-                    try {
-                        // Ensure parent directory exists
-                        Path parentDir = finalFilePath.getParent();
-                        if (parentDir != null && !Files.exists(parentDir)) {
-                            Files.createDirectories(parentDir);
-                            log.debug("Created directory: {}", parentDir);
-                        }
-
-                        Files.move(tempFile, finalFilePath);
-                        tempFile = null; // Successfully moved - prevent cleanup in finally block
-                        log.info("Moved temp file to final location: {} -> {} (size: {} bytes)",
-                                fileName, finalFilePath, totalBytes);
-                    } catch (IOException e) {
-                        log.error("Failed to move temp file to final location: {} -> {}", tempFile,
-                                finalFilePath, e);
-                        throw new RuntimeException("Failed to move temp file", e);
-                    }
-                } else {
-                    // Save from memory
-                    saveFileToSystem(finalFilePath, baos.toByteArray(), fileName, totalBytes);
-                }
             }
             // Save attachment information to database (idempotent operation)
-            saveAttachmentToDatabase(contentHash, totalBytes, fileName, userId);
-            return contentHash;
+            MediaInfo media = MediaTypeDetector.detect(head, headLength, fileName);
+            saveAttachmentToDatabase(contentHash, totalBytes, media, crc.getValue(), fileName,
+                    userId);
+            // Make the preview in the background while the upload goes on
+            thumbnailService.scheduleThumbnail(contentHash, media.getMimeType());
+            return new StoredMedia(contentHash, media);
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 not available", e);
         } catch (Exception e) {
@@ -593,40 +613,15 @@ public class ChatUploadService {
     }
 
 
-    /**
-     * Save file to filesystem with proper error handling
-     */
-    private void saveFileToSystem(Path filePath, byte[] fileContent, String fileName,
-            int totalBytes) {
-        try {
-            // Create parent directories if they don't exist
-            Path parentDir = filePath.getParent();
-            if (parentDir != null && !Files.exists(parentDir)) {
-                Files.createDirectories(parentDir);
-                log.debug("Created directory: {}", parentDir);
-            }
-
-            // Write the file content atomically
-            Files.write(filePath, fileContent);
-            log.info("Saved multimedia file: {} to path: {} (size: {} bytes)", fileName, filePath,
-                    totalBytes);
-
-        } catch (Exception e) {
-            log.error("Failed to save multimedia file to filesystem: {} - {}", fileName,
-                    e.getMessage());
-            // Don't throw exception, continue processing
-        }
-    }
-
     /**
      * Save attachment information to database with proper error handling
      */
-    private void saveAttachmentToDatabase(String contentHash, int totalBytes, String fileName,
-            Long userId) {
+    private void saveAttachmentToDatabase(String contentHash, int totalBytes, MediaInfo media,
+            long crc32, String fileName, Long userId) {
         try {
-            attachmentService.saveAttachment(contentHash, (long) totalBytes);
-            log.debug("Saved attachment: {} with hash: {} and size: {} bytes for user: {}",
-                    fileName, contentHash, totalBytes, userId);
+            attachmentService.saveAttachment(contentHash, (long) totalBytes, media, crc32);
+            log.debug("Saved attachment: {} with hash: {}, size: {} bytes, type: {} for user: {}",
+                    fileName, contentHash, totalBytes, media.getMimeType(), userId);
         } catch (Exception e) {
             log.error("Failed to save attachment to database: {} - {}", fileName, e.getMessage());
             // Don't throw exception, continue processing
@@ -635,25 +630,35 @@ public class ChatUploadService {
 
     /**
      * Perform incremental update of chat entries, removing entries that are no longer present and
-     * adding new ones
+     * adding new ones. The chat's counters in the chats table are updated in the same transaction.
      */
     private List<ChatEntryEntity> performIncrementalUpdate(Set<ChatEntry> newEntries, Long userId,
-            String chatId, Map<String, String> filenameToHashMap) {
+            String chatId, String originalFileName, Map<String, String> filenameToHashMap) {
         log.info("Performing incremental update for {} entries, user: {}, chat: {}",
                 newEntries.size(), userId, chatId);
 
+        // Remember each entry's position in the file so that messages sharing a timestamp keep
+        // their original order
+        int ordinal = 0;
+        for (ChatEntry entry : newEntries) {
+            entry.setOrdinal(ordinal++);
+        }
+
         // Check if this chat already exists
         boolean chatExists = chatService.chatExists(userId, chatId);
+        List<ChatEntryEntity> savedEntries;
 
         if (chatExists) {
             log.info("Chat already exists for user: {} and chat: {}, performing incremental update",
                     userId, chatId);
-            return performIncrementalUpdateForExistingChat(newEntries, userId, chatId,
+            savedEntries = performIncrementalUpdateForExistingChat(newEntries, userId, chatId,
                     filenameToHashMap);
         } else {
             log.info("New chat for user: {} and chat: {}, performing bulk insert", userId, chatId);
+            chatService.registerChat(userId, chatId, chatNameFromFileName(originalFileName));
             try {
-                return performBulkInsertForNewChat(newEntries, userId, chatId, filenameToHashMap);
+                savedEntries =
+                        performBulkInsertForNewChat(newEntries, userId, chatId, filenameToHashMap);
             } catch (Exception e) {
                 log.error(
                         "Bulk insert failed in performIncrementalUpdate for user: {} and chat: {} - {}",
@@ -661,6 +666,21 @@ public class ChatUploadService {
                 throw e; // Re-throw to ensure error is propagated
             }
         }
+
+        chatService.recordEntriesAdded(userId, chatId, savedEntries);
+        chatService.recordUpload(userId, chatId);
+        return savedEntries;
+    }
+
+    /**
+     * Human-readable chat name: the uploaded filename without its extension
+     */
+    private String chatNameFromFileName(String originalFileName) {
+        if (originalFileName == null) {
+            return null;
+        }
+        int dot = originalFileName.lastIndexOf('.');
+        return dot > 0 ? originalFileName.substring(0, dot) : originalFileName;
     }
 
     /**
@@ -772,7 +792,8 @@ public class ChatUploadService {
             // Convert to ChatEntry for bulk save (since saveChatEntries expects ChatEntry objects)
             ChatEntry entryToSave = ChatEntry.builder().localDateTime(entry.getLocalDateTime())
                     .author(entry.getAuthor()).payload(entry.getPayload())
-                    .fileName(entry.getFileName()).type(entry.getType()).build();
+                    .fileName(entry.getFileName()).type(entry.getType())
+                    .ordinal(entry.getOrdinal()).build();
 
             entriesToSave.add(entryToSave);
         }
@@ -786,6 +807,7 @@ public class ChatUploadService {
                     e.getMessage());
             throw e; // Re-throw to ensure error is propagated
         }
+        linkAttachments(savedEntries, filenameToHashMap);
 
         log.info(
                 "Bulk insert completed for new chat - user: {}, chat: {}, saved: {} entries, skipped: {} duplicates",
@@ -794,6 +816,32 @@ public class ChatUploadService {
         return savedEntries;
     }
 
+    /**
+     * Link bulk-inserted entries to the attachments uploaded with them, so that they are counted
+     * in the user's storage. All attachments are looked up in one query; the entries are managed,
+     * so the links are written when the upload transaction flushes.
+     */
+    private void linkAttachments(List<ChatEntryEntity> entries,
+            Map<String, String> filenameToHashMap) {
+        if (entries == null || filenameToHashMap.isEmpty()) {
+            return;
+        }
+        Map<String, Attachment> attachments = new HashMap<>();
+        for (Attachment attachment : attachmentService
+                .findByHashes(new ArrayList<>(filenameToHashMap.values()))) {
+            attachments.put(attachment.getHash(), attachment);
+        }
+        for (ChatEntryEntity entity : entries) {
+            String hash = entity.getFileName() == null ? null
+                    : filenameToHashMap.get(entity.getFileName());
+            Attachment attachment = hash == null ? null : attachments.get(hash);
+            if (attachment != null) {
+                entity.setAttachment(attachment);
+                entity.setPath(attachmentService.generateFilePath(hash));
+            }
+        }
+    }
+
     /**
      * Remove chat entries that are no longer present in the new zip file
      */
@@ -813,8 +861,7 @@ public class ChatUploadService {
                     "Found {} existing entries for user: {} and chat: {}, checking for obsolete entries",
                     existingEntries.size(), userId, chatId);
 
-            int removedCount = 0;
-            List<Long> entriesToRemove = new ArrayList<>();
+            List<ChatEntryEntity> entriesToRemove = new ArrayList<>();
 
             // Check each existing entry to see if it's still present in the new zip
             for (ChatEntryEntity existingEntry : existingEntries) {
@@ -822,22 +869,19 @@ public class ChatUploadService {
                         .anyMatch(newEntry -> isSameEntry(existingEntry, newEntry));
 
                 if (!stillExists) {
-                    entriesToRemove.add(existingEntry.getId());
-                    removedCount++;
+                    entriesToRemove.add(existingEntry);
                 }
             }
 
             // Remove obsolete entries
             if (!entriesToRemove.isEmpty()) {
-                log.info("Removing {} obsolete entries for user: {} and chat: {}", removedCount,
-                        userId, chatId);
+                log.info("Removing {} obsolete entries for user: {} and chat: {}",
+                        entriesToRemove.size(), userId, chatId);
 
-                for (Long entryId : entriesToRemove) {
-                    chatEntryService.deleteById(entryId, userId);
-                }
+                chatEntryService.deleteChatEntries(userId, chatId, entriesToRemove);
 
                 log.info("Successfully removed {} obsolete entries for user: {} and chat: {}",
-                        removedCount, userId, chatId);
+                        entriesToRemove.size(), userId, chatId);
             } else {
                 log.info("No obsolete entries found for user: {} and chat: {}", userId, chatId);
             }
@@ -929,24 +973,31 @@ public class ChatUploadService {
     }
 
     /**
-     * Determine message type based on content and attachment presence
+     * Determine message type based on content and attachment presence. The type of an entry
+     * whose attachment is in the upload is replaced by the one detected from the file content.
      */
     private ChatEntry.Type determineMessageType(boolean hasAttachment, String content) {
         if (!hasAttachment) {
             return ChatEntry.Type.TEXT;
         }
+        return MediaInfo.entryTypeOfFileName(content);
+    }
 
-        String lowerContent = content.toLowerCase();
-        if (lowerContent.matches(".*\\.(jpg|jpeg|png|gif|bmp|webp)$")) {
-            return ChatEntry.Type.IMAGE;
-        } else if (lowerContent.matches(".*\\.(mp4|avi|mov|wmv|flv|webm|mkv)$")) {
-            return ChatEntry.Type.VIDEO;
-        } else if (lowerContent.matches(".*\\.(mp3|wav|ogg|m4a|aac|opus)$")) {
-            return ChatEntry.Type.AUDIO;
-        } else if (lowerContent.matches(".*\\.(pdf|doc|docx|xls|xlsx|ppt|pptx|txt|rtf)$")) {
-            return ChatEntry.Type.DOCUMENT;
-        } else {
-            return ChatEntry.Type.FILE;
+    /**
+     * Set the message type of entries whose attachment is in the upload to the one detected from
+     * the content of the file
+     */
+    private void applyDetectedTypes(List<ChatEntry> entries,
+            Map<String, ChatEntry.Type> filenameToType) {
+        if (filenameToType.isEmpty()) {
+            return;
+        }
+        for (ChatEntry entry : entries) {
+            ChatEntry.Type type =
+                    entry.getFileName() == null ? null : filenameToType.get(entry.getFileName());
+            if (type != null) {
+                entry.setType(type);
+            }
         }
     }
 
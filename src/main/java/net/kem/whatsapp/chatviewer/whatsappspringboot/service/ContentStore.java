@@ -0,0 +1,71 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Storage of content-addressed files. Keys are relative paths such as {@code abc/def/<hash>}, as
+ * kept in {@code chat_entries.path}; a file under a key never changes once stored, so a store
+ * only ever adds files that are not there yet. The local file system is the default; an object
+ * store lets several nodes share the files without a shared file system.
+ */
+public interface ContentStore {
+
+    /**
+     * Store a file under a key unless one is already stored there. The source file may be moved
+     * into the store, so the caller must not rely on it afterwards.
+     *
+     * @return true if the file was stored, false if the key was already taken
+     */
+    boolean putIfAbsent(String key, Path source) throws IOException;
+
+    /**
+     * Store content under a key unless a file is already stored there
+     *
+     * @return true if the content was stored, false if the key was already taken
+     */
+    boolean putIfAbsent(String key, byte[] content) throws IOException;
+
+    /**
+     * Size and modification time of the file under a key, or empty if there is none
+     */
+    Optional<StoredContent> stat(String key) throws IOException;
+
+    /**
+     * Whether a file is stored under a key
+     */
+    default boolean exists(String key) throws IOException {
+        return stat(key).isPresent();
+    }
+
+    /**
+     * Read the file under a key
+     *
+     * @throws java.nio.file.NoSuchFileException if there is none
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Read {@code length} bytes of the file under a key, starting at {@code offset}
+     *
+     * @throws java.nio.file.NoSuchFileException if there is none
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    /**
+     * Remove the file under a key
+     *
+     * @return false if there was none
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * The local file under a key, for callers that can hand a file to the kernel instead of
+     * copying it, or empty if the store does not keep its files on the local file system
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
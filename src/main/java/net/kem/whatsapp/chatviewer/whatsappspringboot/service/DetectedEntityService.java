@@ -0,0 +1,167 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.DetectedEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityValueCount;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.DetectedEntityRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the detected_entities side table in step with chat_entries and answers lookups on it. The
+ * values are found by {@link PayloadSanitizer} when an entry is written; this service only stores
+ * them.
+ */
+@Slf4j
+@Service
+@Transactional
+public class DetectedEntityService {
+
+    private static final int BACKFILL_BATCH_SIZE = 500;
+
+    private final DetectedEntityRepository detectedEntityRepository;
+    private final ChatEntryRepository chatEntryRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    public DetectedEntityService(DetectedEntityRepository detectedEntityRepository,
+            ChatEntryRepository chatEntryRepository,
+            PlatformTransactionManager transactionManager) {
+        this.detectedEntityRepository = detectedEntityRepository;
+        this.chatEntryRepository = chatEntryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Store the values found in freshly written entries
+     */
+    public void recordEntries(Collection<ChatEntryEntity> entries) {
+        List<DetectedEntity> rows = new ArrayList<>();
+        for (ChatEntryEntity entry : entries) {
+            if (entry.getId() == null || entry.getDetectedMatches() == null) {
+                continue;
+            }
+            for (PayloadSanitizer.Match match : entry.getDetectedMatches()) {
+                rows.add(DetectedEntity.builder().entryId(entry.getId()).userId(entry.getUserId())
+                        .chatRefId(entry.getChatRefId()).kind(match.kind()).value(match.value())
+                        .normalizedValue(match.normalized()).startOffset(match.start())
+                        .endOffset(match.end()).build());
+            }
+        }
+        if (!rows.isEmpty()) {
+            detectedEntityRepository.saveAll(rows);
+        }
+    }
+
+    /**
+     * Remove the values of deleted entries
+     */
+    public void removeEntries(Collection<ChatEntryEntity> entries) {
+        List<Long> ids = entries.stream().map(ChatEntryEntity::getId).filter(Objects::nonNull)
+                .toList();
+        if (!ids.isEmpty()) {
+            detectedEntityRepository.deleteByEntryIdIn(ids);
+        }
+    }
+
+    /**
+     * Remove the values of all entries of a chat. Must run before the chats row is deleted.
+     */
+    public void removeChat(Long userId, String chatId) {
+        detectedEntityRepository.deleteByUserIdAndChatId(userId, chatId);
+    }
+
+    /**
+     * Distinct normalized values of a user, most frequent first. The kind and chat are optional.
+     */
+    @Transactional(readOnly = true)
+    public List<EntityValueCount> findValues(Long userId, EntityKind kind, String chatId, int page,
+            int size) {
+        return detectedEntityRepository.countValues(userId, kind, chatId,
+                PageRequest.of(page, size));
+    }
+
+    /**
+     * Number of values found per kind for a user, or for one of their chats. Every kind is
+     * present, with 0 when nothing of it was found.
+     */
+    @Transactional(readOnly = true)
+    public Map<EntityKind, Long> countByKind(Long userId, String chatId) {
+        Map<EntityKind, Long> counts = new EnumMap<>(EntityKind.class);
+        for (EntityKind kind : EntityKind.values()) {
+            counts.put(kind, 0L);
+        }
+        for (Object[] row : detectedEntityRepository.countKinds(userId, chatId)) {
+            counts.put((EntityKind) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    /**
+     * Compute the sanitized payload and detected values of entries stored before they existed, and
+     * the normalized values of entries detected before values were normalized. Runs in batches of
+     * its own transactions, so it can be interrupted and resumed.
+     *
+     * @return the number of entries updated
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long backfillLegacyEntries() {
+        long updated = 0;
+        while (true) {
+            Integer rescanned = transactionTemplate.execute(status -> {
+                List<Long> ids = detectedEntityRepository
+                        .findEntryIdsWithoutNormalizedValue(Limit.of(BACKFILL_BATCH_SIZE));
+                if (!ids.isEmpty()) {
+                    detectedEntityRepository.deleteByEntryIdIn(ids);
+                    rescan(chatEntryRepository.findAllById(ids));
+                }
+                return ids.size();
+            });
+            if (rescanned == null || rescanned == 0) {
+                break;
+            }
+            updated += rescanned;
+        }
+        Long lastId = 0L;
+        while (true) {
+            Long after = lastId;
+            List<ChatEntryEntity> batch = transactionTemplate.execute(status -> {
+                List<ChatEntryEntity> entries = chatEntryRepository
+                        .findUnsanitizedAfter(after, Limit.of(BACKFILL_BATCH_SIZE));
+                rescan(entries);
+                return entries;
+            });
+            if (batch == null || batch.isEmpty()) {
+                break;
+            }
+            updated += batch.size();
+            lastId = batch.getLast().getId();
+        }
+        if (updated > 0) {
+            log.info("Computed sanitized payloads of {} existing chat entries", updated);
+        }
+        return updated;
+    }
+
+    private void rescan(List<ChatEntryEntity> entries) {
+        for (ChatEntryEntity entry : entries) {
+            PayloadSanitizer.Result scan = PayloadSanitizer.scan(entry.getPayload());
+            entry.setSanitizedPayload(scan.sanitized());
+            entry.setDetectedMatches(scan.matches());
+        }
+        recordEntries(entries);
+    }
+}
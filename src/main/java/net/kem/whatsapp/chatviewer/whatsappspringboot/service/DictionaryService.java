@@ -0,0 +1,197 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Author;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.AuthorRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolves author names and chat IDs to the integer surrogate keys stored in chat_entries and back.
+ * Both directions are cached in process, so ingest and reads hit the database only on a miss.
+ */
+@Slf4j
+@Service
+public class DictionaryService {
+
+    private static final int CACHE_SIZE = 10_000;
+
+    private final AuthorRepository authorRepository;
+    private final ChatRepository chatRepository;
+    private final TransactionTemplate requiresNewTemplate;
+
+    private final Map<String, Long> authorIds = lruCache();
+    private final Map<Long, String> authorNames = lruCache();
+    private final Map<ChatKey, Long> chatRefIds = lruCache();
+    private final Map<Long, ChatKey> chatKeys = lruCache();
+
+    public DictionaryService(AuthorRepository authorRepository, ChatRepository chatRepository,
+            PlatformTransactionManager transactionManager) {
+        this.authorRepository = authorRepository;
+        this.chatRepository = chatRepository;
+        this.requiresNewTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate
+                .setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Get the id of an author, creating the dictionary entry if it does not exist yet
+     */
+    public Long getOrCreateAuthorId(String name) {
+        Long id = authorIds.get(name);
+        if (id != null) {
+            return id;
+        }
+        // Authors are shared by all users, so the insert is committed on its own right away
+        // instead of holding the unique key lock until a long upload transaction finishes.
+        Author author = authorRepository.findByName(name).orElseGet(() -> {
+            try {
+                return requiresNewTemplate.execute(
+                        status -> authorRepository.save(Author.builder().name(name).build()));
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Author {} was created concurrently", name);
+                return requiresNewTemplate
+                        .execute(status -> authorRepository.findByName(name).orElseThrow());
+            }
+        });
+        cacheAuthor(author);
+        return author.getId();
+    }
+
+    /**
+     * Get the id of an author without creating it
+     */
+    public Optional<Long> findAuthorId(String name) {
+        Long id = authorIds.get(name);
+        if (id != null) {
+            return Optional.of(id);
+        }
+        Optional<Author> author = authorRepository.findByName(name);
+        author.ifPresent(this::cacheAuthor);
+        return author.map(Author::getId);
+    }
+
+    /**
+     * Get the name of an author by id
+     */
+    public String getAuthorName(Long authorId) {
+        if (authorId == null) {
+            return null;
+        }
+        String name = authorNames.get(authorId);
+        if (name == null) {
+            name = authorRepository.findById(authorId).map(this::cacheAuthor).map(Author::getName)
+                    .orElse(null);
+        }
+        return name;
+    }
+
+    /**
+     * Get the chats row id of a chat, registering the chat if it does not exist yet
+     */
+    public Long getOrCreateChatRefId(Long userId, String chatId) {
+        ChatKey key = new ChatKey(userId, chatId);
+        Long id = chatRefIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        Optional<Chat> existing = chatRepository.findByUserIdAndChatId(userId, chatId);
+        if (existing.isPresent()) {
+            cacheChat(key, existing.get().getId());
+            return existing.get().getId();
+        }
+        Long newId = chatRepository.save(Chat.builder().userId(userId).chatId(chatId).build())
+                .getId();
+        // The chats row belongs to the caller's transaction; only remember it once committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            cacheChat(key, newId);
+                        }
+                    });
+        } else {
+            cacheChat(key, newId);
+        }
+        return newId;
+    }
+
+    /**
+     * Get the chats row id of a chat without creating it
+     */
+    public Optional<Long> findChatRefId(Long userId, String chatId) {
+        ChatKey key = new ChatKey(userId, chatId);
+        Long id = chatRefIds.get(key);
+        if (id != null) {
+            return Optional.of(id);
+        }
+        Optional<Long> found =
+                chatRepository.findByUserIdAndChatId(userId, chatId).map(Chat::getId);
+        found.ifPresent(chatRefId -> cacheChat(key, chatRefId));
+        return found;
+    }
+
+    /**
+     * Get the chat ID of a chats row id
+     */
+    public String getChatId(Long chatRefId) {
+        if (chatRefId == null) {
+            return null;
+        }
+        ChatKey key = chatKeys.get(chatRefId);
+        if (key == null) {
+            Optional<Chat> chat = chatRepository.findById(chatRefId);
+            if (chat.isEmpty()) {
+                return null;
+            }
+            key = new ChatKey(chat.get().getUserId(), chat.get().getChatId());
+            cacheChat(key, chatRefId);
+        }
+        return key.chatId();
+    }
+
+    /**
+     * Forget a deleted chat so that a re-upload under the same chat ID gets its new row id
+     */
+    public void evictChat(Long userId, String chatId) {
+        Long id = chatRefIds.remove(new ChatKey(userId, chatId));
+        if (id != null) {
+            chatKeys.remove(id);
+        }
+    }
+
+    private Author cacheAuthor(Author author) {
+        authorIds.put(author.getName(), author.getId());
+        authorNames.put(author.getId(), author.getName());
+        return author;
+    }
+
+    private void cacheChat(ChatKey key, Long chatRefId) {
+        chatRefIds.put(key, chatRefId);
+        chatKeys.put(chatRefId, key);
+    }
+
+    private static <K, V> Map<K, V> lruCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+    }
+
+    private record ChatKey(Long userId, String chatId) {
+    }
+}
@@ -7,6 +7,7 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import lombok.extern.slf4j.Slf4j;
@@ -15,6 +16,9 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class FileNamingService {
 
+    // Name of a content-addressed file: the lowercase hex SHA-256 of its bytes
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
     @Value("${app.multimedia.storage.path}")
     private String multimediaStoragePath;
 
@@ -131,6 +135,35 @@ public class FileNamingService {
         return targetPath;
     }
 
+    /**
+     * Extracts the content hash from a stored path string.
+     *
+     * @param storedPath The stored path string (e.g., "abc/def/hash")
+     * @return The SHA-256 hash the file is named by, or null if the path is not content-addressed
+     */
+    public String extractHashFromPath(String storedPath) {
+        if (storedPath == null || storedPath.isEmpty()) {
+            return null;
+        }
+        String hash = storedPath.substring(storedPath.lastIndexOf('/') + 1);
+        return isContentHash(hash) ? hash : null;
+    }
+
+    /**
+     * Key of the stored file with this content hash in the {@link ContentStore}: two directory
+     * levels named by the first characters of the hash, then the hash itself ("abc/def/hash").
+     */
+    public static String storageKey(String hash) {
+        return hash.substring(0, 3) + "/" + hash.substring(3, 6) + "/" + hash;
+    }
+
+    /**
+     * Checks whether a string is a SHA-256 content hash as used for file names.
+     */
+    public static boolean isContentHash(String value) {
+        return value != null && CONTENT_HASH.matcher(value).matches();
+    }
+
     /**
      * Generates SHA-256 hash of the given content.
      */
@@ -0,0 +1,188 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * PostgreSQL text search over chat entry payloads and author names. Each table gets a generated
+ * tsvector column with a GIN index for full-text search and, when the pg_trgm extension can be
+ * installed, a trigram GIN index for substring and fuzzy search. They are created on startup
+ * because Hibernate's schema update knows nothing about them. On other databases (H2 in tests)
+ * keyword search keeps using LIKE.
+ */
+@Slf4j
+@Service
+public class FullTextSearchService {
+
+    private static final Pattern LANGUAGE = Pattern.compile("[a-z_]+");
+    private static final Pattern PHRASE_OR_WORD = Pattern.compile("\"([^\"]*)\"?|([^\\s\"]+)");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final boolean trigramEnabled;
+    private final String language;
+
+    private volatile boolean available;
+    private volatile boolean trigramAvailable;
+
+    public FullTextSearchService(JdbcTemplate jdbcTemplate,
+            @Value("${app.search.fulltext.enabled:true}") boolean enabled,
+            @Value("${app.search.trigram.enabled:true}") boolean trigramEnabled,
+            @Value("${app.search.fulltext.language:english}") String language) {
+        if (!LANGUAGE.matcher(language).matches()) {
+            throw new IllegalArgumentException("Invalid text search language: " + language);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.trigramEnabled = trigramEnabled;
+        this.language = language;
+    }
+
+    /**
+     * Whether keyword searches can use the full-text indexes
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Whether substring and fuzzy searches can use the trigram indexes
+     */
+    public boolean isTrigramAvailable() {
+        return trigramAvailable;
+    }
+
+    /**
+     * Get the text search configuration used for stemming, e.g. english or simple
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Create the tsvector columns, the trigram indexes and their GIN indexes if the database is
+     * PostgreSQL. A column built with a different language than the configured one is rebuilt.
+     * Every statement is idempotent and commits on its own, so a missing pg_trgm extension does
+     * not undo the full-text setup.
+     */
+    public boolean prepareSchema() {
+        if ((!enabled && !trigramEnabled) || !isPostgreSql()) {
+            log.info("Text search indexes are not available, keyword search uses LIKE");
+            return false;
+        }
+        if (enabled) {
+            ensureSearchVector("chat_entries", "payload", "idx_chat_entries_search_vector");
+            ensureSearchVector("authors", "name", "idx_authors_search_vector");
+            available = true;
+            log.info("Full-text search enabled with the {} configuration", language);
+        }
+        if (trigramEnabled) {
+            try {
+                jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+                jdbcTemplate.execute("""
+                        CREATE INDEX IF NOT EXISTS idx_chat_entries_payload_trgm \
+                        ON chat_entries USING GIN (payload gin_trgm_ops)""");
+                jdbcTemplate.execute("""
+                        CREATE INDEX IF NOT EXISTS idx_authors_name_trgm \
+                        ON authors USING GIN (name gin_trgm_ops)""");
+                trigramAvailable = true;
+                log.info("Trigram search enabled");
+            } catch (DataAccessException e) {
+                log.warn("pg_trgm is not available, substring and fuzzy search use LIKE: {}",
+                        e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Escape the LIKE wildcards in a keyword and wrap it for a substring match
+     */
+    public static String toLikePattern(String keyword) {
+        String escaped = keyword.trim().replace("\\", "\\\\").replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /**
+     * Turn a search box input into a to_tsquery expression. Quoted text becomes a phrase, every
+     * other word a prefix match, and all parts have to match. Returns null when the input contains
+     * no searchable words.
+     */
+    public static String toTsQuery(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        List<String> parts = new ArrayList<>();
+        Matcher matcher = PHRASE_OR_WORD.matcher(keyword);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) {
+                List<String> words = words(matcher.group(1));
+                if (words.size() == 1) {
+                    parts.add(words.getFirst());
+                } else if (!words.isEmpty()) {
+                    parts.add("(" + String.join(" <-> ", words) + ")");
+                }
+            } else {
+                words(matcher.group(2)).forEach(word -> parts.add(word + ":*"));
+            }
+        }
+        return parts.isEmpty() ? null : String.join(" & ", parts);
+    }
+
+    /**
+     * Whether a to_tsquery expression keeps any words once the configured language has dropped
+     * its stopwords. One made of stopwords only, such as "the", would match no entry.
+     */
+    public boolean hasSearchableWords(String query) {
+        Integer nodes = jdbcTemplate.queryForObject(
+                "SELECT numnode(to_tsquery(CAST(? AS regconfig), ?))", Integer.class, language,
+                query);
+        return nodes != null && nodes > 0;
+    }
+
+    private void ensureSearchVector(String table, String column, String index) {
+        String expression = "to_tsvector('" + language + "'::regconfig, coalesce(" + column
+                + ", ''))";
+        List<String> existing = jdbcTemplate.queryForList("""
+                SELECT generation_expression FROM information_schema.columns \
+                WHERE table_schema = current_schema() AND table_name = ? \
+                AND column_name = 'search_vector'""", String.class, table);
+        if (!existing.isEmpty() && existing.getFirst() != null
+                && existing.getFirst().contains("'" + language + "'")) {
+            return;
+        }
+        if (!existing.isEmpty()) {
+            log.info("Rebuilding {}.search_vector for the {} configuration", table, language);
+            jdbcTemplate.execute("ALTER TABLE " + table + " DROP COLUMN search_vector");
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table + " ADD COLUMN search_vector tsvector "
+                + "GENERATED ALWAYS AS (" + expression + ") STORED");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + index + " ON " + table
+                + " USING GIN (search_vector)");
+    }
+
+    private boolean isPostgreSql() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((Connection connection) -> "PostgreSQL"
+                .equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())));
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(text.toLowerCase())) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,136 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content store in a directory of the local file system, by default the multimedia storage path.
+ * Files are written next to their final name and renamed into place, so a file is never seen half
+ * written.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalContentStore implements ContentStore {
+
+    private final Path root;
+
+    public LocalContentStore(@Value("${app.multimedia.storage.path}") String storagePath) {
+        this.root = Paths.get(storagePath).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Path source) throws IOException {
+        Path target = resolve(key);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        // Renamed within the store, as a move from another file system is a copy
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(),
+                ".tmp");
+        try {
+            Files.move(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            return moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, byte[] content) throws IOException {
+        Path target = resolve(key);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(),
+                ".tmp");
+        try {
+            Files.write(temp, content);
+            return moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public Optional<StoredContent> stat(String key) throws IOException {
+        try {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(resolve(key), BasicFileAttributes.class);
+            return Optional.of(new StoredContent(this, key, attributes.size(),
+                    attributes.lastModifiedTime().toMillis()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(resolve(key));
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new LimitedInputStream(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(resolve(key));
+    }
+
+    /**
+     * The file of a key, which must stay inside the store
+     */
+    private Path resolve(String key) {
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IllegalArgumentException("Key outside the content store: " + key);
+        }
+        return file;
+    }
+
+    private static boolean moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target);
+            log.debug("Stored file: {}", target);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            // Stored by a concurrent upload of the same content
+            return false;
+        }
+    }
+}
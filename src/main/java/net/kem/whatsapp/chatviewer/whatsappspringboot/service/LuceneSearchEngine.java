@@ -0,0 +1,574 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.facet.FacetResult;
+import org.apache.lucene.facet.Facets;
+import org.apache.lucene.facet.FacetsCollector;
+import org.apache.lucene.facet.FacetsCollectorManager;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.facet.LabelAndValue;
+import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.FileSystemUtils;
+import jakarta.annotation.PreDestroy;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search engine backed by an embedded Lucene index on local disk, one index per user. Searches run
+ * on near-real-time readers, so entries become visible as soon as the transaction that saved them
+ * has committed. An index that does not exist yet is built from the database on first use, and
+ * one that missed an update is deleted so that it is built again. Only entry ids are taken from
+ * the index; the entries themselves are loaded from the database.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "lucene")
+public class LuceneSearchEngine implements SearchEngine {
+
+    static final String ID = "id";
+    static final String PAYLOAD = "payload";
+    static final String AUTHOR = "author";
+    static final String CHAT = "chat";
+    static final String TYPE = "type";
+    static final String MONTH = "month";
+    private static final String ID_SORT = "id_sort";
+    private static final String AUTHOR_EXACT = "author_exact";
+    private static final String TIME = "time";
+    private static final String ORDINAL = "ordinal";
+    private static final String FILE_NAME = "fileName";
+    private static final String HAS_ATTACHMENT = "has_attachment";
+
+    // Fields a keyword is looked up in
+    private static final List<String> KEYWORD_FIELDS = List.of(PAYLOAD, AUTHOR, FILE_NAME);
+    private static final List<String> FACET_DIMENSIONS = List.of(AUTHOR, CHAT, TYPE, MONTH);
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private static final Sort CHRONOLOGICAL = new Sort(new SortField(TIME, SortField.Type.LONG),
+            new SortField(ORDINAL, SortField.Type.LONG),
+            new SortField(ID_SORT, SortField.Type.LONG));
+    private static final Sort RELEVANCE = new Sort(SortField.FIELD_SCORE,
+            new SortField(TIME, SortField.Type.LONG), new SortField(ORDINAL, SortField.Type.LONG),
+            new SortField(ID_SORT, SortField.Type.LONG));
+
+    private record Shard(IndexWriter writer, SearcherManager searcherManager) {
+    }
+
+    private final ChatEntryRepository chatEntryRepository;
+    private final Path indexRoot;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final FacetsConfig facetsConfig = new FacetsConfig();
+    // Shards by user, including those being opened, so one user's rebuild blocks no other user
+    private final Map<Long, CompletableFuture<Shard>> shards = new ConcurrentHashMap<>();
+
+    public LuceneSearchEngine(ChatEntryRepository chatEntryRepository,
+            @Value("${app.search.lucene.path:./search-index}") String indexPath) {
+        this.chatEntryRepository = chatEntryRepository;
+        this.indexRoot = Paths.get(indexPath);
+    }
+
+    @Override
+    public Page<ChatEntryEntity> searchByKeyword(Long userId, String keyword,
+            KeywordSearchMode mode, List<String> chatIds, Pageable pageable) {
+        Query keywordQuery = keywordQuery(keyword, mode);
+        if (keywordQuery == null) {
+            return Page.empty(pageable);
+        }
+        BooleanQuery.Builder query = new BooleanQuery.Builder().add(keywordQuery,
+                BooleanClause.Occur.MUST);
+        addFilters(query, SearchCriteria.builder().chatIds(chatIds).build());
+        return search(userId, query.build(), RELEVANCE, pageable, true);
+    }
+
+    @Override
+    public Page<ChatEntryEntity> search(Long userId, SearchCriteria criteria, Pageable pageable) {
+        return search(userId, criteriaQuery(criteria), CHRONOLOGICAL, pageable, false);
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> facetCounts(Long userId, SearchCriteria criteria,
+            int limit) {
+        Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        FACET_DIMENSIONS.forEach(dimension -> counts.put(dimension, new LinkedHashMap<>()));
+        Shard shard = shard(userId);
+        IndexSearcher searcher = acquire(shard);
+        try {
+            if (searcher.getIndexReader().numDocs() == 0) {
+                return counts;
+            }
+            FacetsCollector collector =
+                    searcher.search(criteriaQuery(criteria), new FacetsCollectorManager());
+            Facets facets = new SortedSetDocValuesFacetCounts(
+                    new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader(),
+                            facetsConfig),
+                    collector);
+            for (String dimension : FACET_DIMENSIONS) {
+                FacetResult result = topChildren(facets, dimension, limit);
+                if (result != null) {
+                    for (LabelAndValue value : result.labelValues) {
+                        counts.get(dimension).put(value.label, value.value.longValue());
+                    }
+                }
+            }
+            return counts;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(shard, searcher);
+        }
+    }
+
+    @Override
+    public void indexEntries(Long userId, Collection<ChatEntryEntity> entries) {
+        // Build the documents now, while the entries still hold the state being committed
+        List<Document> documents = entries.stream().map(this::toDocument).toList();
+        afterCommit(userId, writer -> {
+            for (Document document : documents) {
+                writer.updateDocument(new Term(ID, document.get(ID)), document);
+            }
+        });
+    }
+
+    @Override
+    public void removeEntries(Long userId, Collection<ChatEntryEntity> entries) {
+        Term[] ids = entries.stream().map(ChatEntryEntity::getId).filter(Objects::nonNull)
+                .map(id -> new Term(ID, id.toString())).toArray(Term[]::new);
+        afterCommit(userId, writer -> writer.deleteDocuments(ids));
+    }
+
+    @Override
+    public void removeChat(Long userId, String chatId) {
+        afterCommit(userId, writer -> writer.deleteDocuments(new Term(CHAT, chatId)));
+    }
+
+    @PreDestroy
+    public void close() {
+        shards.forEach((userId, opening) -> {
+            Shard shard = opening.getNow(null);
+            if (shard == null) {
+                return;
+            }
+            try (FSDirectory directory = (FSDirectory) shard.writer().getDirectory()) {
+                shard.searcherManager().close();
+                shard.writer().close();
+            } catch (IOException e) {
+                log.warn("Could not close search index of user: {} - {}", userId,
+                        e.getMessage());
+            }
+        });
+        shards.clear();
+    }
+
+    private Page<ChatEntryEntity> search(Long userId, Query query, Sort sort, Pageable pageable,
+            boolean highlight) {
+        Shard shard = shard(userId);
+        IndexSearcher searcher = acquire(shard);
+        try {
+            int offset = (int) Math.min(pageable.getOffset(), Integer.MAX_VALUE - 1);
+            int top = (int) Math.min((long) offset + pageable.getPageSize(), Integer.MAX_VALUE);
+            TopDocs topDocs = searcher.search(query, Math.max(top, 1), sort);
+            int total = searcher.count(query);
+            ScoreDoc[] hits = topDocs.scoreDocs;
+            if (offset >= hits.length) {
+                return new PageImpl<>(List.of(), pageable, total);
+            }
+
+            String[] highlights = highlight ? highlighter(searcher).highlight(PAYLOAD, query,
+                    topDocs) : new String[hits.length];
+            List<Long> ids = new ArrayList<>();
+            Map<Long, String> highlightsById = new LinkedHashMap<>();
+            for (int i = offset; i < hits.length; i++) {
+                Long id = Long.valueOf(searcher.storedFields().document(hits[i].doc).get(ID));
+                ids.add(id);
+                if (highlights[i] != null) {
+                    highlightsById.put(id, highlights[i]);
+                }
+            }
+
+            // Keep the index order; skip entries deleted since the reader was opened
+            Map<Long, ChatEntryEntity> entries = chatEntryRepository.findAllById(ids).stream()
+                    .filter(entry -> userId.equals(entry.getUserId()))
+                    .collect(Collectors.toMap(ChatEntryEntity::getId, Function.identity()));
+            List<ChatEntryEntity> content = ids.stream().map(entries::get)
+                    .filter(Objects::nonNull).toList();
+            content.forEach(entry -> entry.setHighlight(highlightsById.get(entry.getId())));
+            return new PageImpl<>(content, pageable, total);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(shard, searcher);
+        }
+    }
+
+    /**
+     * Match a keyword in the payload, author or attachment file name. Full-text mode matches every
+     * word as a prefix and quoted text as a phrase; fuzzy mode tolerates typos; substring and LIKE
+     * mode find each word anywhere inside the indexed terms.
+     */
+    private Query keywordQuery(String keyword, KeywordSearchMode mode) {
+        if (keyword == null || keyword.isBlank()) {
+            return null;
+        }
+        KeywordSearchMode searchMode = mode == null ? KeywordSearchMode.FULL_TEXT : mode;
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        String[] parts = keyword.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            boolean quoted = i % 2 == 1 && i < parts.length - 1;
+            if (quoted && searchMode == KeywordSearchMode.FULL_TEXT) {
+                Query phrase = anyField(field -> new QueryBuilder(analyzer)
+                        .createPhraseQuery(field, part));
+                if (phrase != null) {
+                    query.add(phrase, BooleanClause.Occur.MUST);
+                }
+                continue;
+            }
+            for (String token : tokens(part)) {
+                query.add(anyField(field -> switch (searchMode) {
+                    case FULL_TEXT -> new PrefixQuery(new Term(field, token));
+                    case FUZZY -> new FuzzyQuery(new Term(field, token));
+                    case SUBSTRING, LIKE -> new WildcardQuery(new Term(field, "*" + token + "*"));
+                }), BooleanClause.Occur.MUST);
+            }
+        }
+        BooleanQuery built = query.build();
+        return built.clauses().isEmpty() ? null : built;
+    }
+
+    private Query criteriaQuery(SearchCriteria criteria) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder()
+                .add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        Query keywordQuery = keywordQuery(criteria.getKeyword(), KeywordSearchMode.SUBSTRING);
+        if (keywordQuery != null) {
+            query.add(keywordQuery, BooleanClause.Occur.FILTER);
+        }
+        addFilters(query, criteria);
+        return query.build();
+    }
+
+    private void addFilters(BooleanQuery.Builder query, SearchCriteria criteria) {
+        if (criteria.getChatIds() != null && !criteria.getChatIds().isEmpty()) {
+            query.add(new TermInSetQuery(CHAT,
+                    criteria.getChatIds().stream().map(BytesRef::new).toList()),
+                    BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getAuthor() != null && !criteria.getAuthor().isBlank()) {
+            query.add(new TermQuery(new Term(AUTHOR_EXACT,
+                    criteria.getAuthor().trim().toLowerCase())), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getType() != null) {
+            query.add(new TermQuery(new Term(TYPE, criteria.getType().name())),
+                    BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getStartDate() != null || criteria.getEndDate() != null) {
+            long from = criteria.getStartDate() == null ? Long.MIN_VALUE
+                    : toMillis(criteria.getStartDate());
+            long to = criteria.getEndDate() == null ? Long.MAX_VALUE
+                    : toMillis(criteria.getEndDate());
+            query.add(LongPoint.newRangeQuery(TIME, from, to), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getHasAttachment() != null) {
+            query.add(new TermQuery(new Term(HAS_ATTACHMENT,
+                    criteria.getHasAttachment().toString())), BooleanClause.Occur.FILTER);
+        }
+    }
+
+    private Query anyField(Function<String, Query> fieldQuery) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        KEYWORD_FIELDS.stream().map(fieldQuery).filter(Objects::nonNull)
+                .forEach(clause -> query.add(clause, BooleanClause.Occur.SHOULD));
+        BooleanQuery built = query.build();
+        return built.clauses().isEmpty() ? null : built;
+    }
+
+    private List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(PAYLOAD, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return tokens;
+    }
+
+    private Document toDocument(ChatEntryEntity entry) {
+        Document document = new Document();
+        document.add(new StringField(ID, entry.getId().toString(), Field.Store.YES));
+        document.add(new NumericDocValuesField(ID_SORT, entry.getId()));
+        document.add(new NumericDocValuesField(ORDINAL, entry.getOrdinal()));
+        if (entry.getPayload() != null) {
+            // Stored for highlighting
+            document.add(new TextField(PAYLOAD, entry.getPayload(), Field.Store.YES));
+        }
+        if (entry.getAuthor() != null && !entry.getAuthor().isEmpty()) {
+            document.add(new TextField(AUTHOR, entry.getAuthor(), Field.Store.NO));
+            document.add(new StringField(AUTHOR_EXACT, entry.getAuthor().toLowerCase(),
+                    Field.Store.NO));
+            document.add(new SortedSetDocValuesFacetField(AUTHOR, entry.getAuthor()));
+        }
+        if (entry.getChatId() != null) {
+            document.add(new StringField(CHAT, entry.getChatId(), Field.Store.NO));
+            document.add(new SortedSetDocValuesFacetField(CHAT, entry.getChatId()));
+        }
+        if (entry.getType() != null) {
+            document.add(new StringField(TYPE, entry.getType().name(), Field.Store.NO));
+            document.add(new SortedSetDocValuesFacetField(TYPE, entry.getType().name()));
+        }
+        if (entry.getLocalDateTime() != null) {
+            long millis = toMillis(entry.getLocalDateTime());
+            document.add(new LongPoint(TIME, millis));
+            document.add(new NumericDocValuesField(TIME, millis));
+            document.add(new SortedSetDocValuesFacetField(MONTH,
+                    entry.getLocalDateTime().format(MONTH_FORMAT)));
+        }
+        if (entry.getFileName() != null) {
+            document.add(new TextField(FILE_NAME, entry.getFileName(), Field.Store.NO));
+        }
+        boolean hasAttachment = entry.getPath() != null && !entry.getPath().isEmpty();
+        document.add(new StringField(HAS_ATTACHMENT, Boolean.toString(hasAttachment),
+                Field.Store.NO));
+        try {
+            return facetsConfig.build(document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface IndexUpdate {
+        void apply(IndexWriter writer) throws IOException;
+    }
+
+    /**
+     * Apply an index update once the caller's transaction has committed, so a rollback never
+     * leaves entries in the index that are not in the database
+     */
+    private void afterCommit(Long userId, IndexUpdate update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            applyUpdate(userId, update);
+                        }
+                    });
+        } else {
+            applyUpdate(userId, update);
+        }
+    }
+
+    private void applyUpdate(Long userId, IndexUpdate update) {
+        Shard shard = null;
+        try {
+            shard = shard(userId);
+            update.apply(shard.writer());
+            shard.writer().commit();
+            shard.searcherManager().maybeRefreshBlocking();
+        } catch (IOException | RuntimeException e) {
+            // The database change is already committed, so the index no longer matches it
+            log.error("Could not update search index of user: {}, rebuilding it - {}", userId,
+                    e.getMessage(), e);
+            if (shard != null) {
+                discard(userId, shard);
+            }
+        }
+    }
+
+    private Shard shard(Long userId) {
+        CompletableFuture<Shard> mine = new CompletableFuture<>();
+        CompletableFuture<Shard> opening = shards.putIfAbsent(userId, mine);
+        if (opening != null) {
+            try {
+                return opening.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause
+                        : new IllegalStateException(e.getCause());
+            }
+        }
+        try {
+            Shard shard = openShard(userId);
+            mine.complete(shard);
+            return shard;
+        } catch (RuntimeException e) {
+            // Not kept, so the next use of the index tries again
+            shards.remove(userId, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Shard openShard(Long userId) {
+        FSDirectory directory = null;
+        IndexWriter writer = null;
+        try {
+            Path path = indexRoot.resolve("user-" + userId);
+            Files.createDirectories(path);
+            directory = FSDirectory.open(path);
+            boolean exists = DirectoryReader.indexExists(directory);
+            writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+            if (!exists) {
+                rebuild(userId, writer);
+            }
+            return new Shard(writer, new SearcherManager(writer, null));
+        } catch (IOException | RuntimeException e) {
+            // Release the write lock, which would otherwise fail every later attempt
+            try {
+                if (writer != null) {
+                    writer.rollback();
+                }
+                if (directory != null) {
+                    directory.close();
+                }
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            throw e instanceof IOException io ? new UncheckedIOException(io)
+                    : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Close and delete the index of a user that missed an update, so that its next use builds it
+     * from the database again. Done inside the map's compute, so no other thread opens the index
+     * before its files are gone.
+     */
+    private void discard(Long userId, Shard shard) {
+        shards.computeIfPresent(userId, (id, opening) -> {
+            if (opening.getNow(null) != shard) {
+                return opening;
+            }
+            try (FSDirectory directory = (FSDirectory) shard.writer().getDirectory()) {
+                shard.searcherManager().close();
+                shard.writer().rollback();
+                FileSystemUtils.deleteRecursively(directory.getDirectory());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not delete search index of user: {} - {}", userId,
+                        e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    private void rebuild(Long userId, IndexWriter writer) throws IOException {
+        long indexed = 0;
+        Long lastId = 0L;
+        List<ChatEntryEntity> batch;
+        do {
+            batch = chatEntryRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(userId, lastId,
+                    Limit.of(REBUILD_BATCH_SIZE));
+            for (ChatEntryEntity entry : batch) {
+                writer.addDocument(toDocument(entry));
+                lastId = entry.getId();
+            }
+            indexed += batch.size();
+        } while (batch.size() == REBUILD_BATCH_SIZE);
+        writer.commit();
+        log.info("Built search index of user: {} with {} entries", userId, indexed);
+    }
+
+    private IndexSearcher acquire(Shard shard) {
+        try {
+            return shard.searcherManager().acquire();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void release(Shard shard, IndexSearcher searcher) {
+        try {
+            shard.searcherManager().release(searcher);
+        } catch (IOException e) {
+            log.warn("Could not release index searcher - {}", e.getMessage());
+        }
+    }
+
+    private UnifiedHighlighter highlighter(IndexSearcher searcher) {
+        return UnifiedHighlighter.builder(searcher, analyzer)
+                .withFormatter(new DefaultPassageFormatter("<mark>", "</mark>", "... ", true))
+                .withMaxNoHighlightPassages(0).build();
+    }
+
+    private static FacetResult topChildren(Facets facets, String dimension, int limit)
+            throws IOException {
+        try {
+            return facets.getTopChildren(limit, dimension);
+        } catch (IllegalArgumentException e) {
+            // No entry of the user has a value for this dimension yet
+            return null;
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
@@ -0,0 +1,307 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
+
+/**
+ * Detects the media type of a file from the magic bytes at its start, falling back to the file
+ * name extension for formats without a signature. Pixel dimensions are read from the headers of
+ * JPEG, PNG, GIF, BMP, WebP and MP4/QuickTime files, and playing time from WAV files and from
+ * MP4/QuickTime files whose index precedes the media data, when these lie within the inspected
+ * head of the file.
+ */
+public final class MediaTypeDetector {
+
+    // Bytes of the start of a file that are inspected
+    public static final int HEAD_BYTES = 64 * 1024;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] OLE = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0,
+            (byte) 0xA1, (byte) 0xB1, 0x1A, (byte) 0xE1};
+    private static final byte[] ASF = {0x30, 0x26, (byte) 0xB2, 0x75, (byte) 0x8E, 0x66,
+            (byte) 0xCF, 0x11};
+    private static final byte[] MATROSKA = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+
+    private MediaTypeDetector() {
+    }
+
+    /**
+     * Read the head of a stored file for {@link #detect}, fetching no more of it than that
+     */
+    public static byte[] readHead(StoredContent file) throws IOException {
+        try (InputStream in = file.open(0, Math.min(file.size(), HEAD_BYTES))) {
+            return in.readNBytes(HEAD_BYTES);
+        }
+    }
+
+    /**
+     * Media type of a file
+     *
+     * @param head the first bytes of the file
+     * @param length the number of valid bytes in {@code head}
+     * @param fileName the original file name, or null if unknown
+     */
+    public static MediaInfo detect(byte[] head, int length, String fileName) {
+        byte[] b = head;
+        int n = Math.min(length, head.length);
+        String byName = MediaInfo.mimeTypeOf(fileName);
+
+        if (startsWith(b, n, 0, (byte) 0xFF, (byte) 0xD8, (byte) 0xFF)) {
+            return jpeg(b, n);
+        } else if (startsWith(b, n, 0, PNG)) {
+            return n >= 24 ? new MediaInfo("image/png", int32(b, 16), int32(b, 20), null)
+                    : MediaInfo.of("image/png");
+        } else if (ascii(b, n, 0, "GIF87a") || ascii(b, n, 0, "GIF89a")) {
+            return n >= 10 ? new MediaInfo("image/gif", uint16le(b, 6), uint16le(b, 8), null)
+                    : MediaInfo.of("image/gif");
+        } else if (ascii(b, n, 0, "BM") && n >= 26 && int32le(b, 14) >= 12) {
+            return new MediaInfo("image/bmp", int32le(b, 18), Math.abs(int32le(b, 22)), null);
+        } else if (ascii(b, n, 0, "RIFF") && ascii(b, n, 8, "WEBP")) {
+            return webp(b, n);
+        } else if (ascii(b, n, 0, "RIFF") && ascii(b, n, 8, "WAVE")) {
+            return wav(b, n);
+        } else if (ascii(b, n, 0, "RIFF") && ascii(b, n, 8, "AVI ")) {
+            return MediaInfo.of("video/x-msvideo");
+        } else if (ascii(b, n, 4, "ftyp")) {
+            return isoMedia(b, n);
+        } else if (startsWith(b, n, 0, MATROSKA)) {
+            return MediaInfo.of(indexOf(b, Math.min(n, 64), "webm") >= 0 ? "video/webm"
+                    : "video/x-matroska");
+        } else if (ascii(b, n, 0, "OggS")) {
+            return MediaInfo.of(indexOf(b, Math.min(n, 128), "theora") >= 0 ? "video/ogg"
+                    : "audio/ogg");
+        } else if (ascii(b, n, 0, "FLV")) {
+            return MediaInfo.of("video/x-flv");
+        } else if (startsWith(b, n, 0, ASF)) {
+            return MediaInfo.of(byName.startsWith("audio/") ? byName : "video/x-ms-wmv");
+        } else if (ascii(b, n, 0, "#!AMR")) {
+            return MediaInfo.of("audio/amr");
+        } else if (ascii(b, n, 0, "fLaC")) {
+            return MediaInfo.of("audio/flac");
+        } else if (n >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xF6) == 0xF0) {
+            // ADTS frame header: sync word and layer 0
+            return MediaInfo.of("audio/aac");
+        } else if (ascii(b, n, 0, "ID3") || (n >= 2 && (b[0] & 0xFF) == 0xFF
+                && (b[1] & 0xE0) == 0xE0 && (b[1] & 0x06) != 0)) {
+            // ID3 tag or MPEG audio frame header with a layer
+            return MediaInfo.of("audio/mpeg");
+        } else if (ascii(b, n, 0, "%PDF-")) {
+            return MediaInfo.of("application/pdf");
+        } else if (ascii(b, n, 0, "{\\rtf")) {
+            return MediaInfo.of("application/rtf");
+        } else if (ascii(b, n, 0, "PK\u0003\u0004")) {
+            return MediaInfo.of(officeOpenXml(b, n));
+        } else if (startsWith(b, n, 0, OLE)) {
+            // Legacy Office documents share one container format; the extension tells them apart
+            return MediaInfo.of(MediaInfo.entryTypeOf(byName) == ChatEntry.Type.DOCUMENT ? byName
+                    : "application/x-ole-storage");
+        } else if (ascii(b, n, 0, "BEGIN:VCARD") || ascii(b, n, 3, "BEGIN:VCARD")) {
+            return MediaInfo.of("text/vcard");
+        }
+        return MediaInfo.of(byName);
+    }
+
+    private static MediaInfo jpeg(byte[] b, int n) {
+        int i = 2;
+        while (i + 9 < n && (b[i] & 0xFF) == 0xFF) {
+            int marker = b[i + 1] & 0xFF;
+            if (marker == 0xFF) {
+                i++; // fill byte
+                continue;
+            }
+            if (marker == 0xD8 || marker == 0x01 || marker >= 0xD0 && marker <= 0xD7) {
+                i += 2; // markers without a segment
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                break; // image data starts before any frame header
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8
+                    && marker != 0xCC) {
+                return new MediaInfo("image/jpeg", uint16(b, i + 7), uint16(b, i + 5), null);
+            }
+            i += 2 + uint16(b, i + 2);
+        }
+        return MediaInfo.of("image/jpeg");
+    }
+
+    private static MediaInfo webp(byte[] b, int n) {
+        if (ascii(b, n, 12, "VP8 ") && n >= 30) {
+            return new MediaInfo("image/webp", uint16le(b, 26) & 0x3FFF,
+                    uint16le(b, 28) & 0x3FFF, null);
+        } else if (ascii(b, n, 12, "VP8L") && n >= 25) {
+            int width = 1 + (((b[22] & 0x3F) << 8) | (b[21] & 0xFF));
+            int height = 1 + (((b[24] & 0x0F) << 10) | ((b[23] & 0xFF) << 2)
+                    | ((b[22] & 0xC0) >> 6));
+            return new MediaInfo("image/webp", width, height, null);
+        } else if (ascii(b, n, 12, "VP8X") && n >= 30) {
+            return new MediaInfo("image/webp", 1 + uint24le(b, 24), 1 + uint24le(b, 27), null);
+        }
+        return MediaInfo.of("image/webp");
+    }
+
+    private static MediaInfo wav(byte[] b, int n) {
+        long byteRate = 0;
+        int i = 12;
+        while (i + 8 <= n) {
+            long size = int32le(b, i + 4) & 0xFFFFFFFFL;
+            if (ascii(b, n, i, "fmt ") && i + 20 <= n) {
+                byteRate = int32le(b, i + 16) & 0xFFFFFFFFL;
+            } else if (ascii(b, n, i, "data")) {
+                // Streams that were not finished carry the largest size
+                Long duration = byteRate > 0 && size != 0xFFFFFFFFL ? size * 1000 / byteRate
+                        : null;
+                return new MediaInfo("audio/wav", null, null, duration);
+            }
+            i += 8 + (int) Math.min(size + (size & 1), Integer.MAX_VALUE - 8);
+            if (i < 0) {
+                break;
+            }
+        }
+        return MediaInfo.of("audio/wav");
+    }
+
+    /**
+     * MP4, QuickTime, 3GPP and HEIF files: the brand names the format, the movie header box the
+     * playing time and the first visual track header the dimensions
+     */
+    private static MediaInfo isoMedia(byte[] b, int n) {
+        String brand = n >= 12 ? new String(b, 8, 4, StandardCharsets.US_ASCII) : "";
+        String mimeType = switch (brand) {
+            case "qt  " -> "video/quicktime";
+            case "M4A ", "M4B ", "M4P " -> "audio/mp4";
+            case "heic", "heix", "hevc", "heim", "heis" -> "image/heic";
+            case "mif1", "msf1" -> "image/heif";
+            case "avif" -> "image/avif";
+            default -> brand.startsWith("3g") ? "video/3gpp" : "video/mp4";
+        };
+        if (mimeType.startsWith("image/")) {
+            return MediaInfo.of(mimeType);
+        }
+        int moov = findBox(b, 0, n, "moov");
+        if (moov < 0) {
+            return MediaInfo.of(mimeType);
+        }
+        int moovEnd = Math.min(boxEnd(b, moov, n), n);
+        Long duration = null;
+        int mvhd = findBox(b, moov + 8, moovEnd, "mvhd");
+        if (mvhd >= 0 && mvhd + 40 <= n) {
+            boolean v1 = b[mvhd + 8] == 1;
+            long timescale = int32(b, mvhd + 8 + (v1 ? 20 : 12)) & 0xFFFFFFFFL;
+            long units = v1 ? int64(b, mvhd + 8 + 24) : int32(b, mvhd + 8 + 16) & 0xFFFFFFFFL;
+            if (timescale > 0 && units >= 0) {
+                duration = units * 1000 / timescale;
+            }
+        }
+        Integer width = null;
+        Integer height = null;
+        for (int trak = findBox(b, moov + 8, moovEnd, "trak"); trak >= 0 && width == null;
+                trak = findBox(b, boxEnd(b, trak, moovEnd), moovEnd, "trak")) {
+            int tkhd = findBox(b, trak + 8, Math.min(boxEnd(b, trak, moovEnd), n), "tkhd");
+            if (tkhd >= 0 && tkhd + 9 <= n) {
+                int at = tkhd + 8 + (b[tkhd + 8] == 1 ? 88 : 76);
+                if (at + 8 <= n && (int32(b, at) >>> 16) > 0) {
+                    width = int32(b, at) >>> 16;
+                    height = int32(b, at + 4) >>> 16;
+                }
+            }
+        }
+        if (width == null && "video/mp4".equals(mimeType)) {
+            // A movie without a visual track holds only sound
+            mimeType = "audio/mp4";
+        }
+        return new MediaInfo(mimeType, width, height, duration);
+    }
+
+    /**
+     * Offset of the first box of a type between two offsets, or -1
+     */
+    private static int findBox(byte[] b, int from, int to, String type) {
+        int i = from;
+        while (i >= 0 && i + 8 <= to) {
+            if (ascii(b, to, i + 4, type)) {
+                return i;
+            }
+            int end = boxEnd(b, i, to);
+            if (end <= i) {
+                break;
+            }
+            i = end;
+        }
+        return -1;
+    }
+
+    private static int boxEnd(byte[] b, int box, int limit) {
+        long size = int32(b, box) & 0xFFFFFFFFL;
+        if (size == 1 && box + 16 <= limit) {
+            size = int64(b, box + 8);
+        } else if (size == 0) {
+            return limit;
+        }
+        return size < 8 ? -1 : (int) Math.min(box + size, Integer.MAX_VALUE);
+    }
+
+    private static String officeOpenXml(byte[] b, int n) {
+        if (indexOf(b, n, "word/") >= 0) {
+            return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        } else if (indexOf(b, n, "xl/") >= 0) {
+            return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+        } else if (indexOf(b, n, "ppt/") >= 0) {
+            return "application/vnd.openxmlformats-officedocument.presentationml.presentation";
+        }
+        return "application/zip";
+    }
+
+    private static boolean startsWith(byte[] b, int n, int at, byte... prefix) {
+        if (at + prefix.length > n) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[at + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean ascii(byte[] b, int n, int at, String text) {
+        return startsWith(b, n, at, text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static int indexOf(byte[] b, int n, String text) {
+        byte[] needle = text.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i + needle.length <= n; i++) {
+            if (startsWith(b, n, i, needle)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int uint16(byte[] b, int at) {
+        return (b[at] & 0xFF) << 8 | b[at + 1] & 0xFF;
+    }
+
+    private static int uint16le(byte[] b, int at) {
+        return (b[at + 1] & 0xFF) << 8 | b[at] & 0xFF;
+    }
+
+    private static int uint24le(byte[] b, int at) {
+        return (b[at + 2] & 0xFF) << 16 | uint16le(b, at);
+    }
+
+    private static int int32(byte[] b, int at) {
+        return uint16(b, at) << 16 | uint16(b, at + 2);
+    }
+
+    private static int int32le(byte[] b, int at) {
+        return uint16le(b, at + 2) << 16 | uint16le(b, at);
+    }
+
+    private static long int64(byte[] b, int at) {
+        return (long) int32(b, at) << 32 | int32(b, at + 4) & 0xFFFFFFFFL;
+    }
+}
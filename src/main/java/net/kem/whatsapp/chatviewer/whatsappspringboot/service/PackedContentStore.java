@@ -0,0 +1,505 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content store in the multimedia storage path that appends small files to large pack files
+ * instead of giving each one its own file, as an export holds thousands of stickers, contacts and
+ * voice notes. Larger files, and small ones stored before packing was enabled, are kept as plain
+ * files by a {@link LocalContentStore}. Packs are only ever appended to; the offset and length of
+ * every packed file is kept in memory and rebuilt by scanning the packs at startup. A deleted file
+ * is marked by a tombstone record, and a full pack with enough deleted bytes is rewritten into the
+ * newest one in the background.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "pack")
+public class PackedContentStore implements ContentStore {
+
+    static final String PACK_DIRECTORY = "packs";
+
+    // Packed files are read into memory whole, so larger ones are never packed
+    private static final long MAX_PACKED_FILE_SIZE = 16L * 1024 * 1024;
+    private static final byte PUT = 1;
+    private static final byte TOMBSTONE = 2;
+    // Type, key length and modification time, followed by the key
+    private static final int HEADER_BYTES = Byte.BYTES + Short.BYTES + Long.BYTES;
+    // Length of a stored file, followed by its content
+    private static final int PUT_BYTES = Integer.BYTES;
+    // Pack and position of the record a tombstone deletes
+    private static final int TOMBSTONE_BYTES = Integer.BYTES + Long.BYTES;
+    private static final Pattern PACK_NAME = Pattern.compile("pack-(\\d+)\\.dat");
+
+    private final LocalContentStore files;
+    private final Path directory;
+    private final long maxFileSize;
+    private final long packSize;
+    private final double compactionRatio;
+    private final Executor compactor;
+
+    // Where each packed file lies, by key
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Pack> packs = new ConcurrentSkipListMap<>();
+    // The pack appended to, guarded by this
+    private Pack active;
+    private volatile boolean closed;
+
+    @Autowired
+    public PackedContentStore(@Value("${app.multimedia.storage.path}") String storagePath,
+            @Value("${app.storage.pack.max-file-size:64KB}") DataSize maxFileSize,
+            @Value("${app.storage.pack.pack-size:256MB}") DataSize packSize,
+            @Value("${app.storage.pack.compaction-ratio:0.5}") double compactionRatio)
+            throws IOException {
+        this(storagePath, maxFileSize.toBytes(), packSize.toBytes(), compactionRatio,
+                Executors.newSingleThreadExecutor(
+                        Thread.ofPlatform().name("pack-compactor").daemon().factory()));
+    }
+
+    PackedContentStore(String storagePath, long maxFileSize, long packSize,
+            double compactionRatio, Executor compactor) throws IOException {
+        this.files = new LocalContentStore(storagePath);
+        this.directory = Files.createDirectories(
+                Paths.get(storagePath).toAbsolutePath().normalize().resolve(PACK_DIRECTORY));
+        this.maxFileSize = Math.min(maxFileSize, MAX_PACKED_FILE_SIZE);
+        this.packSize = packSize;
+        this.compactionRatio = compactionRatio;
+        this.compactor = compactor;
+        load();
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Path source) throws IOException {
+        if (Files.size(source) > maxFileSize) {
+            return !index.containsKey(key) && files.putIfAbsent(key, source);
+        }
+        return putIfAbsent(key, Files.readAllBytes(source));
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, byte[] content) throws IOException {
+        if (content.length > maxFileSize) {
+            return !index.containsKey(key) && files.putIfAbsent(key, content);
+        }
+        // Rejects keys outside the store, as for plain files
+        files.localPath(key);
+        synchronized (this) {
+            if (index.containsKey(key) || files.exists(key)) {
+                return false;
+            }
+            index.put(key, appendPut(key, System.currentTimeMillis(), content));
+            return true;
+        }
+    }
+
+    @Override
+    public Optional<StoredContent> stat(String key) throws IOException {
+        Entry entry = index.get(key);
+        if (entry != null) {
+            return Optional.of(new StoredContent(this, key, entry.length(), entry.lastModified()));
+        }
+        return files.stat(key).map(
+                stored -> new StoredContent(this, key, stored.size(), stored.lastModified()));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return index.containsKey(key) || files.exists(key);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        byte[] content = readPacked(key, 0, Long.MAX_VALUE);
+        return content != null ? new ByteArrayInputStream(content) : files.get(key);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        byte[] content = readPacked(key, offset, length);
+        return content != null ? new ByteArrayInputStream(content)
+                : files.get(key, offset, length);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        synchronized (this) {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                appendTombstone(key, System.currentTimeMillis(), entry.pack().id,
+                        entry.position());
+                index.remove(key);
+                entry.pack().deadBytes.addAndGet(entry.recordBytes());
+                compactIfWasteful(entry.pack());
+                return true;
+            }
+        }
+        return files.delete(key);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return index.containsKey(key) ? Optional.empty() : files.localPath(key);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (compactor instanceof ExecutorService service) {
+            service.shutdownNow();
+        }
+        synchronized (this) {
+            closed = true;
+            for (Pack pack : packs.values()) {
+                pack.channel.close();
+                pack.writer.close();
+            }
+        }
+    }
+
+    /**
+     * Rewrite a full pack into the newest one, keeping only the files still stored in it, and
+     * delete it
+     */
+    private void compact(Pack pack) throws IOException {
+        if (pack.retired) {
+            return;
+        }
+        long copied = 0;
+        long position = 0;
+        while (position < pack.size) {
+            Record record = readRecord(pack.channel, position, pack.size);
+            if (record == null) {
+                break;
+            }
+            synchronized (this) {
+                if (record.type() == PUT) {
+                    Entry entry = index.get(record.key());
+                    if (entry != null && entry.pack() == pack && entry.position() == position) {
+                        byte[] content = new byte[record.length()];
+                        readFully(pack.channel, ByteBuffer.wrap(content), record.contentPosition());
+                        index.put(record.key(),
+                                appendPut(record.key(), record.lastModified(), content));
+                        copied++;
+                    }
+                } else if (record.targetPack() != pack.id
+                        && packs.containsKey(record.targetPack())) {
+                    // The record it deletes would come back at startup without it
+                    appendTombstone(record.key(), record.lastModified(), record.targetPack(),
+                            record.targetPosition());
+                }
+            }
+            position = record.end();
+        }
+        synchronized (this) {
+            if (active != null) {
+                active.writer.force(false);
+            }
+            packs.remove(pack.id);
+            pack.retire();
+        }
+        Files.deleteIfExists(pack.file);
+        log.info("Compacted pack {}: {} files moved, {} bytes freed", pack.file.getFileName(),
+                copied, pack.deadBytes.get());
+    }
+
+    private void load() throws IOException {
+        try (Stream<Path> listing = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) listing::iterator) {
+                Matcher matcher = PACK_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int id = Integer.parseInt(matcher.group(1));
+                    packs.put(id, new Pack(id, file, StandardOpenOption.CREATE));
+                }
+            }
+        }
+        // Records are replayed in the order they were appended
+        for (Pack pack : packs.values()) {
+            scan(pack);
+        }
+        active = packs.isEmpty() ? null : packs.lastEntry().getValue();
+        log.info("Loaded {} packed files from {} packs in {}", index.size(), packs.size(),
+                directory);
+        for (Pack pack : packs.values()) {
+            compactIfWasteful(pack);
+        }
+    }
+
+    private void scan(Pack pack) throws IOException {
+        long size = pack.channel.size();
+        long position = 0;
+        while (position < size) {
+            Record record = readRecord(pack.channel, position, size);
+            if (record == null) {
+                // Left by a write that did not finish, as nothing is appended after a failed one
+                log.warn("Truncating incomplete record at {} of pack {}", position, pack.file);
+                pack.writer.truncate(position);
+                break;
+            }
+            if (record.type() == PUT) {
+                Entry previous = index.put(record.key(), new Entry(pack, position,
+                        record.contentPosition(), record.length(), record.lastModified()));
+                if (previous != null) {
+                    // Copied by a compaction that did not get to delete the old pack
+                    previous.pack().deadBytes.addAndGet(previous.recordBytes());
+                }
+            } else {
+                Entry target = index.get(record.key());
+                if (target != null && target.pack().id == record.targetPack()
+                        && target.position() == record.targetPosition()) {
+                    index.remove(record.key());
+                    target.pack().deadBytes.addAndGet(target.recordBytes());
+                }
+            }
+            position = record.end();
+        }
+        pack.size = position;
+    }
+
+    /**
+     * Bytes of a packed file from {@code offset}, or null if the key is not packed
+     */
+    private byte[] readPacked(String key, long offset, long length) throws IOException {
+        while (true) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            long from = Math.min(offset, entry.length());
+            byte[] content = new byte[(int) Math.min(length, entry.length() - from)];
+            FileChannel channel = entry.pack().channel;
+            try {
+                readFully(channel, ByteBuffer.wrap(content), entry.contentPosition() + from);
+                return content;
+            } catch (ClosedByInterruptException e) {
+                throw e;
+            } catch (ClosedChannelException e) {
+                if (closed) {
+                    throw e;
+                }
+                // Compacted away since the lookup, or closed by another reader being interrupted
+                entry.pack().reopen(channel);
+            }
+        }
+    }
+
+    // Guarded by this
+    private Entry appendPut(String key, long lastModified, byte[] content) throws IOException {
+        byte[] name = keyBytes(key);
+        ByteBuffer record =
+                ByteBuffer.allocate(HEADER_BYTES + name.length + PUT_BYTES + content.length);
+        record.put(PUT).putShort((short) name.length).putLong(lastModified).put(name)
+                .putInt(content.length).put(content).flip();
+        Pack pack = activePack(record.remaining());
+        long position = append(pack, record);
+        return new Entry(pack, position, position + record.limit() - content.length,
+                content.length, lastModified);
+    }
+
+    // Guarded by this
+    private void appendTombstone(String key, long lastModified, int targetPack,
+            long targetPosition) throws IOException {
+        byte[] name = keyBytes(key);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + name.length + TOMBSTONE_BYTES);
+        record.put(TOMBSTONE).putShort((short) name.length).putLong(lastModified).put(name)
+                .putInt(targetPack).putLong(targetPosition).flip();
+        append(activePack(record.remaining()), record);
+    }
+
+    // Guarded by this
+    private Pack activePack(long recordBytes) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (active == null || active.size > 0 && active.size + recordBytes > packSize) {
+            Pack full = active;
+            int id = packs.isEmpty() ? 1 : packs.lastKey() + 1;
+            active = new Pack(id, directory.resolve(String.format("pack-%06d.dat", id)),
+                    StandardOpenOption.CREATE_NEW);
+            packs.put(id, active);
+            if (full != null) {
+                compactIfWasteful(full);
+            }
+        }
+        return active;
+    }
+
+    // Guarded by this
+    private long append(Pack pack, ByteBuffer record) throws IOException {
+        long position = pack.size;
+        try {
+            while (record.hasRemaining()) {
+                pack.writer.write(record, position + record.position());
+            }
+        } catch (IOException e) {
+            // Part of the record may have been written, so the pack takes no more
+            active = null;
+            throw e;
+        }
+        pack.size = position + record.limit();
+        return position;
+    }
+
+    private void compactIfWasteful(Pack pack) {
+        boolean sealed;
+        synchronized (this) {
+            sealed = pack != active;
+        }
+        if (sealed && !pack.retired && pack.deadBytes.get() > pack.size * compactionRatio) {
+            compactor.execute(() -> {
+                try {
+                    compact(pack);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Could not compact pack: {} - {}", pack.file, e.getMessage());
+                }
+            });
+        }
+    }
+
+    private static byte[] keyBytes(String key) {
+        byte[] name = key.getBytes(UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Key too long to pack: " + key);
+        }
+        return name;
+    }
+
+    /**
+     * The record at a position of a pack, or null if it does not fit before {@code size}
+     */
+    private static Record readRecord(FileChannel channel, long position, long size)
+            throws IOException {
+        if (size - position < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, position);
+        header.flip();
+        byte type = header.get();
+        int keyLength = Short.toUnsignedInt(header.getShort());
+        long lastModified = header.getLong();
+        int bodyBytes = type == PUT ? PUT_BYTES : TOMBSTONE_BYTES;
+        long bodyPosition = position + HEADER_BYTES + keyLength;
+        if ((type != PUT && type != TOMBSTONE) || size - bodyPosition < bodyBytes) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(keyLength + bodyBytes);
+        readFully(channel, body, position + HEADER_BYTES);
+        body.flip();
+        String key = new String(body.array(), 0, keyLength, UTF_8);
+        body.position(keyLength);
+        long end = bodyPosition + bodyBytes;
+        if (type == TOMBSTONE) {
+            return new Record(type, key, lastModified, end, 0, body.getInt(), body.getLong());
+        }
+        int length = body.getInt();
+        if (length < 0 || size - end < length) {
+            return null;
+        }
+        return new Record(type, key, lastModified, end + length, length, 0, 0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Pack ends before position " + position);
+            }
+        }
+    }
+
+    /**
+     * An append-only file of records. Reads are positional, so threads share its read channel;
+     * appends go through a channel of their own, which an interrupted reader cannot close.
+     */
+    private static final class Pack {
+
+        final int id;
+        final Path file;
+        final AtomicLong deadBytes = new AtomicLong();
+        volatile FileChannel channel;
+        // Written under the store's lock only
+        final FileChannel writer;
+        // Bytes of complete records, written under the store's lock
+        volatile long size;
+        volatile boolean retired;
+
+        Pack(int id, Path file, StandardOpenOption create) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.writer = FileChannel.open(file, create, StandardOpenOption.WRITE);
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+
+        /**
+         * Open the channel again after an interrupted thread closed it, unless the pack is gone
+         */
+        synchronized void reopen(FileChannel closedChannel) throws IOException {
+            if (!retired && channel == closedChannel) {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            }
+        }
+
+        synchronized void retire() throws IOException {
+            retired = true;
+            channel.close();
+            writer.close();
+        }
+    }
+
+    /**
+     * Where a packed file lies
+     *
+     * @param position the start of its record
+     * @param contentPosition the start of its bytes
+     */
+    private record Entry(Pack pack, long position, long contentPosition, int length,
+            long lastModified) {
+
+        long recordBytes() {
+            return contentPosition - position + length;
+        }
+    }
+
+    /**
+     * A record read from a pack
+     *
+     * @param end the position of the next record
+     * @param length the size of a stored file
+     * @param targetPack the pack of the record a tombstone deletes
+     */
+    private record Record(byte type, String key, long lastModified, long end, int length,
+            int targetPack, long targetPosition) {
+
+        long contentPosition() {
+            return end - length;
+        }
+    }
+}
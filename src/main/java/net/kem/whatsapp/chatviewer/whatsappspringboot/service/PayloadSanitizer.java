@@ -0,0 +1,118 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+
+/**
+ * Finds URLs, email addresses, phone numbers and @mentions in a payload in a single pass and
+ * replaces the sensitive ones with placeholders. Runs once per entry at ingest; the result is
+ * stored with the entry.
+ */
+public final class PayloadSanitizer {
+
+    // Maximum length of a normalized value, so that it fits a B-tree index entry
+    public static final int MAX_NORMALIZED_LENGTH = 512;
+
+    // One alternative per kind, tried in this order at every position
+    private static final Pattern DETECTED = Pattern.compile("(?<url>https?://[^\\s]+)"
+            + "|(?<email>\\b[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}\\b)"
+            + "|(?<phone>\\b\\d{10,15}\\b)"
+            + "|(?<mention>(?<![\\p{L}\\p{N}_.@])@[\\p{L}\\p{N}_][\\p{L}\\p{N}_]*+"
+            + "(?![\\p{L}\\p{N}_@]|\\.[\\p{L}\\p{N}]))");
+
+    // WhatsApp writes a mention of a contact not in the address book as @ and the phone number
+    private static final Pattern PHONE_MENTION = Pattern.compile("@\\d{10,15}");
+
+    // Punctuation that ends a sentence rather than the URL before it
+    private static final Pattern URL_TRAILER = Pattern.compile("[.,;:!?'\")\\]}>]+$");
+
+    /**
+     * A value found in a payload, at [start, end) of the original text, and its
+     * {@link #normalize normalized} form
+     */
+    public record Match(EntityKind kind, String value, String normalized, int start, int end) {
+    }
+
+    /**
+     * The sanitized text of a payload and everything that was replaced in it
+     */
+    public record Result(String sanitized, List<Match> matches) {
+    }
+
+    private PayloadSanitizer() {
+    }
+
+    public static Result scan(String payload) {
+        if (payload == null) {
+            return new Result(null, List.of());
+        }
+        Matcher matcher = DETECTED.matcher(payload);
+        if (!matcher.find()) {
+            return new Result(payload, List.of());
+        }
+        StringBuilder sanitized = new StringBuilder(payload.length());
+        List<Match> matches = new ArrayList<>();
+        int last = 0;
+        do {
+            EntityKind kind = matcher.group("url") != null ? EntityKind.URL
+                    : matcher.group("email") != null ? EntityKind.EMAIL
+                            : matcher.group("phone") != null ? EntityKind.PHONE
+                                    : EntityKind.MENTION;
+            String value = matcher.group();
+            matches.add(new Match(kind, value, normalize(kind, value), matcher.start(),
+                    matcher.end()));
+            if (kind.getPlaceholder() != null) {
+                sanitized.append(payload, last, matcher.start()).append(kind.getPlaceholder());
+                last = matcher.end();
+            } else if (PHONE_MENTION.matcher(value).matches()) {
+                // The mention stays, its phone number does not
+                sanitized.append(payload, last, matcher.start()).append('@')
+                        .append(EntityKind.PHONE.getPlaceholder());
+                last = matcher.end();
+            }
+        } while (matcher.find());
+        sanitized.append(payload, last, payload.length());
+        return new Result(sanitized.toString(), matches);
+    }
+
+    public static String sanitize(String payload) {
+        return scan(payload).sanitized();
+    }
+
+    /**
+     * The form values are grouped and looked up by: URLs without trailing punctuation and with a
+     * lower-case scheme and host, lower-case emails, the digits of phone numbers and lower-case
+     * mentions without the @.
+     */
+    public static String normalize(EntityKind kind, String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = switch (kind) {
+            case URL -> normalizeUrl(URL_TRAILER.matcher(value.trim()).replaceFirst(""));
+            case EMAIL -> value.trim().toLowerCase(Locale.ROOT);
+            case PHONE -> value.replaceAll("\\D", "");
+            case MENTION -> value.trim().replaceFirst("^@", "").toLowerCase(Locale.ROOT);
+        };
+        return normalized.length() > MAX_NORMALIZED_LENGTH
+                ? normalized.substring(0, MAX_NORMALIZED_LENGTH)
+                : normalized;
+    }
+
+    private static String normalizeUrl(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return url;
+        }
+        int hostEnd = scheme + 3;
+        while (hostEnd < url.length() && "/?#".indexOf(url.charAt(hostEnd)) < 0) {
+            hostEnd++;
+        }
+        String rest = url.substring(hostEnd);
+        return url.substring(0, hostEnd).toLowerCase(Locale.ROOT) + ("/".equals(rest) ? "" : rest);
+    }
+}
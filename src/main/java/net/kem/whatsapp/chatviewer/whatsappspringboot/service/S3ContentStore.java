@@ -0,0 +1,407 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Content store in a bucket of Amazon S3 or a compatible object store such as MinIO, so that every
+ * node serves the same files without a shared file system. Requests are signed with AWS Signature
+ * Version 4 over plain HTTP. Files larger than the part size are uploaded in parts, and ranges are
+ * read with ranged GETs, so neither is held in memory. A key is only written if it is not taken,
+ * checked by the store itself with {@code If-None-Match: *}.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "s3")
+public class S3ContentStore implements ContentStore {
+
+    // Smallest part S3 accepts, other than the last
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final DateTimeFormatter AMZ_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final String prefix;
+    private final boolean pathStyle;
+    private final long partSize;
+    private final HttpClient httpClient;
+
+    public S3ContentStore(@Value("${app.storage.s3.endpoint}") String endpoint,
+            @Value("${app.storage.s3.region:us-east-1}") String region,
+            @Value("${app.storage.s3.bucket}") String bucket,
+            @Value("${app.storage.s3.access-key}") String accessKey,
+            @Value("${app.storage.s3.secret-key}") String secretKey,
+            @Value("${app.storage.s3.prefix:}") String prefix,
+            @Value("${app.storage.s3.path-style:true}") boolean pathStyle,
+            @Value("${app.storage.s3.part-size:8MB}") DataSize partSize) {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0,
+                endpoint.length() - 1) : endpoint);
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.prefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+        this.pathStyle = pathStyle;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize.toBytes());
+        this.httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10)).build();
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, Path source) throws IOException {
+        if (exists(key)) {
+            return false;
+        }
+        long size = Files.size(source);
+        if (size <= partSize) {
+            return put(key, HttpRequest.BodyPublishers.ofFile(source));
+        }
+        return putInParts(key, source, size);
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, byte[] content) throws IOException {
+        if (exists(key)) {
+            return false;
+        }
+        return put(key, HttpRequest.BodyPublishers.ofByteArray(content));
+    }
+
+    @Override
+    public Optional<StoredContent> stat(String key) throws IOException {
+        HttpResponse<Void> response = send("HEAD", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        check(response, "HEAD", key, null);
+        long size = response.headers().firstValueAsLong("content-length").orElse(0);
+        long lastModified = response.headers().firstValue("last-modified")
+                .map(date -> ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli())
+                .orElse(0L);
+        return Optional.of(new StoredContent(this, key, size, lastModified));
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return read(key, Map.of(), 200);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        return read(key, Map.of("range", "bytes=" + offset + "-" + (offset + length - 1)), 206);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        if (!exists(key)) {
+            return false;
+        }
+        HttpResponse<String> response = send("DELETE", key, Map.of(), Map.of(),
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofString());
+        check(response, "DELETE", key, response.body());
+        return true;
+    }
+
+    private InputStream read(String key, Map<String, String> headers, int expectedStatus)
+            throws IOException {
+        HttpResponse<InputStream> response = send("GET", key, Map.of(), headers,
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == expectedStatus) {
+            return response.body();
+        }
+        String body;
+        try (InputStream in = response.body()) {
+            body = new String(in.readNBytes(1024), StandardCharsets.UTF_8);
+        }
+        if (response.statusCode() == 404) {
+            throw new NoSuchFileException(key);
+        }
+        if (response.statusCode() == 416) {
+            // A range that starts at or after the end of the file
+            return InputStream.nullInputStream();
+        }
+        throw failure(response, "GET", key, body);
+    }
+
+    private boolean put(String key, HttpRequest.BodyPublisher body) throws IOException {
+        HttpResponse<String> response = send("PUT", key, Map.of(), Map.of("if-none-match", "*"),
+                body, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 412) {
+            // Stored by another node in the meantime
+            return false;
+        }
+        check(response, "PUT", key, response.body());
+        log.debug("Stored object: {}", key);
+        return true;
+    }
+
+    /**
+     * Upload a file in parts read straight from disk, aborting the upload if any step fails
+     */
+    private boolean putInParts(String key, Path source, long size) throws IOException {
+        HttpResponse<String> created = send("POST", key, Map.of("uploads", ""), Map.of(),
+                HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofString());
+        check(created, "POST", key, created.body());
+        Matcher matcher = UPLOAD_ID.matcher(created.body());
+        if (!matcher.find()) {
+            throw new IOException("No upload id for " + key + ": " + created.body());
+        }
+        String uploadId = matcher.group(1);
+
+        boolean completed = false;
+        try {
+            List<String> etags = new ArrayList<>();
+            for (long offset = 0; offset < size; offset += partSize) {
+                long length = Math.min(partSize, size - offset);
+                String partNumber = String.valueOf(etags.size() + 1);
+                HttpResponse<String> part = send("PUT", key,
+                        Map.of("partNumber", partNumber, "uploadId", uploadId), Map.of(),
+                        filePart(source, offset, length), HttpResponse.BodyHandlers.ofString());
+                check(part, "PUT", key, part.body());
+                etags.add(part.headers().firstValue("etag").orElseThrow(
+                        () -> new IOException("No ETag for part " + partNumber + " of " + key)));
+            }
+
+            StringBuilder xml = new StringBuilder("<CompleteMultipartUpload>");
+            for (int i = 0; i < etags.size(); i++) {
+                xml.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                        .append(etags.get(i).replace("\"", "&quot;")).append("</ETag></Part>");
+            }
+            xml.append("</CompleteMultipartUpload>");
+            HttpResponse<String> complete = send("POST", key, Map.of("uploadId", uploadId),
+                    Map.of("if-none-match", "*", "content-type", "application/xml"),
+                    HttpRequest.BodyPublishers.ofString(xml.toString()),
+                    HttpResponse.BodyHandlers.ofString());
+            if (complete.statusCode() == 412) {
+                return false;
+            }
+            // A completion that fails after it started is reported in a 200 response
+            if (complete.statusCode() / 100 != 2 || complete.body().contains("<Error>")) {
+                throw failure(complete, "POST", key, complete.body());
+            }
+            completed = true;
+            log.debug("Stored object: {} in {} parts", key, etags.size());
+            return true;
+        } finally {
+            if (!completed) {
+                abort(key, uploadId);
+            }
+        }
+    }
+
+    private void abort(String key, String uploadId) {
+        try {
+            send("DELETE", key, Map.of("uploadId", uploadId), Map.of(),
+                    HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.discarding());
+        } catch (IOException e) {
+            log.warn("Could not abort upload {} of {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private static HttpRequest.BodyPublisher filePart(Path source, long offset, long length) {
+        return HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> {
+                    try {
+                        FileChannel channel = FileChannel.open(source);
+                        channel.position(offset);
+                        return new LimitedInputStream(Channels.newInputStream(channel), length);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }), length);
+    }
+
+    private <T> HttpResponse<T> send(String method, String key, Map<String, String> query,
+            Map<String, String> headers, HttpRequest.BodyPublisher body,
+            HttpResponse.BodyHandler<T> handler) throws IOException {
+        URI uri = objectUri(key, query);
+        TreeMap<String, String> signed = new TreeMap<>(headers);
+        signed.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        signed.put("x-amz-date", AMZ_DATE.format(Instant.now()));
+        String authorization = authorization(method, uri, signed, UNSIGNED_PAYLOAD, accessKey,
+                secretKey, region);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(TIMEOUT)
+                .method(method, body).header("Authorization", authorization);
+        signed.forEach(request::header);
+        try {
+            return httpClient.send(request.build(), handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(method + " " + key + " interrupted");
+        }
+    }
+
+    private URI objectUri(String key, Map<String, String> query) {
+        String path = uriEncode(prefix + key, false);
+        String authority = endpoint.getRawAuthority();
+        if (pathStyle) {
+            path = endpoint.getRawPath() + "/" + uriEncode(bucket, true) + "/" + path;
+        } else {
+            authority = bucket + "." + authority;
+            path = endpoint.getRawPath() + "/" + path;
+        }
+        StringBuilder uri = new StringBuilder(endpoint.getScheme()).append("://")
+                .append(authority).append(path);
+        if (!query.isEmpty()) {
+            uri.append('?').append(canonicalQuery(query));
+        }
+        return URI.create(uri.toString());
+    }
+
+    private static void check(HttpResponse<?> response, String method, String key, String body)
+            throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            throw failure(response, method, key, body);
+        }
+    }
+
+    private static IOException failure(HttpResponse<?> response, String method, String key,
+            String body) {
+        return new IOException(method + " " + key + " failed with status "
+                + response.statusCode() + (body == null || body.isEmpty() ? "" : ": " + body));
+    }
+
+    /**
+     * Authorization header value of a request, signed with AWS Signature Version 4. The headers
+     * are signed along with the Host header and must include {@code x-amz-date}.
+     *
+     * @param headers the headers to sign by lowercase name
+     * @param payloadHash the hex SHA-256 of the body, or {@value #UNSIGNED_PAYLOAD}
+     */
+    static String authorization(String method, URI uri, Map<String, String> headers,
+            String payloadHash, String accessKey, String secretKey, String region) {
+        TreeMap<String, String> signed = new TreeMap<>(headers);
+        signed.put("host", hostHeader(uri));
+        StringBuilder canonicalHeaders = new StringBuilder();
+        signed.forEach((name, value) -> canonicalHeaders.append(name).append(':')
+                .append(value.trim()).append('\n'));
+        String signedHeaders = String.join(";", signed.keySet());
+
+        String rawQuery = uri.getRawQuery();
+        String canonicalQuery = rawQuery == null ? ""
+                : String.join("&", Arrays.stream(rawQuery.split("&"))
+                        .map(pair -> pair.contains("=") ? pair : pair + "=").sorted().toList());
+        String canonicalRequest = method + "\n" + uri.getRawPath() + "\n" + canonicalQuery + "\n"
+                + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+
+        String amzDate = signed.get("x-amz-date");
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope + "\n"
+                + HexFormat.of().formatHex(sha256(canonicalRequest));
+
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(key, stringToSign));
+        return ALGORITHM + " Credential=" + accessKey + "/" + scope + ", SignedHeaders="
+                + signedHeaders + ", Signature=" + signature;
+    }
+
+    /**
+     * The Host header the HTTP client sends for a URI: the port only when it is not the default
+     */
+    private static String hostHeader(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1 || port == ("https".equals(uri.getScheme()) ? 443 : 80);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    private static String canonicalQuery(Map<String, String> query) {
+        StringBuilder canonical = new StringBuilder();
+        new TreeMap<>(query).forEach((name, value) -> {
+            if (!canonical.isEmpty()) {
+                canonical.append('&');
+            }
+            canonical.append(uriEncode(name, true)).append('=').append(uriEncode(value, true));
+        });
+        return canonical.toString();
+    }
+
+    /**
+     * Percent-encode everything but the unreserved characters, and slashes if asked to
+     */
+    static String uriEncode(String value, boolean encodeSlash) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && !encodeSlash)) {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(HexFormat.of().withUpperCase().toHexDigits(b));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+
+/**
+ * Backend that answers chat entry searches. The database itself is the default; an engine with
+ * its own index is told about every entry that is added or removed through the index methods.
+ * Results are returned as loaded and are sanitized by the caller.
+ */
+public interface SearchEngine {
+
+    /**
+     * Search the entries of a user by keyword, ranked by relevance where the mode supports it
+     */
+    Page<ChatEntryEntity> searchByKeyword(Long userId, String keyword, KeywordSearchMode mode,
+            List<String> chatIds, Pageable pageable);
+
+    /**
+     * Search the entries of a user by the given criteria in chronological order
+     */
+    Page<ChatEntryEntity> search(Long userId, SearchCriteria criteria, Pageable pageable);
+
+    /**
+     * Count the entries matching the criteria per author, chat, type and month ("yyyy-MM"), at most
+     * {@code limit} values per dimension, the most frequent first
+     */
+    Map<String, Map<String, Long>> facetCounts(Long userId, SearchCriteria criteria, int limit);
+
+    /**
+     * Add freshly saved entries to the index
+     */
+    default void indexEntries(Long userId, Collection<ChatEntryEntity> entries) {
+    }
+
+    /**
+     * Remove deleted entries from the index
+     */
+    default void removeEntries(Long userId, Collection<ChatEntryEntity> entries) {
+    }
+
+    /**
+     * Remove all entries of a deleted chat from the index
+     */
+    default void removeChat(Long userId, String chatId) {
+    }
+}
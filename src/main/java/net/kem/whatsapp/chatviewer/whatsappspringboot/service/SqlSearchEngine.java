@@ -0,0 +1,100 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryFacetRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntrySpecifications;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Search engine that queries chat_entries directly, using the PostgreSQL full-text and trigram
+ * indexes when they are available. Needs no index maintenance of its own.
+ */
+@Service
+@ConditionalOnProperty(name = "app.search.engine", havingValue = "sql", matchIfMissing = true)
+@RequiredArgsConstructor
+public class SqlSearchEngine implements SearchEngine {
+
+    private final ChatEntryRepository chatEntryRepository;
+    private final FullTextSearchService fullTextSearchService;
+    private final ChatEntryFacetRepository chatEntryFacetRepository;
+
+    @Override
+    public Page<ChatEntryEntity> searchByKeyword(Long userId, String keyword,
+            KeywordSearchMode mode, List<String> chatIds, Pageable pageable) {
+        boolean inChats = chatIds != null && !chatIds.isEmpty();
+
+        return switch (resolveMode(mode, keyword)) {
+            case FULL_TEXT -> {
+                String language = fullTextSearchService.getLanguage();
+                String query = FullTextSearchService.toTsQuery(keyword);
+                yield inChats
+                        ? chatEntryRepository.fullTextSearchByUserIdAndChatIdIn(userId, chatIds,
+                                language, query, pageable)
+                        : chatEntryRepository.fullTextSearchByUserId(userId, language, query,
+                                pageable);
+            }
+            case SUBSTRING -> {
+                String pattern = FullTextSearchService.toLikePattern(keyword);
+                yield inChats
+                        ? chatEntryRepository.substringSearchByUserIdAndChatIdIn(userId, chatIds,
+                                pattern, pageable)
+                        : chatEntryRepository.substringSearchByUserId(userId, pattern, pageable);
+            }
+            case FUZZY -> inChats
+                    ? chatEntryRepository.fuzzySearchByUserIdAndChatIdIn(userId, chatIds,
+                            keyword.trim(), pageable)
+                    : chatEntryRepository.fuzzySearchByUserId(userId, keyword.trim(), pageable);
+            case LIKE -> inChats
+                    ? chatEntryRepository.searchByUserIdAndChatIdInAndKeyword(userId, chatIds,
+                            keyword, pageable)
+                    : chatEntryRepository.searchByUserIdAndKeyword(userId, keyword, pageable);
+        };
+    }
+
+    @Override
+    public Page<ChatEntryEntity> search(Long userId, SearchCriteria criteria, Pageable pageable) {
+        return chatEntryRepository.findAll(ChatEntrySpecifications.matching(userId, criteria),
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+                        ChatEntrySpecifications.CHRONOLOGICAL));
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> facetCounts(Long userId, SearchCriteria criteria,
+            int limit) {
+        return chatEntryFacetRepository.countFacets(userId, criteria, limit);
+    }
+
+    /**
+     * Get the mode a keyword search actually runs with. Modes whose index is not available, and
+     * keywords the index cannot handle, such as punctuation or stopwords only, fall back to the
+     * plain LIKE search.
+     */
+    private KeywordSearchMode resolveMode(KeywordSearchMode mode, String keyword) {
+        if (keyword == null || keyword.isBlank()) {
+            return KeywordSearchMode.LIKE;
+        }
+        return switch (mode == null ? KeywordSearchMode.FULL_TEXT : mode) {
+            case FULL_TEXT -> {
+                String query = fullTextSearchService.isAvailable()
+                        ? FullTextSearchService.toTsQuery(keyword)
+                        : null;
+                yield query != null && fullTextSearchService.hasSearchableWords(query)
+                        ? KeywordSearchMode.FULL_TEXT
+                        : KeywordSearchMode.LIKE;
+            }
+            case SUBSTRING, FUZZY -> fullTextSearchService.isTrigramAvailable() ? mode
+                    : KeywordSearchMode.LIKE;
+            case LIKE -> KeywordSearchMode.LIKE;
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A file found in a {@link ContentStore}, with the store to read it from
+ *
+ * @param lastModified the modification time in milliseconds since the epoch
+ */
+public record StoredContent(ContentStore store, String key, long size, long lastModified) {
+
+    /**
+     * Read the whole file
+     */
+    public InputStream open() throws IOException {
+        return store.get(key);
+    }
+
+    /**
+     * Read {@code length} bytes of the file starting at {@code offset}
+     */
+    public InputStream open(long offset, long length) throws IOException {
+        return store.get(key, offset, length);
+    }
+
+    /**
+     * The file on the local file system, if the store keeps it there
+     */
+    public Optional<Path> localPath() {
+        return store.localPath(key);
+    }
+}
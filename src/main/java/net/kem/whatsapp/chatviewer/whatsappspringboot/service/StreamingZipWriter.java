@@ -0,0 +1,318 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive front to back to a stream that cannot seek, such as an HTTP response.
+ * Files are added as STORED entries whose bytes are copied from the file channel, or streamed
+ * for files that are not local, so they are never buffered whole on the heap; generated content
+ * is added as DEFLATED entries followed by a data descriptor. ZIP64 records are written when
+ * sizes, offsets or the entry count need them. Only the central directory records are kept until
+ * {@link #finish()}.
+ */
+final class StreamingZipWriter {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int ZIP64_END = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END = 0x06054b50;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+
+    private record CentralEntry(byte[] name, int flags, int method, long dosTime, long crc,
+            long compressedSize, long size, long offset) {
+    }
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private long written;
+    private boolean entryOpen;
+
+    StreamingZipWriter(OutputStream out) {
+        this.out = out;
+        this.channel = Channels.newChannel(out);
+    }
+
+    /**
+     * Whether an entry with this name was already added
+     */
+    boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * Add a file as a STORED entry
+     *
+     * @param crc the CRC-32 of the file, or null to compute it with an extra read of the file
+     */
+    void addFile(String name, LocalDateTime time, Path file, Long crc) throws IOException {
+        startEntry(name);
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = source.size();
+            long checksum = crc != null ? crc : crc32(source, size);
+            CentralEntry entry = writeStoredHeader(name, time, checksum, size);
+
+            // Straight from the file channel to the response, without a buffer of our own
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, channel);
+            }
+            written += size;
+            entries.add(entry);
+        } finally {
+            entryOpen = false;
+        }
+    }
+
+    /**
+     * Add the content of a stream of known size and CRC-32 as a STORED entry, for files that are
+     * not on the local file system. The stream is read to its end but not closed.
+     */
+    void addStored(String name, LocalDateTime time, long size, long crc, InputStream content)
+            throws IOException {
+        startEntry(name);
+        try {
+            CentralEntry entry = writeStoredHeader(name, time, crc, size);
+            long copied = content.transferTo(out);
+            if (copied != size) {
+                throw new IOException("Entry " + name + " has " + copied + " bytes, not " + size);
+            }
+            written += size;
+            entries.add(entry);
+        } finally {
+            entryOpen = false;
+        }
+    }
+
+    /**
+     * Start a DEFLATED entry. Its content is written to the returned stream, and the entry is
+     * complete when that stream is closed; the archive stream itself stays open.
+     */
+    OutputStream addDeflated(String name, LocalDateTime time) throws IOException {
+        startEntry(name);
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int flags = FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+        long offset = written;
+        long dosTime = dosTime(time);
+        ByteBuffer header = buffer(30 + nameBytes.length);
+        header.putInt(LOCAL_HEADER).putShort((short) VERSION_DEFAULT).putShort((short) flags)
+                .putShort((short) DEFLATED).putInt((int) dosTime).putInt(0).putInt(0).putInt(0)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes);
+        write(header);
+
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        long[] sizes = new long[2]; // compressed, uncompressed
+        OutputStream compressed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                sizes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                sizes[0] += len;
+            }
+        };
+        return new DeflaterOutputStream(compressed, deflater, 8192) {
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                super.write(b, off, len);
+                crc.update(b, off, len);
+                sizes[1] += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                finish();
+                deflater.end();
+                written += sizes[0];
+                // Readers streaming the archive take 8-byte sizes when a size exceeds 32 bits
+                boolean zip64 = sizes[0] >= MAX_32 || sizes[1] >= MAX_32;
+                ByteBuffer descriptor = buffer(zip64 ? 24 : 16);
+                descriptor.putInt(DATA_DESCRIPTOR).putInt((int) crc.getValue());
+                if (zip64) {
+                    descriptor.putLong(sizes[0]).putLong(sizes[1]);
+                } else {
+                    descriptor.putInt((int) sizes[0]).putInt((int) sizes[1]);
+                }
+                StreamingZipWriter.this.write(descriptor);
+                entries.add(new CentralEntry(nameBytes, flags, DEFLATED, dosTime, crc.getValue(),
+                        sizes[0], sizes[1], offset));
+                entryOpen = false;
+            }
+        };
+    }
+
+    /**
+     * Write the central directory. The underlying stream is flushed but not closed.
+     */
+    void finish() throws IOException {
+        if (entryOpen) {
+            throw new IllegalStateException("An entry is still being written");
+        }
+        long directoryOffset = written;
+        for (CentralEntry entry : entries) {
+            boolean bigSize = entry.size() >= MAX_32 || entry.compressedSize() >= MAX_32;
+            boolean bigOffset = entry.offset() >= MAX_32;
+            int extra = (bigSize ? 16 : 0) + (bigOffset ? 8 : 0);
+            int version = extra > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+            ByteBuffer header = buffer(46 + entry.name().length + (extra > 0 ? 4 + extra : 0));
+            header.putInt(CENTRAL_HEADER).putShort((short) VERSION_ZIP64)
+                    .putShort((short) version).putShort((short) entry.flags())
+                    .putShort((short) entry.method()).putInt((int) entry.dosTime())
+                    .putInt((int) entry.crc())
+                    .putInt((int) (bigSize ? MAX_32 : entry.compressedSize()))
+                    .putInt((int) (bigSize ? MAX_32 : entry.size()))
+                    .putShort((short) entry.name().length)
+                    .putShort((short) (extra > 0 ? 4 + extra : 0)).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putInt((int) (bigOffset ? MAX_32 : entry.offset())).put(entry.name());
+            if (extra > 0) {
+                header.putShort((short) 1).putShort((short) extra);
+                if (bigSize) {
+                    header.putLong(entry.size()).putLong(entry.compressedSize());
+                }
+                if (bigOffset) {
+                    header.putLong(entry.offset());
+                }
+            }
+            write(header);
+        }
+        long directorySize = written - directoryOffset;
+
+        if (entries.size() >= MAX_16 || directoryOffset >= MAX_32 || directorySize >= MAX_32) {
+            long zip64EndOffset = written;
+            ByteBuffer zip64End = buffer(56 + 20);
+            zip64End.putInt(ZIP64_END).putLong(44).putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64).putInt(0).putInt(0)
+                    .putLong(entries.size()).putLong(entries.size()).putLong(directorySize)
+                    .putLong(directoryOffset);
+            zip64End.putInt(ZIP64_LOCATOR).putInt(0).putLong(zip64EndOffset).putInt(1);
+            write(zip64End);
+        }
+        ByteBuffer end = buffer(22);
+        end.putInt(END).putShort((short) 0).putShort((short) 0)
+                .putShort((short) Math.min(entries.size(), MAX_16))
+                .putShort((short) Math.min(entries.size(), MAX_16))
+                .putInt((int) Math.min(directorySize, MAX_32))
+                .putInt((int) Math.min(directoryOffset, MAX_32)).putShort((short) 0);
+        write(end);
+        out.flush();
+    }
+
+    /**
+     * Write the local header of a STORED entry, returning its central directory record
+     */
+    private CentralEntry writeStoredHeader(String name, LocalDateTime time, long checksum,
+            long size) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        boolean zip64 = size >= MAX_32;
+        long offset = written;
+        long dosTime = dosTime(time);
+
+        ByteBuffer header = buffer(30 + nameBytes.length + (zip64 ? 20 : 0));
+        header.putInt(LOCAL_HEADER).putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT))
+                .putShort((short) FLAG_UTF8).putShort((short) STORED).putInt((int) dosTime)
+                .putInt((int) checksum).putInt((int) Math.min(size, MAX_32))
+                .putInt((int) Math.min(size, MAX_32)).putShort((short) nameBytes.length)
+                .putShort((short) (zip64 ? 20 : 0)).put(nameBytes);
+        if (zip64) {
+            header.putShort((short) 1).putShort((short) 16).putLong(size).putLong(size);
+        }
+        write(header);
+        return new CentralEntry(nameBytes, FLAG_UTF8, STORED, dosTime, checksum, size, size,
+                offset);
+    }
+
+    private void startEntry(String name) {
+        if (entryOpen) {
+            throw new IllegalStateException("An entry is still being written");
+        }
+        if (!names.add(name)) {
+            throw new IllegalArgumentException("Duplicate entry: " + name);
+        }
+        entryOpen = true;
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        written += buffer.position();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long crc32(FileChannel source, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * MS-DOS date and time of an entry, at two-second precision and from 1980 on
+     */
+    private static long dosTime(LocalDateTime time) {
+        LocalDateTime t = time == null ? LocalDateTime.now() : time;
+        if (t.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (t.getYear() - 1980) << 25 | (long) t.getMonthValue() << 21
+                | (long) t.getDayOfMonth() << 16 | (long) t.getHour() << 11
+                | (long) t.getMinute() << 5 | t.getSecond() >> 1;
+    }
+}
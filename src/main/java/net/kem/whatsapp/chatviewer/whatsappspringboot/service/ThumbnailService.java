@@ -0,0 +1,251 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Downscaled previews of stored image attachments. A thumbnail fits in a square of the configured
+ * size, keeps the aspect ratio and is stored in the content store next to its original as
+ * {@code <hash>-<size>.jpg}, or {@code .png} for images with transparency. Thumbnails are made by
+ * a small worker pool as soon as an upload stores a new image, and on the first request for any
+ * image the pool has not reached. Each is made once, however many requests ask for it at the
+ * same time.
+ */
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    // Image formats ImageIO decodes out of the box
+    private static final Set<String> IMAGE_TYPES =
+            Set.of("image/jpeg", "image/png", "image/gif", "image/bmp");
+    // Uploads queue at most this many images; the rest are made on first request
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private final ContentStore contentStore;
+    private final int size;
+    private final ThreadPoolExecutor executor;
+
+    // Thumbnails being made, so concurrent requests for one wait for it instead of redoing it
+    private final Map<String, CompletableFuture<Optional<StoredContent>>> inFlight =
+            new ConcurrentHashMap<>();
+    // Hashes of files that are not decodable images, not retried until restart. Files that
+    // could not be read are retried on the next request.
+    private final Set<String> undecodable = ConcurrentHashMap.newKeySet();
+
+    public ThumbnailService(ContentStore contentStore,
+            @Value("${app.thumbnails.size:320}") int size,
+            @Value("${app.thumbnails.threads:2}") int threads) {
+        this.contentStore = contentStore;
+        this.size = size;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                Thread.ofPlatform().name("thumbnail-", 0).daemon().factory(),
+                new ThreadPoolExecutor.DiscardPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Whether a thumbnail can be made for a file of this media type
+     */
+    public static boolean isSupportedType(String mimeType) {
+        return mimeType != null && IMAGE_TYPES.contains(mimeType);
+    }
+
+    /**
+     * Whether a thumbnail can be made for a file with this name
+     */
+    public static boolean isSupportedImage(String fileName) {
+        return isSupportedType(MediaInfo.mimeTypeOf(fileName));
+    }
+
+    /**
+     * Media type of a thumbnail file
+     */
+    public static String mimeTypeOf(StoredContent thumbnail) {
+        return thumbnail.key().endsWith(".png") ? "image/png" : "image/jpeg";
+    }
+
+    /**
+     * Tag of the thumbnail of a file, changing with the thumbnail size
+     */
+    public String getTag(String hash) {
+        return hash + "-" + size;
+    }
+
+    /**
+     * Queue making the thumbnail of a freshly stored file. Does nothing for files that are not
+     * supported images, and drops the work when the queue is full.
+     *
+     * @param mimeType the media type detected from the file content
+     */
+    public void scheduleThumbnail(String hash, String mimeType) {
+        if (hash == null || !isSupportedType(mimeType)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                getThumbnail(hash);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not make thumbnail of: {} - {}", hash, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * The thumbnail of the stored file with this hash, made now if it does not exist yet
+     *
+     * @return the thumbnail file, or empty if the file is missing or not a decodable image
+     */
+    public Optional<StoredContent> getThumbnail(String hash) throws IOException {
+        String original = FileNamingService.storageKey(hash);
+        Optional<StoredContent> existing = findExisting(original, hash);
+        if (existing.isPresent() || undecodable.contains(hash) || !contentStore.exists(original)) {
+            return existing;
+        }
+        CompletableFuture<Optional<StoredContent>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<StoredContent>> running = inFlight.putIfAbsent(hash, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new IOException("Could not make thumbnail of: " + hash, e.getCause());
+            }
+        }
+        try {
+            Optional<StoredContent> thumbnail = make(original, hash);
+            if (thumbnail.isEmpty()) {
+                undecodable.add(hash);
+            }
+            mine.complete(thumbnail);
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(hash, mine);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Optional<StoredContent> findExisting(String original, String hash)
+            throws IOException {
+        for (String extension : new String[] {"jpg", "png"}) {
+            Optional<StoredContent> thumbnail =
+                    contentStore.stat(sibling(original, hash, extension));
+            if (thumbnail.isPresent()) {
+                return thumbnail;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private String sibling(String original, String hash, String extension) {
+        return original.substring(0, original.lastIndexOf('/') + 1) + getTag(hash) + "."
+                + extension;
+    }
+
+    private Optional<StoredContent> make(String original, String hash) throws IOException {
+        BufferedImage source;
+        // Cached in memory rather than in temporary files, as the store may be remote
+        try (InputStream stream = contentStore.get(original);
+                ImageInputStream in = new MemoryCacheImageInputStream(stream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // Decode only every n-th pixel of large images, keeping at least twice the
+                // thumbnail size for the smooth downscale below
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int step = Math.max(1, longest / (size * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                source = reader.read(0, param);
+            } catch (IIOException e) {
+                // A corrupt or unsupported variant of the format, not a failed read
+                log.debug("Could not decode: {} - {}", hash, e.getMessage());
+                return Optional.empty();
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        boolean alpha = source.getColorModel().hasAlpha();
+        double scale = Math.min(1.0,
+                (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING,
+                    RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        // Stored whole, so a thumbnail is never seen half written
+        String target = sibling(original, hash, alpha ? "png" : "jpg");
+        contentStore.putIfAbsent(target, encode(thumbnail, alpha ? "png" : "jpeg"));
+        log.debug("Made {}x{} thumbnail of: {}", width, height, hash);
+        return contentStore.stat(target);
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if ("jpeg".equals(format)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+            }
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -5,38 +5,69 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ActivityStats;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityValueCount;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ExportFormat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.FacetedPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.StatsInterval;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.User;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatEntryExportService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatEntryService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ChatStatisticsService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ContentStore;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.DetectedEntityService;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.LocalContentStore;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.StoredContent;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.service.ThumbnailService;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.service.UserService;
 
 @ExtendWith(MockitoExtension.class)
@@ -45,9 +76,21 @@ class ChatEntryControllerTest {
         @Mock
         private ChatEntryService chatEntryService;
 
+        @Mock
+        private ChatEntryExportService chatEntryExportService;
+
         @Mock
         private UserService userService;
 
+        @Mock
+        private DetectedEntityService detectedEntityService;
+
+        @Mock
+        private ChatStatisticsService chatStatisticsService;
+
+        @Mock
+        private ThumbnailService thumbnailService;
+
         @Mock
         private Authentication authentication;
 
@@ -176,7 +219,8 @@ class ChatEntryControllerTest {
                 // Given
                 Page<ChatEntryEntity> page = new PageImpl<>(Arrays.asList(testChatEntryEntity),
                                 PageRequest.of(0, 20), 1);
-                when(chatEntryService.searchByKeyword(eq(userId), eq("Hello"), any(), eq(0), eq(20)))
+                when(chatEntryService.searchByKeyword(eq(userId), eq("Hello"),
+                                eq(KeywordSearchMode.FULL_TEXT), any(), eq(0), eq(20)))
                                 .thenReturn(page);
 
                 // When & Then
@@ -184,7 +228,8 @@ class ChatEntryControllerTest {
                                 .andExpect(status().isOk())
                                 .andExpect(jsonPath("$.content[0].payload").value("Hello, world!"));
 
-                verify(chatEntryService).searchByKeyword(eq(userId), eq("Hello"), any(), eq(0), eq(20));
+                verify(chatEntryService).searchByKeyword(eq(userId), eq("Hello"),
+                                eq(KeywordSearchMode.FULL_TEXT), any(), eq(0), eq(20));
         }
 
         @Test
@@ -193,7 +238,8 @@ class ChatEntryControllerTest {
                 Page<ChatEntryEntity> page = new PageImpl<>(Arrays.asList(testChatEntryEntity),
                                 PageRequest.of(0, 20), 1);
                 List<String> chatIds = Arrays.asList("chat1_123_abc");
-                when(chatEntryService.searchByKeyword(eq(userId), eq("Hello"), eq(chatIds), eq(0), eq(20)))
+                when(chatEntryService.searchByKeyword(eq(userId), eq("Hello"),
+                                eq(KeywordSearchMode.FULL_TEXT), eq(chatIds), eq(0), eq(20)))
                                 .thenReturn(page);
 
                 // When & Then
@@ -201,7 +247,25 @@ class ChatEntryControllerTest {
                                 .param("chatIds", "chat1_123_abc")).andExpect(status().isOk())
                                 .andExpect(jsonPath("$.content[0].payload").value("Hello, world!"));
 
-                verify(chatEntryService).searchByKeyword(eq(userId), eq("Hello"), eq(chatIds), eq(0), eq(20));
+                verify(chatEntryService).searchByKeyword(eq(userId), eq("Hello"),
+                                eq(KeywordSearchMode.FULL_TEXT), eq(chatIds), eq(0), eq(20));
+        }
+
+        @Test
+        void searchByKeyword_WithMode_ShouldPassModeToService() throws Exception {
+                // Given
+                Page<ChatEntryEntity> page = new PageImpl<>(Arrays.asList(testChatEntryEntity),
+                                PageRequest.of(0, 20), 1);
+                when(chatEntryService.searchByKeyword(eq(userId), eq("Helo"),
+                                eq(KeywordSearchMode.FUZZY), any(), eq(0), eq(20)))
+                                .thenReturn(page);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/search/keyword").param("keyword", "Helo")
+                                .param("mode", "FUZZY")).andExpect(status().isOk())
+                                .andExpect(jsonPath("$.content[0].payload").value("Hello, world!"));
+                mockMvc.perform(get("/api/chat-entries/search/keyword").param("keyword", "Helo")
+                                .param("mode", "SOUNDEX")).andExpect(status().isBadRequest());
         }
 
         @Test
@@ -242,6 +306,55 @@ class ChatEntryControllerTest {
                                 any(), any(), any(), eq(chatIds), eq(0), eq(20));
         }
 
+        @Test
+        void facetedSearch_ShouldReturnResultsAndFacets() throws Exception {
+                // Given
+                FacetedPage<ChatEntryEntity> page = FacetedPage.<ChatEntryEntity>builder()
+                                .results(new PageImpl<>(List.of(testChatEntryEntity),
+                                                PageRequest.of(0, 20), 1))
+                                .facets(Map.of("type", Map.of("TEXT", 1L))).build();
+                when(chatEntryService.facetedSearch(eq(userId), eq("Hello"), any(), any(), any(),
+                                any(), any(), any(), eq(0), eq(20), eq(5))).thenReturn(page);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/search/facets").param("keyword", "Hello")
+                                .param("facetLimit", "5"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.results.content[0].author")
+                                                .value("John Doe"))
+                                .andExpect(jsonPath("$.facets.type.TEXT").value(1));
+        }
+
+        @Test
+        void scrollSearchByKeyword_ShouldReturnCursorPage() throws Exception {
+                // Given
+                CursorPage<ChatEntryEntity> page = CursorPage.<ChatEntryEntity>builder()
+                                .content(List.of(testChatEntryEntity)).size(20).hasNext(true)
+                                .nextCursor("next-cursor").build();
+                when(chatEntryService.scrollChatEntries(eq(userId), eq("Hello"), any(), any(),
+                                any(), any(), any(), any(), eq("abc"), eq(20))).thenReturn(page);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/search/keyword/scroll")
+                                .param("keyword", "Hello").param("cursor", "abc"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.content[0].payload").value("Hello, world!"))
+                                .andExpect(jsonPath("$.nextCursor").value("next-cursor"))
+                                .andExpect(jsonPath("$.totalElements").doesNotExist());
+        }
+
+        @Test
+        void scrollChatEntries_ShouldReturn400_WhenCursorIsMalformed() throws Exception {
+                // Given
+                when(chatEntryService.scrollChatEntries(eq(userId), any(), any(), any(), any(),
+                                any(), any(), any(), eq("bad"), eq(20)))
+                                .thenThrow(new IllegalArgumentException("Invalid cursor: bad"));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/scroll").param("cursor", "bad"))
+                                .andExpect(status().isBadRequest());
+        }
+
         @Test
         void findByAuthor_ShouldReturnList() throws Exception {
                 // Given
@@ -285,6 +398,32 @@ class ChatEntryControllerTest {
                 verify(chatEntryService).findByDateRange(userId, startDate, endDate);
         }
 
+        @Test
+        void exportEntries_ShouldStreamTheRequestedFormat() throws Exception {
+                // Given
+                when(chatEntryExportService.exportEntries(eq(userId), eq("John Doe"), isNull(),
+                                eq(LocalDateTime.of(2023, 12, 25, 0, 0)), isNull(),
+                                eq(ExportFormat.CSV), any())).thenAnswer(inv -> {
+                                        inv.<OutputStream>getArgument(6).write(
+                                                        "id\r\n".getBytes(StandardCharsets.UTF_8));
+                                        return 0L;
+                                });
+
+                // When
+                MvcResult result = mockMvc.perform(get("/api/chat-entries/export")
+                                .param("author", "John Doe").param("start", "2023-12-25T00:00:00")
+                                .param("format", "CSV")).andExpect(request().asyncStarted())
+                                .andReturn();
+
+                // Then
+                mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk())
+                                .andExpect(header().string(HttpHeaders.CONTENT_TYPE,
+                                                "text/csv;charset=UTF-8"))
+                                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                                                "attachment; filename=\"chat-entries.csv\""))
+                                .andExpect(content().string("id\r\n"));
+        }
+
         @Test
         void findByAuthorAndType_ShouldReturnList() throws Exception {
                 // Given
@@ -386,6 +525,99 @@ class ChatEntryControllerTest {
                 verify(chatEntryService).deleteById(1L);
         }
 
+        @Test
+        void getDetectedValues_ShouldReturnValuesOfKindInChat() throws Exception {
+                // Given
+                when(detectedEntityService.findValues(userId, EntityKind.URL, "chat1", 0, 50))
+                                .thenReturn(List.of(new EntityValueCount(EntityKind.URL,
+                                                "https://example.com", 3L)));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/entities").param("kind", "URL")
+                                .param("chatId", "chat1"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$[0].value").value("https://example.com"))
+                                .andExpect(jsonPath("$[0].count").value(3));
+        }
+
+        @Test
+        void findByDetectedValue_ShouldReturnMatchingEntries() throws Exception {
+                // Given
+                when(chatEntryService.findByDetectedValue(userId, EntityKind.PHONE,
+                                "+972 54-123-4567", null, 0, 20))
+                                .thenReturn(new PageImpl<>(List.of(testChatEntryEntity),
+                                                PageRequest.of(0, 20), 1));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/entities/entries").param("kind", "PHONE")
+                                .param("value", "+972 54-123-4567"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.content[0].author").value("John Doe"));
+        }
+
+        @Test
+        void getActivityStats_ShouldReturnAllBreakdownsOfChat() throws Exception {
+                // Given
+                long[][] heatmap = new long[7][24];
+                heatmap[0][9] = 2;
+                ActivityStats stats = ActivityStats.builder().interval(StatsInterval.WEEK)
+                                .totalMessages(2).participants(1)
+                                .activity(Map.of("2024-01-01", 2L)).heatmap(heatmap)
+                                .authors(Map.of("John Doe", 2L)).types(Map.of("TEXT", 2L))
+                                .build();
+                when(chatStatisticsService.getActivityStats(userId, "chat1", StatsInterval.WEEK,
+                                20)).thenReturn(stats);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/stats/activity").param("chatId", "chat1")
+                                .param("interval", "WEEK"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.activity['2024-01-01']").value(2))
+                                .andExpect(jsonPath("$.heatmap[0][9]").value(2))
+                                .andExpect(jsonPath("$.authors['John Doe']").value(2));
+        }
+
+        @Test
+        void getActivityStats_WithNegativeAuthorLimit_ShouldReturnBadRequest() throws Exception {
+                // Given
+                when(chatStatisticsService.getActivityStats(userId, null, StatsInterval.DAY, -1))
+                                .thenThrow(new IllegalArgumentException("negative"));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/stats/activity").param("authorLimit", "-1"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        void countByTypes_ShouldReturnAllTypesOfChatAndRange() throws Exception {
+                // Given
+                LocalDate from = LocalDate.of(2024, 1, 1);
+                LocalDate to = LocalDate.of(2024, 1, 31);
+                when(chatStatisticsService.countByType(userId, "chat1", from, to))
+                                .thenReturn(Map.of(ChatEntry.Type.TEXT, 5L,
+                                                ChatEntry.Type.IMAGE, 0L));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/stats/types").param("chatId", "chat1")
+                                .param("from", "2024-01-01").param("to", "2024-01-31"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.TEXT").value(5))
+                                .andExpect(jsonPath("$.IMAGE").value(0));
+        }
+
+        @Test
+        void countByAuthors_WithReversedRange_ShouldReturnBadRequest() throws Exception {
+                // Given
+                when(chatStatisticsService.countByAuthor(userId, null, LocalDate.of(2024, 2, 1),
+                                LocalDate.of(2024, 1, 1), 20))
+                                .thenThrow(new IllegalArgumentException("reversed"));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/stats/authors").param("from", "2024-02-01")
+                                .param("to", "2024-01-01"))
+                                .andExpect(status().isBadRequest());
+        }
+
         @Test
         void getUserChats_ShouldReturnUserChatIds() throws Exception {
                 // Given
@@ -399,4 +631,199 @@ class ChatEntryControllerTest {
 
                 verify(chatEntryService).getChatIdsForUser(userId);
         }
+
+        @Test
+        void viewAttachment_WithRange_ShouldReturnPartialContent(@TempDir Path dir)
+                        throws Exception {
+                // Given
+                stubAttachment(dir, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/view").header(HttpHeaders.RANGE,
+                                "bytes=2-5"))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                                                "bytes 2-5/10"))
+                                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                                .andExpect(content().contentType("video/mp4"))
+                                .andExpect(content().string("2345"));
+
+                verify(chatEntryService).findById(1L, userId);
+        }
+
+        @Test
+        void viewAttachment_FromRemoteStore_ShouldReadOnlyTheRequestedRange() throws Exception {
+                // Given
+                ContentStore store = mock(ContentStore.class);
+                ChatEntryEntity entry = ChatEntryEntity.builder().id(1L).userId(userId)
+                                .fileName("clip.mp4").path("clip.mp4").build();
+                when(chatEntryService.findById(1L, userId)).thenReturn(Optional.of(entry));
+                when(chatEntryService.resolveAttachment(entry)).thenReturn(
+                                new StoredContent(store, "clip.mp4", 10, 1_700_000_000_000L));
+                when(chatEntryService.getAttachmentMimeType(entry)).thenReturn("video/mp4");
+                when(store.get("clip.mp4", 2, 4)).thenReturn(new ByteArrayInputStream(
+                                "2345".getBytes(StandardCharsets.UTF_8)));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/view").header(HttpHeaders.RANGE,
+                                "bytes=2-5"))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                                                "bytes 2-5/10"))
+                                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                                .andExpect(content().contentType("video/mp4"))
+                                .andExpect(content().string("2345"));
+
+                verify(store, never()).get("clip.mp4");
+        }
+
+        @Test
+        void downloadAttachment_WithStaleIfRange_ShouldReturnWholeFile(@TempDir Path dir)
+                        throws Exception {
+                // Given
+                stubAttachment(dir, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/download")
+                                .header(HttpHeaders.RANGE, "bytes=2-5")
+                                .header(HttpHeaders.IF_RANGE, "Sat, 01 Jan 2000 00:00:00 GMT"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                                                "attachment; filename=\"clip.mp4\""))
+                                .andExpect(content().string("0123456789"));
+        }
+
+        @Test
+        void viewAttachment_WithUnsatisfiableRange_ShouldReturn416(@TempDir Path dir)
+                        throws Exception {
+                // Given
+                stubAttachment(dir, "0123456789".getBytes(StandardCharsets.UTF_8));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/view").header(HttpHeaders.RANGE,
+                                "bytes=20-30"))
+                                .andExpect(status().isRequestedRangeNotSatisfiable())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                                                "bytes */10"));
+        }
+
+        @Test
+        void viewAttachment_WithSendfileSupport_ShouldHandTheRangeToTheContainer(
+                        @TempDir Path dir) throws Exception {
+                // Given
+                Path file = stubAttachment(dir, new byte[64 * 1024]);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/view")
+                                .header(HttpHeaders.RANGE, "bytes=1000-")
+                                .requestAttr(AttachmentResponses.SENDFILE_SUPPORT_ATTR, true))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                                                "bytes 1000-65535/65536"))
+                                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 64536))
+                                .andExpect(request().attribute(
+                                                AttachmentResponses.SENDFILE_FILENAME_ATTR,
+                                                file.toAbsolutePath().toString()))
+                                .andExpect(request().attribute(
+                                                AttachmentResponses.SENDFILE_START_ATTR, 1000L))
+                                .andExpect(request().attribute(
+                                                AttachmentResponses.SENDFILE_END_ATTR, 65536L))
+                                .andExpect(content().bytes(new byte[0]));
+        }
+
+        @Test
+        void viewAttachment_WithContentHash_ShouldSendImmutableETag(@TempDir Path dir)
+                        throws Exception {
+                // Given
+                String hash = "ab".repeat(32);
+                stubAttachment(dir, "0123456789".getBytes(StandardCharsets.UTF_8));
+                when(chatEntryService.getAttachmentHash(any())).thenReturn(hash);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/view").header(HttpHeaders.RANGE,
+                                "bytes=2-5").header(HttpHeaders.IF_RANGE, "\"" + hash + "\""))
+                                .andExpect(status().isPartialContent())
+                                .andExpect(header().string(HttpHeaders.ETAG, "\"" + hash + "\""))
+                                .andExpect(header().string(HttpHeaders.CACHE_CONTROL,
+                                                "max-age=31536000, private, immutable"))
+                                .andExpect(content().string("2345"));
+        }
+
+        @Test
+        void viewAttachment_WithMatchingIfNoneMatch_ShouldReturn304WithoutTheFile()
+                        throws Exception {
+                // Given
+                String hash = "ab".repeat(32);
+                ChatEntryEntity entry = ChatEntryEntity.builder().id(1L).userId(userId)
+                                .fileName("photo.jpg").path("abc/def/" + hash).build();
+                when(chatEntryService.findById(1L, userId)).thenReturn(Optional.of(entry));
+                when(chatEntryService.getAttachmentHash(entry)).thenReturn(hash);
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/view").header(HttpHeaders.IF_NONE_MATCH,
+                                "\"" + hash + "\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string(HttpHeaders.ETAG, "\"" + hash + "\""))
+                                .andExpect(header().string(HttpHeaders.CACHE_CONTROL,
+                                                "max-age=31536000, private, immutable"));
+
+                verify(chatEntryService, never()).resolveAttachment(any());
+        }
+
+        @Test
+        void getAttachmentThumbnail_ShouldServeThumbnailWithItsOwnTag(@TempDir Path dir)
+                        throws Exception {
+                // Given
+                String hash = "ab".repeat(32);
+                Files.write(dir.resolve(hash + "-320.jpg"), new byte[] {1, 2});
+                StoredContent thumbnail = new LocalContentStore(dir.toString())
+                                .stat(hash + "-320.jpg").orElseThrow();
+                ChatEntryEntity entry = ChatEntryEntity.builder().id(1L).userId(userId)
+                                .fileName("photo.jpg").path("abc/def/" + hash).build();
+                when(chatEntryService.findById(1L, userId)).thenReturn(Optional.of(entry));
+                when(chatEntryService.getAttachmentHash(entry)).thenReturn(hash);
+                when(chatEntryService.getAttachmentMimeType(entry)).thenReturn("image/jpeg");
+                when(thumbnailService.getTag(hash)).thenReturn(hash + "-320");
+                when(thumbnailService.getThumbnail(hash)).thenReturn(Optional.of(thumbnail));
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/thumbnail"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType("image/jpeg"))
+                                .andExpect(header().string(HttpHeaders.ETAG,
+                                                "\"" + hash + "-320\""))
+                                .andExpect(header().string(HttpHeaders.CACHE_CONTROL,
+                                                "max-age=31536000, private, immutable"))
+                                .andExpect(content().bytes(new byte[] {1, 2}));
+        }
+
+        @Test
+        void getAttachmentThumbnail_ForVideo_ShouldReturnNotFound() throws Exception {
+                // Given
+                String hash = "ab".repeat(32);
+                ChatEntryEntity entry = ChatEntryEntity.builder().id(1L).userId(userId)
+                                .fileName("clip.mp4").path("abc/def/" + hash).build();
+                when(chatEntryService.findById(1L, userId)).thenReturn(Optional.of(entry));
+                when(chatEntryService.getAttachmentHash(entry)).thenReturn(hash);
+                when(chatEntryService.getAttachmentMimeType(entry)).thenReturn("video/mp4");
+
+                // When & Then
+                mockMvc.perform(get("/api/chat-entries/1/thumbnail"))
+                                .andExpect(status().isNotFound());
+
+                verify(thumbnailService, never()).getThumbnail(any());
+        }
+
+        private Path stubAttachment(Path dir, byte[] bytes) throws Exception {
+                Path file = Files.write(dir.resolve("clip.mp4"), bytes);
+                ChatEntryEntity entry = ChatEntryEntity.builder().id(1L).userId(userId)
+                                .fileName("clip.mp4").path("clip.mp4")
+                                .type(ChatEntry.Type.VIDEO).build();
+                when(chatEntryService.findById(1L, userId)).thenReturn(Optional.of(entry));
+                when(chatEntryService.resolveAttachment(entry)).thenReturn(new LocalContentStore(
+                                dir.toString()).stat("clip.mp4").orElseThrow());
+                lenient().when(chatEntryService.getAttachmentMimeType(entry))
+                                .thenReturn("video/mp4");
+                return file;
+        }
 }
@@ -0,0 +1,159 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.DailyActivity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.HourlyActivity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.DailyActivityRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.HourlyActivityRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ActivityRollupServiceTest {
+
+        @Mock
+        private DailyActivityRepository dailyActivityRepository;
+
+        @Mock
+        private HourlyActivityRepository hourlyActivityRepository;
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @Mock
+        private ChatRepository chatRepository;
+
+        @Mock
+        private PlatformTransactionManager transactionManager;
+
+        private ActivityRollupService activityRollupService;
+
+        private final Long userId = 1L;
+        private final Long chatRefId = 7L;
+        // A Monday
+        private final LocalDateTime time = LocalDateTime.of(2024, 1, 1, 9, 15);
+
+        @BeforeEach
+        void setUp() {
+                activityRollupService = new ActivityRollupService(dailyActivityRepository,
+                                hourlyActivityRepository, chatEntryRepository, chatRepository,
+                                transactionManager);
+        }
+
+        @Test
+        void recordEntries_ShouldAddDeltaToStoredRowsOfTheAffectedDays() {
+                // Given
+                DailyActivity stored = DailyActivity.builder().id(3L).userId(userId)
+                                .chatRefId(chatRefId).authorId(10L).day(time.toLocalDate())
+                                .type(ChatEntry.Type.TEXT).messageCount(5).attachmentCount(0)
+                                .build();
+                when(dailyActivityRepository.findByChatRefIdAndDayBetween(chatRefId,
+                                time.toLocalDate(), time.toLocalDate().plusDays(1)))
+                                .thenReturn(new ArrayList<>(List.of(stored)));
+
+                // When
+                activityRollupService.recordEntries(List.of(
+                                entry(10L, time, ChatEntry.Type.TEXT, null),
+                                entry(10L, time.plusMinutes(5), ChatEntry.Type.TEXT, null),
+                                entry(11L, time.plusDays(1), ChatEntry.Type.IMAGE, "a.jpg")));
+
+                // Then
+                verify(dailyActivityRepository).addCounts(3L, 2, 0);
+                List<DailyActivity> saved = captureSaved();
+                assertEquals(1, saved.size());
+                DailyActivity created = saved.getFirst();
+                assertEquals(LocalDate.of(2024, 1, 2), created.getDay());
+                assertEquals(1, created.getMessageCount());
+                assertEquals(1, created.getAttachmentCount());
+
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<List<HourlyActivity>> hours = ArgumentCaptor.forClass(List.class);
+                verify(hourlyActivityRepository).saveAll(hours.capture());
+                HourlyActivity monday = hours.getValue().stream()
+                                .filter(h -> h.getWeekday() == 1).findFirst().orElseThrow();
+                assertEquals(9, monday.getHour());
+                assertEquals(2, monday.getMessageCount());
+        }
+
+        @Test
+        void removeEntries_ShouldDeleteRowsThatBecomeEmpty() {
+                // Given
+                DailyActivity stored = DailyActivity.builder().id(3L).userId(userId)
+                                .chatRefId(chatRefId).authorId(10L).day(time.toLocalDate())
+                                .type(ChatEntry.Type.TEXT).messageCount(1).build();
+                when(dailyActivityRepository.findByChatRefIdAndDayBetween(any(), any(), any()))
+                                .thenReturn(List.of(stored));
+
+                // When
+                activityRollupService.removeEntries(
+                                List.of(entry(10L, time, ChatEntry.Type.TEXT, null)));
+
+                // Then
+                verify(dailyActivityRepository).addCounts(3L, -1, 0);
+                assertEquals(0, captureSaved().size());
+                verify(dailyActivityRepository).deleteEmpty(chatRefId, time.toLocalDate(),
+                                time.toLocalDate());
+                verify(hourlyActivityRepository).deleteEmpty(chatRefId);
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<DailyActivity> captureSaved() {
+                ArgumentCaptor<List<DailyActivity>> saved = ArgumentCaptor.forClass(List.class);
+                verify(dailyActivityRepository).saveAll(saved.capture());
+                return saved.getValue();
+        }
+
+        private ChatEntryEntity entry(Long authorId, LocalDateTime localDateTime,
+                        ChatEntry.Type type, String fileName) {
+                return ChatEntryEntity.builder().userId(userId).chatRefId(chatRefId)
+                                .authorId(authorId).localDateTime(localDateTime).type(type)
+                                .fileName(fileName).build();
+        }
+
+        @Test
+        void rebuildMissingRollups_ShouldReplaceRowsAddedSinceWithCountsOfAllEntries() {
+                // Given - a chat from before rollups, with a later upload already counted
+                Chat chat = Chat.builder().id(chatRefId).userId(userId).chatId("c")
+                                .messageCount(3).build();
+                when(chatRepository.findWithoutActivityRollups()).thenReturn(List.of(chat));
+                when(chatRepository.lock(chatRefId)).thenReturn(1);
+                when(chatRepository.findById(chatRefId)).thenReturn(Optional.of(chat));
+                when(chatEntryRepository.countActivityByChatRefId(chatRefId))
+                                .thenReturn(List.<Object[]>of(new Object[] {10L,
+                                                time.toLocalDate(), 9, ChatEntry.Type.TEXT, 3L,
+                                                0L}));
+                when(dailyActivityRepository.findByChatRefIdAndDayBetween(chatRefId,
+                                time.toLocalDate(), time.toLocalDate())).thenReturn(List.of());
+
+                // When
+                int rebuilt = activityRollupService.rebuildMissingRollups();
+
+                // Then
+                assertEquals(1, rebuilt);
+                InOrder inOrder = inOrder(dailyActivityRepository, chatRepository);
+                inOrder.verify(dailyActivityRepository).deleteByUserIdAndChatId(userId, "c");
+                inOrder.verify(dailyActivityRepository).saveAll(any());
+                inOrder.verify(chatRepository).markRollupsBuilt(chatRefId);
+                assertEquals(3, captureSaved().getFirst().getMessageCount());
+        }
+}
@@ -0,0 +1,172 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.UserAttachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.UserStorage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.UserAttachmentRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.UserStorageRepository;
+
+@ExtendWith(MockitoExtension.class)
+class AttachmentReferenceServiceTest {
+
+        @Mock
+        private UserAttachmentRepository userAttachmentRepository;
+
+        @Mock
+        private UserStorageRepository userStorageRepository;
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @Mock
+        private PlatformTransactionManager transactionManager;
+
+        private AttachmentReferenceService attachmentReferenceService;
+
+        private final Long userId = 1L;
+        private final Attachment photo =
+                        Attachment.builder().id(5L).hash("abc").fileSize(1000L).build();
+        private final Attachment video =
+                        Attachment.builder().id(6L).hash("def").fileSize(5000L).build();
+
+        @BeforeEach
+        void setUp() {
+                attachmentReferenceService = new AttachmentReferenceService(
+                                userAttachmentRepository, userStorageRepository,
+                                chatEntryRepository, transactionManager);
+        }
+
+        @Test
+        void recordEntries_ShouldCountEachAttachmentOncePerUser() {
+                // Given - the photo is already referenced once
+                UserStorage storage = UserStorage.builder().userId(userId).attachmentCount(1)
+                                .totalBytes(1000).build();
+                UserAttachment stored = UserAttachment.builder().id(2L).userId(userId)
+                                .attachmentId(5L).referenceCount(1).fileSize(1000).build();
+                when(userStorageRepository.lock(userId)).thenReturn(1);
+                when(userStorageRepository.findById(userId)).thenReturn(Optional.of(storage));
+                when(userAttachmentRepository.findByUserIdAndAttachmentIdIn(anyLong(),
+                                anyCollection())).thenReturn(List.of(stored));
+
+                // When
+                attachmentReferenceService.recordEntries(List.of(entry(photo), entry(photo),
+                                entry(video), entry(null)));
+
+                // Then
+                assertEquals(3, stored.getReferenceCount());
+                assertEquals(2, storage.getAttachmentCount());
+                assertEquals(6000, storage.getTotalBytes());
+                verify(userStorageRepository).save(storage);
+        }
+
+        @Test
+        void removeEntries_ShouldReleaseBytesWhenLastReferenceGoes() {
+                // Given
+                UserStorage storage = UserStorage.builder().userId(userId).attachmentCount(2)
+                                .totalBytes(6000).build();
+                UserAttachment photoRow = UserAttachment.builder().id(2L).userId(userId)
+                                .attachmentId(5L).referenceCount(2).fileSize(1000).build();
+                UserAttachment videoRow = UserAttachment.builder().id(3L).userId(userId)
+                                .attachmentId(6L).referenceCount(1).fileSize(5000).build();
+                when(userStorageRepository.lock(userId)).thenReturn(1);
+                when(userStorageRepository.findById(userId)).thenReturn(Optional.of(storage));
+                when(userAttachmentRepository.findByUserIdAndAttachmentIdIn(anyLong(),
+                                anyCollection())).thenReturn(List.of(photoRow, videoRow));
+
+                // When
+                attachmentReferenceService.removeEntries(List.of(entry(photo), entry(video)));
+
+                // Then
+                @SuppressWarnings("unchecked")
+                ArgumentCaptor<List<UserAttachment>> released =
+                                ArgumentCaptor.forClass(List.class);
+                verify(userAttachmentRepository).deleteAll(released.capture());
+                assertEquals(List.of(videoRow), released.getValue());
+                assertEquals(1, photoRow.getReferenceCount());
+                assertEquals(1, storage.getAttachmentCount());
+                assertEquals(1000, storage.getTotalBytes());
+        }
+
+        @Test
+        void recordEntries_FirstUploadOfUser_ShouldCreateStorageRowBeforeLockingIt() {
+                // Given - no storage row yet, so the first lock finds nothing
+                UserStorage created = UserStorage.builder().userId(userId).build();
+                when(userStorageRepository.lock(userId)).thenReturn(0, 1);
+                when(userStorageRepository.findById(userId)).thenReturn(Optional.of(created));
+
+                // When
+                attachmentReferenceService.recordEntries(List.of(entry(photo)));
+
+                // Then
+                InOrder inOrder = inOrder(userStorageRepository);
+                inOrder.verify(userStorageRepository).lock(userId);
+                inOrder.verify(userStorageRepository).insertEmpty(userId);
+                inOrder.verify(userStorageRepository).lock(userId);
+                assertEquals(1, created.getAttachmentCount());
+                assertEquals(1000, created.getTotalBytes());
+                verify(userStorageRepository).save(created);
+        }
+
+        @Test
+        void rebuildMissingStorage_ShouldCountReferencesOnlyAfterLockingNewRow() {
+                // Given - the listed user still has no row when its transaction starts
+                UserStorage created = UserStorage.builder().userId(userId).build();
+                when(userStorageRepository.findUserIdsWithoutStorage()).thenReturn(List.of(userId));
+                when(userStorageRepository.lock(userId)).thenReturn(0, 1);
+                when(userStorageRepository.findById(userId)).thenReturn(Optional.of(created));
+                when(chatEntryRepository.countAttachmentReferencesByUserId(userId))
+                                .thenReturn(List.<Object[]>of(new Object[] {5L, 1000L, 2L}));
+
+                // When
+                int rebuilt = attachmentReferenceService.rebuildMissingStorage();
+
+                // Then
+                assertEquals(1, rebuilt);
+                InOrder inOrder = inOrder(userStorageRepository, chatEntryRepository);
+                inOrder.verify(userStorageRepository).lock(userId);
+                inOrder.verify(userStorageRepository).insertEmpty(userId);
+                inOrder.verify(userStorageRepository).lock(userId);
+                inOrder.verify(chatEntryRepository).countAttachmentReferencesByUserId(userId);
+                assertEquals(1, created.getAttachmentCount());
+                assertEquals(1000, created.getTotalBytes());
+        }
+
+        @Test
+        void rebuildMissingStorage_RowCreatedSinceListing_ShouldLeaveItAlone() {
+                // Given - a concurrent upload created the row after the listing
+                when(userStorageRepository.findUserIdsWithoutStorage()).thenReturn(List.of(userId));
+                when(userStorageRepository.lock(userId)).thenReturn(1);
+
+                // When
+                int rebuilt = attachmentReferenceService.rebuildMissingStorage();
+
+                // Then
+                assertEquals(0, rebuilt);
+                verify(userStorageRepository, never()).insertEmpty(userId);
+                verify(chatEntryRepository, never()).countAttachmentReferencesByUserId(userId);
+        }
+
+        private ChatEntryEntity entry(Attachment attachment) {
+                return ChatEntryEntity.builder().userId(userId).chatId("chat")
+                                .attachment(attachment).build();
+        }
+}
@@ -0,0 +1,211 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Attachment;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryCursor;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.AttachmentGalleryItem;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.AttachmentRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+
+@ExtendWith(MockitoExtension.class)
+class AttachmentServiceTest {
+
+        @Mock
+        private AttachmentRepository attachmentRepository;
+
+        @Mock
+        private AttachmentReferenceService attachmentReferenceService;
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @Mock
+        private ContentStore contentStore;
+
+        @InjectMocks
+        private AttachmentService attachmentService;
+
+        private final Long userId = 1L;
+
+        @Test
+        void userOwnsAttachment_ShouldRunOneExistsQuery() {
+                // Given
+                when(attachmentRepository.existsByHashAndUserId("abc", userId)).thenReturn(true);
+                when(attachmentRepository.existsByHashAndUserId("def", userId)).thenReturn(false);
+
+                // When & Then
+                assertTrue(attachmentService.userOwnsAttachment("abc", userId));
+                assertFalse(attachmentService.userOwnsAttachment("def", userId));
+                verify(attachmentRepository).existsByHashAndUserId("abc", userId);
+                verify(attachmentRepository).existsByHashAndUserId("def", userId);
+                verifyNoMoreInteractions(attachmentRepository);
+        }
+
+        @Test
+        void findAttachmentsByStatusAndUserId_ShouldFilterInTheQuery() {
+                // Given
+                Attachment active = Attachment.builder().id(5L).hash("abc").status((byte) 1)
+                                .build();
+                when(attachmentRepository.findByStatusAndUserId((byte) 1, userId))
+                                .thenReturn(List.of(active));
+
+                // When
+                List<Attachment> attachments = attachmentService
+                                .findAttachmentsByStatusAndUserId((byte) 1, userId);
+
+                // Then
+                assertEquals(List.of(active), attachments);
+                verifyNoMoreInteractions(attachmentRepository);
+        }
+
+        @Test
+        void findGallery_ShouldReadOneExtraRowAndContinueAfterTheCursor() {
+                // Given
+                LocalDateTime time = LocalDateTime.of(2023, 1, 2, 10, 0);
+                AttachmentGalleryItem newest = galleryItem(3L, time.plusHours(1));
+                AttachmentGalleryItem older = galleryItem(2L, time);
+                AttachmentGalleryItem oldest = galleryItem(1L, time);
+                when(chatEntryRepository.findGalleryItems(userId, "chat1", ChatEntry.Type.IMAGE,
+                                time.toLocalDate().atStartOfDay(),
+                                time.toLocalDate().plusDays(1).atStartOfDay(), 10L, null,
+                                Limit.of(3))).thenReturn(List.of(newest, older, oldest));
+                when(chatEntryRepository.findGalleryItemsBefore(userId, null, null, null, null,
+                                null, null, time, 2L, Limit.of(3))).thenReturn(List.of(oldest));
+
+                // When
+                CursorPage<AttachmentGalleryItem> first = attachmentService.findGallery(userId,
+                                "chat1", ChatEntry.Type.IMAGE, time.toLocalDate(),
+                                time.toLocalDate(), 10L, null, null, 2);
+                CursorPage<AttachmentGalleryItem> second = attachmentService.findGallery(userId,
+                                null, null, null, null, null, null, first.getNextCursor(), 2);
+
+                // Then
+                assertEquals(List.of(newest, older), first.getContent());
+                assertTrue(first.isHasNext());
+                assertFalse(first.isHasPrevious());
+                assertEquals(new AttachmentGalleryCursor(time, 2L),
+                                AttachmentGalleryCursor.decode(first.getNextCursor()));
+                assertEquals(List.of(oldest), second.getContent());
+                assertFalse(second.isHasNext());
+                assertTrue(second.isHasPrevious());
+                assertNull(second.getNextCursor());
+        }
+
+        @Test
+        void findGallery_AfterItemWithoutTime_ShouldContinueAmongUntimedItems() {
+                // Given
+                AttachmentGalleryItem untimed = galleryItem(5L, null);
+                AttachmentGalleryItem older = galleryItem(4L, null);
+                when(chatEntryRepository.findGalleryItems(userId, null, null, null, null, null,
+                                null, Limit.of(2))).thenReturn(List.of(untimed, older));
+                when(chatEntryRepository.findUntimedGalleryItemsBefore(userId, null, null, null,
+                                null, null, null, 5L, Limit.of(2))).thenReturn(List.of(older));
+
+                // When
+                CursorPage<AttachmentGalleryItem> first = attachmentService.findGallery(userId,
+                                null, null, null, null, null, null, null, 1);
+                CursorPage<AttachmentGalleryItem> second = attachmentService.findGallery(userId,
+                                null, null, null, null, null, null, first.getNextCursor(), 1);
+
+                // Then
+                assertEquals(new AttachmentGalleryCursor(null, 5L),
+                                AttachmentGalleryCursor.decode(first.getNextCursor()));
+                assertEquals(List.of(older), second.getContent());
+                assertFalse(second.isHasNext());
+        }
+
+        @Test
+        void findGallery_ShouldRejectInvalidRequests() {
+                // When & Then
+                assertThrows(IllegalArgumentException.class, () -> attachmentService
+                                .findGallery(userId, null, null, null, null, null, null, null, 0));
+                assertThrows(IllegalArgumentException.class,
+                                () -> attachmentService.findGallery(userId, null, null, null,
+                                                null, null, null, null,
+                                                AttachmentService.MAX_GALLERY_PAGE_SIZE + 1));
+                assertThrows(IllegalArgumentException.class,
+                                () -> attachmentService.findGallery(userId, null, null,
+                                                LocalDate.of(2023, 2, 1), LocalDate.of(2023, 1, 1),
+                                                null, null, null, 10));
+                assertThrows(IllegalArgumentException.class, () -> attachmentService
+                                .findGallery(userId, null, null, null, null, 10L, 5L, null, 10));
+                assertThrows(IllegalArgumentException.class, () -> attachmentService
+                                .findGallery(userId, null, null, null, null, null, null, "x", 10));
+                verifyNoMoreInteractions(chatEntryRepository);
+        }
+
+        @Test
+        void detectMissingMediaTypes_ShouldMarkMissingFilesAndRetryUnreadableOnes()
+                        throws Exception {
+                // Given
+                Attachment missing = Attachment.builder().id(1L).hash("ab".repeat(32)).build();
+                Attachment unreadable = Attachment.builder().id(2L).hash("cd".repeat(32)).build();
+                when(attachmentRepository.findByMimeTypeIsNullAndIdGreaterThanOrderByIdAsc(
+                                any(), any(Limit.class))).thenReturn(List.of(missing, unreadable));
+                when(contentStore.stat(FileNamingService.storageKey(missing.getHash())))
+                                .thenReturn(Optional.empty());
+                when(contentStore.stat(FileNamingService.storageKey(unreadable.getHash())))
+                                .thenThrow(new IOException("Storage unavailable"));
+
+                // When
+                int updated = attachmentService.detectMissingMediaTypes();
+
+                // Then
+                assertEquals(1, updated);
+                assertEquals("application/octet-stream", missing.getMimeType());
+                assertNull(unreadable.getMimeType());
+                verify(attachmentRepository).saveAll(List.of(missing));
+        }
+
+        @Test
+        void detectMissingMediaTypes_LegacyOfficeFile_ShouldUseEntryFileName() throws Exception {
+                // Given - the OLE container of .doc, .xls and .ppt files
+                Attachment document = Attachment.builder().id(3L).hash("ef".repeat(32)).build();
+                String key = FileNamingService.storageKey(document.getHash());
+                byte[] ole = {(byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0, (byte) 0xA1,
+                                (byte) 0xB1, 0x1A, (byte) 0xE1};
+                when(attachmentRepository.findByMimeTypeIsNullAndIdGreaterThanOrderByIdAsc(
+                                any(), any(Limit.class))).thenReturn(List.of(document));
+                when(chatEntryRepository.findFileNamesByAttachmentIdIn(List.of(3L)))
+                                .thenReturn(List.<Object[]>of(new Object[] {3L, "report.doc"}));
+                when(contentStore.stat(key)).thenReturn(
+                                Optional.of(new StoredContent(contentStore, key, ole.length, 0)));
+                when(contentStore.get(key, 0, ole.length))
+                                .thenReturn(new ByteArrayInputStream(ole));
+
+                // When
+                int updated = attachmentService.detectMissingMediaTypes();
+
+                // Then
+                assertEquals(1, updated);
+                assertEquals("application/msword", document.getMimeType());
+        }
+
+        private AttachmentGalleryItem galleryItem(Long entryId, LocalDateTime time) {
+                return AttachmentGalleryItem.builder().hash("h" + entryId).fileSize(100L)
+                                .type(ChatEntry.Type.IMAGE).fileName(entryId + ".jpg")
+                                .entryId(entryId).localDateTime(time).build();
+        }
+}
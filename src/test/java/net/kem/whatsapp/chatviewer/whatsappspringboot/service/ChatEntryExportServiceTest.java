@@ -0,0 +1,102 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ExportFormat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ChatEntryExportServiceTest {
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @Mock
+        private EntityManager entityManager;
+
+        // Configured like the application's mapper: ISO dates
+        private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules()
+                        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+
+        private ChatEntryExportService chatEntryExportService;
+
+        private final LocalDateTime start = LocalDateTime.of(2023, 12, 25, 0, 0);
+        private ChatEntryEntity first;
+        private ChatEntryEntity second;
+
+        @BeforeEach
+        void setUp() {
+                chatEntryExportService = new ChatEntryExportService(chatEntryRepository,
+                                entityManager, objectMapper);
+                first = ChatEntryEntity.builder().id(1L).chatId("family").author("John Doe")
+                                .payload("Hello, \"world\"\nagain").type(ChatEntry.Type.TEXT)
+                                .localDateTime(LocalDateTime.of(2023, 12, 25, 14, 30)).build();
+                second = ChatEntryEntity.builder().id(2L).chatId("family").author("John Doe")
+                                .fileName("IMG-1.jpg").type(ChatEntry.Type.IMAGE)
+                                .localDateTime(LocalDateTime.of(2023, 12, 25, 14, 31)).build();
+        }
+
+        @Test
+        void exportEntries_AsNdjson_ShouldWriteOneObjectPerLineAndDetachEach() throws Exception {
+                // Given
+                when(chatEntryRepository.streamForExport(1L, "John Doe", null, start, null))
+                                .thenReturn(Stream.of(first, second));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                // When
+                long count = chatEntryExportService.exportEntries(1L, "John Doe", null, start,
+                                null, ExportFormat.NDJSON, out);
+
+                // Then
+                assertEquals(2, count);
+                String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+                assertEquals(3, lines.length);
+                assertEquals("", lines[2]);
+                JsonNode line = objectMapper.readTree(lines[0]);
+                assertEquals("Hello, \"world\"\nagain", line.get("payload").asText());
+                assertEquals("2023-12-25T14:30:00", line.get("localDateTime").asText());
+                assertEquals("IMG-1.jpg", objectMapper.readTree(lines[1]).get("fileName").asText());
+                verify(entityManager).detach(first);
+                verify(entityManager).detach(second);
+        }
+
+        @Test
+        void exportEntries_AsCsv_ShouldQuoteFieldsThatNeedIt() throws Exception {
+                // Given
+                when(chatEntryRepository.streamForExport(1L, null, ChatEntry.Type.TEXT, null,
+                                null)).thenReturn(Stream.of(first, second));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                // When
+                long count = chatEntryExportService.exportEntries(1L, null, ChatEntry.Type.TEXT,
+                                null, null, ExportFormat.CSV, out);
+
+                // Then
+                assertEquals(2, count);
+                assertEquals("id,chatId,localDateTime,author,type,fileName,payload\r\n"
+                                + "1,family,2023-12-25T14:30:00,John Doe,TEXT,,"
+                                + "\"Hello, \"\"world\"\"\nagain\"\r\n"
+                                + "2,family,2023-12-25T14:31:00,John Doe,IMAGE,IMG-1.jpg,\r\n",
+                                out.toString(StandardCharsets.UTF_8));
+                verify(entityManager, times(2)).detach(any());
+        }
+}
@@ -3,29 +3,40 @@ package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryCursor;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.CursorPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.FacetedPage;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryFacetRepository;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,7 +45,15 @@ class ChatEntryServiceTest {
         @Mock
         private ChatEntryRepository chatEntryRepository;
 
-        @InjectMocks
+        @Mock
+        private ChatService chatService;
+
+        @Mock
+        private FullTextSearchService fullTextSearchService;
+
+        @Mock
+        private ChatEntryFacetRepository chatEntryFacetRepository;
+
         private ChatEntryService chatEntryService;
 
         private final Long userId = 1L;
@@ -45,6 +64,10 @@ class ChatEntryServiceTest {
 
         @BeforeEach
         void setUp() {
+                chatEntryService = new ChatEntryService(chatEntryRepository, null, chatService,
+                                new SqlSearchEngine(chatEntryRepository, fullTextSearchService,
+                                                chatEntryFacetRepository), null);
+
                 testChatEntry = ChatEntry.builder().author("John Doe").payload("Hello, world!")
                                 .fileName(null)
                                 .localDateTime(LocalDateTime.of(2023, 12, 25, 14, 30))
@@ -133,13 +156,14 @@ class ChatEntryServiceTest {
         }
 
         @Test
+        @SuppressWarnings("unchecked")
         void searchChatEntries_ShouldReturnPagedResults() {
                 // Given
                 Pageable pageable = PageRequest.of(0, 10);
                 Page<ChatEntryEntity> page =
                                 new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 1);
-                when(chatEntryRepository.findByUserIdAndType(eq(userId), eq(ChatEntry.Type.TEXT),
-                                any(Pageable.class))).thenReturn(page);
+                when(chatEntryRepository.findAll(any(Specification.class), any(Pageable.class)))
+                                .thenReturn(page);
 
                 // When
                 Page<ChatEntryEntity> result = chatEntryService.searchChatEntries(userId, null,
@@ -148,8 +172,7 @@ class ChatEntryServiceTest {
                 // Then
                 assertNotNull(result);
                 assertEquals(1, result.getTotalElements());
-                verify(chatEntryRepository).findByUserIdAndType(eq(userId), eq(ChatEntry.Type.TEXT),
-                                any(Pageable.class));
+                verify(chatEntryRepository).findAll(any(Specification.class), any(Pageable.class));
         }
 
         @Test
@@ -171,6 +194,88 @@ class ChatEntryServiceTest {
                 verify(chatEntryRepository).searchByUserIdAndKeyword(userId, "Hello", pageable);
         }
 
+        @Test
+        void searchByKeyword_WithFullTextSearch_ShouldUseTsQuery() {
+                // Given
+                Pageable pageable = PageRequest.of(0, 10);
+                Page<ChatEntryEntity> page =
+                                new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 1);
+                when(fullTextSearchService.isAvailable()).thenReturn(true);
+                when(fullTextSearchService.hasSearchableWords("(hello <-> world) & wor:*"))
+                                .thenReturn(true);
+                when(fullTextSearchService.getLanguage()).thenReturn("english");
+                when(chatEntryRepository.fullTextSearchByUserId(userId, "english",
+                                "(hello <-> world) & wor:*", pageable)).thenReturn(page);
+
+                // When
+                Page<ChatEntryEntity> result = chatEntryService.searchByKeyword(userId,
+                                "\"Hello, world\" wor", null, 0, 10);
+
+                // Then
+                assertEquals(1, result.getTotalElements());
+                verify(chatEntryRepository, never()).searchByUserIdAndKeyword(any(), any(),
+                                any(Pageable.class));
+        }
+
+        @Test
+        void searchByKeyword_OnlyStopwords_ShouldFallBackToLike() {
+                // Given
+                Pageable pageable = PageRequest.of(0, 10);
+                Page<ChatEntryEntity> page =
+                                new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 1);
+                when(fullTextSearchService.isAvailable()).thenReturn(true);
+                when(fullTextSearchService.hasSearchableWords("the:*")).thenReturn(false);
+                when(chatEntryRepository.searchByUserIdAndKeyword(userId, "the", pageable))
+                                .thenReturn(page);
+
+                // When
+                Page<ChatEntryEntity> result =
+                                chatEntryService.searchByKeyword(userId, "the", null, 0, 10);
+
+                // Then
+                assertEquals(1, result.getTotalElements());
+                verify(chatEntryRepository, never()).fullTextSearchByUserId(any(), any(), any(),
+                                any(Pageable.class));
+        }
+
+        @Test
+        void searchByKeyword_SubstringMode_ShouldUseEscapedTrigramPattern() {
+                // Given
+                Pageable pageable = PageRequest.of(0, 10);
+                Page<ChatEntryEntity> page =
+                                new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 1);
+                when(fullTextSearchService.isTrigramAvailable()).thenReturn(true);
+                when(chatEntryRepository.substringSearchByUserId(userId, "%50\\%\\_off%",
+                                pageable)).thenReturn(page);
+
+                // When
+                Page<ChatEntryEntity> result = chatEntryService.searchByKeyword(userId, " 50%_off ",
+                                KeywordSearchMode.SUBSTRING, null, 0, 10);
+
+                // Then
+                assertEquals(1, result.getTotalElements());
+        }
+
+        @Test
+        void searchByKeyword_FuzzyModeWithoutTrigramIndex_ShouldFallBackToLike() {
+                // Given
+                Pageable pageable = PageRequest.of(0, 10);
+                Page<ChatEntryEntity> page =
+                                new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 1);
+                when(fullTextSearchService.isTrigramAvailable()).thenReturn(false);
+                when(chatEntryRepository.searchByUserIdAndKeyword(userId, "Helo", pageable))
+                                .thenReturn(page);
+
+                // When
+                Page<ChatEntryEntity> result = chatEntryService.searchByKeyword(userId, "Helo",
+                                KeywordSearchMode.FUZZY, null, 0, 10);
+
+                // Then
+                assertEquals(1, result.getTotalElements());
+                verify(chatEntryRepository, never()).fuzzySearchByUserId(any(), any(),
+                                any(Pageable.class));
+        }
+
         @Test
         void searchByKeyword_ShouldSanitizeSensitiveData() {
                 // Given
@@ -207,12 +312,35 @@ class ChatEntryServiceTest {
         }
 
         @Test
+        void searchByKeyword_ShouldReturnPayloadSanitizedAtIngest() {
+                // Given
+                Pageable pageable = PageRequest.of(0, 10);
+                ChatEntryEntity entry = ChatEntryEntity.builder().id(2L).author("John Doe")
+                                .payload("Mail me at john@example.com")
+                                .sanitizedPayload("Mail me at [EMAIL]").type(ChatEntry.Type.TEXT)
+                                .userId(userId).chatId(chatId).build();
+                when(chatEntryRepository.searchByUserIdAndKeyword(userId, "mail", pageable))
+                                .thenReturn(new PageImpl<>(List.of(entry), pageable, 1));
+
+                // When
+                Page<ChatEntryEntity> result =
+                                chatEntryService.searchByKeyword(userId, "mail", null, 0, 10);
+
+                // Then
+                assertEquals("Mail me at [EMAIL]", result.getContent().get(0).getPayload());
+                // The stored entity keeps its original payload
+                assertEquals("Mail me at john@example.com", entry.getPayload());
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
         void advancedSearch_ShouldReturnPagedResults() {
                 // Given
                 Pageable pageable = PageRequest.of(0, 10);
                 Page<ChatEntryEntity> page =
-                                new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 1);
-                when(chatEntryRepository.findByUserId(userId, pageable)).thenReturn(page);
+                                new PageImpl<>(Arrays.asList(testChatEntryEntity), pageable, 42);
+                when(chatEntryRepository.findAll(any(Specification.class), any(Pageable.class)))
+                                .thenReturn(page);
 
                 // When
                 Page<ChatEntryEntity> result = chatEntryService.advancedSearch(userId, null,
@@ -221,8 +349,39 @@ class ChatEntryServiceTest {
 
                 // Then
                 assertNotNull(result);
-                assertEquals(1, result.getTotalElements());
-                verify(chatEntryRepository).findByUserId(userId, pageable);
+                // The total comes from the database count, not from the filtered page content
+                assertEquals(42, result.getTotalElements());
+                assertEquals(1, result.getContent().size());
+                verify(chatEntryRepository).findAll(any(Specification.class), any(Pageable.class));
+                verify(chatEntryRepository, never()).findByUserId(eq(userId), any(Pageable.class));
+        }
+
+        @Test
+        void facetedSearch_ShouldReturnPageAndFacetsForSameCriteria() {
+                // Given
+                Page<ChatEntryEntity> page = new PageImpl<>(Arrays.asList(testChatEntryEntity),
+                                PageRequest.of(0, 10), 42);
+                when(chatEntryRepository.findAll(any(Specification.class), any(Pageable.class)))
+                                .thenReturn(page);
+                Map<String, Map<String, Long>> facets = Map.of("author", Map.of("John Doe", 42L));
+                when(chatEntryFacetRepository.countFacets(eq(userId), any(SearchCriteria.class),
+                                eq(5))).thenReturn(facets);
+
+                // When
+                FacetedPage<ChatEntryEntity> result = chatEntryService.facetedSearch(userId,
+                                "hello", null, ChatEntry.Type.TEXT, null, null, null,
+                                List.of(chatId), 0, 10, 5);
+
+                // Then
+                assertEquals(42, result.getResults().getTotalElements());
+                assertEquals(facets, result.getFacets());
+                ArgumentCaptor<SearchCriteria> criteria =
+                                ArgumentCaptor.forClass(SearchCriteria.class);
+                verify(chatEntryFacetRepository).countFacets(eq(userId), criteria.capture(),
+                                eq(5));
+                assertEquals("hello", criteria.getValue().getKeyword());
+                assertEquals(ChatEntry.Type.TEXT, criteria.getValue().getType());
+                assertEquals(List.of(chatId), criteria.getValue().getChatIds());
         }
 
         @Test
@@ -285,6 +444,22 @@ class ChatEntryServiceTest {
                 verify(chatEntryRepository).deleteById(1L);
         }
 
+        @Test
+        void deleteChatEntries_ShouldDeleteInOneStatementAndRecordOnce() {
+                // Given
+                ChatEntryEntity other = ChatEntryEntity.builder().id(2L).author("Jane Doe")
+                                .userId(userId).chatId(chatId).build();
+                List<ChatEntryEntity> removed = List.of(testChatEntryEntity, other);
+
+                // When
+                chatEntryService.deleteChatEntries(userId, chatId, removed);
+
+                // Then
+                verify(chatEntryRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+                verify(chatService).recordEntriesRemoved(userId, chatId, removed);
+                verify(chatEntryRepository, never()).deleteById(any());
+        }
+
         @Test
         void findAll_ShouldReturnPagedResults() {
                 // Given
@@ -347,6 +522,7 @@ class ChatEntryServiceTest {
         }
 
         @Test
+        @SuppressWarnings("unchecked")
         void searchByType_ShouldReturnCorrectResults() {
                 // Given
                 ChatEntryEntity documentEntry = ChatEntryEntity.builder().id(2L).author("John Doe")
@@ -366,7 +542,7 @@ class ChatEntryServiceTest {
                 Page<ChatEntryEntity> videoPage =
                                 new PageImpl<>(Arrays.asList(videoEntry), PageRequest.of(0, 20), 1);
 
-                when(chatEntryRepository.findByUserIdAndType(eq(userId), eq(ChatEntry.Type.DOCUMENT), any(Pageable.class)))
+                when(chatEntryRepository.findAll(any(Specification.class), any(Pageable.class)))
                                 .thenReturn(documentPage);
 
                 // When - Search for DOCUMENT type
@@ -380,7 +556,7 @@ class ChatEntryServiceTest {
                                 documentResults.getContent().get(0).getType());
 
                 // When - Search for VIDEO type
-                when(chatEntryRepository.findByUserIdAndType(eq(userId), eq(ChatEntry.Type.VIDEO), any(Pageable.class)))
+                when(chatEntryRepository.findAll(any(Specification.class), any(Pageable.class)))
                                 .thenReturn(videoPage);
 
                 Page<ChatEntryEntity> videoResults = chatEntryService.searchChatEntries(userId,
@@ -391,4 +567,64 @@ class ChatEntryServiceTest {
                 assertEquals(1, videoResults.getTotalElements());
                 assertEquals(ChatEntry.Type.VIDEO, videoResults.getContent().get(0).getType());
         }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void scrollChatEntries_ShouldReturnCursorsWithoutCounting() {
+                // Given
+                List<ChatEntryEntity> rows = List.of(entryAt(1L, 0), entryAt(2L, 1), entryAt(3L, 2));
+                when(chatEntryRepository.findBy(any(Specification.class), any()))
+                                .thenReturn(rows);
+
+                // When
+                CursorPage<ChatEntryEntity> result = chatEntryService.scrollChatEntries(userId,
+                                null, null, null, null, null, null, null, null, 2);
+
+                // Then
+                assertEquals(2, result.getContent().size());
+                assertTrue(result.isHasNext());
+                assertFalse(result.isHasPrevious());
+                assertNull(result.getPrevCursor());
+                ChatEntryCursor next = ChatEntryCursor.decode(result.getNextCursor());
+                assertTrue(next.isForward());
+                assertEquals(2L, next.getId());
+                assertEquals(1, next.getOrdinal());
+                verify(chatEntryRepository, never()).count(any(Specification.class));
+        }
+
+        @Test
+        @SuppressWarnings("unchecked")
+        void scrollChatEntries_BackwardCursor_ShouldReturnEntriesInAscendingOrder() {
+                // Given - a backward query reads rows newest first
+                List<ChatEntryEntity> rows = List.of(entryAt(5L, 4), entryAt(4L, 3));
+                when(chatEntryRepository.findBy(any(Specification.class), any()))
+                                .thenReturn(rows);
+                String cursor = ChatEntryCursor.before(entryAt(6L, 5)).encode();
+
+                // When
+                CursorPage<ChatEntryEntity> result = chatEntryService.scrollChatEntries(userId,
+                                null, null, null, null, null, null, null, cursor, 2);
+
+                // Then
+                assertEquals(List.of(4L, 5L),
+                                result.getContent().stream().map(ChatEntryEntity::getId).toList());
+                assertTrue(result.isHasNext());
+                assertFalse(result.isHasPrevious());
+                assertEquals(5L, ChatEntryCursor.decode(result.getNextCursor()).getId());
+        }
+
+        @Test
+        void scrollChatEntries_WithMalformedCursor_ShouldThrow() {
+                // When & Then
+                assertThrows(IllegalArgumentException.class,
+                                () -> chatEntryService.scrollChatEntries(userId, null, null, null,
+                                                null, null, null, null, "not-a-cursor", 20));
+        }
+
+        private ChatEntryEntity entryAt(Long id, int ordinal) {
+                return ChatEntryEntity.builder().id(id).author("John Doe").payload("Message " + id)
+                                .type(ChatEntry.Type.TEXT)
+                                .localDateTime(LocalDateTime.of(2023, 12, 25, 14, 30))
+                                .ordinal(ordinal).userId(userId).chatId(chatId).build();
+        }
 }
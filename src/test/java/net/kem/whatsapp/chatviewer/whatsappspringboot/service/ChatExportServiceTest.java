@@ -0,0 +1,192 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ChatExportServiceTest {
+
+        @Mock
+        private ChatRepository chatRepository;
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @Mock
+        private AttachmentService attachmentService;
+
+        @Mock
+        private PlatformTransactionManager transactionManager;
+
+        @InjectMocks
+        private ChatExportService chatExportService;
+
+        @TempDir
+        Path storage;
+
+        private final LocalDateTime time = LocalDateTime.of(2023, 12, 25, 14, 30);
+
+        @Test
+        void exportChat_ShouldWriteChatTextAndStoreMediaUncompressed() throws Exception {
+                // Given
+                Chat chat = Chat.builder().id(7L).userId(1L).chatId("c1").name("Jane").build();
+                when(chatRepository.findByUserIdAndChatId(1L, "c1")).thenReturn(Optional.of(chat));
+                when(chatEntryRepository.streamExportLinesByChatRefId(7L)).thenReturn(Stream.of(
+                                new Object[] {time, "John Doe", "Hello,\nworld!", null},
+                                new Object[] {time.plusMinutes(1), "Jane", "Look", "IMG-1.jpg"},
+                                new Object[] {time.plusMinutes(2), "Jane", null, "PTT-1.opus"},
+                                new Object[] {time.plusMinutes(3), null, "Jane left", null}));
+                byte[] image = "not really a jpeg".getBytes(StandardCharsets.UTF_8);
+                byte[] voice = new byte[100_000];
+                store("h1", image);
+                store("h2", voice);
+                when(chatEntryRepository.findExportFilesByChatRefIdAfter(eq(7L), eq(0L),
+                                any(Limit.class))).thenReturn(List.of(
+                                                new Object[] {2L, "IMG-1.jpg", "h1", crc(image),
+                                                                time},
+                                                new Object[] {3L, "PTT-1.opus", "h2", null, time},
+                                                new Object[] {5L, "IMG-1.jpg", "h1", crc(image),
+                                                                time},
+                                                new Object[] {6L, "gone.pdf", "h3", 1L, time}));
+                when(attachmentService.resolveContent("h3"))
+                                .thenThrow(new NoSuchFileException("File not found"));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                // When
+                boolean exported = chatExportService.exportChat(1L, "c1", out);
+
+                // Then
+                assertTrue(exported);
+                try (ZipInputStream zip =
+                                new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+                        ZipEntry text = zip.getNextEntry();
+                        assertEquals("WhatsApp Chat with Jane.txt", text.getName());
+                        assertEquals("""
+                                        12/25/23, 14:30 - John Doe: Hello,
+                                        world!
+                                        12/25/23, 14:31 - Jane: IMG-1.jpg (file attached)
+                                        Look
+                                        12/25/23, 14:32 - Jane: PTT-1.opus (file attached)
+                                        12/25/23, 14:33 - Jane left
+                                        """,
+                                        new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+                        ZipEntry first = zip.getNextEntry();
+                        assertEquals("IMG-1.jpg", first.getName());
+                        assertEquals(ZipEntry.STORED, first.getMethod());
+                        assertArrayEquals(image, zip.readAllBytes());
+                        ZipEntry second = zip.getNextEntry();
+                        assertEquals("PTT-1.opus", second.getName());
+                        assertEquals(crc(voice), second.getCrc());
+                        assertArrayEquals(voice, zip.readAllBytes());
+                        assertNull(zip.getNextEntry());
+                }
+                // The central directory agrees with the local headers
+                Path archive = Files.write(storage.resolve("export.zip"), out.toByteArray());
+                try (ZipFile zip = new ZipFile(archive.toFile())) {
+                        assertEquals(3, zip.size());
+                        assertEquals(image.length, zip.getEntry("IMG-1.jpg").getSize());
+                }
+        }
+
+        @Test
+        void exportChat_FromRemoteStore_ShouldStreamFilesWithTheirChecksum() throws Exception {
+                // Given
+                Chat chat = Chat.builder().id(7L).userId(1L).chatId("c1").name("Jane").build();
+                when(chatRepository.findByUserIdAndChatId(1L, "c1")).thenReturn(Optional.of(chat));
+                when(chatEntryRepository.streamExportLinesByChatRefId(7L))
+                                .thenReturn(Stream.<Object[]>of(
+                                                new Object[] {time, "Jane", null, "PTT-1.opus"}));
+                when(chatEntryRepository.findExportFilesByChatRefIdAfter(eq(7L), eq(0L),
+                                any(Limit.class))).thenReturn(List.<Object[]>of(
+                                                new Object[] {1L, "PTT-1.opus", "h1", null, time}));
+                byte[] voice = "remote voice note".getBytes(StandardCharsets.UTF_8);
+                ContentStore store = mock(ContentStore.class);
+                when(store.get("h1")).thenAnswer(inv -> new ByteArrayInputStream(voice));
+                when(attachmentService.resolveContent("h1"))
+                                .thenReturn(new StoredContent(store, "h1", voice.length, 0));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                // When
+                chatExportService.exportChat(1L, "c1", out);
+
+                // Then
+                Path archive = Files.write(storage.resolve("export.zip"), out.toByteArray());
+                try (ZipFile zip = new ZipFile(archive.toFile())) {
+                        ZipEntry entry = zip.getEntry("PTT-1.opus");
+                        assertEquals(ZipEntry.STORED, entry.getMethod());
+                        assertEquals(crc(voice), entry.getCrc());
+                        assertArrayEquals(voice, zip.getInputStream(entry).readAllBytes());
+                }
+        }
+
+        @Test
+        void exportChat_UnknownChat_ShouldWriteNothing() throws Exception {
+                // Given
+                when(chatRepository.findByUserIdAndChatId(1L, "c1")).thenReturn(Optional.empty());
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+                // When
+                boolean exported = chatExportService.exportChat(1L, "c1", out);
+
+                // Then
+                assertFalse(exported);
+                assertEquals(0, out.size());
+        }
+
+        @Test
+        void getExportFileName_ShouldKeepWhatsAppPrefixAndPathSafety() {
+                // Given
+                when(chatRepository.findByUserIdAndChatId(1L, "c1")).thenReturn(Optional.of(
+                                Chat.builder().id(7L).chatId("c1").name("WhatsApp Chat - A/B")
+                                                .build()));
+
+                // When & Then
+                assertEquals(Optional.of("WhatsApp Chat - A_B.zip"),
+                                chatExportService.getExportFileName(1L, "c1"));
+        }
+
+        private void store(String hash, byte[] content) throws IOException {
+                Files.write(storage.resolve(hash), content);
+                when(attachmentService.resolveContent(hash)).thenReturn(
+                                new LocalContentStore(storage.toString()).stat(hash).orElseThrow());
+        }
+
+        private static long crc(byte[] content) {
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                return crc.getValue();
+        }
+}
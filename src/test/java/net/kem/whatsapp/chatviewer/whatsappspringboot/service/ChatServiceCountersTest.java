@@ -0,0 +1,199 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatSummary;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ChatServiceCountersTest {
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @Mock
+        private ChatRepository chatRepository;
+
+        @Mock
+        private DictionaryService dictionaryService;
+
+        @Mock
+        private SearchEngine searchEngine;
+
+        @Mock
+        private DetectedEntityService detectedEntityService;
+
+        @Mock
+        private ActivityRollupService activityRollupService;
+
+        @Mock
+        private ChatStatisticsService chatStatisticsService;
+
+        @Mock
+        private AttachmentReferenceService attachmentReferenceService;
+
+        @InjectMocks
+        private ChatService chatService;
+
+        private final Long userId = 1L;
+        private final String chatId = "user1_chat";
+
+        @Test
+        void getChatStatistics_ShouldReadCountersFromChatsTable() {
+                // Given
+                when(chatRepository.findSummariesByUserId(userId)).thenReturn(List.of(
+                                ChatSummary.builder().chatId("a").messageCount(10)
+                                                .attachmentCount(2).build(),
+                                ChatSummary.builder().chatId("b").messageCount(5)
+                                                .attachmentCount(1).build()));
+
+                // When
+                Map<String, Object> stats = chatService.getChatStatistics(userId);
+
+                // Then
+                assertEquals(2L, stats.get("totalChats"));
+                assertEquals(15L, stats.get("totalMessages"));
+                assertEquals(3L, stats.get("totalAttachments"));
+                verifyNoInteractions(chatEntryRepository);
+        }
+
+        @Test
+        void getChatSummary_ShouldReadAllChatsInOneQueryAndCacheUntilChanged() {
+                // Given
+                when(chatRepository.findSummariesByUserId(userId)).thenReturn(List.of(
+                                ChatSummary.builder().chatId("a").messageCount(10).build(),
+                                ChatSummary.builder().chatId("b").messageCount(5).build()));
+
+                // When
+                Map<String, Object> summary = chatService.getChatSummary(userId);
+                chatService.getChatSummary(userId);
+
+                // Then
+                assertEquals(2, summary.get("totalChats"));
+                assertEquals(List.of("a", "b"), summary.get("chatIds"));
+                Map<?, ?> chatStats = (Map<?, ?>) summary.get("chatStats");
+                assertEquals(5L, ((ChatSummary) chatStats.get("b")).getMessageCount());
+                verify(chatRepository, times(1)).findSummariesByUserId(userId);
+                verify(chatRepository, never()).findByUserIdAndChatId(anyLong(), anyString());
+                verifyNoInteractions(chatEntryRepository);
+
+                // When - an upload finishes
+                chatService.recordUpload(userId, "a");
+                chatService.getChatSummary(userId);
+
+                // Then
+                verify(chatRepository, times(2)).findSummariesByUserId(userId);
+        }
+
+        @Test
+        void getChatSummaries_ShouldKeepBoundedNumberOfUsers() {
+                // Given
+                when(chatRepository.findSummariesByUserId(anyLong())).thenReturn(List.of());
+
+                Long last = (long) ChatService.SUMMARY_CACHE_SIZE;
+
+                // When
+                for (long user = 0; user <= last; user++) {
+                        chatService.getChatSummaries(user);
+                }
+                chatService.getChatSummaries(last);
+                chatService.getChatSummaries(0L);
+
+                // Then - the most recent user is still cached, the least recent was dropped
+                verify(chatRepository, times(1)).findSummariesByUserId(last);
+                verify(chatRepository, times(2)).findSummariesByUserId(0L);
+        }
+
+        @Test
+        void recordEntriesAdded_ShouldApplyDeltaInSingleUpdate() {
+                // Given
+                LocalDateTime first = LocalDateTime.of(2023, 12, 25, 14, 30);
+                LocalDateTime last = LocalDateTime.of(2023, 12, 26, 9, 0);
+                List<ChatEntryEntity> added = List.of(entry(first, null), entry(last, "a.jpg"),
+                                entry(first.plusHours(1), ""));
+
+                // When
+                chatService.recordEntriesAdded(userId, chatId, added);
+
+                // Then
+                verify(chatRepository).addEntries(userId, chatId, 3, 1, first, last);
+                verify(detectedEntityService).recordEntries(added);
+                verify(activityRollupService).recordEntries(added);
+                verify(chatStatisticsService).evictUser(userId);
+                verify(attachmentReferenceService).recordEntries(added);
+        }
+
+        @Test
+        void recordEntriesRemoved_ShouldRecomputeBoundsOnlyWhenBoundaryRemoved() {
+                // Given
+                LocalDateTime first = LocalDateTime.of(2023, 12, 25, 14, 30);
+                LocalDateTime last = LocalDateTime.of(2023, 12, 26, 9, 0);
+                when(chatRepository.findBoundsByUserIdAndChatId(userId, chatId))
+                                .thenReturn(List.<Object[]>of(new Object[] {first, last}));
+
+                // When - an entry in the middle is removed
+                chatService.recordEntriesRemoved(userId, chatId,
+                                List.of(entry(first.plusHours(1), null)));
+
+                // Then
+                verify(chatRepository).removeEntries(userId, chatId, 1, 0);
+                verify(chatEntryRepository, never()).findDateBoundsByUserIdAndChatId(anyLong(),
+                                anyString());
+
+                // When - the last entry is removed
+                when(chatEntryRepository.findDateBoundsByUserIdAndChatId(userId, chatId))
+                                .thenReturn(List.<Object[]>of(new Object[] {first,
+                                                first.plusHours(1)}));
+                chatService.recordEntriesRemoved(userId, chatId, List.of(entry(last, "a.jpg")));
+
+                // Then
+                verify(chatRepository).removeEntries(userId, chatId, 1, 1);
+                verify(chatRepository).updateBounds(userId, chatId, first, first.plusHours(1));
+        }
+
+        @Test
+        void chatExists_ShouldNotCountEntries() {
+                // Given
+                when(chatRepository.existsByUserIdAndChatId(userId, chatId)).thenReturn(false);
+
+                // When & Then
+                assertFalse(chatService.chatExists(userId, chatId));
+                verifyNoInteractions(chatEntryRepository);
+        }
+
+        @Test
+        void deleteChat_ShouldForgetDictionaryEntry() {
+                // When
+                chatService.deleteChat(userId, chatId);
+
+                // Then
+                verify(chatEntryRepository).deleteByUserIdAndChatId(userId, chatId);
+                verify(chatRepository).deleteByUserIdAndChatId(userId, chatId);
+                verify(dictionaryService).evictChat(userId, chatId);
+                verify(detectedEntityService).removeChat(userId, chatId);
+                verify(activityRollupService).removeChat(userId, chatId);
+                verify(attachmentReferenceService).removeChat(userId, chatId);
+        }
+
+        private ChatEntryEntity entry(LocalDateTime time, String fileName) {
+                return ChatEntryEntity.builder().userId(userId).chatId(chatId).author("John Doe")
+                                .localDateTime(time).fileName(fileName).build();
+        }
+}
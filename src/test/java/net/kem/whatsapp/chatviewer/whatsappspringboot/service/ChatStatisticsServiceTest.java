@@ -0,0 +1,106 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryStatsRepository;
+
+@ExtendWith(MockitoExtension.class)
+class ChatStatisticsServiceTest {
+
+        @Mock
+        private ChatEntryStatsRepository chatEntryStatsRepository;
+
+        @InjectMocks
+        private ChatStatisticsService chatStatisticsService;
+
+        private final Long userId = 1L;
+
+        @Test
+        void countByAuthor_ShouldServeRepeatedRequestsFromCacheUntilEvicted() {
+                // Given
+                Map<String, Long> authors = new LinkedHashMap<>();
+                authors.put("Alice", 7L);
+                when(chatEntryStatsRepository.countByAuthor(userId, "chat1", null, null, 1))
+                                .thenReturn(authors);
+
+                // When
+                Map<String, Long> top = chatStatisticsService.countByAuthor(userId, "chat1", null,
+                                null, 1);
+                chatStatisticsService.countByAuthor(userId, "chat1", null, null, 1);
+
+                // Then - the limit is applied by the query
+                assertEquals(Map.of("Alice", 7L), top);
+                verify(chatEntryStatsRepository, times(1)).countByAuthor(userId, "chat1", null,
+                                null, 1);
+
+                // When - the user's entries changed
+                chatStatisticsService.evictUser(userId);
+                chatStatisticsService.countByAuthor(userId, "chat1", null, null, 1);
+
+                // Then
+                verify(chatEntryStatsRepository, times(2)).countByAuthor(userId, "chat1", null,
+                                null, 1);
+        }
+
+        @Test
+        void countByType_ShouldKeepBoundedNumberOfUsers() {
+                // Given
+                when(chatEntryStatsRepository.countByType(anyLong(), isNull(), isNull(), isNull()))
+                                .thenReturn(Map.of());
+                Long last = (long) ChatStatisticsService.CACHED_USERS;
+
+                // When
+                for (long user = 0; user <= last; user++) {
+                        chatStatisticsService.countByType(user, null, null, null);
+                }
+                chatStatisticsService.countByType(last, null, null, null);
+                chatStatisticsService.countByType(0L, null, null, null);
+
+                // Then - the most recent user is still cached, the least recent was dropped
+                verify(chatEntryStatsRepository, times(1)).countByType(last, null, null, null);
+                verify(chatEntryStatsRepository, times(2)).countByType(0L, null, null, null);
+        }
+
+        @Test
+        void countByType_WithReversedRange_ShouldThrow() {
+                // When & Then
+                assertThrows(IllegalArgumentException.class,
+                                () -> chatStatisticsService.countByType(userId, null,
+                                                LocalDate.of(2024, 2, 1),
+                                                LocalDate.of(2024, 1, 1)));
+                verifyNoInteractions(chatEntryStatsRepository);
+        }
+
+        @Test
+        void countByType_ShouldCacheEachChatAndRangeSeparately() {
+                // Given
+                LocalDate day = LocalDate.of(2024, 1, 1);
+                when(chatEntryStatsRepository.countByType(userId, null, null, null))
+                                .thenReturn(Map.of(ChatEntry.Type.TEXT, 10L));
+                when(chatEntryStatsRepository.countByType(userId, null, day, day))
+                                .thenReturn(Map.of(ChatEntry.Type.TEXT, 2L));
+
+                // When & Then
+                assertEquals(10L, chatStatisticsService.countByType(userId, null, null, null)
+                                .get(ChatEntry.Type.TEXT));
+                assertEquals(2L, chatStatisticsService.countByType(userId, null, day, day)
+                                .get(ChatEntry.Type.TEXT));
+                chatStatisticsService.countByType(userId, null, day, day);
+                verify(chatEntryStatsRepository, times(1)).countByType(userId, null, day, day);
+        }
+}
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -13,17 +14,25 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
 import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
 
 @ExtendWith(MockitoExtension.class)
 class ChatUploadServiceTest {
@@ -35,11 +44,14 @@ class ChatUploadServiceTest {
         private ChatService chatService;
 
         @Mock
-        private FileNamingService fileNamingService;
+        private ContentStore contentStore;
 
         @Mock
         private AttachmentService attachmentService;
 
+        @Mock
+        private ThumbnailService thumbnailService;
+
         @InjectMocks
         private ChatUploadService chatUploadService;
 
@@ -117,7 +129,9 @@ class ChatUploadServiceTest {
                 // Verify that incremental update was performed
                 verify(chatService, atLeastOnce()).chatExists(anyLong(), anyString());
                 verify(chatEntryService, times(1)).findByUserIdAndChatId(anyLong(), anyString());
-                verify(chatEntryService, times(3)).deleteById(anyLong(), anyLong());
+                verify(chatEntryService, times(1)).deleteChatEntries(eq(userId), anyString(),
+                                argThat(removed -> removed.size() == 3));
+                verify(chatEntryService, never()).deleteById(anyLong(), anyLong());
 
                 // Verify that kept entries and new entries were saved
                 verify(chatEntryService, times(1)).saveChatEntries(anyList(), eq(userId),
@@ -156,6 +170,42 @@ class ChatUploadServiceTest {
                 verify(chatEntryService).saveChatEntries(anyList(), eq(userId), anyString());
         }
 
+        @Test
+        void uploadZipFile_ShouldTypeAttachmentsByTheirContent() throws Exception {
+                // Given
+                ByteArrayOutputStream zip = new ByteArrayOutputStream();
+                try (ZipOutputStream out = new ZipOutputStream(zip)) {
+                        out.putNextEntry(new ZipEntry("WhatsApp Chat with Jane.txt"));
+                        out.write("12/25/23, 14:30 - John Doe: scan.bin (file attached)\n"
+                                        .getBytes(StandardCharsets.UTF_8));
+                        out.putNextEntry(new ZipEntry("scan.bin"));
+                        out.write("%PDF-1.7\n".getBytes(StandardCharsets.UTF_8));
+                }
+                MockMultipartFile file = new MockMultipartFile("file", "chat.zip",
+                                "application/zip", zip.toByteArray());
+                when(chatEntryService.saveChatEntries(anyList(), eq(userId), anyString()))
+                                .thenReturn(List.of());
+
+                // When
+                ChatUploadService.UploadResult result =
+                                chatUploadService.uploadZipFile(file, userId);
+
+                // Then
+                assertTrue(result.isSuccess());
+                ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+                ArgumentCaptor<MediaInfo> media = ArgumentCaptor.forClass(MediaInfo.class);
+                CRC32 crc = new CRC32();
+                crc.update("%PDF-1.7\n".getBytes(StandardCharsets.UTF_8));
+                verify(attachmentService).saveAttachment(hash.capture(), eq(9L), media.capture(),
+                                eq(crc.getValue()));
+                assertEquals("application/pdf", media.getValue().getMimeType());
+                verify(contentStore).putIfAbsent(FileNamingService.storageKey(hash.getValue()),
+                                "%PDF-1.7\n".getBytes(StandardCharsets.UTF_8));
+                ArgumentCaptor<List<ChatEntry>> saved = ArgumentCaptor.forClass(List.class);
+                verify(chatEntryService).saveChatEntries(saved.capture(), eq(userId), anyString());
+                assertEquals(ChatEntry.Type.DOCUMENT, saved.getValue().getFirst().getType());
+        }
+
         @Test
         void generateChatId_SameFilename_ShouldReturnSameChatId() {
                 // Given
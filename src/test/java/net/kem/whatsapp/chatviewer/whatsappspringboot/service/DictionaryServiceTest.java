@@ -0,0 +1,98 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Author;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.Chat;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.AuthorRepository;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatRepository;
+
+@ExtendWith(MockitoExtension.class)
+class DictionaryServiceTest {
+
+        @Mock
+        private AuthorRepository authorRepository;
+
+        @Mock
+        private ChatRepository chatRepository;
+
+        @Mock
+        private PlatformTransactionManager transactionManager;
+
+        private DictionaryService dictionaryService;
+
+        @BeforeEach
+        void setUp() {
+                dictionaryService = new DictionaryService(authorRepository, chatRepository,
+                                transactionManager);
+        }
+
+        @Test
+        void getOrCreateAuthorId_ShouldCreateOnceAndThenUseCache() {
+                // Given
+                when(authorRepository.findByName("John Doe")).thenReturn(Optional.empty());
+                when(transactionManager.getTransaction(any()))
+                                .thenReturn(new SimpleTransactionStatus());
+                when(authorRepository.save(any(Author.class)))
+                                .thenReturn(Author.builder().id(7L).name("John Doe").build());
+
+                // When
+                Long first = dictionaryService.getOrCreateAuthorId("John Doe");
+                Long second = dictionaryService.getOrCreateAuthorId("John Doe");
+
+                // Then
+                assertEquals(7L, first);
+                assertEquals(7L, second);
+                assertEquals("John Doe", dictionaryService.getAuthorName(7L));
+                verify(authorRepository, times(1)).findByName("John Doe");
+                verify(authorRepository, times(1)).save(any(Author.class));
+                verify(authorRepository, never()).findById(any());
+        }
+
+        @Test
+        void getChatId_ShouldLoadOnceAndThenUseCache() {
+                // Given
+                when(chatRepository.findById(3L)).thenReturn(Optional
+                                .of(Chat.builder().id(3L).userId(1L).chatId("user1_chat").build()));
+
+                // When
+                String first = dictionaryService.getChatId(3L);
+                String second = dictionaryService.getChatId(3L);
+
+                // Then
+                assertEquals("user1_chat", first);
+                assertEquals("user1_chat", second);
+                assertEquals(Optional.of(3L), dictionaryService.findChatRefId(1L, "user1_chat"));
+                verify(chatRepository, times(1)).findById(3L);
+                verify(chatRepository, never()).findByUserIdAndChatId(any(), any());
+        }
+
+        @Test
+        void evictChat_ShouldForgetDeletedChat() {
+                // Given
+                when(chatRepository.findByUserIdAndChatId(1L, "user1_chat"))
+                                .thenReturn(Optional.of(Chat.builder().id(3L).build()))
+                                .thenReturn(Optional.empty());
+                dictionaryService.findChatRefId(1L, "user1_chat");
+
+                // When
+                dictionaryService.evictChat(1L, "user1_chat");
+
+                // Then
+                assertTrue(dictionaryService.findChatRefId(1L, "user1_chat").isEmpty());
+                verify(chatRepository, times(2)).findByUserIdAndChatId(1L, "user1_chat");
+        }
+}
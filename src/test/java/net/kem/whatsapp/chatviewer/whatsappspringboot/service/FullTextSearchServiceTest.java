@@ -0,0 +1,84 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class FullTextSearchServiceTest {
+
+        @Mock
+        private JdbcTemplate jdbcTemplate;
+
+        @Test
+        void toTsQuery_ShouldUsePrefixMatchForWords() {
+                assertEquals("hello:* & wor:*", FullTextSearchService.toTsQuery("Hello wor"));
+        }
+
+        @Test
+        void toTsQuery_ShouldKeepQuotedTextAsPhrase() {
+                assertEquals("(see <-> you) & tomorrow:*",
+                                FullTextSearchService.toTsQuery("\"see you\" tomorrow"));
+                assertEquals("bye", FullTextSearchService.toTsQuery("\"bye!\""));
+        }
+
+        @Test
+        void toTsQuery_ShouldDropOperatorsAndReturnNullWithoutWords() {
+                assertEquals("don:* & t:* & a:* & b:*",
+                                FullTextSearchService.toTsQuery("don't a|b"));
+                assertEquals("שלום:*", FullTextSearchService.toTsQuery("שלום"));
+                assertNull(FullTextSearchService.toTsQuery("!&: \"\""));
+                assertNull(FullTextSearchService.toTsQuery(null));
+        }
+
+        @Test
+        void hasSearchableWords_StopwordsOnly_ShouldBeFalse() {
+                // Given
+                FullTextSearchService service =
+                                new FullTextSearchService(jdbcTemplate, true, true, "english");
+                when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("english"),
+                                eq("the:* & a:*"))).thenReturn(0);
+                when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), eq("english"),
+                                eq("the:* & cat:*"))).thenReturn(1);
+
+                // When / Then
+                assertFalse(service.hasSearchableWords("the:* & a:*"));
+                assertTrue(service.hasSearchableWords("the:* & cat:*"));
+        }
+
+        @Test
+        void toLikePattern_ShouldEscapeWildcards() {
+                assertEquals("%100\\%%", FullTextSearchService.toLikePattern(" 100% "));
+                assertEquals("%a\\_b\\\\c%", FullTextSearchService.toLikePattern("a_b\\c"));
+        }
+
+        @Test
+        void prepareSchema_WhenDisabled_ShouldNotTouchDatabase() {
+                // Given
+                FullTextSearchService service =
+                                new FullTextSearchService(jdbcTemplate, false, false, "english");
+
+                // When / Then
+                assertFalse(service.prepareSchema());
+                assertFalse(service.isAvailable());
+                verifyNoInteractions(jdbcTemplate);
+        }
+
+        @Test
+        void constructor_ShouldRejectInvalidLanguage() {
+                assertThrows(IllegalArgumentException.class,
+                                () -> new FullTextSearchService(jdbcTemplate, true, true,
+                                                "english'--"));
+        }
+}
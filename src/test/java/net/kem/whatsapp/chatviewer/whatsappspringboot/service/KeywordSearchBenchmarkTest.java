@@ -0,0 +1,136 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+
+/**
+ * Compares the keyword search modes against the plain LIKE query on a generated PostgreSQL data
+ * set. Needs Docker and is skipped unless started explicitly:
+ *
+ * <pre>
+ * mvn test -Dtest=KeywordSearchBenchmarkTest -Dbenchmark=true [-Dbenchmark.rows=2000000]
+ * </pre>
+ */
+@Testcontainers
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class KeywordSearchBenchmarkTest {
+
+        private static final int ROWS = Integer.getInteger("benchmark.rows", 500_000);
+        private static final int RUNS = 7;
+
+        private static final String LIKE_MATCH = """
+                        (LOWER(ce.payload) LIKE LOWER(CONCAT('%', :keyword, '%')) OR \
+                        ce.author_id IN (SELECT a.id FROM authors a \
+                        WHERE LOWER(a.name) LIKE LOWER(CONCAT('%', :keyword, '%'))))""";
+
+        @Container
+        private static final PostgreSQLContainer<?> postgres =
+                        new PostgreSQLContainer<>("postgres:16-alpine");
+
+        @Test
+        void compareKeywordSearchModes() {
+                // Given
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                                postgres.getJdbcUrl(), postgres.getUsername(),
+                                postgres.getPassword()));
+                createTables(jdbcTemplate);
+                FullTextSearchService fullTextSearchService =
+                                new FullTextSearchService(jdbcTemplate, true, true, "english");
+                assertTrue(fullTextSearchService.prepareSchema());
+                assertTrue(fullTextSearchService.isTrigramAvailable());
+                jdbcTemplate.execute("ANALYZE");
+
+                Map<String, String> queries = new LinkedHashMap<>();
+                queries.put("LIKE", LIKE_MATCH + ChatEntryRepository.CHRONOLOGICAL_ORDER);
+                queries.put("FULL_TEXT", ChatEntryRepository.FULL_TEXT_MATCH
+                                + ChatEntryRepository.FULL_TEXT_RANK);
+                queries.put("SUBSTRING", ChatEntryRepository.SUBSTRING_MATCH
+                                + ChatEntryRepository.CHRONOLOGICAL_ORDER);
+                queries.put("FUZZY", ChatEntryRepository.FUZZY_MATCH
+                                + ChatEntryRepository.SIMILARITY_ORDER);
+                NamedParameterJdbcTemplate named = new NamedParameterJdbcTemplate(jdbcTemplate);
+
+                // When / Then
+                System.out.printf("%nKeyword search over %,d rows, median of %d runs (ms)%n", ROWS,
+                                RUNS);
+                System.out.printf("%-12s%12s%12s%12s%12s%n", "keyword", "LIKE", "FULL_TEXT",
+                                "SUBSTRING", "FUZZY");
+                for (String keyword : List.of("meeting", "tomorr", "dinosaur", "recieve")) {
+                        MapSqlParameterSource params = new MapSqlParameterSource()
+                                        .addValue("userId", 1L).addValue("keyword", keyword)
+                                        .addValue("language", "english")
+                                        .addValue("query", FullTextSearchService.toTsQuery(keyword))
+                                        .addValue("pattern", FullTextSearchService
+                                                        .toLikePattern(keyword));
+                        StringBuilder row = new StringBuilder(String.format("%-12s", keyword));
+                        queries.forEach((mode, match) -> {
+                                String sql = "SELECT ce.id FROM chat_entries ce "
+                                                + "WHERE ce.user_id = :userId AND " + match
+                                                + " LIMIT 20";
+                                double millis = medianMillis(named, sql, params);
+                                row.append(String.format("%12.1f", millis));
+                        });
+                        System.out.println(row);
+                }
+                assertEquals(ROWS, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_entries",
+                                Integer.class));
+        }
+
+        private static double medianMillis(NamedParameterJdbcTemplate named, String sql,
+                        MapSqlParameterSource params) {
+                long[] timings = new long[RUNS];
+                named.queryForList(sql, params, Long.class);
+                for (int i = 0; i < RUNS; i++) {
+                        long start = System.nanoTime();
+                        named.queryForList(sql, params, Long.class);
+                        timings[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(timings);
+                return timings[RUNS / 2] / 1_000_000.0;
+        }
+
+        private static void createTables(JdbcTemplate jdbcTemplate) {
+                jdbcTemplate.execute("""
+                                CREATE TABLE authors (id BIGSERIAL PRIMARY KEY, \
+                                name VARCHAR(255) NOT NULL UNIQUE)""");
+                jdbcTemplate.execute("""
+                                CREATE TABLE chat_entries (id BIGSERIAL PRIMARY KEY, \
+                                user_id BIGINT NOT NULL, chat_ref_id BIGINT NOT NULL, \
+                                author_id BIGINT, payload TEXT, local_date_time TIMESTAMP, \
+                                ordinal INTEGER NOT NULL DEFAULT 0)""");
+                jdbcTemplate.execute("""
+                                CREATE INDEX idx_chat_entries_user_date \
+                                ON chat_entries (user_id, local_date_time)""");
+                jdbcTemplate.update("""
+                                INSERT INTO authors (name) \
+                                SELECT 'Participant ' || i FROM generate_series(1, 200) i""");
+                // Messages of 3 to 14 words drawn from a small vocabulary, spread over 10 users
+                jdbcTemplate.update("""
+                                INSERT INTO chat_entries (user_id, chat_ref_id, author_id, \
+                                payload, local_date_time, ordinal) \
+                                SELECT 1 + i % 10, 1 + i % 40, 1 + i % 200, \
+                                (SELECT string_agg(w.words[1 + floor(random() * \
+                                array_length(w.words, 1))::int], ' ') \
+                                FROM generate_series(1, 3 + i % 12) WHERE i > 0), \
+                                TIMESTAMP '2020-01-01' + i * INTERVAL '1 minute', i \
+                                FROM generate_series(1, ?) i, (SELECT ARRAY['hello', 'see', \
+                                'you', 'tomorrow', 'meeting', 'dinner', 'thanks', 'ok', \
+                                'photo', 'https://example.com/a', 'running', 'late', 'call', \
+                                'me', 'when', 'home', 'receive', 'weekend', 'birthday', \
+                                'dinosaurs', 'שלום', 'привет'] AS words) w""", ROWS);
+        }
+}
@@ -0,0 +1,91 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalContentStoreTest {
+
+        @TempDir
+        private Path storage;
+
+        @TempDir
+        private Path uploads;
+
+        private LocalContentStore contentStore;
+
+        private final byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        @BeforeEach
+        void setUp() {
+                contentStore = new LocalContentStore(storage.toString());
+        }
+
+        @Test
+        void putIfAbsent_FromFile_ShouldMoveItIntoPlaceOnce() throws Exception {
+                // Given
+                Path upload = Files.write(uploads.resolve("upload.tmp"), content);
+                Path again = Files.write(uploads.resolve("again.tmp"), content);
+
+                // When
+                boolean first = contentStore.putIfAbsent("abc/def/abcdef", upload);
+                boolean second = contentStore.putIfAbsent("abc/def/abcdef", again);
+
+                // Then
+                assertTrue(first);
+                assertFalse(second);
+                assertFalse(Files.exists(upload));
+                assertArrayEquals(content, Files.readAllBytes(storage.resolve("abc/def/abcdef")));
+                try (Stream<Path> files = Files.list(storage.resolve("abc/def"))) {
+                        assertEquals(1, files.count());
+                }
+        }
+
+        @Test
+        void get_WithRange_ShouldReadOnlyThoseBytes() throws Exception {
+                // Given
+                contentStore.putIfAbsent("abc/def/abcdef", content);
+
+                // When
+                Optional<StoredContent> stat = contentStore.stat("abc/def/abcdef");
+                byte[] range;
+                try (InputStream in = contentStore.get("abc/def/abcdef", 2, 4)) {
+                        range = in.readAllBytes();
+                }
+
+                // Then
+                assertEquals(10, stat.get().size());
+                assertEquals(Optional.of(storage.resolve("abc/def/abcdef")),
+                                stat.get().localPath());
+                assertEquals("2345", new String(range, StandardCharsets.UTF_8));
+        }
+
+        @Test
+        void missingFile_ShouldBeAbsentEverywhere() throws Exception {
+                // When & Then
+                assertEquals(Optional.empty(), contentStore.stat("abc/def/missing"));
+                assertFalse(contentStore.exists("abc/def/missing"));
+                assertFalse(contentStore.delete("abc/def/missing"));
+                assertThrows(NoSuchFileException.class, () -> contentStore.get("abc/def/missing"));
+        }
+
+        @Test
+        void keyOutsideTheStore_ShouldBeRejected() {
+                // When & Then
+                assertThrows(IllegalArgumentException.class,
+                                () -> contentStore.putIfAbsent("../escaped", content));
+                assertThrows(IllegalArgumentException.class, () -> contentStore.get("a/../.."));
+        }
+}
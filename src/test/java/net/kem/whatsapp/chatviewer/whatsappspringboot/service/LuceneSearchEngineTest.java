@@ -0,0 +1,206 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.util.FileSystemUtils;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntryEntity;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.KeywordSearchMode;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.SearchCriteria;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.repository.ChatEntryRepository;
+
+@ExtendWith(MockitoExtension.class)
+class LuceneSearchEngineTest {
+
+        @Mock
+        private ChatEntryRepository chatEntryRepository;
+
+        @TempDir
+        private Path indexPath;
+
+        private LuceneSearchEngine searchEngine;
+
+        private final Long userId = 1L;
+        private final List<ChatEntryEntity> stored = new ArrayList<>();
+
+        @BeforeEach
+        void setUp() {
+                stored.add(entry(1L, "family", "Alice", "Meeting tomorrow at the cafe",
+                                LocalDateTime.of(2024, 1, 10, 9, 0)));
+                stored.add(entry(2L, "family", "Bob", "See you tomorrow",
+                                LocalDateTime.of(2024, 1, 10, 9, 5)));
+                stored.add(entry(3L, "work", "Alice", "The meeting moved to Friday",
+                                LocalDateTime.of(2024, 2, 3, 14, 0)));
+
+                // The index does not exist yet, so the first use builds it from the database
+                lenient().when(chatEntryRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(
+                                eq(userId), eq(0L), any(Limit.class)))
+                                .thenAnswer(inv -> List.copyOf(stored));
+                searchEngine = new LuceneSearchEngine(chatEntryRepository, indexPath.toString());
+        }
+
+        @AfterEach
+        void tearDown() {
+                searchEngine.close();
+        }
+
+        @Test
+        void searchByKeyword_ShouldMatchPrefixesAndHighlightPayload() {
+                // Given
+                stubFindAllById();
+
+                // When
+                Page<ChatEntryEntity> result = searchEngine.searchByKeyword(userId, "meet",
+                                KeywordSearchMode.FULL_TEXT, null, PageRequest.of(0, 10));
+
+                // Then
+                assertEquals(2, result.getTotalElements());
+                assertTrue(result.getContent().stream()
+                                .allMatch(e -> e.getHighlight().contains("<mark>")));
+                assertTrue(result.getContent().stream().anyMatch(
+                                e -> e.getHighlight().contains("<mark>Meeting</mark>")));
+        }
+
+        @Test
+        void searchByKeyword_WithChatFilterAndFuzzyMode_ShouldTolerateTypos() {
+                // Given
+                stubFindAllById();
+
+                // When
+                Page<ChatEntryEntity> result = searchEngine.searchByKeyword(userId, "tomorow",
+                                KeywordSearchMode.FUZZY, List.of("family"), PageRequest.of(0, 10));
+
+                // Then
+                assertEquals(2, result.getTotalElements());
+                assertTrue(result.getContent().stream()
+                                .allMatch(e -> "family".equals(e.getChatId())));
+        }
+
+        @Test
+        void search_ShouldApplyCriteriaInChronologicalOrder() {
+                // Given
+                stubFindAllById();
+                SearchCriteria criteria = SearchCriteria.builder().author("alice")
+                                .startDate(LocalDateTime.of(2024, 1, 1, 0, 0)).build();
+
+                // When
+                Page<ChatEntryEntity> result =
+                                searchEngine.search(userId, criteria, PageRequest.of(0, 10));
+
+                // Then
+                assertEquals(List.of(1L, 3L),
+                                result.getContent().stream().map(ChatEntryEntity::getId).toList());
+                assertNull(result.getContent().getFirst().getHighlight());
+        }
+
+        @Test
+        void facetCounts_ShouldCountMatchesPerDimension() {
+                // When
+                Map<String, Map<String, Long>> facets = searchEngine.facetCounts(userId,
+                                SearchCriteria.builder().keyword("tomorrow").build(), 10);
+
+                // Then
+                assertEquals(Map.of("family", 2L), facets.get(LuceneSearchEngine.CHAT));
+                assertEquals(Map.of("Alice", 1L, "Bob", 1L), facets.get(LuceneSearchEngine.AUTHOR));
+                assertEquals(Map.of("2024-01", 2L), facets.get(LuceneSearchEngine.MONTH));
+        }
+
+        @Test
+        void indexAndRemove_ShouldBeVisibleToTheNextSearch() {
+                // Given
+                stubFindAllById();
+                ChatEntryEntity added = entry(4L, "work", "Carol", "Meeting notes attached",
+                                LocalDateTime.of(2024, 3, 1, 8, 0));
+                stored.add(added);
+
+                // When
+                searchEngine.indexEntries(userId, List.of(added));
+                searchEngine.removeChat(userId, "family");
+                Page<ChatEntryEntity> result = searchEngine.searchByKeyword(userId, "meeting",
+                                KeywordSearchMode.FULL_TEXT, null, PageRequest.of(0, 10));
+
+                // Then
+                assertEquals(2, result.getTotalElements());
+                assertTrue(result.getContent().stream()
+                                .allMatch(e -> "work".equals(e.getChatId())));
+        }
+
+        @Test
+        void firstUse_WhenRebuildFails_ShouldReleaseIndexAndRetry() {
+                // Given
+                stubFindAllById();
+                when(chatEntryRepository.findByUserIdAndIdGreaterThanOrderByIdAsc(eq(userId),
+                                eq(0L), any(Limit.class)))
+                                .thenThrow(new IllegalStateException("Database unavailable"))
+                                .thenAnswer(inv -> List.copyOf(stored));
+
+                // When
+                assertThrows(IllegalStateException.class, () -> searchEngine.search(userId,
+                                SearchCriteria.builder().build(), PageRequest.of(0, 10)));
+                Page<ChatEntryEntity> result = searchEngine.search(userId,
+                                SearchCriteria.builder().build(), PageRequest.of(0, 10));
+
+                // Then
+                assertEquals(3, result.getTotalElements());
+        }
+
+        @Test
+        void failedUpdate_ShouldRebuildIndexFromDatabase() throws Exception {
+                // Given - the index files vanish under the open index, so the update fails
+                stubFindAllById();
+                searchEngine.search(userId, SearchCriteria.builder().build(),
+                                PageRequest.of(0, 10));
+                FileSystemUtils.deleteRecursively(indexPath.resolve("user-" + userId));
+                ChatEntryEntity missed = entry(4L, "work", "Carol", "Meeting notes attached",
+                                LocalDateTime.of(2024, 3, 1, 8, 0));
+                stored.add(missed);
+
+                // When
+                searchEngine.indexEntries(userId, List.of(missed));
+                Page<ChatEntryEntity> result = searchEngine.search(userId,
+                                SearchCriteria.builder().build(), PageRequest.of(0, 10));
+
+                // Then
+                assertEquals(List.of(1L, 2L, 3L, 4L),
+                                result.getContent().stream().map(ChatEntryEntity::getId).toList());
+        }
+
+        private void stubFindAllById() {
+                when(chatEntryRepository.findAllById(anyIterable())).thenAnswer(inv -> {
+                        Iterable<Long> ids = inv.getArgument(0);
+                        List<ChatEntryEntity> found = new ArrayList<>();
+                        ids.forEach(id -> stored.stream().filter(e -> e.getId().equals(id))
+                                        .forEach(found::add));
+                        return found;
+                });
+        }
+
+        private ChatEntryEntity entry(Long id, String chatId, String author, String payload,
+                        LocalDateTime time) {
+                return ChatEntryEntity.builder().id(id).userId(userId).chatId(chatId)
+                                .author(author).payload(payload).type(ChatEntry.Type.TEXT)
+                                .localDateTime(time).build();
+        }
+}
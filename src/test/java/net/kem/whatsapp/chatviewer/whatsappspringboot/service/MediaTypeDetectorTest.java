@@ -0,0 +1,138 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.ChatEntry;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.MediaInfo;
+
+class MediaTypeDetectorTest {
+
+        @Test
+        void detect_ShouldPreferContentOverExtensionAndReadImageDimensions() throws Exception {
+                // Given
+                byte[] jpeg = image(40, 30, "jpeg");
+                byte[] png = image(7, 5, "png");
+                byte[] gif = image(3, 2, "gif");
+
+                // When & Then
+                assertEquals(new MediaInfo("image/jpeg", 40, 30, null), detect(jpeg, "a.jpg"));
+                assertEquals(new MediaInfo("image/png", 7, 5, null), detect(png, "IMG-1.jpg"));
+                assertEquals(new MediaInfo("image/gif", 3, 2, null), detect(gif, null));
+        }
+
+        @Test
+        void detect_ShouldReadWebpDimensions() {
+                // Given
+                ByteBuffer webp = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+                webp.put(ascii("RIFF")).putInt(22).put(ascii("WEBPVP8X")).putInt(10).putInt(0);
+                webp.put((byte) 0x1F).put((byte) 0x02).put((byte) 0); // width 544
+                webp.put((byte) 0xFF).put((byte) 0x01).put((byte) 0); // height 512
+
+                // When & Then
+                assertEquals(new MediaInfo("image/webp", 544, 512, null),
+                                detect(webp.array(), "STK-1.webp"));
+        }
+
+        @Test
+        void detect_ShouldComputeWavDuration() {
+                // Given
+                ByteBuffer wav = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+                wav.put(ascii("RIFF")).putInt(36 + 32000).put(ascii("WAVEfmt ")).putInt(16);
+                wav.putShort((short) 1).putShort((short) 1).putInt(8000).putInt(16000);
+                wav.putShort((short) 2).putShort((short) 16).put(ascii("data")).putInt(32000);
+
+                // When & Then
+                assertEquals(new MediaInfo("audio/wav", null, null, 2000L),
+                                detect(wav.array(), "voice.wav"));
+        }
+
+        @Test
+        void detect_ShouldReadMp4DurationAndVideoDimensions() {
+                // Given
+                byte[] ftyp = box("ftyp", ascii("isom"), new byte[4]);
+                byte[] mvhd = box("mvhd", fullBox(0), ints(0, 0, 1000, 5000), new byte[80]);
+                byte[] tkhd = box("tkhd", fullBox(0), new byte[72], ints(640 << 16, 360 << 16));
+                byte[] video = concat(ftyp, box("moov", mvhd, box("trak", tkhd)));
+                byte[] audio = concat(ftyp, box("moov", mvhd,
+                                box("trak", box("tkhd", fullBox(0), new byte[80]))));
+
+                // When & Then
+                assertEquals(new MediaInfo("video/mp4", 640, 360, 5000L), detect(video, "v.mp4"));
+                assertEquals(new MediaInfo("audio/mp4", null, null, 5000L), detect(audio, "v.mp4"));
+        }
+
+        @Test
+        void detect_ShouldTellOfficeDocumentsFromZipContent() throws Exception {
+                // Given
+                ByteArrayOutputStream docx = new ByteArrayOutputStream();
+                try (ZipOutputStream zip = new ZipOutputStream(docx)) {
+                        zip.putNextEntry(new ZipEntry("word/document.xml"));
+                }
+
+                // When & Then
+                assertEquals("application/vnd.openxmlformats-officedocument.wordprocessingml"
+                                + ".document", detect(docx.toByteArray(), "report").getMimeType());
+        }
+
+        @Test
+        void detect_WithoutSignature_ShouldFallBackToExtension() {
+                // Given
+                byte[] text = "hello".getBytes(StandardCharsets.UTF_8);
+
+                // When & Then
+                assertEquals("text/plain", detect(text, "notes.txt").getMimeType());
+                assertEquals(MediaInfo.OCTET_STREAM, detect(text, null).getMimeType());
+                assertEquals(ChatEntry.Type.AUDIO, MediaInfo.entryTypeOfFileName("PTT-1.opus"));
+                assertEquals(ChatEntry.Type.CONTACT, MediaInfo.entryTypeOfFileName("Jane.vcf"));
+                assertEquals(ChatEntry.Type.FILE, MediaInfo.entryTypeOfFileName("README"));
+        }
+
+        private static MediaInfo detect(byte[] bytes, String fileName) {
+                return MediaTypeDetector.detect(bytes, bytes.length, fileName);
+        }
+
+        private static byte[] image(int width, int height, String format) throws Exception {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format,
+                                out);
+                return out.toByteArray();
+        }
+
+        private static byte[] box(String type, byte[]... content) {
+                byte[] body = concat(content);
+                return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length)
+                                .put(ascii(type)).put(body).array();
+        }
+
+        private static byte[] fullBox(int version) {
+                return new byte[] {(byte) version, 0, 0, 0};
+        }
+
+        private static byte[] ints(int... values) {
+                ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+                for (int value : values) {
+                        buffer.putInt(value);
+                }
+                return buffer.array();
+        }
+
+        private static byte[] concat(byte[]... parts) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                for (byte[] part : parts) {
+                        out.writeBytes(part);
+                }
+                return out.toByteArray();
+        }
+
+        private static byte[] ascii(String text) {
+                return text.getBytes(StandardCharsets.US_ASCII);
+        }
+}
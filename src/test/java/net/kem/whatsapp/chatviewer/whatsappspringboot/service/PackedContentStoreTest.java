@@ -0,0 +1,148 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.InputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PackedContentStoreTest {
+
+        @TempDir
+        private Path storage;
+
+        private PackedContentStore contentStore;
+
+        private final byte[] sticker = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        @AfterEach
+        void tearDown() throws Exception {
+                contentStore.close();
+        }
+
+        @Test
+        void putIfAbsent_SmallFile_ShouldBeAppendedToPack() throws Exception {
+                // Given
+                contentStore = open(1024 * 1024);
+
+                // When
+                boolean first = contentStore.putIfAbsent("abc/def/abcdef", sticker);
+                boolean second = contentStore.putIfAbsent("abc/def/abcdef", sticker);
+                byte[] range;
+                try (InputStream in = contentStore.get("abc/def/abcdef", 2, 4)) {
+                        range = in.readAllBytes();
+                }
+
+                // Then
+                assertTrue(first);
+                assertFalse(second);
+                assertFalse(Files.exists(storage.resolve("abc/def/abcdef")));
+                assertTrue(Files.exists(storage.resolve("packs/pack-000001.dat")));
+                StoredContent stat = contentStore.stat("abc/def/abcdef").get();
+                assertEquals(10, stat.size());
+                assertEquals(Optional.empty(), stat.localPath());
+                assertArrayEquals(sticker, stat.open().readAllBytes());
+                assertEquals("2345", new String(range, StandardCharsets.UTF_8));
+        }
+
+        @Test
+        void putIfAbsent_LargeFile_ShouldStayPlainFile() throws Exception {
+                // Given
+                contentStore = open(1024 * 1024);
+                byte[] video = new byte[100];
+
+                // When
+                contentStore.putIfAbsent("abc/def/video", video);
+
+                // Then
+                assertArrayEquals(video, Files.readAllBytes(storage.resolve("abc/def/video")));
+                assertEquals(Optional.of(storage.resolve("abc/def/video")),
+                                contentStore.stat("abc/def/video").get().localPath());
+                assertFalse(Files.exists(storage.resolve("packs/pack-000001.dat")));
+        }
+
+        @Test
+        void delete_ShouldCompactFullPackAndSurviveRestart() throws Exception {
+                // Given, one file per pack
+                contentStore = open(1);
+                contentStore.putIfAbsent("abc/def/first", sticker);
+                contentStore.putIfAbsent("abc/def/second", sticker);
+
+                // When
+                boolean deleted = contentStore.delete("abc/def/first");
+                contentStore.close();
+                contentStore = open(1);
+
+                // Then
+                assertTrue(deleted);
+                assertFalse(Files.exists(storage.resolve("packs/pack-000001.dat")));
+                assertFalse(contentStore.exists("abc/def/first"));
+                assertThrows(NoSuchFileException.class, () -> contentStore.get("abc/def/first"));
+                assertArrayEquals(sticker, contentStore.get("abc/def/second").readAllBytes());
+                assertFalse(contentStore.delete("abc/def/first"));
+        }
+
+        @Test
+        void restart_AfterTornWrite_ShouldTruncateIncompleteRecord() throws Exception {
+                // Given
+                contentStore = open(1024 * 1024);
+                contentStore.putIfAbsent("abc/def/abcdef", sticker);
+                contentStore.close();
+                Path pack = storage.resolve("packs/pack-000001.dat");
+                long size = Files.size(pack);
+                Files.write(pack, new byte[] {1, 0, 40}, StandardOpenOption.APPEND);
+
+                // When
+                contentStore = open(1024 * 1024);
+                contentStore.putIfAbsent("abc/def/fedcba", sticker);
+
+                // Then
+                assertEquals(2 * size, Files.size(pack));
+                assertArrayEquals(sticker, contentStore.get("abc/def/abcdef").readAllBytes());
+                assertArrayEquals(sticker, contentStore.get("abc/def/fedcba").readAllBytes());
+        }
+
+        @Test
+        void putIfAbsent_AfterReaderWasInterrupted_ShouldAppendToSamePack() throws Exception {
+                // Given, a reader whose interrupt closes the pack's read channel
+                contentStore = open(1024 * 1024);
+                contentStore.putIfAbsent("abc/def/abcdef", sticker);
+                AtomicReference<Exception> failure = new AtomicReference<>();
+                Thread reader = new Thread(() -> {
+                        Thread.currentThread().interrupt();
+                        try {
+                                contentStore.get("abc/def/abcdef");
+                        } catch (Exception e) {
+                                failure.set(e);
+                        }
+                });
+                reader.start();
+                reader.join();
+
+                // When
+                boolean stored = contentStore.putIfAbsent("abc/def/fedcba", sticker);
+
+                // Then
+                assertTrue(failure.get() instanceof ClosedByInterruptException);
+                assertTrue(stored);
+                assertFalse(Files.exists(storage.resolve("packs/pack-000002.dat")));
+                assertArrayEquals(sticker, contentStore.get("abc/def/abcdef").readAllBytes());
+                assertArrayEquals(sticker, contentStore.get("abc/def/fedcba").readAllBytes());
+        }
+
+        private PackedContentStore open(long packSize) throws Exception {
+                return new PackedContentStore(storage.toString(), 64, packSize, 0.5, Runnable::run);
+        }
+}
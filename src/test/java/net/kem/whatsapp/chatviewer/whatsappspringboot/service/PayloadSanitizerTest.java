@@ -0,0 +1,99 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import net.kem.whatsapp.chatviewer.whatsappspringboot.model.EntityKind;
+
+class PayloadSanitizerTest {
+
+        @Test
+        void scan_ShouldReplaceAllKindsInOnePass() {
+                // Given
+                String payload = "Call 0541234567 or mail john.doe@example.com, "
+                                + "see https://example.com/x?y=1 now";
+
+                // When
+                PayloadSanitizer.Result result = PayloadSanitizer.scan(payload);
+
+                // Then
+                assertEquals("Call [PHONE_NUMBER] or mail [EMAIL], see [URL] now",
+                                result.sanitized());
+                assertEquals(List.of(EntityKind.PHONE, EntityKind.EMAIL, EntityKind.URL),
+                                result.matches().stream().map(PayloadSanitizer.Match::kind)
+                                                .toList());
+                PayloadSanitizer.Match url = result.matches().get(2);
+                assertEquals("https://example.com/x?y=1", url.value());
+                assertEquals(url.value(), payload.substring(url.start(), url.end()));
+        }
+
+        @Test
+        void scan_ShouldTreatNumbersInsideUrlAsPartOfTheUrl() {
+                // When
+                PayloadSanitizer.Result result =
+                                PayloadSanitizer.scan("https://example.com/order/12345678901");
+
+                // Then
+                assertEquals("[URL]", result.sanitized());
+                assertEquals(1, result.matches().size());
+        }
+
+        @Test
+        void scan_WithoutSensitiveValues_ShouldReturnPayloadUnchanged() {
+                // Given
+                String payload = "Meeting at 10:30, room 42";
+
+                // When
+                PayloadSanitizer.Result result = PayloadSanitizer.scan(payload);
+
+                // Then
+                assertSame(payload, result.sanitized());
+                assertTrue(result.matches().isEmpty());
+                assertNull(PayloadSanitizer.sanitize(null));
+        }
+
+        @Test
+        void scan_ShouldDetectMentionsWithoutReplacingThem() {
+                // When
+                PayloadSanitizer.Result result = PayloadSanitizer
+                                .scan("Thanks @Dana_K, ping me at dana@example.com");
+
+                // Then
+                assertEquals("Thanks @Dana_K, ping me at [EMAIL]", result.sanitized());
+                assertEquals(List.of(EntityKind.MENTION, EntityKind.EMAIL),
+                                result.matches().stream().map(PayloadSanitizer.Match::kind)
+                                                .toList());
+                assertEquals("dana_k", result.matches().get(0).normalized());
+        }
+
+        @Test
+        void scan_ShouldDetectMentionsByPhoneNumberAndHideTheNumber() {
+                // When
+                PayloadSanitizer.Result result =
+                                PayloadSanitizer.scan("@972541234567 and @15 are you coming?");
+
+                // Then
+                assertEquals("@[PHONE_NUMBER] and @15 are you coming?", result.sanitized());
+                assertEquals(List.of(EntityKind.MENTION, EntityKind.MENTION),
+                                result.matches().stream().map(PayloadSanitizer.Match::kind)
+                                                .toList());
+                assertEquals("972541234567", result.matches().get(0).normalized());
+                assertEquals("15", result.matches().get(1).normalized());
+        }
+
+        @Test
+        void normalize_ShouldGroupEquivalentValues() {
+                assertEquals("https://example.com/Path?q=1", PayloadSanitizer
+                                .normalize(EntityKind.URL, "HTTPS://Example.COM/Path?q=1)."));
+                assertEquals("https://example.com",
+                                PayloadSanitizer.normalize(EntityKind.URL, "https://example.com/"));
+                assertEquals("john.doe@example.com", PayloadSanitizer
+                                .normalize(EntityKind.EMAIL, "John.Doe@Example.com"));
+                assertEquals("972541234567",
+                                PayloadSanitizer.normalize(EntityKind.PHONE, "+972 54-123-4567"));
+                assertEquals("dana", PayloadSanitizer.normalize(EntityKind.MENTION, "@Dana"));
+        }
+}
@@ -0,0 +1,117 @@
+package net.kem.whatsapp.chatviewer.whatsappspringboot.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ThumbnailServiceTest {
+
+        @TempDir
+        private Path storage;
+
+        private ThumbnailService thumbnailService;
+
+        private final String hash = "ab".repeat(32);
+        private final String directory = "aba/bab/";
+        private Path original;
+
+        @BeforeEach
+        void setUp() throws Exception {
+                original = Files.createDirectories(storage.resolve(directory)).resolve(hash);
+                thumbnailService = new ThumbnailService(new LocalContentStore(storage.toString()),
+                                320, 1);
+        }
+
+        @AfterEach
+        void tearDown() {
+                thumbnailService.close();
+        }
+
+        @Test
+        void getThumbnail_ShouldDownscalePhotoToJpegNextToOriginal() throws Exception {
+                // Given
+                ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png",
+                                original.toFile());
+
+                // When
+                Optional<StoredContent> thumbnail = thumbnailService.getThumbnail(hash);
+
+                // Then
+                assertEquals(directory + hash + "-320.jpg", thumbnail.get().key());
+                BufferedImage image = ImageIO.read(thumbnail.get().localPath().get().toFile());
+                assertEquals(320, image.getWidth());
+                assertEquals(160, image.getHeight());
+                assertEquals(thumbnail, thumbnailService.getThumbnail(hash));
+        }
+
+        @Test
+        void getThumbnail_ShouldKeepTransparencyAsPng() throws Exception {
+                // Given
+                ImageIO.write(new BufferedImage(100, 400, BufferedImage.TYPE_INT_ARGB), "png",
+                                original.toFile());
+
+                // When
+                Optional<StoredContent> thumbnail = thumbnailService.getThumbnail(hash);
+
+                // Then
+                assertEquals(directory + hash + "-320.png", thumbnail.get().key());
+                assertEquals("image/png", ThumbnailService.mimeTypeOf(thumbnail.get()));
+                BufferedImage image = ImageIO.read(thumbnail.get().localPath().get().toFile());
+                assertEquals(80, image.getWidth());
+                assertEquals(320, image.getHeight());
+                assertTrue(image.getColorModel().hasAlpha());
+        }
+
+        @Test
+        void getThumbnail_WithUndecodableFile_ShouldReturnEmpty() throws Exception {
+                // Given
+                Files.writeString(original, "not an image", StandardCharsets.UTF_8);
+
+                // When & Then
+                assertEquals(Optional.empty(), thumbnailService.getThumbnail(hash));
+                assertEquals(Optional.empty(), thumbnailService.getThumbnail(hash));
+                assertFalse(Files.exists(original.resolveSibling(hash + "-320.jpg")));
+                assertTrue(ThumbnailService.isSupportedImage("IMG-0001.JPG"));
+                assertFalse(ThumbnailService.isSupportedImage("VID-0001.mp4"));
+        }
+
+        @Test
+        void getThumbnail_AfterReadFailure_ShouldRetry() throws Exception {
+                // Given
+                ImageIO.write(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), "png",
+                                original.toFile());
+                AtomicBoolean failing = new AtomicBoolean(true);
+                thumbnailService.close();
+                thumbnailService = new ThumbnailService(new LocalContentStore(storage.toString()) {
+                        @Override
+                        public InputStream get(String key) throws IOException {
+                                if (failing.get()) {
+                                        throw new IOException("Storage unavailable");
+                                }
+                                return super.get(key);
+                        }
+                }, 320, 1);
+
+                // When
+                assertThrows(IOException.class, () -> thumbnailService.getThumbnail(hash));
+                failing.set(false);
+                Optional<StoredContent> thumbnail = thumbnailService.getThumbnail(hash);
+
+                // Then
+                assertEquals(directory + hash + "-320.jpg", thumbnail.get().key());
+        }
+}